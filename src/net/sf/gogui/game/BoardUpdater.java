@@ -4,6 +4,7 @@ package net.sf.gogui.game;
 
 import java.util.ArrayList;
 import net.sf.gogui.go.Board;
+import net.sf.gogui.go.BoardSnapshot;
 import net.sf.gogui.go.ConstPointList;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
@@ -13,27 +14,142 @@ import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Move;
 import net.sf.gogui.go.PointList;
 
-/** Updates a go.Board to a node in a GameTree. */
+/** Updates a go.Board to a node in a GameTree.
+    The updater remembers the nodes applied in the last update. If the
+    same tree and board are used again and the board was not modified in
+    between, the moves after the common ancestor of the old and new node
+    are undone and only the moves from there to the new node are played.
+    Undoing is not possible over nodes with setup stones, in this case the
+    position is computed again from the root. The new node itself is always
+    played again, because the current node is often modified before an
+    update (e.g. by Game.setup()). Modifications of other nodes on the path
+    to the previous node require a new updater or a call to clear().
+    <p>
+    Optionally, the updater caches snapshots of the board at every n-th
+    node of the paths it applies (see setCache()). If the position cannot
+    be reached by undoing moves, or a cached node is closer to the new node
+    than the common ancestor, the board is restored from the snapshot of
+    the nearest cached ancestor and only the remaining nodes are applied.
+    The nodes of the cached positions must not be modified; use
+    removeCached() after modifying a node other than the new node of the
+    next update. */
 public class BoardUpdater
 {
     public BoardUpdater()
     {
         m_nodes = new ArrayList<ConstNode>(400);
+        m_applied = new ArrayList<AppliedNode>(400);
+    }
+
+    /** Forget the nodes applied in the last update and the cached
+        positions.
+        The next update will compute the position from the root. */
+    public void clear()
+    {
+        m_numberApplied = 0;
+        m_tree = null;
+        m_board = null;
+        if (m_cache != null)
+            m_cache.clear();
+    }
+
+    /** Get the number of positions in the cache.
+        @return The number of positions or 0, if the cache is disabled. */
+    public int getNumberCached()
+    {
+        return (m_cache == null ? 0 : m_cache.size());
+    }
+
+    /** Remove cached positions of a node and its subtree.
+        Needs to be called after modifying a node, unless all cached
+        positions are removed with clear(). */
+    public void removeCached(ConstNode node)
+    {
+        if (m_cache != null)
+            m_cache.removeSubtree(node);
+    }
+
+    /** Enable or disable the cache of board positions.
+        Removes all cached positions.
+        @param interval Store the position after every interval-th node
+        on the path from the root (the root has depth 0, the nodes with
+        depth interval - 1, 2 * interval - 1, etc. are cached). Zero
+        disables the cache.
+        @param maxMemory Maximum memory used by the cached positions in
+        bytes. The memory is estimated from the board size and the number
+        of moves in the snapshots; least recently used positions are
+        removed if the limit is exceeded. */
+    public void setCache(int interval, long maxMemory)
+    {
+        assert interval >= 0;
+        if (interval == 0 || maxMemory <= 0)
+        {
+            m_cacheInterval = 0;
+            m_cache = null;
+            return;
+        }
+        m_cacheInterval = interval;
+        m_cache = new PositionCache<CachedPosition>(maxMemory);
     }
 
     public void update(ConstGameTree tree, ConstNode currentNode, Board board)
     {
-        board.init(tree.getBoardSize());
         int handicap = tree.getGameInfoConst(currentNode).getHandicap();
         NodeUtil.getPathToRoot(currentNode, m_nodes);
+        int nuNodes = m_nodes.size();
+        int start = 0;
+        if (isValid(tree, board, handicap))
+        {
+            // Find the common ancestor, but always apply the current node
+            int max = Math.min(m_numberApplied, nuNodes - 1);
+            while (start < max
+                   && m_applied.get(start).m_node
+                      == m_nodes.get(nuNodes - 1 - start))
+                ++start;
+            for (int i = start; i < m_numberApplied; ++i)
+                if (! m_applied.get(i).m_isUndoable)
+                {
+                    start = 0;
+                    break;
+                }
+        }
         int nuMoves = 0;
         boolean isFirstPlacement = true;
         boolean isHandicapSetupDone = false;
         boolean isInInitialBlackMoveSequence = true;
-        for (int i = m_nodes.size() - 1; i >= 0; --i)
+        int cached = findCached(tree, handicap, start);
+        if (cached >= 0)
+        {
+            AppliedNode applied = restoreCached(cached, board);
+            start = cached + 1;
+            nuMoves = applied.m_nuMoves;
+            isFirstPlacement = applied.m_isFirstPlacement;
+            isHandicapSetupDone = applied.m_isHandicapSetupDone;
+            isInInitialBlackMoveSequence =
+                applied.m_isInInitialBlackMoveSequence;
+        }
+        else if (start == 0)
+        {
+            board.init(tree.getBoardSize());
+            m_numberApplied = 0;
+        }
+        else
+        {
+            AppliedNode applied = m_applied.get(start - 1);
+            board.undo(board.getNumberMoves() - applied.m_numberMoves);
+            board.setToMove(applied.m_toMove);
+            nuMoves = applied.m_nuMoves;
+            isFirstPlacement = applied.m_isFirstPlacement;
+            isHandicapSetupDone = applied.m_isHandicapSetupDone;
+            isInInitialBlackMoveSequence =
+                applied.m_isInInitialBlackMoveSequence;
+            m_numberApplied = start;
+        }
+        for (int i = nuNodes - 1 - start; i >= 0; --i)
         {
             ConstNode node = m_nodes.get(i);
             GoColor player = node.getPlayer();
+            boolean isUndoable = true;
             if (node.hasSetup())
             {
                 ConstPointList setupBlack = node.getSetup(BLACK);
@@ -50,6 +166,7 @@ public class BoardUpdater
                     newSetup(board, setupBlack, setupWhite, setupEmpty, player);
                 isFirstPlacement = false;
                 isInInitialBlackMoveSequence = false;
+                isUndoable = false;
             }
             else if (player != null)
                 board.setToMove(player);
@@ -68,15 +185,198 @@ public class BoardUpdater
                 {
                     setupMovesAsHandicap(board);
                     isHandicapSetupDone = true;
+                    isUndoable = false;
                 }
             }
+            AppliedNode applied = getAppliedNode(m_numberApplied++);
+            applied.m_node = node;
+            applied.m_isUndoable = isUndoable;
+            applied.m_numberMoves = board.getNumberMoves();
+            applied.m_toMove = board.getToMove();
+            applied.m_nuMoves = nuMoves;
+            applied.m_isFirstPlacement = isFirstPlacement;
+            applied.m_isHandicapSetupDone = isHandicapSetupDone;
+            applied.m_isInInitialBlackMoveSequence =
+                isInInitialBlackMoveSequence;
+            // Never cache the new node, it is often modified after the update
+            if (m_cache != null && i > 0
+                && m_numberApplied % m_cacheInterval == 0
+                && ! m_cache.contains(node))
+                storeCached(node, applied, board, handicap);
         }
+        m_tree = tree;
+        m_board = board;
+        m_handicap = handicap;
+        m_hashCode = board.getHashCode();
+    }
+
+    /** A node applied in the last update and the state after applying it.
+        Contains the local variables of update() for continuing the update
+        at this node. */
+    private static class AppliedNode
+    {
+        public ConstNode m_node;
+
+        /** False, if the node contains setup stones or the handicap moves
+            were converted into setup stones. */
+        public boolean m_isUndoable;
+
+        /** Number of moves of the board after applying the node. */
+        public int m_numberMoves;
+
+        public GoColor m_toMove;
+
+        public int m_nuMoves;
+
+        public boolean m_isFirstPlacement;
+
+        public boolean m_isHandicapSetupDone;
+
+        public boolean m_isInInitialBlackMoveSequence;
     }
 
+    /** Board position and state of update() after applying a node. */
+    private static class CachedPosition
+    {
+        public BoardSnapshot m_snapshot;
+
+        public int m_handicap;
+
+        /** State after applying the node. */
+        public final AppliedNode m_applied = new AppliedNode();
+    }
+
+    /** Rough estimate of the memory used by a board in bytes, not
+        including the moves. */
+    private static final long MEMORY_BOARD = 16000;
+
+    /** Rough estimate of the memory used by a move of a board in bytes. */
+    private static final long MEMORY_MOVE = 500;
+
+    private int m_numberApplied;
+
+    /** See setCache() */
+    private int m_cacheInterval;
+
+    /** Cached positions or null, if the cache is disabled. */
+    private PositionCache<CachedPosition> m_cache;
+
+    private int m_handicap;
+
+    /** Hash code of the board after the last update. */
+    private long m_hashCode;
+
+    private ConstGameTree m_tree;
+
+    private Board m_board;
+
     /** Local variable used in update.
         Member variable for avoiding frequent new memory allocations. */
     private final ArrayList<ConstNode> m_nodes;
 
+    /** Nodes applied in the last update.
+        Starts with the root node; entries above m_numberApplied are kept
+        for reuse. */
+    private final ArrayList<AppliedNode> m_applied;
+
+    /** Find the nearest cached ancestor of the new node.
+        Uses m_nodes, which contains the path from the new node to the
+        root.
+        @param start Only ancestors at this depth or deeper are used,
+        because the position at the common ancestor of the last update can
+        be reached by undoing moves.
+        @return The depth of the cached ancestor or -1, if no cached
+        position can be used. */
+    private int findCached(ConstGameTree tree, int handicap, int start)
+    {
+        if (m_cache == null)
+            return -1;
+        int nuNodes = m_nodes.size();
+        // Largest depth below the depth of the new node that is cached
+        int depth = ((nuNodes - 1) / m_cacheInterval) * m_cacheInterval - 1;
+        for ( ; depth >= start; depth -= m_cacheInterval)
+        {
+            CachedPosition position =
+                m_cache.get(m_nodes.get(nuNodes - 1 - depth));
+            if (position != null && position.m_handicap == handicap
+                && position.m_snapshot.getSize() == tree.getBoardSize())
+                return depth;
+        }
+        return -1;
+    }
+
+    private AppliedNode getAppliedNode(int i)
+    {
+        if (i == m_applied.size())
+            m_applied.add(new AppliedNode());
+        return m_applied.get(i);
+    }
+
+    /** Check if the last update can be continued.
+        Checks that the tree, board and handicap are the same and that the
+        board was not modified since the last update. */
+    private boolean isValid(ConstGameTree tree, Board board, int handicap)
+    {
+        if (tree != m_tree || board != m_board || handicap != m_handicap
+            || m_numberApplied == 0
+            || board.getSize() != tree.getBoardSize())
+            return false;
+        AppliedNode last = m_applied.get(m_numberApplied - 1);
+        return (board.getNumberMoves() == last.m_numberMoves
+                && board.getToMove() == last.m_toMove
+                && board.getHashCode() == m_hashCode);
+    }
+
+    /** Restore the board from a cached position.
+        The nodes up to the cached node are remembered as applied nodes for
+        finding the common ancestor in the next update, but marked as not
+        undoable, because only the state after the cached node is known.
+        @param depth The depth of the cached node as returned by
+        findCached().
+        @return The applied node for the cached node. */
+    private AppliedNode restoreCached(int depth, Board board)
+    {
+        int nuNodes = m_nodes.size();
+        ConstNode node = m_nodes.get(nuNodes - 1 - depth);
+        CachedPosition position = m_cache.get(node);
+        board.restore(position.m_snapshot);
+        for (int i = 0; i < depth; ++i)
+        {
+            AppliedNode applied = getAppliedNode(i);
+            applied.m_node = m_nodes.get(nuNodes - 1 - i);
+            applied.m_isUndoable = false;
+        }
+        AppliedNode applied = getAppliedNode(depth);
+        copy(position.m_applied, applied);
+        applied.m_isUndoable = false;
+        m_numberApplied = depth + 1;
+        return applied;
+    }
+
+    private void storeCached(ConstNode node, AppliedNode applied,
+                             Board board, int handicap)
+    {
+        CachedPosition position = new CachedPosition();
+        position.m_snapshot = board.snapshot();
+        position.m_handicap = handicap;
+        copy(applied, position.m_applied);
+        long memory = MEMORY_BOARD + MEMORY_MOVE * board.getNumberMoves();
+        m_cache.put(node, position, memory);
+    }
+
+    private static void copy(AppliedNode from, AppliedNode to)
+    {
+        to.m_node = from.m_node;
+        to.m_isUndoable = from.m_isUndoable;
+        to.m_numberMoves = from.m_numberMoves;
+        to.m_toMove = from.m_toMove;
+        to.m_nuMoves = from.m_nuMoves;
+        to.m_isFirstPlacement = from.m_isFirstPlacement;
+        to.m_isHandicapSetupDone = from.m_isHandicapSetupDone;
+        to.m_isInInitialBlackMoveSequence =
+            from.m_isInInitialBlackMoveSequence;
+    }
+
     /** Initialize board with new setup from merging the current position
         with the setup properties from a node. */
     private void newSetup(Board board, ConstPointList setupBlack,
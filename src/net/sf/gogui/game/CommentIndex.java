@@ -0,0 +1,391 @@
+// CommentIndex.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/** Inverted index of the words in the comments of a game tree.
+    Speeds up searching comments in large trees, for example in traces
+    with engine output in the comments. The index is built on the first
+    query. Comments that are changed after that need to be reported with
+    update(). Nodes that are removed from the tree are ignored.
+    A word is a sequence of letters or digits; words are compared
+    case-insensitively. The index may contain words that no longer occur
+    in a comment after an update, so the results of the term and prefix
+    queries are candidates that may need to be checked by the caller. */
+public final class CommentIndex
+{
+    /** Constructor.
+        @param root The root node of the tree. */
+    public CommentIndex(ConstNode root)
+    {
+        m_root = root;
+    }
+
+    /** Find next node with a comment containing a pattern in the iteration
+        through the complete tree.
+        Returns the same node as NodeUtil.findInComments(). If the pattern
+        contains literal words, only the nodes with these words in the index
+        are searched.
+        @param node The current node in the iteration.
+        @param pattern The pattern.
+        @return The next node in the iteration through the complete tree
+        after the current node that contains a match of the pattern. */
+    public ConstNode find(ConstNode node, Pattern pattern)
+    {
+        if (m_lastPattern == null
+            || ! m_lastPattern.pattern().equals(pattern.pattern())
+            || m_lastPattern.flags() != pattern.flags())
+        {
+            m_lastCandidates = getCandidates(pattern);
+            m_lastPattern = pattern;
+        }
+        Map<ConstNode,ConstNode> candidates = m_lastCandidates;
+        if (candidates == null)
+            return NodeUtil.findInComments(node, pattern);
+        if (candidates.size() > MAX_SORT_CANDIDATES)
+        {
+            // Many candidates; iterate through the tree, which is fast
+            // because the comments of other nodes are not decoded
+            node = NodeUtil.nextNode(node);
+            while (node != null)
+            {
+                if (candidates.containsKey(node)
+                    && NodeUtil.commentContains(node, pattern))
+                    return node;
+                node = NodeUtil.nextNode(node);
+            }
+            return null;
+        }
+        int[] path = getPath(node);
+        if (path == null)
+            return NodeUtil.findInComments(node, pattern);
+        ConstNode result = null;
+        int[] resultPath = null;
+        for (ConstNode candidate : candidates.keySet())
+        {
+            int[] candidatePath = getPath(candidate);
+            if (candidatePath == null
+                || comparePaths(candidatePath, path) <= 0
+                || (resultPath != null
+                    && comparePaths(candidatePath, resultPath) >= 0)
+                || ! NodeUtil.commentContains(candidate, pattern))
+                continue;
+            result = candidate;
+            resultPath = candidatePath;
+        }
+        return result;
+    }
+
+    /** Find nodes with a word that starts with a prefix.
+        @param prefix The prefix (case-insensitive).
+        @return The nodes in no specific order. */
+    public ArrayList<ConstNode> findPrefix(String prefix)
+    {
+        Map<ConstNode,ConstNode> nodes =
+            new IdentityHashMap<ConstNode,ConstNode>();
+        addPrefix(normalize(prefix), nodes);
+        return new ArrayList<ConstNode>(nodes.keySet());
+    }
+
+    /** Find nodes with a word.
+        @param term The word (case-insensitive).
+        @return The nodes in no specific order. */
+    public ArrayList<ConstNode> findTerm(String term)
+    {
+        Map<ConstNode,ConstNode> nodes =
+            new IdentityHashMap<ConstNode,ConstNode>();
+        addTerm(normalize(term), nodes);
+        return new ArrayList<ConstNode>(nodes.keySet());
+    }
+
+    /** Update the index after the comment of a node was changed.
+        Does nothing if the index was not built yet. */
+    public void update(ConstNode node)
+    {
+        if (m_terms == null)
+            return;
+        m_lastPattern = null;
+        m_lastCandidates = null;
+        Posting[] old = m_updated.get(node);
+        if (old == null)
+            old = NO_POSTINGS;
+        for (Posting posting : old)
+            posting.m_lastNode = node;
+        ArrayList<Posting> postings = add(node);
+        if (postings.isEmpty())
+            return;
+        Posting[] all = new Posting[old.length + postings.size()];
+        System.arraycopy(old, 0, all, 0, old.length);
+        for (int i = 0; i < postings.size(); ++i)
+            all[old.length + i] = postings.get(i);
+        m_updated.put(node, all);
+    }
+
+    /** Maximum number of candidate nodes, for which the candidates are
+        compared by their position in the tree in find(). */
+    private static final int MAX_SORT_CANDIDATES = 1000;
+
+    private static final class Posting
+    {
+        public Posting(String term)
+        {
+            m_term = term;
+        }
+
+        public final String m_term;
+
+        /** Last node added to m_nodes.
+            Used for avoiding duplicate nodes. */
+        public ConstNode m_lastNode;
+
+        public final ArrayList<ConstNode> m_nodes =
+            new ArrayList<ConstNode>(1);
+    }
+
+    private static final Posting[] NO_POSTINGS = new Posting[0];
+
+    private final ConstNode m_root;
+
+    /** Pattern of the last call to find().
+        Used for reusing the candidates for repeated searches of the same
+        pattern. */
+    private Pattern m_lastPattern;
+
+    /** Candidates for m_lastPattern. */
+    private Map<ConstNode,ConstNode> m_lastCandidates;
+
+    /** Map from normalized word to the nodes containing it.
+        Null, if the index was not built yet. */
+    private TreeMap<String,Posting> m_terms;
+
+    /** Words added by update() for each updated node.
+        Avoids adding a node again to the postings of a word at each update
+        of a node. A node can still occur twice in a posting, if the word
+        was already in the comment, when the index was built. */
+    private final IdentityHashMap<ConstNode,Posting[]> m_updated =
+        new IdentityHashMap<ConstNode,Posting[]>();
+
+    /** Add the words of the comment of a node.
+        Does not add the node to postings whose m_lastNode is the node.
+        Keeps the words of the old comment, if the node was already indexed
+        (see class comment).
+        @return The postings the node was added to. */
+    private ArrayList<Posting> add(ConstNode node)
+    {
+        ArrayList<Posting> postings = new ArrayList<Posting>();
+        String comment = node.getComment();
+        if (comment == null)
+            return postings;
+        int length = comment.length();
+        int i = 0;
+        while (i < length)
+        {
+            if (! Character.isLetterOrDigit(comment.charAt(i)))
+            {
+                ++i;
+                continue;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(comment.charAt(i)))
+                ++i;
+            String term = normalize(comment.substring(start, i));
+            Posting posting = m_terms.get(term);
+            if (posting == null)
+            {
+                posting = new Posting(term);
+                m_terms.put(term, posting);
+            }
+            if (posting.m_lastNode == node)
+                continue;
+            posting.m_lastNode = node;
+            posting.m_nodes.add(node);
+            postings.add(posting);
+        }
+        return postings;
+    }
+
+    private void addPrefix(String prefix, Map<ConstNode,ConstNode> nodes)
+    {
+        buildIndex();
+        SortedMap<String,Posting> map =
+            m_terms.subMap(prefix, prefix + Character.MAX_VALUE);
+        for (Posting posting : map.values())
+            addPosting(posting, nodes);
+    }
+
+    private static void addPosting(Posting posting,
+                                   Map<ConstNode,ConstNode> nodes)
+    {
+        for (ConstNode node : posting.m_nodes)
+            nodes.put(node, node);
+    }
+
+    private void addTerm(String term, Map<ConstNode,ConstNode> nodes)
+    {
+        buildIndex();
+        Posting posting = m_terms.get(term);
+        if (posting != null)
+            addPosting(posting, nodes);
+    }
+
+    private void buildIndex()
+    {
+        if (m_terms != null)
+            return;
+        m_terms = new TreeMap<String,Posting>();
+        SubtreeIterator i = new SubtreeIterator(m_root);
+        while (i.hasNext())
+        {
+            ConstNode node = i.next();
+            if (node.hasComment())
+                add(node);
+        }
+    }
+
+    /** Compare the positions of two nodes in the iteration through the
+        tree. */
+    private static int comparePaths(int[] path1, int[] path2)
+    {
+        int n = Math.min(path1.length, path2.length);
+        for (int i = 0; i < n; ++i)
+            if (path1[i] != path2[i])
+                return (path1[i] < path2[i] ? -1 : 1);
+        return path1.length - path2.length;
+    }
+
+    /** Get the nodes that can contain a match of a pattern.
+        Uses the literal words in the pattern. A word that is followed by
+        another character of the pattern (or by \b) must be the end of a
+        word in the comment, a word that is preceded by another character
+        (or by \b) must be the start of a word.
+        @return The candidate nodes or null, if the pattern has no literal
+        words or uses regular expression constructs in addition to a leading
+        or trailing \b. */
+    private Map<ConstNode,ConstNode> getCandidates(Pattern pattern)
+    {
+        String s = pattern.pattern();
+        int flags = pattern.flags();
+        boolean isStartBound = false;
+        boolean isEndBound = false;
+        if ((flags & Pattern.LITERAL) == 0)
+        {
+            if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0)
+                return null;
+            if (s.startsWith("\\b"))
+            {
+                isStartBound = true;
+                s = s.substring(2);
+            }
+            if (s.endsWith("\\b") && ! s.endsWith("\\\\b"))
+            {
+                isEndBound = true;
+                s = s.substring(0, s.length() - 2);
+            }
+            for (int i = 0; i < s.length(); ++i)
+                if ("\\^$.|?*+()[]{}".indexOf(s.charAt(i)) >= 0)
+                    return null;
+        }
+        else if ((flags & Pattern.CANON_EQ) != 0)
+            return null;
+        Map<ConstNode,ConstNode> result = null;
+        String scanWord = null;
+        boolean scanIsEnd = false;
+        int length = s.length();
+        int i = 0;
+        while (i < length)
+        {
+            if (! Character.isLetterOrDigit(s.charAt(i)))
+            {
+                ++i;
+                continue;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(s.charAt(i)))
+                ++i;
+            String word = normalize(s.substring(start, i));
+            boolean isStart = (start > 0 || isStartBound);
+            boolean isEnd = (i < length || isEndBound);
+            if (! isStart)
+            {
+                // Can only be the first word. Needs a scan of all words in
+                // the index, only used if there are no other words.
+                scanWord = word;
+                scanIsEnd = isEnd;
+                continue;
+            }
+            Map<ConstNode,ConstNode> nodes =
+                new IdentityHashMap<ConstNode,ConstNode>();
+            if (isEnd)
+                addTerm(word, nodes);
+            else
+                addPrefix(word, nodes);
+            result = intersect(result, nodes);
+        }
+        if (result != null || scanWord == null)
+            return result;
+        buildIndex();
+        result = new IdentityHashMap<ConstNode,ConstNode>();
+        for (Posting posting : m_terms.values())
+        {
+            String term = posting.m_term;
+            if (scanIsEnd ? term.endsWith(scanWord)
+                : term.indexOf(scanWord) >= 0)
+                addPosting(posting, result);
+        }
+        return result;
+    }
+
+    /** Get the child indices on the path from the root to a node.
+        @return The path or null, if the node is no longer in the tree. */
+    private int[] getPath(ConstNode node)
+    {
+        int depth = NodeUtil.getDepth(node);
+        int[] path = new int[depth];
+        for (int i = depth - 1; i >= 0; --i)
+        {
+            ConstNode father = node.getFatherConst();
+            path[i] = father.getChildIndex(node);
+            if (path[i] < 0)
+                return null;
+            node = father;
+        }
+        if (node != m_root)
+            return null;
+        return path;
+    }
+
+    private static Map<ConstNode,ConstNode> intersect(
+                                              Map<ConstNode,ConstNode> nodes1,
+                                              Map<ConstNode,ConstNode> nodes2)
+    {
+        if (nodes1 == null)
+            return nodes2;
+        if (nodes1.size() > nodes2.size())
+            return intersect(nodes2, nodes1);
+        Map<ConstNode,ConstNode> result =
+            new IdentityHashMap<ConstNode,ConstNode>();
+        for (ConstNode node : nodes1.keySet())
+            if (nodes2.containsKey(node))
+                result.put(node, node);
+        return result;
+    }
+
+    /** Normalize the case of a word.
+        Converts each character to upper and then to lower case, such that
+        the words match if the characters match in a case-insensitive
+        pattern. */
+    private static String normalize(String word)
+    {
+        StringBuilder buffer = new StringBuilder(word.length());
+        for (int i = 0; i < word.length(); ++i)
+            buffer.append(Character.toLowerCase(Character.toUpperCase(
+                                                        word.charAt(i))));
+        return buffer.toString();
+    }
+}
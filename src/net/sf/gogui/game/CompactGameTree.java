@@ -0,0 +1,756 @@
+// CompactGameTree.java
+
+package net.sf.gogui.game;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE;
+import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.go.PointList;
+
+/** Read-only game tree with compact storage.
+    Alternative to GameTree for very large trees, like the search traces
+    of Explorer or Monte-Carlo programs with millions of nodes. The moves,
+    the links between the nodes and the comments are stored in primitive
+    arrays instead of one object per node. The nodes are numbered in
+    breadth-first order, such that the children of a node have consecutive
+    numbers. Nodes with information other than a move, comment and value
+    (e.g. setup stones or markup) are rare in such trees; this information
+    is stored in a separate Node object for each such node.
+    <p>
+    The ConstNode objects returned by the tree are views, which are created
+    on demand. They are kept in a cache with weak references as long as
+    they are in use, so that nodes can be compared by identity like Node
+    objects without keeping a view for every node of the tree in memory.
+    The tree is not thread-safe. */
+public final class CompactGameTree
+    implements ConstGameTree
+{
+    /** Builder for creating a compact game tree node by node.
+        Allows to create a compact tree while reading a file without
+        creating a GameTree first (see SgfReader.readCompact()). The nodes
+        must be added in an order in which each node is added after its
+        father and the children of a node are added in their order, like
+        the pre-order of the nodes in an SGF file. The builder stores the
+        nodes in primitive arrays in the order of adding; they are
+        renumbered in breadth-first order when the tree is built. */
+    public static final class Builder
+    {
+        public Builder()
+        {
+            m_parent = new int[1024];
+            m_move = new short[1024];
+            m_commentStart = new int[1025];
+            m_comments = new byte[1024];
+            m_extraIndex = new int[16];
+        }
+
+        /** Add a node.
+            @param father The number of the father node as returned by a
+            previous call of addNode() or -1 for the root node, which must
+            be added first.
+            @param move The move of the node or null.
+            @param comment The comment of the node or null.
+            @param value The value of the node or Float.NaN.
+            @param extra A node with all other information of the node or
+            null. It must not contain a move, comment or value and it must
+            not be modified after adding.
+            @return The number of the new node. */
+        public int addNode(int father, Move move, String comment,
+                           float value, Node extra)
+        {
+            assert (father < 0) == (m_numberNodes == 0);
+            assert father < m_numberNodes;
+            if (m_numberNodes == m_parent.length)
+                grow();
+            int index = m_numberNodes;
+            m_parent[index] = father;
+            m_move[index] = encodeMove(move);
+            if (comment != null)
+            {
+                byte[] bytes = encodeComment(comment);
+                if (m_commentsLength + bytes.length > m_comments.length)
+                {
+                    byte[] comments =
+                        new byte[2 * (m_commentsLength + bytes.length)];
+                    System.arraycopy(m_comments, 0, comments, 0,
+                                     m_commentsLength);
+                    m_comments = comments;
+                }
+                System.arraycopy(bytes, 0, m_comments, m_commentsLength,
+                                 bytes.length);
+                m_commentsLength += bytes.length;
+            }
+            m_commentStart[index + 1] = m_commentsLength;
+            if (! Float.isNaN(value))
+            {
+                if (m_value == null)
+                {
+                    m_value = new float[m_parent.length];
+                    Arrays.fill(m_value, Float.NaN);
+                }
+                m_value[index] = value;
+            }
+            if (father < 0)
+            {
+                if (extra == null)
+                    extra = new Node();
+                if (extra.getGameInfoConst() == null)
+                    extra.createGameInfo();
+            }
+            if (extra != null
+                && (! extra.isEmpty() || extra.getGameInfoConst() != null))
+            {
+                assert extra.getMove() == null && ! extra.hasComment()
+                    && Float.isNaN(extra.getValue());
+                if (m_extraNodes.size() == m_extraIndex.length)
+                {
+                    int[] extraIndex = new int[2 * m_extraIndex.length];
+                    System.arraycopy(m_extraIndex, 0, extraIndex, 0,
+                                     m_extraIndex.length);
+                    m_extraIndex = extraIndex;
+                }
+                m_extraIndex[m_extraNodes.size()] = index;
+                m_extraNodes.add(extra);
+            }
+            ++m_numberNodes;
+            return index;
+        }
+
+        /** Add a node.
+            Takes the move, comment and value from the node and removes
+            them from it. The node is kept as the extra information of the
+            new node, if it contains other information; it must not be
+            modified after adding.
+            @param father The number of the father node as returned by a
+            previous call of addNode() or -1 for the root node.
+            @param node The node without children.
+            @return The number of the new node. */
+        public int addNode(int father, Node node)
+        {
+            assert ! node.hasChildren();
+            Move move = node.getMove();
+            String comment = node.getComment();
+            float value = node.getValue();
+            node.setMove(null);
+            node.setComment(null);
+            if (! Float.isNaN(value))
+                node.setValue(Float.NaN);
+            return addNode(father, move, comment, value, node);
+        }
+
+        /** Create the tree.
+            The builder cannot be used anymore after calling this function.
+            @param boardSize The board size of the tree. */
+        public CompactGameTree build(int boardSize)
+        {
+            assert m_numberNodes > 0;
+            CompactGameTree tree = new CompactGameTree(this, boardSize);
+            m_parent = null;
+            m_move = null;
+            m_commentStart = null;
+            m_comments = null;
+            m_value = null;
+            m_extraIndex = null;
+            m_extraNodes = null;
+            return tree;
+        }
+
+
+        private int m_numberNodes;
+
+        private int m_commentsLength;
+
+        private int[] m_parent;
+
+        private short[] m_move;
+
+        private int[] m_commentStart;
+
+        private byte[] m_comments;
+
+        private float[] m_value;
+
+        private int[] m_extraIndex;
+
+        private ArrayList<Node> m_extraNodes = new ArrayList<Node>();
+
+        private void grow()
+        {
+            int length = 2 * m_parent.length;
+            int[] parent = new int[length];
+            System.arraycopy(m_parent, 0, parent, 0, m_numberNodes);
+            m_parent = parent;
+            short[] move = new short[length];
+            System.arraycopy(m_move, 0, move, 0, m_numberNodes);
+            m_move = move;
+            int[] commentStart = new int[length + 1];
+            System.arraycopy(m_commentStart, 0, commentStart, 0,
+                             m_numberNodes + 1);
+            m_commentStart = commentStart;
+            if (m_value != null)
+            {
+                float[] value = new float[length];
+                System.arraycopy(m_value, 0, value, 0, m_numberNodes);
+                Arrays.fill(value, m_numberNodes, length, Float.NaN);
+                m_value = value;
+            }
+        }
+    }
+
+    /** Create a compact copy of a game tree.
+        @param tree The tree to copy. It can be released after the
+        construction to save memory. */
+    public CompactGameTree(ConstGameTree tree)
+    {
+        this(copy(tree.getRootConst()), tree.getBoardSize());
+    }
+
+    /** Create the tree from the nodes of a builder.
+        Renumbers the nodes in breadth-first order. */
+    private CompactGameTree(Builder builder, int boardSize)
+    {
+        m_boardSize = boardSize;
+        int numberNodes = builder.m_numberNodes;
+        // The children of builder node i are children[childStart[i]] to
+        // children[childStart[i + 1] - 1]
+        int[] childStart = new int[numberNodes + 1];
+        for (int i = 1; i < numberNodes; ++i)
+            ++childStart[builder.m_parent[i] + 1];
+        boolean hasVariations = false;
+        for (int i = 0; i < numberNodes; ++i)
+        {
+            if (childStart[i + 1] > 1)
+                hasVariations = true;
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[numberNodes];
+        int[] position = new int[numberNodes];
+        System.arraycopy(childStart, 0, position, 0, numberNodes);
+        for (int i = 1; i < numberNodes; ++i)
+            children[position[builder.m_parent[i]]++] = i;
+        position = null;
+        // Breadth-first traversal; order[i] is the builder node of node i
+        int[] order = new int[numberNodes];
+        m_parent = new int[numberNodes];
+        m_firstChild = new int[numberNodes + 1];
+        m_parent[0] = -1;
+        int numberQueued = 1;
+        for (int i = 0; i < numberNodes; ++i)
+        {
+            int node = order[i];
+            m_firstChild[i] = numberQueued;
+            for (int j = childStart[node]; j < childStart[node + 1]; ++j)
+            {
+                order[numberQueued] = children[j];
+                m_parent[numberQueued] = i;
+                ++numberQueued;
+            }
+        }
+        assert numberQueued == numberNodes;
+        m_firstChild[numberNodes] = numberNodes;
+        childStart = null;
+        children = null;
+        m_move = new short[numberNodes];
+        m_commentStart = new int[numberNodes + 1];
+        m_comments = new byte[builder.m_commentsLength];
+        if (builder.m_value != null)
+            m_value = new float[numberNodes];
+        else
+            m_value = null;
+        int numberExtra = builder.m_extraNodes.size();
+        int[] extraIndex = new int[numberExtra];
+        System.arraycopy(builder.m_extraIndex, 0, extraIndex, 0, numberExtra);
+        m_extraIndex = new int[numberExtra];
+        m_extraNodes = new Node[numberExtra];
+        numberExtra = 0;
+        int commentsLength = 0;
+        for (int i = 0; i < numberNodes; ++i)
+        {
+            int node = order[i];
+            m_move[i] = builder.m_move[node];
+            int start = builder.m_commentStart[node];
+            int length = builder.m_commentStart[node + 1] - start;
+            System.arraycopy(builder.m_comments, start, m_comments,
+                             commentsLength, length);
+            m_commentStart[i] = commentsLength;
+            commentsLength += length;
+            if (m_value != null)
+                m_value[i] = builder.m_value[node];
+            int extra = Arrays.binarySearch(extraIndex, node);
+            if (extra >= 0)
+            {
+                m_extraIndex[numberExtra] = i;
+                m_extraNodes[numberExtra] = builder.m_extraNodes.get(extra);
+                ++numberExtra;
+            }
+        }
+        m_commentStart[numberNodes] = commentsLength;
+        m_hasVariations = hasVariations;
+    }
+
+    public int getBoardSize()
+    {
+        return m_boardSize;
+    }
+
+    /** Find the game information valid for a node.
+        @return The game information from the nearest ancestor node,
+        which has a game information (the root node is always guaranteed
+        to have one). */
+    public ConstGameInfo getGameInfoConst(ConstNode node)
+    {
+        int index = getIndex(node);
+        while (true)
+        {
+            Node extra = getExtra(index);
+            if (extra != null && extra.getGameInfoConst() != null)
+                return extra.getGameInfoConst();
+            index = m_parent[index];
+        }
+    }
+
+    /** Get the number of nodes in the tree. */
+    public int getNumberNodes()
+    {
+        return m_parent.length;
+    }
+
+    public ConstNode getRootConst()
+    {
+        return getView(0);
+    }
+
+    public boolean hasVariations()
+    {
+        return m_hasVariations;
+    }
+
+    /** View on a node of the tree. */
+    private final class View
+        implements ConstNode
+    {
+        public View(int index)
+        {
+            m_index = index;
+        }
+
+        public String getComment()
+        {
+            int start = m_commentStart[m_index];
+            int length = m_commentStart[m_index + 1] - start;
+            if (length == 0)
+                return null;
+            try
+            {
+                return new String(m_comments, start, length, "UTF-8");
+            }
+            catch (UnsupportedEncodingException e)
+            {
+                return new String(m_comments, start, length);
+            }
+        }
+
+        public ConstNode getFatherConst()
+        {
+            int father = m_parent[m_index];
+            if (father < 0)
+                return null;
+            return getView(father);
+        }
+
+        public ConstNode getChildConst()
+        {
+            if (! hasChildren())
+                return null;
+            return getView(m_firstChild[m_index]);
+        }
+
+        public ConstNode getChildConst(int i)
+        {
+            assert i >= 0 && i < getNumberChildren();
+            return getView(m_firstChild[m_index] + i);
+        }
+
+        public int getChildIndex(ConstNode child)
+        {
+            if (! (child instanceof View) || ! isChild((View)child))
+                return -1;
+            return ((View)child).m_index - m_firstChild[m_index];
+        }
+
+        public ConstGameInfo getGameInfoConst()
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return null;
+            return extra.getGameInfoConst();
+        }
+
+        public String getLabel(GoPoint point)
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return null;
+            return extra.getLabel(point);
+        }
+
+        public Map<GoPoint,String> getLabelsUnmodifiable()
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return null;
+            return extra.getLabelsUnmodifiable();
+        }
+
+        public ConstPointList getMarkedConst(MarkType type)
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return null;
+            return extra.getMarkedConst(type);
+        }
+
+        public Move getMove()
+        {
+            return decodeMove(m_move[m_index]);
+        }
+
+        public int getMovesLeft(GoColor color)
+        {
+            assert color.isBlackWhite();
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return -1;
+            return extra.getMovesLeft(color);
+        }
+
+        public int getNumberChildren()
+        {
+            return m_firstChild[m_index + 1] - m_firstChild[m_index];
+        }
+
+        public GoColor getPlayer()
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return null;
+            return extra.getPlayer();
+        }
+
+        public ConstPointList getSetup(GoColor c)
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return PointList.getEmptyList();
+            return extra.getSetup(c);
+        }
+
+        public ConstSgfProperties getSgfPropertiesConst()
+        {
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return null;
+            return extra.getSgfPropertiesConst();
+        }
+
+        public double getTimeLeft(GoColor color)
+        {
+            assert color.isBlackWhite();
+            Node extra = getExtra(m_index);
+            if (extra == null)
+                return Double.NaN;
+            return extra.getTimeLeft(color);
+        }
+
+        public GoColor getToMove()
+        {
+            GoColor player = getPlayer();
+            if (player != null)
+                return player;
+            Move move = getMove();
+            if (move != null)
+                return move.getColor().otherColor();
+            return null;
+        }
+
+        public float getValue()
+        {
+            if (m_value == null)
+                return Float.NaN;
+            return m_value[m_index];
+        }
+
+        public boolean hasChildren()
+        {
+            return (getNumberChildren() > 0);
+        }
+
+        public boolean hasComment()
+        {
+            return (m_commentStart[m_index + 1] > m_commentStart[m_index]);
+        }
+
+        public boolean hasFather()
+        {
+            return (m_parent[m_index] >= 0);
+        }
+
+        public boolean hasSetup()
+        {
+            Node extra = getExtra(m_index);
+            return (extra != null && extra.hasSetup());
+        }
+
+        public boolean isEmpty()
+        {
+            Node extra = getExtra(m_index);
+            return (! hasComment() && m_move[m_index] == 0
+                    && (extra == null || extra.isEmpty())
+                    && Float.isNaN(getValue()));
+        }
+
+        public ConstNode variationAfter(ConstNode child)
+        {
+            int i = getChildIndex(child);
+            if (i < 0 || i == getNumberChildren() - 1)
+                return null;
+            return getChildConst(i + 1);
+        }
+
+        public ConstNode variationBefore(ConstNode child)
+        {
+            int i = getChildIndex(child);
+            if (i <= 0)
+                return null;
+            return getChildConst(i - 1);
+        }
+
+        private final int m_index;
+
+        private boolean isChild(View child)
+        {
+            return (child.getTree() == CompactGameTree.this
+                    && m_parent[child.m_index] == m_index);
+        }
+
+        private CompactGameTree getTree()
+        {
+            return CompactGameTree.this;
+        }
+    }
+
+    /** Weak reference to a view that remembers the node number. */
+    private static final class ViewReference
+        extends WeakReference<View>
+    {
+        public ViewReference(View view, ReferenceQueue<View> queue,
+                             int index)
+        {
+            super(view, queue);
+            m_index = index;
+        }
+
+        public final int m_index;
+    }
+
+    private final boolean m_hasVariations;
+
+    private final int m_boardSize;
+
+    /** Index of the father of each node; -1 for the root. */
+    private final int[] m_parent;
+
+    /** Index of the first child of each node.
+        Contains an additional element at the end, such that the number of
+        children of node i is m_firstChild[i + 1] - m_firstChild[i]. */
+    private final int[] m_firstChild;
+
+    /** Moves encoded with encodeMove(). */
+    private final short[] m_move;
+
+    /** Start of the comment of each node in m_comments.
+        Contains an additional element at the end, such that the length of
+        the comment of node i is m_commentStart[i + 1] - m_commentStart[i]. */
+    private final int[] m_commentStart;
+
+    /** Comments of all nodes in UTF-8. */
+    private final byte[] m_comments;
+
+    /** Values of the nodes or null, if no node has a value. */
+    private final float[] m_value;
+
+    /** Indexes of the nodes with extra information in increasing order. */
+    private final int[] m_extraIndex;
+
+    /** Extra information for the nodes in m_extraIndex.
+        Nodes without children, move, comment and value that contain all
+        other information of the original node. */
+    private final Node[] m_extraNodes;
+
+    /** Views in use, indexed by the node number.
+        Contains only views that were not yet garbage collected, entries
+        for collected views are removed in getView(). */
+    private final Map<Integer,ViewReference> m_views =
+        new HashMap<Integer,ViewReference>();
+
+    /** Queue for the references to collected views. */
+    private final ReferenceQueue<View> m_collectedViews =
+        new ReferenceQueue<View>();
+
+    /** Create a builder with a copy of a subtree.
+        The nodes are added in pre-order. */
+    private static Builder copy(ConstNode root)
+    {
+        Builder builder = new Builder();
+        // Number of the node at each depth of the current path
+        int[] path = new int[64];
+        SubtreeIterator it = new SubtreeIterator(root);
+        while (it.hasNext())
+        {
+            ConstNode node = it.next();
+            int depth = it.getDepth();
+            int father = (depth == 0 ? -1 : path[depth - 1]);
+            if (depth == path.length)
+            {
+                int[] newPath = new int[2 * path.length];
+                System.arraycopy(path, 0, newPath, 0, path.length);
+                path = newPath;
+            }
+            path[depth] = builder.addNode(father, node.getMove(),
+                                          node.getComment(), node.getValue(),
+                                          copyExtraInfo(node));
+        }
+        return builder;
+    }
+
+    private static byte[] encodeComment(String comment)
+    {
+        try
+        {
+            return comment.getBytes("UTF-8");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            return comment.getBytes();
+        }
+    }
+
+    /** Copy all information of a node that is not stored in the arrays.
+        @return A new node with this information. */
+    private static Node copyExtraInfo(ConstNode node)
+    {
+        Node result = new Node();
+        ConstGameInfo info = node.getGameInfoConst();
+        if (info != null)
+            result.createGameInfo().copyFrom(info);
+        Map<GoPoint,String> labels = node.getLabelsUnmodifiable();
+        if (labels != null)
+            for (Map.Entry<GoPoint,String> entry : labels.entrySet())
+                result.setLabel(entry.getKey(), entry.getValue());
+        for (MarkType type : MarkType.values())
+        {
+            ConstPointList marked = node.getMarkedConst(type);
+            if (marked != null)
+                for (GoPoint p : marked)
+                    result.addMarked(p, type);
+        }
+        for (GoColor c : BLACK_WHITE_EMPTY)
+            if (node.getSetup(c).size() > 0)
+                result.addStones(c, node.getSetup(c));
+        if (node.getPlayer() != null)
+            result.setPlayer(node.getPlayer());
+        for (GoColor c : BLACK_WHITE)
+        {
+            if (node.getMovesLeft(c) != -1)
+                result.setMovesLeft(c, node.getMovesLeft(c));
+            if (! Double.isNaN(node.getTimeLeft(c)))
+                result.setTimeLeft(c, node.getTimeLeft(c));
+        }
+        ConstSgfProperties sgfProperties = node.getSgfPropertiesConst();
+        if (sgfProperties != null)
+            for (String key : sgfProperties.getKeys())
+            {
+                int numberValues = sgfProperties.getNumberValues(key);
+                ArrayList<String> values = new ArrayList<String>(numberValues);
+                for (int i = 0; i < numberValues; ++i)
+                    values.add(sgfProperties.getValue(key, i));
+                result.addSgfProperty(key, values);
+            }
+        return result;
+    }
+
+    private static Move decodeMove(short code)
+    {
+        if (code == 0)
+            return null;
+        GoColor c = ((code & 1) != 0 ? BLACK : WHITE);
+        int point = (code >> 1) - 1;
+        if (point == 0)
+            return Move.getPass(c);
+        --point;
+        return Move.get(c, point / GoPoint.MAX_SIZE, point % GoPoint.MAX_SIZE);
+    }
+
+    /** Encode a move.
+        @return 0 for no move; otherwise the lowest bit is set for Black and
+        the remaining bits contain 1 for pass or 2 + x * MAX_SIZE + y. */
+    private static short encodeMove(Move move)
+    {
+        if (move == null)
+            return 0;
+        GoPoint p = move.getPoint();
+        int point = 1;
+        if (p != null)
+            point += 1 + p.getX() * GoPoint.MAX_SIZE + p.getY();
+        int color = (move.getColor() == BLACK ? 1 : 0);
+        return (short)((point << 1) | color);
+    }
+
+    private Node getExtra(int index)
+    {
+        int i = Arrays.binarySearch(m_extraIndex, index);
+        if (i < 0)
+            return null;
+        return m_extraNodes[i];
+    }
+
+    private int getIndex(ConstNode node)
+    {
+        assert node instanceof View && ((View)node).getTree() == this;
+        return ((View)node).m_index;
+    }
+
+    private ConstNode getView(int index)
+    {
+        while (true)
+        {
+            ViewReference collected = (ViewReference)m_collectedViews.poll();
+            if (collected == null)
+                break;
+            // The entry could already belong to a newer view of the node
+            if (m_views.get(collected.m_index) == collected)
+                m_views.remove(collected.m_index);
+        }
+        ViewReference reference = m_views.get(index);
+        View view = (reference == null ? null : reference.get());
+        if (view == null)
+        {
+            view = new View(index);
+            m_views.put(index,
+                        new ViewReference(view, m_collectedViews, index));
+        }
+        return view;
+    }
+}
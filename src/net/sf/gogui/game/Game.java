@@ -2,6 +2,7 @@
 
 package net.sf.gogui.game;
 
+import java.util.regex.Pattern;
 import net.sf.gogui.go.ConstBoard;
 import net.sf.gogui.go.ConstPointList;
 import net.sf.gogui.go.Board;
@@ -63,6 +64,15 @@ public class Game
         setModified();
     }
 
+    /** Find next node with a comment containing a pattern.
+        Like NodeUtil.findInComments(), but uses an index of the words in
+        the comments, which is built on the first call.
+        @see CommentIndex */
+    public ConstNode findInComments(ConstNode node, Pattern pattern)
+    {
+        return m_commentIndex.find(node, pattern);
+    }
+
     public ConstBoard getBoard()
     {
         return m_board;
@@ -146,7 +156,9 @@ public class Game
 
     public final void init(GameTree tree)
     {
+        m_boardUpdater.clear();
         m_tree = tree;
+        m_commentIndex = new CommentIndex(m_tree.getRoot());
         m_current = m_tree.getRoot();
         updateBoard();
         updateClock();
@@ -174,6 +186,8 @@ public class Game
     {
         ConstGameInfo info = getGameInfo(m_current);
         m_tree = NodeUtil.makeTreeFromPosition(info, m_board);
+        m_commentIndex = new CommentIndex(m_tree.getRoot());
+        m_boardUpdater.clear();
         m_board.init(m_board.getSize());
         m_current = m_tree.getRoot();
         updateBoard();
@@ -255,6 +269,7 @@ public class Game
         if (! ObjectUtil.equals(comment, node.getComment()))
             setModified();
         ((Node)node).setComment(comment);
+        m_commentIndex.update(node);
     }
 
     public void setGameInfo(ConstGameInfo info, ConstNode node)
@@ -293,6 +308,21 @@ public class Game
         setGameInfo(info, node); // updates m_modified
     }
 
+    /** Enable or disable a cache of board positions.
+        If enabled, the position after every interval-th node is stored
+        for the paths to the nodes that were visited, and going to a node
+        starts from the position of the nearest cached ancestor instead of
+        the root, if the current position cannot be reached by undoing
+        moves. Disabled by default.
+        @param interval The distance between cached nodes or 0 for
+        disabling the cache.
+        @param maxMemory Approximate maximum memory used by the cache in
+        bytes. */
+    public void setPositionCache(int interval, long maxMemory)
+    {
+        m_boardUpdater.setCache(interval, maxMemory);
+    }
+
     public void setResult(String result)
     {
         Node node = m_tree.getGameInfoNode(m_current);
@@ -309,6 +339,7 @@ public class Game
             || color.equals(m_board.getToMove()))
             setModified();
         m_current.setPlayer(color);
+        m_boardUpdater.removeCached(m_current);
         updateBoard();
     }
 
@@ -352,6 +383,7 @@ public class Game
     {
         assert p != null;
         m_current.removeSetup(p);
+        m_boardUpdater.removeCached(m_current);
         Node father = m_current.getFather();
         if (father != null)
         {
@@ -403,6 +435,8 @@ public class Game
 
     private GameTree m_tree;
 
+    private CommentIndex m_commentIndex;
+
     private Node m_current;
 
     /** See getClockNode() */
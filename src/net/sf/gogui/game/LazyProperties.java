@@ -0,0 +1,18 @@
+// LazyProperties.java
+
+package net.sf.gogui.game;
+
+/** Properties of a node that are decoded on first access.
+    Used by readers of large files, which store only the tree structure,
+    the moves and the setup of the nodes during loading and the location
+    of the remaining properties in the file.
+    @see Node#setLazyProperties */
+public interface LazyProperties
+{
+    /** Decode the properties and store them in the node.
+        Called at most once, before the first access to the comment,
+        markup, labels, value, time left or unknown SGF properties of the
+        node. Invalid values should be ignored, because errors cannot be
+        reported at this point. */
+    void decode(Node node);
+}
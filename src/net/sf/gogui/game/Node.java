@@ -143,6 +143,7 @@ public final class Node
             }
         }
         node.m_father = this;
+        invalidateSubtreeSize();
     }
 
     /** Add a markup.
@@ -150,6 +151,7 @@ public final class Node
         @param type The type of the markup from Node.MARK_TYPES. */
     public void addMarked(GoPoint point, MarkType type)
     {
+        materialize();
         assert point != null;
         Map<MarkType,PointList> marked = createMarked();
         PointList pointList = (PointList)marked.get(type);
@@ -176,11 +178,13 @@ public final class Node
         @param values The values of the property */
     public void addSgfProperty(String label, ArrayList<String> values)
     {
+        materialize();
         createSgfProperties().add(label, values);
     }
 
     public void addSgfProperty(String label, String value)
     {
+        materialize();
         createSgfProperties().add(label, value);
     }
 
@@ -265,6 +269,7 @@ public final class Node
         comment. */
     public String getComment()
     {
+        materialize();
         if (m_comment == null)
             return null;
         try
@@ -318,6 +323,7 @@ public final class Node
         @return Map containing (Point,String) pairs. */
     public Map<GoPoint,String> getLabels()
     {
+        materialize();
         if (m_extraInfo == null || m_extraInfo.m_moreExtraInfo == null)
             return null;
         return m_extraInfo.m_moreExtraInfo.m_label;
@@ -337,6 +343,7 @@ public final class Node
         @return Map containing (Point,String) pairs. */
     public PointList getMarked(MarkType type)
     {
+        materialize();
         if (m_extraInfo == null || m_extraInfo.m_marked == null)
             return null;
         return m_extraInfo.m_marked.get(type);
@@ -409,6 +416,7 @@ public final class Node
         @see #addSgfProperty */
     public SgfProperties getSgfProperties()
     {
+        materialize();
         if (m_extraInfo == null || m_extraInfo.m_moreExtraInfo == null)
             return null;
         return m_extraInfo.m_moreExtraInfo.m_sgfProperties;
@@ -455,6 +463,7 @@ public final class Node
         @return The value, or Float.NaN, if node contains no value */
     public float getValue()
     {
+        materialize();
         if (m_extraInfo == null)
             return Float.NaN;
         return m_extraInfo.m_value;
@@ -471,6 +480,7 @@ public final class Node
         @return true if node contains a comment */
     public boolean hasComment()
     {
+        materialize();
         return (m_comment != null);
     }
 
@@ -500,6 +510,7 @@ public final class Node
     /** Return true, if node stores no information. */
     public boolean isEmpty()
     {
+        materialize();
         return (m_comment == null && m_move == null
                 && (m_extraInfo == null || m_extraInfo.isEmpty()));
     }
@@ -535,6 +546,7 @@ public final class Node
         else
             assert false;
         child.m_father = null;
+        invalidateSubtreeSize();
     }
 
     /** Remove markup.
@@ -542,6 +554,7 @@ public final class Node
         @param type Type of the markup from Node.MARK_TYPES. */
     public void removeMarked(GoPoint point, MarkType type)
     {
+        materialize();
         assert point != null;
         Map<MarkType,PointList> marked = createMarked();
         PointList pointList = (PointList)marked.get(type);
@@ -569,6 +582,7 @@ public final class Node
             return;
         Node child = getChild(0);
         m_children = child;
+        invalidateSubtreeSize();
     }
 
     /** Store comment in this node.
@@ -577,6 +591,7 @@ public final class Node
         node. */
     public void setComment(String comment)
     {
+        materialize();
         if (StringUtil.isEmpty(comment))
         {
             m_comment = null;
@@ -592,6 +607,17 @@ public final class Node
         }
     }
 
+    /** Set properties that are decoded on first access.
+        Used by readers that load large files lazily. The properties are
+        decoded before the first call of a function that accesses the
+        comment, markup, labels, value, time left or unknown SGF properties
+        of this node.
+        @param lazy The properties or null. */
+    public void setLazyProperties(LazyProperties lazy)
+    {
+        m_lazy = lazy;
+    }
+
     /** Set father of this node.
         @param father The new father. */
     public void setFather(Node father)
@@ -606,6 +632,7 @@ public final class Node
         the label. */
     public void setLabel(GoPoint point, String label)
     {
+        materialize();
         assert point != null;
         Map<GoPoint,String> map = createLabel();
         map.remove(point);
@@ -655,6 +682,7 @@ public final class Node
         @param value The value */
     public void setValue(float value)
     {
+        materialize();
         createExtraInfo();
         m_extraInfo.m_value = value;
     }
@@ -714,9 +742,55 @@ public final class Node
 
     private Node m_father;
 
+    /** Properties that are not yet decoded or null. */
+    private LazyProperties m_lazy;
+
     /** Node if one child only, ArrayList otherwise. */
     private Object m_children;
 
+    /** Number of nodes in the subtree of this node; 0, if unknown.
+        If the size of a node is known, the sizes of all nodes in its
+        subtree are known; if it is unknown, the sizes of all its ancestors
+        are unknown. See NodeUtil.subtreeSize() */
+    private int m_subtreeSize;
+
+    /** Get the cached number of nodes in the subtree.
+        @return The number of nodes or 0, if unknown. */
+    int getSubtreeSize()
+    {
+        return m_subtreeSize;
+    }
+
+    /** Set the cached number of nodes in the subtree.
+        Must only be called if the sizes of all children are known. */
+    void setSubtreeSize(int size)
+    {
+        m_subtreeSize = size;
+    }
+
+    /** Mark the subtree size of this node and its ancestors as unknown.
+        Stops at the first node with unknown size, so that building a tree
+        without querying subtree sizes does not walk to the root. */
+    private void invalidateSubtreeSize()
+    {
+        Node node = this;
+        while (node != null && node.m_subtreeSize != 0)
+        {
+            node.m_subtreeSize = 0;
+            node = node.m_father;
+        }
+    }
+
+    /** Decode lazy properties, if the node has any. */
+    private void materialize()
+    {
+        if (m_lazy == null)
+            return;
+        LazyProperties lazy = m_lazy;
+        m_lazy = null;
+        lazy.decode(this);
+    }
+
     private void createExtraInfo()
     {
         if (m_extraInfo == null)
@@ -765,6 +839,7 @@ public final class Node
 
     private TimeInfo createTimeInfo()
     {
+        materialize();
         MoreExtraInfo moreExtraInfo = createMoreExtraInfo();
         if (moreExtraInfo.m_timeInfo == null)
             moreExtraInfo.m_timeInfo = new TimeInfo();
@@ -780,6 +855,7 @@ public final class Node
 
     private TimeInfo getTimeInfo()
     {
+        materialize();
         if (m_extraInfo == null || m_extraInfo.m_moreExtraInfo == null)
             return null;
         return m_extraInfo.m_moreExtraInfo.m_timeInfo;
@@ -150,7 +150,9 @@ public final class NodeUtil
         @param node The current node in the iteration.
         @param pattern The pattern.
         @return The next node in the iteration through the complete tree
-        after the current node that contains a match of the pattern. */
+        after the current node that contains a match of the pattern.
+        @see CommentIndex#find for faster repeated searches in large
+        trees. */
     public static ConstNode findInComments(ConstNode node, Pattern pattern)
     {
         node = nextNode(node);
@@ -594,10 +596,18 @@ public final class NodeUtil
         return getNextEarlierVariation(node);
     }
 
-    /** Get next node for iteration through subtree. */
+    /** Get next node for iteration through subtree.
+        Needs to compute the depth of the next node, if it is not a child of
+        the current node. Use SubtreeIterator for iterating over large
+        subtrees.
+        @param node The current node in the subtree.
+        @param depth The depth of the root node of the subtree. */
     public static ConstNode nextNode(ConstNode node, int depth)
     {
-        node = nextNode(node);
+        ConstNode child = node.getChildConst();
+        if (child != null)
+            return child;
+        node = getNextEarlierVariation(node);
         if (node == null || NodeUtil.getDepth(node) <= depth)
             return null;
         return node;
@@ -756,32 +766,65 @@ public final class NodeUtil
         than a given limit. */
     public static boolean subtreeGreaterThan(ConstNode node, int size)
     {
+        if (node instanceof Node && ((Node)node).getSubtreeSize() > 0)
+            return ((Node)node).getSubtreeSize() > size;
         int n = 0;
-        int depth = NodeUtil.getDepth(node);
-        while (node != null)
+        SubtreeIterator i = new SubtreeIterator(node);
+        while (i.hasNext())
         {
+            i.next();
             ++n;
             if (n > size)
                 return true;
-            node = nextNode(node, depth);
         }
         return false;
     }
 
     /** Count number of nodes in subtree.
+        The sizes of the subtrees of all nodes in the subtree are cached in
+        the nodes, so that subsequent calls for the node or nodes in its
+        subtree take constant time until the subtree is modified with
+        Node.append() or Node.removeChild().
         @param node The root node of the subtree.
         @return The number of nodes in the subtree (including the root
         node). */
     public static int subtreeSize(ConstNode node)
     {
-        int n = 0;
-        int depth = NodeUtil.getDepth(node);
-        while (node != null)
+        if (! (node instanceof Node))
         {
-            ++n;
-            node = nextNode(node, depth);
+            int n = 0;
+            SubtreeIterator i = new SubtreeIterator(node);
+            while (i.hasNext())
+            {
+                i.next();
+                ++n;
+            }
+            return n;
+        }
+        if (((Node)node).getSubtreeSize() > 0)
+            return ((Node)node).getSubtreeSize();
+        // Nodes with unknown subtree size in pre-order. Computing the sizes
+        // in reverse order ensures that the sizes of the children are known.
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        SubtreeIterator i = new SubtreeIterator(node);
+        while (i.hasNext())
+        {
+            Node n = (Node)i.next();
+            if (n.getSubtreeSize() > 0)
+                i.skipChildren();
+            else
+                nodes.add(n);
         }
-        return n;
+        for (int j = nodes.size() - 1; j >= 0; --j)
+        {
+            Node n = nodes.get(j);
+            int size = 1;
+            int numberChildren = n.getNumberChildren();
+            for (int k = 0; k < numberChildren; ++k)
+                size += n.getChild(k).getSubtreeSize();
+            n.setSubtreeSize(size);
+        }
+        return ((Node)node).getSubtreeSize();
     }
 
     /** Return a string containing information and statistics of the subtree
@@ -796,13 +839,13 @@ public final class NodeUtil
         double averageDepth = 0;
         double averageChildren = 0;
         double averageChildrenInner = 0;
-        int rootDepth = getDepth(node);
-        while (node != null)
+        SubtreeIterator i = new SubtreeIterator(node);
+        while (i.hasNext())
         {
+            node = i.next();
             ++numberNodes;
             int numberChildren = node.getNumberChildren();
-            int depth = getDepth(node) - rootDepth;
-            assert depth >= 0;
+            int depth = i.getDepth();
             if (depth > maxDepth)
                 maxDepth = depth;
             if (numberChildren > maxChildren)
@@ -815,7 +858,6 @@ public final class NodeUtil
                 ++moreThanOneChild;
             averageDepth += depth;
             averageChildren += numberChildren;
-            node = nextNode(node, rootDepth);
         }
         int numberInner = numberNodes - numberTerminal;
         averageDepth /= numberNodes;
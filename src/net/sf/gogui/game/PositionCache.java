@@ -0,0 +1,146 @@
+// PositionCache.java
+
+package net.sf.gogui.game;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Cache of values stored at nodes of a game tree.
+    Used by BoardUpdater for caching board positions. The nodes are
+    compared by identity. The memory used by the values is bounded; if the
+    bound is exceeded, the least recently used values are removed.
+    @param V The type of the cached values. */
+final class PositionCache<V>
+{
+    /** Constructor.
+        @param maxMemory The maximum sum of the memory estimates of the
+        cached values in bytes. */
+    public PositionCache(long maxMemory)
+    {
+        assert maxMemory > 0;
+        m_maxMemory = maxMemory;
+        m_map = new LinkedHashMap<ConstNode,Entry<V>>(64, 0.75f, true);
+    }
+
+    public void clear()
+    {
+        m_map.clear();
+        m_memory = 0;
+    }
+
+    /** Check if a value is cached for a node.
+        Does not change the order of recent usage. */
+    public boolean contains(ConstNode node)
+    {
+        return m_map.containsKey(node);
+    }
+
+    /** Get the value cached for a node.
+        @return The value or null, if no value is cached for the node. */
+    public V get(ConstNode node)
+    {
+        Entry<V> entry = m_map.get(node);
+        if (entry == null)
+            return null;
+        return entry.m_value;
+    }
+
+    public long getMaxMemory()
+    {
+        return m_maxMemory;
+    }
+
+    /** Get the sum of the memory estimates of the cached values. */
+    public long getMemory()
+    {
+        return m_memory;
+    }
+
+    public int size()
+    {
+        return m_map.size();
+    }
+
+    /** Store a value for a node.
+        Removes least recently used values, if the memory bound is
+        exceeded. A value larger than the memory bound is not stored.
+        @param node The node.
+        @param value The value.
+        @param memory An estimate of the memory used by the value in
+        bytes. */
+    public void put(ConstNode node, V value, long memory)
+    {
+        remove(node);
+        if (memory > m_maxMemory)
+            return;
+        Iterator<Entry<V>> i = m_map.values().iterator();
+        while (m_memory + memory > m_maxMemory && i.hasNext())
+        {
+            m_memory -= i.next().m_memory;
+            i.remove();
+        }
+        m_map.put(node, new Entry<V>(value, memory));
+        m_memory += memory;
+    }
+
+    /** Remove the value cached for a node. */
+    public void remove(ConstNode node)
+    {
+        Entry<V> entry = m_map.remove(node);
+        if (entry != null)
+            m_memory -= entry.m_memory;
+    }
+
+    /** Remove the values cached for a node and all nodes in its subtree.
+        Needs to be called, if a node was modified. */
+    public void removeSubtree(ConstNode node)
+    {
+        remove(node);
+        if (! node.hasChildren())
+            return;
+        Iterator<Map.Entry<ConstNode,Entry<V>>> i =
+            m_map.entrySet().iterator();
+        while (i.hasNext())
+        {
+            Map.Entry<ConstNode,Entry<V>> entry = i.next();
+            if (isInSubtree(entry.getKey(), node))
+            {
+                m_memory -= entry.getValue().m_memory;
+                i.remove();
+            }
+        }
+    }
+
+    private static final class Entry<V>
+    {
+        public Entry(V value, long memory)
+        {
+            m_value = value;
+            m_memory = memory;
+        }
+
+        public final V m_value;
+
+        public final long m_memory;
+    }
+
+    private final long m_maxMemory;
+
+    private long m_memory;
+
+    /** Map in access order, which starts with the least recently used
+        entry. */
+    private final LinkedHashMap<ConstNode,Entry<V>> m_map;
+
+    private static boolean isInSubtree(ConstNode node, ConstNode root)
+    {
+        while (node != null)
+        {
+            if (node == root)
+                return true;
+            node = node.getFatherConst();
+        }
+        return false;
+    }
+}
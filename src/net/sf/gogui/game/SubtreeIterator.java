@@ -0,0 +1,124 @@
+// SubtreeIterator.java
+
+package net.sf.gogui.game;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/** Iterates over the nodes of a subtree in pre-order.
+    The order is the same as with NodeUtil.nextNode(), but the iterator
+    keeps track of the depth of the current node and of the child indices
+    on the path from the root of the subtree. Each step takes constant
+    time (amortized), while NodeUtil.nextNode(node, depth) needs to compute
+    the depth of the node by walking up to the root of the tree.
+    The subtree must not be modified during the iteration. */
+public final class SubtreeIterator
+    implements Iterator<ConstNode>
+{
+    /** Constructor.
+        @param root The root of the subtree. It is the first node returned
+        by next(). */
+    public SubtreeIterator(ConstNode root)
+    {
+        assert root != null;
+        m_next = root;
+        m_isNextValid = true;
+    }
+
+    /** Get the depth of the node returned by the last call to next().
+        @return The number of nodes between the root of the subtree and the
+        node (0 for the root of the subtree). */
+    public int getDepth()
+    {
+        return m_depth;
+    }
+
+    public boolean hasNext()
+    {
+        if (! m_isNextValid)
+            findNext();
+        return m_next != null;
+    }
+
+    public ConstNode next()
+    {
+        if (! hasNext())
+            throw new NoSuchElementException();
+        m_current = m_next;
+        m_depth = m_nextDepth;
+        m_isNextValid = false;
+        m_skipChildren = false;
+        return m_current;
+    }
+
+    /** Not supported.
+        @throws UnsupportedOperationException Always. */
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /** Do not iterate over the children of the node returned by the last
+        call to next().
+        The iteration continues with the next variation. */
+    public void skipChildren()
+    {
+        assert m_current != null;
+        assert ! m_isNextValid;
+        m_skipChildren = true;
+    }
+
+    private boolean m_isNextValid;
+
+    private boolean m_skipChildren;
+
+    private int m_depth;
+
+    private int m_nextDepth;
+
+    /** Child index of the nodes on the path from the root of the subtree to
+        the current node.
+        Element i is the index of the node at depth i in the children of
+        its father; element 0 is unused. */
+    private int[] m_childIndex = new int[64];
+
+    private ConstNode m_current;
+
+    private ConstNode m_next;
+
+    private void findNext()
+    {
+        m_isNextValid = true;
+        ConstNode node = m_current;
+        int depth = m_depth;
+        if (! m_skipChildren && node.hasChildren())
+        {
+            ++depth;
+            if (depth == m_childIndex.length)
+            {
+                int[] childIndex = new int[2 * depth];
+                System.arraycopy(m_childIndex, 0, childIndex, 0, depth);
+                m_childIndex = childIndex;
+            }
+            m_childIndex[depth] = 0;
+            m_next = node.getChildConst();
+            m_nextDepth = depth;
+            return;
+        }
+        while (depth > 0)
+        {
+            ConstNode father = node.getFatherConst();
+            int index = m_childIndex[depth] + 1;
+            if (index < father.getNumberChildren())
+            {
+                m_childIndex[depth] = index;
+                m_next = father.getChildConst(index);
+                m_nextDepth = depth;
+                return;
+            }
+            node = father;
+            --depth;
+        }
+        m_next = null;
+    }
+}
@@ -0,0 +1,209 @@
+// BatchLoader.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/** Load many game files concurrently.
+    The files are loaded on a fixed number of threads and the results are
+    returned by next() in the order of the files. At most a given number
+    of files is loaded ahead of the result that is consumed by next(),
+    which limits the memory used by results that are not yet consumed.
+    Errors of loading a file are returned in the result of the file and do
+    not stop loading the other files.
+    The threads are daemon threads; close() should be called if not all
+    results are consumed.
+    @param <T> The type of the result of loading a file. */
+public final class BatchLoader<T>
+{
+    /** Function to load a file.
+        Called concurrently from the threads of the loader, so it should
+        not modify shared state.
+        @param <T> The type of the result. */
+    public interface Loader<T>
+    {
+        T load(File file) throws Exception;
+    }
+
+    /** Result of loading a file. */
+    public static final class Result<T>
+    {
+        /** Get the file. */
+        public File getFile()
+        {
+            return m_file;
+        }
+
+        /** Get the error of loading the file.
+            @return The exception thrown by the loader or null, if the file
+            was loaded. */
+        public Exception getError()
+        {
+            return m_error;
+        }
+
+        /** Get the result of loading the file.
+            @return The result or null, if loading the file failed. */
+        public T getValue()
+        {
+            return m_value;
+        }
+
+        private final File m_file;
+
+        private final T m_value;
+
+        private final Exception m_error;
+
+        private Result(File file, T value, Exception error)
+        {
+            m_file = file;
+            m_value = value;
+            m_error = error;
+        }
+    }
+
+    /** Loader that reads a game with GameReader.
+        @param isLazy Decode node properties lazily (see GameReader) */
+    public static Loader<GameReader> getGameReaderLoader(final boolean isLazy)
+    {
+        return new Loader<GameReader>() {
+            public GameReader load(File file) throws Exception
+            {
+                return new GameReader(file, null, isLazy);
+            }
+        };
+    }
+
+    /** Get the default number of threads.
+        @return The number of available processors. */
+    public static int getDefaultNumberThreads()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Constructor with default number of threads.
+        Uses getDefaultNumberThreads() threads and loads at most twice as
+        many files ahead. */
+    public BatchLoader(List<File> files, Loader<T> loader)
+    {
+        this(files, loader, getDefaultNumberThreads(),
+             2 * getDefaultNumberThreads());
+    }
+
+    /** Constructor.
+        Starts loading the files.
+        @param files The files.
+        @param loader The function to load a file.
+        @param numberThreads The number of threads.
+        @param maxPending Maximum number of files that are loaded or waiting
+        to be consumed by next(). */
+    public BatchLoader(List<File> files, Loader<T> loader, int numberThreads,
+                       int maxPending)
+    {
+        assert numberThreads > 0;
+        assert maxPending > 0;
+        m_files = new ArrayList<File>(files);
+        m_loader = loader;
+        m_maxPending = maxPending;
+        m_executor = Executors.newFixedThreadPool(numberThreads,
+                                                  new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        m_pending = new ArrayList<Future<Result<T>>>(maxPending);
+        submit();
+    }
+
+    /** Stop loading files.
+        Results that were not consumed are discarded. */
+    public void close()
+    {
+        m_executor.shutdownNow();
+        m_pending.clear();
+        m_next = m_files.size();
+    }
+
+    /** Check if there are more results. */
+    public boolean hasNext()
+    {
+        return m_next < m_files.size();
+    }
+
+    /** Get the result of the next file.
+        Waits until the file is loaded.
+        @throws InterruptedException If the current thread was interrupted
+        while waiting. */
+    public Result<T> next() throws InterruptedException
+    {
+        assert hasNext();
+        Future<Result<T>> future = m_pending.remove(0);
+        ++m_next;
+        submit();
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            // Exceptions are caught in the task, this can only be an Error
+            Throwable cause = e.getCause();
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private int m_next;
+
+    /** Index of the next file to submit. */
+    private int m_submitted;
+
+    private final int m_maxPending;
+
+    private final ArrayList<File> m_files;
+
+    private final ArrayList<Future<Result<T>>> m_pending;
+
+    private final ExecutorService m_executor;
+
+    private final Loader<T> m_loader;
+
+    private void submit()
+    {
+        while (m_submitted < m_files.size()
+               && m_submitted - m_next < m_maxPending)
+        {
+            final File file = m_files.get(m_submitted);
+            m_pending.add(m_executor.submit(new Callable<Result<T>>() {
+                    public Result<T> call()
+                    {
+                        try
+                        {
+                            return new Result<T>(file, m_loader.load(file),
+                                                 null);
+                        }
+                        catch (Exception e)
+                        {
+                            return new Result<T>(file, null, e);
+                        }
+                    }
+                }));
+            ++m_submitted;
+        }
+        if (m_submitted == m_files.size())
+            m_executor.shutdown();
+    }
+}
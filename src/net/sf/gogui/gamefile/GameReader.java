@@ -22,6 +22,16 @@ public class GameReader
     /** Construct reader and read a game.
         @param progressShow Callback to show progress, can be null */
     public GameReader(File file, ProgressShow progressShow) throws ErrorMessage
+    {
+        this(file, progressShow, false);
+    }
+
+    /** Construct reader and read a game.
+        @param progressShow Callback to show progress, can be null
+        @param isLazy Decode node properties lazily, if supported by the
+        file format (see SgfReader) */
+    public GameReader(File file, ProgressShow progressShow, boolean isLazy)
+        throws ErrorMessage
     {
         m_gameFile = new GameFile();
         GameFile.Format format = detectFormat(file);
@@ -48,8 +58,8 @@ public class GameReader
             break;
         case SGF:
             {
-                SgfReader reader =
-                    new SgfReader(in, file, progressShow, file.length());
+                SgfReader reader = new SgfReader(in, file, progressShow,
+                                                 file.length(), isLazy);
                 m_tree = reader.getTree();
                 m_warnings = reader.getWarnings();
             }
@@ -0,0 +1,568 @@
+// BitBoard.java
+
+package net.sf.gogui.go;
+
+import java.util.Iterator;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+/** Position stored as bit sets.
+    The points of each color (black, white and empty) are stored as a
+    bit set in an array of long words, indexed by GoPoint.getIndex().
+    Whole-board queries (stone counts, legal moves, points of a color) are
+    done with bit operations on the words instead of iterating over the
+    points. Blocks and liberties are computed with bitwise flood fills.
+    <p>
+    Instances are immutable copies of the state of a board, including the
+    move history, and can be shared between threads. Functions that return
+    bit masks return new arrays, which are owned by the caller.</p> */
+public final class BitBoard
+    implements ConstBoard
+{
+    /** Number of long words in a bit mask. */
+    public static final int NUMBER_WORDS = (GoPoint.NUMBER_INDEXES + 63) / 64;
+
+    /** Construct a copy of the current state of a board.
+        @param board The board to copy. */
+    public BitBoard(ConstBoard board)
+    {
+        m_size = board.getSize();
+        m_constants = BoardConstants.get(m_size);
+        m_masks = Masks.get(m_size);
+        m_black = new long[NUMBER_WORDS];
+        m_white = new long[NUMBER_WORDS];
+        m_empty = new long[NUMBER_WORDS];
+        GoPoint koPoint = null;
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c == BLACK)
+                set(m_black, p);
+            else if (c == WHITE)
+                set(m_white, p);
+            else
+            {
+                set(m_empty, p);
+                if (board.isKo(p))
+                    koPoint = p;
+            }
+        }
+        m_koPoint = koPoint;
+        m_toMove = board.getToMove();
+        m_capturedBlack = board.getCaptured(BLACK);
+        m_capturedWhite = board.getCaptured(WHITE);
+        m_hashCode = board.getHashCode();
+        m_canonicalHashCode = board.getCanonicalHashCode();
+        m_moves = new Move[board.getNumberMoves()];
+        for (int i = 0; i < m_moves.length; ++i)
+            m_moves[i] = board.getMove(i);
+        m_moveHashCodes = new long[m_moves.length + 1];
+        for (int i = 0; i <= m_moves.length; ++i)
+            m_moveHashCodes[i] = board.getMoveHashCode(i);
+        if (m_moves.length > 0)
+        {
+            m_killed = new PointList(board.getKilled());
+            m_suicide = new PointList(board.getSuicide());
+        }
+        else
+        {
+            m_killed = new PointList();
+            m_suicide = new PointList();
+        }
+        m_setupBlack = copy(board.getSetup(BLACK));
+        m_setupWhite = copy(board.getSetup(WHITE));
+        m_setupPlayer = board.getSetupPlayer();
+        m_isSetupHandicap = board.isSetupHandicap();
+        m_isModified = board.isModified();
+    }
+
+    public boolean bothPassed()
+    {
+        int n = m_moves.length;
+        return (n >= 2
+                && m_moves[n - 1].getPoint() == null
+                && m_moves[n - 2].getPoint() == null);
+    }
+
+    public boolean contains(GoPoint point)
+    {
+        return point.isOnBoard(m_size);
+    }
+
+    /** Check if a point is contained in a bit mask.
+        @param mask The bit mask.
+        @param p The point.
+        @return true, if the bit of the point is set. */
+    public static boolean contains(long[] mask, GoPoint p)
+    {
+        int index = p.getIndex();
+        return (mask[index >> 6] & (1L << index)) != 0;
+    }
+
+    public ConstPointList getAdjacent(GoPoint point)
+    {
+        return m_constants.getAdjacent(point);
+    }
+
+    /** Get the anchor of the block a stone belongs to.
+        @param p The point.
+        @return The stone of the block with the lowest point index or null,
+        if the point is empty. */
+    public GoPoint getAnchor(GoPoint p)
+    {
+        if (getColor(p) == EMPTY)
+            return null;
+        return getPoint(nextIndex(getBlock(p), 0));
+    }
+
+    /** Get the bit mask of the block a point belongs to.
+        @param p The point.
+        @return The bit mask of the stones of the block or, if the point is
+        empty, of the connected empty region. */
+    public long[] getBlock(GoPoint p)
+    {
+        long[] color = getWords(getColor(p));
+        long[] block = new long[NUMBER_WORDS];
+        set(block, p);
+        long[] grown = new long[NUMBER_WORDS];
+        while (true)
+        {
+            dilate(block, grown);
+            boolean changed = false;
+            for (int i = 0; i < NUMBER_WORDS; ++i)
+            {
+                long word = grown[i] & color[i];
+                if (word != block[i])
+                {
+                    block[i] = word;
+                    changed = true;
+                }
+            }
+            if (! changed)
+                return block;
+        }
+    }
+
+    public long getCanonicalHashCode()
+    {
+        return m_canonicalHashCode;
+    }
+
+    public int getCaptured(GoColor c)
+    {
+        if (c == BLACK)
+            return m_capturedBlack;
+        assert c == WHITE;
+        return m_capturedWhite;
+    }
+
+    public GoColor getColor(GoPoint p)
+    {
+        if (contains(m_black, p))
+            return BLACK;
+        if (contains(m_white, p))
+            return WHITE;
+        return EMPTY;
+    }
+
+    public long getHashCode()
+    {
+        return m_hashCode;
+    }
+
+    public ConstPointList getKilled()
+    {
+        return m_killed;
+    }
+
+    public Move getLastMove()
+    {
+        int n = m_moves.length;
+        if (n == 0)
+            return null;
+        return m_moves[n - 1];
+    }
+
+    /** Get the points where a move is legal.
+        A move is legal, if the point is empty, the move is not a suicide
+        and, if the color is the color to move, does not violate the simple
+        ko rule. Points with an empty neighbor are handled with bit
+        operations; only the remaining empty points are checked
+        individually.
+        @param c The player color.
+        @return The bit mask of the legal moves. */
+    public long[] getLegalMoves(GoColor c)
+    {
+        long[] hasEmptyNeighbor = new long[NUMBER_WORDS];
+        shiftNeighbors(m_empty, hasEmptyNeighbor);
+        long[] result = new long[NUMBER_WORDS];
+        for (int i = 0; i < NUMBER_WORDS; ++i)
+        {
+            result[i] = m_empty[i] & hasEmptyNeighbor[i];
+            long remaining = m_empty[i] & ~hasEmptyNeighbor[i];
+            while (remaining != 0)
+            {
+                long bit = remaining & -remaining;
+                remaining &= ~bit;
+                int index = (i << 6) + Long.numberOfTrailingZeros(bit);
+                if (! isSuicide(c, getPoint(index)))
+                    result[i] |= bit;
+            }
+        }
+        if (m_koPoint != null && c == m_toMove)
+            clear(result, m_koPoint);
+        return result;
+    }
+
+    /** Get the number of liberties of the block a stone belongs to.
+        @param p The point.
+        @return The number of liberties or 0, if the point is empty. */
+    public int getLiberties(GoPoint p)
+    {
+        if (getColor(p) == EMPTY)
+            return 0;
+        long[] block = getBlock(p);
+        long[] grown = new long[NUMBER_WORDS];
+        dilate(block, grown);
+        int n = 0;
+        for (int i = 0; i < NUMBER_WORDS; ++i)
+            n += Long.bitCount(grown[i] & m_empty[i]);
+        return n;
+    }
+
+    /** Get a copy of the bit mask of the points with a color.
+        @param c The color (BLACK, WHITE or EMPTY).
+        @return The bit mask. */
+    public long[] getMask(GoColor c)
+    {
+        return getWords(c).clone();
+    }
+
+    public Move getMove(int i)
+    {
+        return m_moves[i];
+    }
+
+    public long getMoveHashCode(int n)
+    {
+        return m_moveHashCodes[n];
+    }
+
+    public int getNumberMoves()
+    {
+        return m_moves.length;
+    }
+
+    /** Get the number of points with a color.
+        @param c The color (BLACK, WHITE or EMPTY).
+        @return The number of stones of this color or of empty points. */
+    public int getNumberPoints(GoColor c)
+    {
+        return getNumberPoints(getWords(c));
+    }
+
+    /** Get the number of points in a bit mask.
+        @param mask The bit mask.
+        @return The number of bits set. */
+    public static int getNumberPoints(long[] mask)
+    {
+        int n = 0;
+        for (int i = 0; i < NUMBER_WORDS; ++i)
+            n += Long.bitCount(mask[i]);
+        return n;
+    }
+
+    /** Get the points with a color.
+        @param c The color (BLACK, WHITE or EMPTY).
+        @return The points in increasing order of the point index. */
+    public PointList getPoints(GoColor c)
+    {
+        return getPoints(getWords(c));
+    }
+
+    /** Get the points in a bit mask.
+        @param mask The bit mask.
+        @return The points in increasing order of the point index. */
+    public static PointList getPoints(long[] mask)
+    {
+        PointList result = new PointList(getNumberPoints(mask));
+        for (int i = nextIndex(mask, 0); i >= 0; i = nextIndex(mask, i + 1))
+            result.add(getPoint(i));
+        return result;
+    }
+
+    public ConstPointList getSetup(GoColor c)
+    {
+        if (c == BLACK)
+            return m_setupBlack;
+        assert c == WHITE;
+        return m_setupWhite;
+    }
+
+    public GoColor getSetupPlayer()
+    {
+        return m_setupPlayer;
+    }
+
+    public int getSize()
+    {
+        return m_size;
+    }
+
+    public void getStones(GoPoint p, GoColor color, PointList stones)
+    {
+        if (getColor(p) != color)
+            return;
+        stones.addAllFromConst(getPoints(getBlock(p)));
+    }
+
+    public ConstPointList getSuicide()
+    {
+        return m_suicide;
+    }
+
+    public GoColor getToMove()
+    {
+        return m_toMove;
+    }
+
+    public boolean isCaptureOrSuicide(GoColor c, GoPoint p)
+    {
+        if (getColor(p) != EMPTY)
+            return false;
+        GoColor otherColor = c.otherColor();
+        for (GoPoint adj : getAdjacent(p))
+            if (getColor(adj) == otherColor && getLiberties(adj) == 1)
+                return true;
+        return isSuicide(c, p);
+    }
+
+    public boolean isHandicap(GoPoint point)
+    {
+        return m_constants.isHandicap(point);
+    }
+
+    public boolean isKo(GoPoint point)
+    {
+        return point == m_koPoint;
+    }
+
+    public boolean isModified()
+    {
+        return m_isModified;
+    }
+
+    public boolean isSetupHandicap()
+    {
+        return m_isSetupHandicap;
+    }
+
+    public boolean isSuicide(GoColor c, GoPoint p)
+    {
+        if (getColor(p) != EMPTY)
+            return false;
+        for (GoPoint adj : getAdjacent(p))
+        {
+            GoColor adjColor = getColor(adj);
+            if (adjColor == EMPTY)
+                return false;
+            int liberties = getLiberties(adj);
+            if (adjColor == c)
+            {
+                if (liberties > 1)
+                    return false;
+            }
+            else if (liberties == 1)
+                return false;
+        }
+        return true;
+    }
+
+    public Iterator<GoPoint> iterator()
+    {
+        return m_constants.getPoints().iterator();
+    }
+
+    /** Get the next index of a bit set in a mask.
+        Can be used for iterating over the points in a mask without
+        creating a point list:
+        <pre>
+        for (int i = nextIndex(mask, 0); i >= 0; i = nextIndex(mask, i + 1))
+        </pre>
+        @param mask The bit mask.
+        @param fromIndex The index to start the search at.
+        @return The point index of the next bit set or -1, if there is
+        none. */
+    public static int nextIndex(long[] mask, int fromIndex)
+    {
+        int i = fromIndex >> 6;
+        if (i >= NUMBER_WORDS)
+            return -1;
+        long word = mask[i] & (-1L << fromIndex);
+        while (true)
+        {
+            if (word != 0)
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            if (++i == NUMBER_WORDS)
+                return -1;
+            word = mask[i];
+        }
+    }
+
+    /** Bit masks that are constant for a given board size. */
+    private static final class Masks
+    {
+        public static Masks get(int size)
+        {
+            synchronized (s_masks)
+            {
+                if (s_masks[size] == null)
+                    s_masks[size] = new Masks(size);
+                return s_masks[size];
+            }
+        }
+
+        /** Points on the board. */
+        public final long[] m_onBoard = new long[NUMBER_WORDS];
+
+        /** Points on the board not in the first column. */
+        public final long[] m_notFirstColumn = new long[NUMBER_WORDS];
+
+        /** Points on the board not in the last column. */
+        public final long[] m_notLastColumn = new long[NUMBER_WORDS];
+
+        private static final Masks[] s_masks = new Masks[GoPoint.MAX_SIZE + 1];
+
+        private Masks(int size)
+        {
+            for (int x = 0; x < size; ++x)
+                for (int y = 0; y < size; ++y)
+                {
+                    GoPoint p = GoPoint.get(x, y);
+                    set(m_onBoard, p);
+                    if (x > 0)
+                        set(m_notFirstColumn, p);
+                    if (x < size - 1)
+                        set(m_notLastColumn, p);
+                }
+        }
+    }
+
+    private final boolean m_isModified;
+
+    private final boolean m_isSetupHandicap;
+
+    private final int m_size;
+
+    private final int m_capturedBlack;
+
+    private final int m_capturedWhite;
+
+    private final long m_hashCode;
+
+    private final long m_canonicalHashCode;
+
+    private final long[] m_black;
+
+    private final long[] m_white;
+
+    private final long[] m_empty;
+
+    private final BoardConstants m_constants;
+
+    private final GoColor m_setupPlayer;
+
+    private final GoColor m_toMove;
+
+    private final GoPoint m_koPoint;
+
+    private final Masks m_masks;
+
+    private final Move[] m_moves;
+
+    private final long[] m_moveHashCodes;
+
+    private final PointList m_killed;
+
+    private final PointList m_suicide;
+
+    private final PointList m_setupBlack;
+
+    private final PointList m_setupWhite;
+
+    private static void clear(long[] mask, GoPoint p)
+    {
+        int index = p.getIndex();
+        mask[index >> 6] &= ~(1L << index);
+    }
+
+    private static PointList copy(ConstPointList list)
+    {
+        if (list == null)
+            return new PointList();
+        return new PointList(list);
+    }
+
+    /** Add the neighbors of the points in a mask to the mask. */
+    private void dilate(long[] mask, long[] result)
+    {
+        shiftNeighbors(mask, result);
+        for (int i = 0; i < NUMBER_WORDS; ++i)
+            result[i] |= mask[i];
+    }
+
+    private static GoPoint getPoint(int index)
+    {
+        return GoPoint.get(index % GoPoint.MAX_SIZE,
+                           index / GoPoint.MAX_SIZE);
+    }
+
+    private long[] getWords(GoColor c)
+    {
+        if (c == BLACK)
+            return m_black;
+        if (c == WHITE)
+            return m_white;
+        return m_empty;
+    }
+
+    private static void set(long[] mask, GoPoint p)
+    {
+        int index = p.getIndex();
+        mask[index >> 6] |= (1L << index);
+    }
+
+    /** Shift all bits towards higher indices. */
+    private static long shiftUp(long[] mask, int i, int n)
+    {
+        long word = mask[i] << n;
+        if (i > 0)
+            word |= mask[i - 1] >>> (64 - n);
+        return word;
+    }
+
+    /** Shift all bits towards lower indices. */
+    private static long shiftDown(long[] mask, int i, int n)
+    {
+        long word = mask[i] >>> n;
+        if (i < NUMBER_WORDS - 1)
+            word |= mask[i + 1] << (64 - n);
+        return word;
+    }
+
+    /** Compute the points on the board adjacent to any point of a mask.
+        The result can contain points of the mask itself. */
+    private void shiftNeighbors(long[] mask, long[] result)
+    {
+        final int rowLength = GoPoint.MAX_SIZE;
+        for (int i = 0; i < NUMBER_WORDS; ++i)
+        {
+            long word = (shiftUp(mask, i, 1) & m_masks.m_notFirstColumn[i])
+                | (shiftDown(mask, i, 1) & m_masks.m_notLastColumn[i])
+                | shiftUp(mask, i, rowLength)
+                | shiftDown(mask, i, rowLength);
+            result[i] = word & m_masks.m_onBoard[i];
+        }
+    }
+}
@@ -2,7 +2,6 @@
 
 package net.sf.gogui.go;
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
@@ -49,8 +48,8 @@ public final class Board
     {
         int n = getNumberMoves();
         return (n >= 2
-                && m_stack.get(n - 1).m_move.getPoint() == null
-                && m_stack.get(n - 2).m_move.getPoint() == null);
+                && m_stack[n - 1].m_move.getPoint() == null
+                && m_stack[n - 2].m_move.getPoint() == null);
     }
 
     /** Check if board contains a point.
@@ -74,7 +73,10 @@ public final class Board
         opponent moves or by suicide. */
     public int getCaptured(GoColor c)
     {
-        return m_captured.get(c);
+        if (c == BLACK)
+            return m_capturedBlack;
+        assert c == WHITE;
+        return m_capturedWhite;
     }
 
     /** Get state of a point on the board.
@@ -84,6 +86,46 @@ public final class Board
         return m_color[p.getIndex()];
     }
 
+    /** Get a hash code of the current position that does not depend on
+        rotation and mirroring.
+        Returns the minimum of the hash codes of the eight rotated and
+        mirrored variants of the position, which are updated incrementally
+        like getHashCode(). Positions that are equal after a rotation of the
+        board have the same canonical hash code.
+        @return The canonical hash code; 0 for an empty board.
+        @see #getRotatedHashCode */
+    public long getCanonicalHashCode()
+    {
+        long hashCode = m_hashCodes[0];
+        for (int i = 1; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+            if (m_hashCodes[i] < hashCode)
+                hashCode = m_hashCodes[i];
+        return hashCode;
+    }
+
+    /** Get the Zobrist hash code of the current position.
+        The hash code depends only on the stones on the board and is
+        updated incrementally when moves are played or undone. Hash codes
+        of the same position are equal for different board instances and
+        between runs.
+        @return The hash code; 0 for an empty board.
+        @see Zobrist */
+    public long getHashCode()
+    {
+        return m_hashCodes[0];
+    }
+
+    /** Get the hash code of a rotated variant of the current position.
+        @param rotationMode The rotation mode as in BoardUtil.rotate
+        @return The hash code that getHashCode() would return for a board
+        with all stones rotated with BoardUtil.rotate.
+        @see BoardUtil#rotate */
+    public long getRotatedHashCode(int rotationMode)
+    {
+        assert rotationMode < BoardUtil.NUMBER_ROTATIONS;
+        return m_hashCodes[rotationMode];
+    }
+
     /** Get location of handicap stones for a given board size.
         @param n The number of handicap stones.
         @param size The board size.
@@ -98,6 +140,8 @@ public final class Board
     /** Opponent stones captured in last move.
         Does not include player stones killed by suicide.
         Requires that there is a last move (or setup stone).
+        The returned list is reused by the board and is only valid until
+        the last move is undone.
         @return List of opponent stones (go.Point) captured in last move;
         empty if none were killed or there is no last move.
         @see #getSuicide() */
@@ -105,7 +149,7 @@ public final class Board
     {
         int n = getNumberMoves();
         assert n > 0;
-        return m_stack.get(n - 1).m_killed;
+        return m_stack[n - 1].m_killed;
     }
 
     /** Return last move.
@@ -115,7 +159,7 @@ public final class Board
         int n = getNumberMoves();
         if (n == 0)
             return null;
-        return m_stack.get(n - 1).m_move;
+        return m_stack[n - 1].m_move;
     }
 
     /** Get the number of moves played so far.
@@ -123,7 +167,7 @@ public final class Board
         @see #getMove */
     public int getNumberMoves()
     {
-        return m_stack.size();
+        return m_numberMoves;
     }
 
     /** Get a move from the sequence of moves played so far.
@@ -132,7 +176,24 @@ public final class Board
         @see #getNumberMoves() */
     public Move getMove(int i)
     {
-        return m_stack.get(i).m_move;
+        assert i < m_numberMoves;
+        return m_stack[i].m_move;
+    }
+
+    /** Get a hash code of the sequence of the first moves.
+        The hash code depends on the moves played since the last setup or
+        clear, including their order, but not on the setup stones. Boards
+        with the same setup and equal hash codes for a number of moves
+        have the same first moves (up to hash collisions), which allows
+        comparing move sequences without comparing all moves.
+        @param n The number of moves (between 0 and getNumberMoves()).
+        @return The hash code; 0 for n = 0. */
+    public long getMoveHashCode(int n)
+    {
+        assert n <= m_numberMoves;
+        if (n == 0)
+            return 0L;
+        return m_stack[n - 1].m_moveHashCode;
     }
 
     /** Get initial setup stones of a color.
@@ -161,17 +222,63 @@ public final class Board
         return m_size;
     }
 
-    /** Get stones of a block. */
+    /** Get the anchor of the block a stone belongs to.
+        The anchor is a unique representative stone of the block, which can
+        be used to compare if two stones belong to the same block. It is
+        maintained incrementally and does not require a flood fill.
+        @param p The point.
+        @return The anchor of the block or null, if the point is empty. */
+    public GoPoint getAnchor(GoPoint p)
+    {
+        return m_anchor[p.getIndex()];
+    }
+
+    /** Get the number of liberties of the block a stone belongs to.
+        The liberties are maintained incrementally and do not require a
+        flood fill.
+        @param p The point.
+        @return The number of liberties or 0, if the point is empty. */
+    public int getLiberties(GoPoint p)
+    {
+        GoPoint anchor = m_anchor[p.getIndex()];
+        if (anchor == null)
+            return 0;
+        return m_liberties[anchor.getIndex()];
+    }
+
+    /** Get stones of a block.
+        If the color is BLACK or WHITE, the stones are taken from the
+        incrementally maintained block; if the color is EMPTY, the connected
+        empty region is searched for.
+        @param p The point.
+        @param color The color of the block.
+        @param stones The list to append the stones to. */
     public void getStones(GoPoint p, GoColor color, PointList stones)
     {
-        assert m_mark.isCleared();
-        findStones(p, color, stones);
-        m_mark.clear(stones);
-        //assert m_mark.isCleared();
+        if (getColor(p) != color)
+            return;
+        if (color == EMPTY)
+        {
+            assert m_mark.isCleared();
+            findStones(p, color, stones);
+            m_mark.clear(stones);
+            //assert m_mark.isCleared();
+            return;
+        }
+        GoPoint anchor = m_anchor[p.getIndex()];
+        GoPoint stone = anchor;
+        do
+        {
+            stones.add(stone);
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor);
     }
 
     /** Player stones killed by suicide in last move.
         Requires that there is a last move (or setup stone).
+        The returned list is reused by the board and is only valid until
+        the last move is undone.
         @return List of stones (go.Point) killed by suicide in last move,
         including the stone played; empty if no stones were killed by suicide
         or if there is no last move.
@@ -180,7 +287,7 @@ public final class Board
     {
         int n = getNumberMoves();
         assert n > 0;
-        return m_stack.get(n - 1).m_suicide;
+        return m_stack[n - 1].m_suicide;
     }
 
     /** Get color to move.
@@ -199,6 +306,7 @@ public final class Board
     {
         m_size = size;
         m_mark = new Marker(m_size);
+        m_libertyMark = new Marker(m_size);
         m_constants = BoardConstants.get(size);
         clear();
     }
@@ -212,10 +320,17 @@ public final class Board
     {
         if (getColor(p) != EMPTY)
             return false;
-        play(c, p);
-        boolean result = (getKilled().size() > 0 || getSuicide().size() > 0);
-        undo();
-        return result;
+        GoColor otherColor = c.otherColor();
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            GoPoint adj = adjacent.get(i);
+            if (getColor(adj) == otherColor && getLiberties(adj) == 1)
+                return true;
+        }
+        return isSuicide(c, p);
     }
 
     /** Check if a point is a handicap point.
@@ -237,10 +352,45 @@ public final class Board
         return point == m_koPoint;
     }
 
+    /** Check if move would repeat a previous position.
+        Checks the positional superko rule, using the positions after the
+        last call to <code>setup</code> or <code>clear</code> and after
+        each move played since then. Does not play the move; the cost is
+        proportional to the size of the captured blocks.
+        @param c The player color.
+        @param p The point to check.
+        @return true, if a move at this point by the given player would
+        recreate a position that already occurred in the game; false for
+        pass moves and occupied points. */
+    public boolean isPositionalSuperko(GoColor c, GoPoint p)
+    {
+        if (p == null || getColor(p) != EMPTY)
+            return false;
+        return m_positions.contains(getHashCodeAfterMove(c, p));
+    }
+
+    /** Check if move would repeat a previous situation.
+        Like isPositionalSuperko, but a position only counts as a
+        repetition if it occurred with the same color to move.
+        @param c The player color.
+        @param p The point to check.
+        @return true, if a move at this point by the given player would
+        recreate a position that already occurred in the game with the
+        opponent to move; false for pass moves and occupied points.
+        @see #isPositionalSuperko */
+    public boolean isSituationalSuperko(GoColor c, GoPoint p)
+    {
+        if (p == null || getColor(p) != EMPTY)
+            return false;
+        long hashCode = getHashCodeAfterMove(c, p)
+            ^ Zobrist.getToMoveKey(c.otherColor());
+        return m_situations.contains(hashCode);
+    }
+
     /** Check if any moves were played or setup stones placed on the board. */
     public boolean isModified()
     {
-        return (! m_stack.isEmpty()
+        return (m_numberMoves > 0
                 || m_setup.get(BLACK).size() > 0
                 || m_setup.get(WHITE).size() > 0
                 || m_toMove != BLACK);
@@ -264,10 +414,25 @@ public final class Board
     {
         if (getColor(p) != EMPTY)
             return false;
-        play(c, p);
-        boolean result = (getSuicide().size() > 0);
-        undo();
-        return result;
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            GoPoint adj = adjacent.get(i);
+            GoColor adjColor = getColor(adj);
+            if (adjColor == EMPTY)
+                return false;
+            int liberties = getLiberties(adj);
+            if (adjColor == c)
+            {
+                if (liberties > 1)
+                    return false;
+            }
+            else if (liberties == 1)
+                return false;
+        }
+        return true;
     }
 
     public Iterator<GoPoint> iterator()
@@ -280,17 +445,23 @@ public final class Board
     public void clear()
     {
         for (GoPoint p : this)
+        {
             setColor(p, EMPTY);
-        m_stack.clear();
+            m_anchor[p.getIndex()] = null;
+        }
+        m_numberMoves = 0;
         for (GoColor c : BLACK_WHITE)
-        {
             m_setup.get(c).clear();
-            m_captured.set(c, 0);
-        }
+        m_capturedBlack = 0;
+        m_capturedWhite = 0;
         m_toMove = BLACK;
         m_koPoint = null;
         m_isSetupHandicap = false;
         m_setupPlayer = null;
+        // Points outside of a previous larger board size are not cleared
+        for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+            m_hashCodes[i] = 0L;
+        initHistory();
     }
 
     /** Play a move.
@@ -309,12 +480,35 @@ public final class Board
         A move will place a stone of the given color, capture all dead
         blocks adjacent to the stone, capture the block the stone is part of
         if it was a suicide move and switches the color to move.
+        The stack entries used for storing the information needed to undo
+        the move are reused, so that playing and undoing moves does not
+        allocate memory once the stack has reached its maximum size.
         @param move The move (location and player) */
     public void play(Move move)
     {
-        StackEntry entry = new StackEntry(move);
-        entry.execute(this);
-        m_stack.add(entry);
+        if (m_numberMoves == m_stack.length)
+            growStack();
+        StackEntry entry = m_stack[m_numberMoves];
+        if (entry == null)
+        {
+            entry = new StackEntry();
+            m_stack[m_numberMoves] = entry;
+        }
+        entry.execute(this, move);
+        ++m_numberMoves;
+    }
+
+    /** Restore the state of the board from a snapshot.
+        The board will be in the same state as the board the snapshot was
+        taken from at the time the snapshot was taken, including the move
+        history, so that the moves can be undone. The cost is proportional
+        to the board size and the number of moves and captured stones; no
+        moves are replayed.
+        @param snapshot The snapshot.
+        @see #snapshot */
+    public void restore(BoardSnapshot snapshot)
+    {
+        copyFrom(snapshot.getBoard());
     }
 
     /** Change the color to move.
@@ -349,6 +543,12 @@ public final class Board
                 m_setup.set(c, new PointList(stones));
             }
         }
+        for (GoPoint p : this)
+            m_anchor[p.getIndex()] = null;
+        for (GoPoint p : this)
+            if (getColor(p) != EMPTY && m_anchor[p.getIndex()] == null)
+                createBlock(p);
+        initHistory();
     }
 
     /** Setup initial handicap stones.
@@ -362,15 +562,27 @@ public final class Board
         m_isSetupHandicap = true;
     }
 
+    /** Take a snapshot of the current state of the board.
+        The snapshot is immutable and can be shared between threads. The
+        cost is proportional to the board size and the number of moves and
+        captured stones; no moves are replayed.
+        @return The snapshot.
+        @see #restore */
+    public BoardSnapshot snapshot()
+    {
+        Board board = new Board(m_size);
+        board.copyFrom(this);
+        return new BoardSnapshot(board);
+    }
+
     /** Undo the last move.
         Restores any stones removed by the last move (captured or
         suicide) and the color who was to move before the move. */
     public void undo()
     {
-        int index = getNumberMoves() - 1;
-        assert index >= 0;
-        m_stack.get(index).undo(this);
-        m_stack.remove(index);
+        assert m_numberMoves > 0;
+        --m_numberMoves;
+        m_stack[m_numberMoves].undo(this);
     }
 
     /** Undo a number of moves.
@@ -387,102 +599,246 @@ public final class Board
 
     private static class StackEntry
     {
-        public final Move m_move;
+        public Move m_move;
 
         public GoPoint m_oldKoPoint;
 
+        /** Hash code of the position after the move. */
+        public long m_hashCode;
+
+        /** Hash code of the situation after the move. */
+        public long m_situationHashCode;
+
+        /** Hash code of the move sequence up to and including the move.
+            @see Board#getMoveHashCode */
+        public long m_moveHashCode;
+
         public GoColor m_oldColor;
 
         public GoColor m_oldToMove;
 
-        public PointList m_killed;
+        public final PointList m_killed = new PointList();
+
+        public final PointList m_suicide = new PointList();
+
+        /** Number of adjacent blocks of the own color before the move. */
+        public int m_nuOwnAnchors;
+
+        /** Anchors of the adjacent blocks of the own color. */
+        public final GoPoint[] m_ownAnchors = new GoPoint[4];
+
+        /** Sizes of the adjacent blocks of the own color before the
+            move. */
+        public final int[] m_ownSizes = new int[4];
+
+        /** Liberties of the adjacent blocks of the own color before the
+            move. */
+        public final int[] m_ownLiberties = new int[4];
+
+        /** Anchors of the merged blocks in the order of the merges. */
+        public final GoPoint[] m_mergedAnchors = new GoPoint[4];
+
+        /** Anchors of the blocks whose stones were assigned to the
+            merged blocks. */
+        public final GoPoint[] m_absorbedAnchors = new GoPoint[4];
 
-        public PointList m_suicide;
+        /** Number of captured blocks. */
+        public int m_nuCaptured;
 
-        public StackEntry(Move move)
+        /** End index of the stones of each captured block in m_killed. */
+        public final int[] m_capturedEnd = new int[4];
+
+        /** Block arrays before a move on an occupied point.
+            Removing the old stone can split blocks, so these moves are
+            undone by restoring the saved arrays. Allocated only if
+            needed. */
+        public GoPoint[] m_oldAnchor;
+
+        public GoPoint[] m_oldNextStone;
+
+        public int[] m_oldBlockSize;
+
+        public int[] m_oldLiberties;
+
+        public void copyFrom(StackEntry entry)
         {
-            m_move = move;
+            m_move = entry.m_move;
+            m_oldKoPoint = entry.m_oldKoPoint;
+            m_hashCode = entry.m_hashCode;
+            m_situationHashCode = entry.m_situationHashCode;
+            m_moveHashCode = entry.m_moveHashCode;
+            m_oldColor = entry.m_oldColor;
+            m_oldToMove = entry.m_oldToMove;
+            m_killed.clear();
+            m_killed.addAll(entry.m_killed);
+            m_suicide.clear();
+            m_suicide.addAll(entry.m_suicide);
+            m_nuOwnAnchors = entry.m_nuOwnAnchors;
+            System.arraycopy(entry.m_ownAnchors, 0, m_ownAnchors, 0, 4);
+            System.arraycopy(entry.m_ownSizes, 0, m_ownSizes, 0, 4);
+            System.arraycopy(entry.m_ownLiberties, 0, m_ownLiberties, 0, 4);
+            System.arraycopy(entry.m_mergedAnchors, 0, m_mergedAnchors, 0,
+                             4);
+            System.arraycopy(entry.m_absorbedAnchors, 0, m_absorbedAnchors,
+                             0, 4);
+            m_nuCaptured = entry.m_nuCaptured;
+            System.arraycopy(entry.m_capturedEnd, 0, m_capturedEnd, 0, 4);
+            if (entry.m_oldColor != null && entry.m_oldColor != EMPTY)
+            {
+                m_oldAnchor = entry.m_oldAnchor.clone();
+                m_oldNextStone = entry.m_oldNextStone.clone();
+                m_oldBlockSize = entry.m_oldBlockSize.clone();
+                m_oldLiberties = entry.m_oldLiberties.clone();
+            }
         }
 
-        public void execute(Board board)
+        public void execute(Board board, Move move)
         {
-            GoPoint p = m_move.getPoint();
-            GoColor c = m_move.getColor();
+            m_move = move;
+            GoPoint p = move.getPoint();
+            GoColor c = move.getColor();
             GoColor otherColor = c.otherColor();
-            m_killed = new PointList();
-            m_suicide = new PointList();
+            m_moveHashCode =
+                board.getMoveHashCode(board.m_numberMoves) * MOVE_HASH_FACTOR
+                + (p == null ? Zobrist.getPassKey(c) : Zobrist.getKey(c, p));
+            m_killed.clear();
+            m_suicide.clear();
             m_oldKoPoint = board.m_koPoint;
             board.m_koPoint = null;
             if (p != null)
             {
                 m_oldColor = board.getColor(p);
-                board.setColor(p, c);
-                assert c != EMPTY;
-                for (GoPoint adj : board.getAdjacent(p))
+                if (m_oldColor != EMPTY)
                 {
-                    int killedSize = m_killed.size();
-                    if (board.getColor(adj) == otherColor)
-                        board.checkKill(adj, m_killed);
-                    if (m_killed.size() == killedSize + 1)
-                        board.m_koPoint = m_killed.get(killedSize);
+                    // Play on occupied point, remove the old stone first
+                    saveBlocks(board);
+                    board.setColor(p, EMPTY);
+                    board.updateBlocks(p);
                 }
-                board.checkKill(p, m_suicide);
-                if (board.m_koPoint != null
-                    && ! board.isSingleStoneSingleLib(p, c))
-                    board.m_koPoint = null;
-                board.m_captured.set(c,
-                                     board.m_captured.get(c)
-                                     + m_suicide.size());
-                board.m_captured.set(otherColor,
-                                     board.m_captured.get(otherColor)
-                                     + m_killed.size());
+                assert c != EMPTY;
+                board.playStone(this, p, c);
+                if (m_killed.size() == 1 && m_suicide.isEmpty()
+                    && board.isSingleStoneSingleLib(p))
+                    board.m_koPoint = m_killed.get(0);
+                board.addCaptured(c, m_suicide.size());
+                board.addCaptured(otherColor, m_killed.size());
             }
             m_oldToMove = board.m_toMove;
             board.m_toMove = otherColor;
+            m_hashCode = board.m_hashCodes[0];
+            m_situationHashCode =
+                m_hashCode ^ Zobrist.getToMoveKey(otherColor);
+            board.m_positions.add(m_hashCode);
+            board.m_situations.add(m_situationHashCode);
         }
 
         protected void undo(Board board)
         {
+            board.m_positions.remove(m_hashCode);
+            board.m_situations.remove(m_situationHashCode);
             GoPoint p = m_move.getPoint();
             if (p != null)
             {
                 GoColor c = m_move.getColor();
                 GoColor otherColor = c.otherColor();
-                for (GoPoint stone : m_suicide)
-                    board.setColor(stone, c);
-                board.setColor(p, m_oldColor);
-                for (GoPoint stone : m_killed)
-                    board.setColor(stone, otherColor);
-                board.m_captured.set(c,
-                                     board.m_captured.get(c)
-                                     - m_suicide.size());
-                board.m_captured.set(otherColor,
-                                     board.m_captured.get(otherColor)
-                                     - m_killed.size());
+                int nuSuicide = m_suicide.size();
+                int nuKilled = m_killed.size();
+                if (m_oldColor == EMPTY)
+                    board.undoStone(this, p, c);
+                else
+                {
+                    // Don't use an iterator for efficiency
+                    for (int i = 0; i < nuSuicide; ++i)
+                        board.setColor(m_suicide.get(i), c);
+                    board.setColor(p, m_oldColor);
+                    for (int i = 0; i < nuKilled; ++i)
+                        board.setColor(m_killed.get(i), otherColor);
+                    restoreBlocks(board);
+                }
+                board.addCaptured(c, -nuSuicide);
+                board.addCaptured(otherColor, -nuKilled);
             }
             board.m_toMove = m_oldToMove;
             board.m_koPoint = m_oldKoPoint;
         }
+
+        private void restoreBlocks(Board board)
+        {
+            int n = GoPoint.NUMBER_INDEXES;
+            System.arraycopy(m_oldAnchor, 0, board.m_anchor, 0, n);
+            System.arraycopy(m_oldNextStone, 0, board.m_nextStone, 0, n);
+            System.arraycopy(m_oldBlockSize, 0, board.m_blockSize, 0, n);
+            System.arraycopy(m_oldLiberties, 0, board.m_liberties, 0, n);
+        }
+
+        private void saveBlocks(Board board)
+        {
+            int n = GoPoint.NUMBER_INDEXES;
+            if (m_oldAnchor == null)
+            {
+                m_oldAnchor = new GoPoint[n];
+                m_oldNextStone = new GoPoint[n];
+                m_oldBlockSize = new int[n];
+                m_oldLiberties = new int[n];
+            }
+            System.arraycopy(board.m_anchor, 0, m_oldAnchor, 0, n);
+            System.arraycopy(board.m_nextStone, 0, m_oldNextStone, 0, n);
+            System.arraycopy(board.m_blockSize, 0, m_oldBlockSize, 0, n);
+            System.arraycopy(board.m_liberties, 0, m_oldLiberties, 0, n);
+        }
     }
 
+    /** Odd factor for combining hash codes of move sequences. */
+    private static final long MOVE_HASH_FACTOR = 0x9e3779b97f4a7c15L;
+
     private Marker m_mark;
 
     private int m_size;
 
-    private final BlackWhiteSet<Integer> m_captured
-        = new BlackWhiteSet<Integer>(0, 0);
+    private int m_capturedBlack;
+
+    private int m_capturedWhite;
 
-    private final ArrayList<StackEntry> m_stack
-        = new ArrayList<StackEntry>(361);
+    private int m_numberMoves;
+
+    /** Stack entries of the moves played.
+        Entries above the number of moves are kept for reuse. */
+    private StackEntry[] m_stack = new StackEntry[361];
+
+    /** Marker for liberties used while counting the liberties of a
+        block. */
+    private Marker m_libertyMark;
 
     /** Temporary variable reused for efficiency. */
-    private final PointList m_checkKillStones = new PointList();
+    private final PointList m_libertyList = new PointList();
 
     /** Temporary variable reused for efficiency. */
-    private final PointList m_checkKillStack = new PointList();
+    private final PointList m_updateStones = new PointList();
+
+    /** Temporary variable reused for efficiency. */
+    private final PointList m_updateStack = new PointList();
+
+    /** Temporary variable reused for efficiency. */
+    private final GoPoint[] m_adjacentAnchors = new GoPoint[4];
+
+    /** Temporary variable reused for efficiency. */
+    private final GoPoint[] m_capturedAnchors = new GoPoint[4];
 
     private GoColor[] m_color = new GoColor[GoPoint.NUMBER_INDEXES];
 
+    /** Anchor of the block for each stone; null for empty points. */
+    private final GoPoint[] m_anchor = new GoPoint[GoPoint.NUMBER_INDEXES];
+
+    /** Next stone in the circular list of the stones of a block. */
+    private final GoPoint[] m_nextStone
+        = new GoPoint[GoPoint.NUMBER_INDEXES];
+
+    /** Number of stones of a block, indexed by the anchor. */
+    private final int[] m_blockSize = new int[GoPoint.NUMBER_INDEXES];
+
+    /** Number of liberties of a block, indexed by the anchor. */
+    private final int[] m_liberties = new int[GoPoint.NUMBER_INDEXES];
+
     private GoColor m_toMove;
 
     private GoColor m_setupPlayer;
@@ -491,76 +847,588 @@ public final class Board
 
     private GoPoint m_koPoint;
 
+    /** Zobrist hash codes of the stones on the board for each rotation
+        mode of BoardUtil.rotate.
+        Element 0 is the hash code of the position itself. */
+    private final long[] m_hashCodes = new long[BoardUtil.NUMBER_ROTATIONS];
+
+    /** Hash codes of the positions since the last setup. */
+    private final HashCodeSet m_positions = new HashCodeSet();
+
+    /** Hash codes of the situations since the last setup. */
+    private final HashCodeSet m_situations = new HashCodeSet();
+
     private final BlackWhiteSet<PointList> m_setup
         = new BlackWhiteSet<PointList>(new PointList(), new PointList());
 
     private boolean m_isSetupHandicap;
 
-    private boolean isSingleStoneSingleLib(GoPoint point, GoColor color)
+    private void addCaptured(GoColor c, int n)
     {
-        if (getColor(point) != color)
-            return false;
-        int lib = 0;
-        for (GoPoint adj : getAdjacent(point))
+        if (c == BLACK)
+            m_capturedBlack += n;
+        else
         {
-            GoColor adjColor = getColor(adj);
-            if (adjColor == EMPTY)
+            assert c == WHITE;
+            m_capturedWhite += n;
+        }
+    }
+
+    /** Copy the complete state of another board.
+        Package-private for use by BoardSnapshot and BoardUtil. */
+    void copyFrom(Board board)
+    {
+        if (board == this)
+            return;
+        if (board.m_size != m_size)
+            init(board.m_size);
+        int n = GoPoint.NUMBER_INDEXES;
+        System.arraycopy(board.m_color, 0, m_color, 0, n);
+        System.arraycopy(board.m_anchor, 0, m_anchor, 0, n);
+        System.arraycopy(board.m_nextStone, 0, m_nextStone, 0, n);
+        System.arraycopy(board.m_blockSize, 0, m_blockSize, 0, n);
+        System.arraycopy(board.m_liberties, 0, m_liberties, 0, n);
+        m_capturedBlack = board.m_capturedBlack;
+        m_capturedWhite = board.m_capturedWhite;
+        m_toMove = board.m_toMove;
+        m_setupPlayer = board.m_setupPlayer;
+        m_koPoint = board.m_koPoint;
+        System.arraycopy(board.m_hashCodes, 0, m_hashCodes, 0,
+                         BoardUtil.NUMBER_ROTATIONS);
+        m_isSetupHandicap = board.m_isSetupHandicap;
+        for (GoColor c : BLACK_WHITE)
+            m_setup.set(c, new PointList(board.m_setup.get(c)));
+        m_positions.copyFrom(board.m_positions);
+        m_situations.copyFrom(board.m_situations);
+        m_numberMoves = 0;
+        for (int i = 0; i < board.m_numberMoves; ++i)
+        {
+            if (m_numberMoves == m_stack.length)
+                growStack();
+            StackEntry entry = m_stack[i];
+            if (entry == null)
             {
-                ++lib;
-                if (lib > 1)
-                    return false;
+                entry = new StackEntry();
+                m_stack[i] = entry;
             }
-            else if (adjColor.equals(color))
-                return false;
+            entry.copyFrom(board.m_stack[i]);
+            ++m_numberMoves;
         }
-        return true;
     }
 
-    private void checkKill(GoPoint point, PointList killed)
+    /** Add the distinct anchors of adjacent blocks of a color.
+        @return The number of distinct anchors stored in
+        m_adjacentAnchors. */
+    private int getAdjacentAnchors(GoPoint p, GoColor c)
     {
-        assert m_mark.isCleared();
-        GoColor color = getColor(point);
-        assert color != EMPTY;
-        m_checkKillStack.clear();
-        m_checkKillStack.add(point);
-        m_mark.set(point);
-        m_checkKillStones.clear();
-        boolean isDead = true;
-        // Recursion is unrolled using a stack for efficiency
-        while (isDead && ! m_checkKillStack.isEmpty())
+        int n = 0;
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
         {
-            GoPoint p = m_checkKillStack.pop();
-            assert getColor(p) == color;
-            m_checkKillStones.add(p);
-            ConstPointList adjacent = getAdjacent(p);
+            GoPoint adj = adjacent.get(i);
+            if (getColor(adj) != c)
+                continue;
+            GoPoint anchor = m_anchor[adj.getIndex()];
+            boolean isNew = true;
+            for (int j = 0; j < n; ++j)
+                if (m_adjacentAnchors[j] == anchor)
+                {
+                    isNew = false;
+                    break;
+                }
+            if (isNew)
+                m_adjacentAnchors[n++] = anchor;
+        }
+        return n;
+    }
+
+    /** Count the liberties of a block by iterating over its stones. */
+    private int countLiberties(GoPoint anchor)
+    {
+        assert m_libertyMark.isCleared();
+        m_libertyList.clear();
+        GoPoint stone = anchor;
+        do
+        {
+            ConstPointList adjacent = getAdjacent(stone);
             int nuAdjacent = adjacent.size();
             // Don't use an iterator for efficiency
             for (int i = 0; i < nuAdjacent; ++i)
             {
                 GoPoint adj = adjacent.get(i);
-                GoColor c = getColor(adj);
-                if (c == EMPTY)
+                if (getColor(adj) == EMPTY && ! m_libertyMark.get(adj))
                 {
-                    isDead = false;
-                    break;
+                    m_libertyMark.set(adj);
+                    m_libertyList.add(adj);
                 }
-                if (m_mark.get(adj) || ! c.equals(color))
+            }
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor);
+        m_libertyMark.clear(m_libertyList);
+        return m_libertyList.size();
+    }
+
+    /** Create the block containing a stone by a flood fill.
+        Used for initializing blocks after a setup and for updating blocks
+        after removing a stone by playing on an occupied point. */
+    private void createBlock(GoPoint p)
+    {
+        GoColor color = getColor(p);
+        assert color != EMPTY;
+        int anchorIndex = p.getIndex();
+        m_updateStack.clear();
+        m_updateStack.add(p);
+        m_anchor[anchorIndex] = p;
+        m_nextStone[anchorIndex] = p;
+        int size = 1;
+        // Recursion is unrolled using a stack for efficiency
+        while (! m_updateStack.isEmpty())
+        {
+            GoPoint stone = m_updateStack.pop();
+            ConstPointList adjacent = getAdjacent(stone);
+            int nuAdjacent = adjacent.size();
+            for (int i = 0; i < nuAdjacent; ++i)
+            {
+                GoPoint adj = adjacent.get(i);
+                int index = adj.getIndex();
+                if (getColor(adj) != color || m_anchor[index] == p)
                     continue;
-                m_checkKillStack.add(adj);
-                m_mark.set(adj);
+                m_anchor[index] = p;
+                m_nextStone[index] = m_nextStone[anchorIndex];
+                m_nextStone[anchorIndex] = adj;
+                ++size;
+                m_updateStack.add(adj);
             }
         }
-        if (isDead)
+        m_blockSize[anchorIndex] = size;
+        m_liberties[anchorIndex] = countLiberties(p);
+    }
+
+    /** Compute the hash code of the position after a move.
+        Requires that the point is empty. */
+    private long getHashCodeAfterMove(GoColor c, GoPoint p)
+    {
+        assert getColor(p) == EMPTY;
+        GoColor otherColor = c.otherColor();
+        long hashCode = m_hashCodes[0] ^ Zobrist.getKey(c, p);
+        boolean isCapture = false;
+        int nuAnchors = getAdjacentAnchors(p, otherColor);
+        for (int i = 0; i < nuAnchors; ++i)
         {
-            killed.addAll(m_checkKillStones);
-            int nuKillStones = m_checkKillStones.size();
-            // Don't use an iterator for efficiency
-            for (int i = 0; i < nuKillStones; ++i)
-                setColor(m_checkKillStones.get(i), EMPTY);
+            GoPoint anchor = m_adjacentAnchors[i];
+            if (m_liberties[anchor.getIndex()] == 1)
+            {
+                isCapture = true;
+                hashCode ^= getHashCode(anchor, otherColor);
+            }
+        }
+        if (! isCapture && isSuicide(c, p))
+        {
+            hashCode = m_hashCodes[0];
+            nuAnchors = getAdjacentAnchors(p, c);
+            for (int i = 0; i < nuAnchors; ++i)
+                hashCode ^= getHashCode(m_adjacentAnchors[i], c);
+        }
+        return hashCode;
+    }
+
+    /** Get the combined Zobrist keys of the stones of a block. */
+    private long getHashCode(GoPoint anchor, GoColor c)
+    {
+        long hashCode = 0L;
+        GoPoint stone = anchor;
+        do
+        {
+            hashCode ^= Zobrist.getKey(c, stone);
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor);
+        return hashCode;
+    }
+
+    private void growStack()
+    {
+        StackEntry[] stack = new StackEntry[2 * m_stack.length];
+        System.arraycopy(m_stack, 0, stack, 0, m_stack.length);
+        m_stack = stack;
+    }
+
+    /** Reset the position history to the current position. */
+    private void initHistory()
+    {
+        m_positions.clear();
+        m_situations.clear();
+        m_positions.add(m_hashCodes[0]);
+        m_situations.add(m_hashCodes[0] ^ Zobrist.getToMoveKey(m_toMove));
+    }
+
+    private boolean isSingleStoneSingleLib(GoPoint p)
+    {
+        GoPoint anchor = m_anchor[p.getIndex()];
+        return (anchor != null && m_blockSize[anchor.getIndex()] == 1
+                && m_liberties[anchor.getIndex()] == 1);
+    }
+
+    /** Merge two blocks.
+        The stones of the smaller block are assigned to the larger block.
+        @return The anchor of the merged block. */
+    private GoPoint mergeBlocks(GoPoint anchor1, GoPoint anchor2)
+    {
+        int index1 = anchor1.getIndex();
+        int index2 = anchor2.getIndex();
+        if (m_blockSize[index1] < m_blockSize[index2])
+            return mergeBlocks(anchor2, anchor1);
+        GoPoint stone = anchor2;
+        do
+        {
+            m_anchor[stone.getIndex()] = anchor1;
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor2);
+        // Splice the circular stone lists
+        GoPoint next1 = m_nextStone[index1];
+        m_nextStone[index1] = m_nextStone[index2];
+        m_nextStone[index2] = next1;
+        m_blockSize[index1] += m_blockSize[index2];
+        return anchor1;
+    }
+
+    /** Place a stone on an empty point and update the blocks.
+        Captures adjacent opponent blocks without liberties and removes the
+        block of the stone if the move was a suicide. Stores the
+        information for undoing the changes of the blocks in the stack
+        entry. */
+    private void playStone(StackEntry entry, GoPoint p, GoColor c)
+    {
+        assert getColor(p) == EMPTY;
+        GoColor otherColor = c.otherColor();
+        int index = p.getIndex();
+        setColor(p, c);
+        m_anchor[index] = p;
+        m_nextStone[index] = p;
+        m_blockSize[index] = 1;
+        GoPoint anchor = p;
+        int nuOwnAnchors = getAdjacentAnchors(p, c);
+        entry.m_nuOwnAnchors = nuOwnAnchors;
+        // Derive the liberties before merging, counting them afterwards
+        // would iterate over all stones of the merged block. Captured
+        // stones are added as liberties by removeBlock.
+        int liberties;
+        if (nuOwnAnchors == 0)
+            liberties = countEmptyAdjacent(p);
+        else
+            liberties = countMergedLiberties(p, nuOwnAnchors);
+        for (int i = 0; i < nuOwnAnchors; ++i)
+        {
+            GoPoint ownAnchor = m_adjacentAnchors[i];
+            int ownIndex = ownAnchor.getIndex();
+            entry.m_ownAnchors[i] = ownAnchor;
+            entry.m_ownSizes[i] = m_blockSize[ownIndex];
+            entry.m_ownLiberties[i] = m_liberties[ownIndex];
+            GoPoint mergedAnchor = mergeBlocks(anchor, ownAnchor);
+            entry.m_mergedAnchors[i] = mergedAnchor;
+            entry.m_absorbedAnchors[i] =
+                (mergedAnchor == anchor ? ownAnchor : anchor);
+            anchor = mergedAnchor;
+        }
+        m_liberties[anchor.getIndex()] = liberties;
+        int nuAnchors = getAdjacentAnchors(p, otherColor);
+        int nuCaptured = 0;
+        for (int i = 0; i < nuAnchors; ++i)
+        {
+            GoPoint otherAnchor = m_adjacentAnchors[i];
+            if (--m_liberties[otherAnchor.getIndex()] == 0)
+                m_capturedAnchors[nuCaptured++] = otherAnchor;
+        }
+        entry.m_nuCaptured = nuCaptured;
+        PointList killed = entry.m_killed;
+        for (int i = 0; i < nuCaptured; ++i)
+        {
+            removeBlock(m_capturedAnchors[i], killed);
+            entry.m_capturedEnd[i] = killed.size();
+        }
+        if (m_liberties[anchor.getIndex()] == 0)
+            removeBlock(anchor, entry.m_suicide);
+    }
+
+    /** Undo the changes of playStone.
+        Restores the captured and suicided blocks from the stone lists in
+        the stack entry and splits the merged blocks in reverse order. */
+    private void undoStone(StackEntry entry, GoPoint p, GoColor c)
+    {
+        GoColor otherColor = c.otherColor();
+        PointList suicide = entry.m_suicide;
+        int nuSuicide = suicide.size();
+        if (nuSuicide > 0)
+        {
+            restoreBlock(suicide, 0, nuSuicide, c);
+            addLiberties(suicide, 0, nuSuicide, otherColor, -1);
+        }
+        PointList killed = entry.m_killed;
+        int start = 0;
+        for (int i = 0; i < entry.m_nuCaptured; ++i)
+        {
+            int end = entry.m_capturedEnd[i];
+            restoreBlock(killed, start, end, otherColor);
+            addLiberties(killed, start, end, c, -1);
+            start = end;
+        }
+        int nuAnchors = getAdjacentAnchors(p, otherColor);
+        for (int i = 0; i < nuAnchors; ++i)
+            ++m_liberties[m_adjacentAnchors[i].getIndex()];
+        int nuOwnAnchors = entry.m_nuOwnAnchors;
+        for (int i = nuOwnAnchors - 1; i >= 0; --i)
+            splitBlocks(entry.m_mergedAnchors[i],
+                        entry.m_absorbedAnchors[i]);
+        for (int i = 0; i < nuOwnAnchors; ++i)
+        {
+            int ownIndex = entry.m_ownAnchors[i].getIndex();
+            m_blockSize[ownIndex] = entry.m_ownSizes[i];
+            m_liberties[ownIndex] = entry.m_ownLiberties[i];
+        }
+        setColor(p, EMPTY);
+        m_anchor[p.getIndex()] = null;
+    }
+
+    /** Change the liberties of the blocks adjacent to a range of stones.
+        Each block is changed once per adjacent stone, which corresponds
+        to the stones becoming or stopping to be liberties of the block.
+        @param stones The stones.
+        @param start The first index in the list.
+        @param end The end index (exclusive) in the list.
+        @param c The color of the blocks to change.
+        @param delta The value to add to the liberties. */
+    private void addLiberties(ConstPointList stones, int start, int end,
+                              GoColor c, int delta)
+    {
+        for (int i = start; i < end; ++i)
+        {
+            int nuAnchors = getAdjacentAnchors(stones.get(i), c);
+            for (int j = 0; j < nuAnchors; ++j)
+                m_liberties[m_adjacentAnchors[j].getIndex()] += delta;
+        }
+    }
+
+    /** Count the liberties of the block that a stone will be merged into.
+        Avoids iterating over the stones of the largest block by starting
+        with its liberties and adding the liberties of the stone and the
+        other blocks that are not adjacent to it. Must be called before the
+        blocks are merged and before captured stones are removed.
+        @param p The new stone.
+        @param nuOwnAnchors The number of adjacent blocks of the color of
+        the stone in m_adjacentAnchors. */
+    private int countMergedLiberties(GoPoint p, int nuOwnAnchors)
+    {
+        GoPoint largest = m_adjacentAnchors[0];
+        for (int i = 1; i < nuOwnAnchors; ++i)
+            if (m_blockSize[m_adjacentAnchors[i].getIndex()]
+                > m_blockSize[largest.getIndex()])
+                largest = m_adjacentAnchors[i];
+        assert m_libertyMark.isCleared();
+        m_libertyList.clear();
+        addNewLiberties(p, p, largest);
+        for (int i = 0; i < nuOwnAnchors; ++i)
+        {
+            GoPoint anchor = m_adjacentAnchors[i];
+            if (anchor == largest)
+                continue;
+            GoPoint stone = anchor;
+            do
+            {
+                addNewLiberties(stone, p, largest);
+                stone = m_nextStone[stone.getIndex()];
+            }
+            while (stone != anchor);
+        }
+        m_libertyMark.clear(m_libertyList);
+        // The new stone was a liberty of the largest block
+        return m_liberties[largest.getIndex()] - 1 + m_libertyList.size();
+    }
+
+    /** Add the empty adjacent points of a stone to m_libertyList that are
+        not liberties of a block.
+        Used by countMergedLiberties.
+        @param stone The stone.
+        @param p The new stone, which is excluded.
+        @param anchor The anchor of the block. */
+    private void addNewLiberties(GoPoint stone, GoPoint p, GoPoint anchor)
+    {
+        ConstPointList adjacent = getAdjacent(stone);
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            GoPoint adj = adjacent.get(i);
+            if (adj == p || getColor(adj) != EMPTY
+                || m_libertyMark.get(adj) || isAdjacent(adj, anchor))
+                continue;
+            m_libertyMark.set(adj);
+            m_libertyList.add(adj);
+        }
+    }
+
+    /** Check if a point is adjacent to a block. */
+    private boolean isAdjacent(GoPoint p, GoPoint anchor)
+    {
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        for (int i = 0; i < nuAdjacent; ++i)
+            if (m_anchor[adjacent.get(i).getIndex()] == anchor)
+                return true;
+        return false;
+    }
+
+    /** Count the empty adjacent points of a point. */
+    private int countEmptyAdjacent(GoPoint p)
+    {
+        int n = 0;
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        // Don't use an iterator for efficiency
+        for (int i = 0; i < nuAdjacent; ++i)
+            if (getColor(adjacent.get(i)) == EMPTY)
+                ++n;
+        return n;
+    }
+
+    /** Remove a block from the board.
+        Updates the liberties of adjacent blocks. The circular stone list of
+        the block is traversed from the anchor and the stones are appended
+        in this order, so that restoreBlock can restore the exact list.
+        @param anchor The anchor of the block to remove.
+        @param removed List to append the removed stones to. */
+    private void removeBlock(GoPoint anchor, PointList removed)
+    {
+        GoColor otherColor = getColor(anchor).otherColor();
+        int start = removed.size();
+        GoPoint stone = anchor;
+        do
+        {
+            removed.add(stone);
+            setColor(stone, EMPTY);
+            m_anchor[stone.getIndex()] = null;
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor);
+        addLiberties(removed, start, removed.size(), otherColor, 1);
+    }
+
+    /** Put back a block removed by removeBlock.
+        The liberties of the block are set to zero.
+        @param stones The list of removed stones, the first stone of the
+        range is the anchor.
+        @param start The first index in the list.
+        @param end The end index (exclusive) in the list.
+        @param c The color of the block. */
+    private void restoreBlock(ConstPointList stones, int start, int end,
+                              GoColor c)
+    {
+        GoPoint anchor = stones.get(start);
+        for (int i = start; i < end; ++i)
+        {
+            GoPoint stone = stones.get(i);
+            int index = stone.getIndex();
+            setColor(stone, c);
+            m_anchor[index] = anchor;
+            m_nextStone[index] = (i + 1 < end ? stones.get(i + 1) : anchor);
+        }
+        m_blockSize[anchor.getIndex()] = end - start;
+        m_liberties[anchor.getIndex()] = 0;
+    }
+
+    /** Undo mergeBlocks.
+        Requires that the stone lists were not modified since the merge.
+        Does not restore the size of the block.
+        @param anchor1 The anchor of the merged block.
+        @param anchor2 The anchor of the block whose stones were assigned to
+        the merged block. */
+    private void splitBlocks(GoPoint anchor1, GoPoint anchor2)
+    {
+        int index1 = anchor1.getIndex();
+        int index2 = anchor2.getIndex();
+        // Splicing the circular lists again separates them
+        GoPoint next1 = m_nextStone[index1];
+        m_nextStone[index1] = m_nextStone[index2];
+        m_nextStone[index2] = next1;
+        GoPoint stone = anchor2;
+        do
+        {
+            m_anchor[stone.getIndex()] = anchor2;
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor2);
+    }
+
+    /** Recompute the blocks at and adjacent to a changed point.
+        Used when a stone is removed by playing on an occupied point.
+        The blocks are rebuilt with a flood fill, because removing a stone
+        can split a block. */
+    private void updateBlocks(GoPoint p)
+    {
+        assert m_mark.isCleared();
+        m_updateStones.clear();
+        markForUpdate(p);
+        for (int i = 0; i < m_updateStones.size(); ++i)
+            m_anchor[m_updateStones.get(i).getIndex()] = null;
+        for (int i = 0; i < m_updateStones.size(); ++i)
+        {
+            GoPoint stone = m_updateStones.get(i);
+            if (getColor(stone) != EMPTY && m_anchor[stone.getIndex()] == null)
+                createBlock(stone);
+        }
+        m_mark.clear(m_updateStones);
+    }
+
+    /** Mark the blocks at and adjacent to a point for updateBlocks. */
+    private void markForUpdate(GoPoint p)
+    {
+        if (getColor(p) == EMPTY)
+            m_anchor[p.getIndex()] = null;
+        else
+            markBlockForUpdate(p);
+        ConstPointList adjacent = getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            GoPoint adj = adjacent.get(i);
+            if (getColor(adj) != EMPTY)
+                markBlockForUpdate(adj);
+        }
+    }
+
+    /** Mark all stones of the old block containing a stone.
+        Uses the old block information to find the stones; stones that did
+        not belong to a block before are marked individually. */
+    private void markBlockForUpdate(GoPoint p)
+    {
+        if (m_mark.get(p))
+            return;
+        GoPoint anchor = m_anchor[p.getIndex()];
+        if (anchor == null || m_mark.get(anchor))
+        {
+            m_mark.set(p);
+            m_updateStones.add(p);
+            return;
+        }
+        GoPoint stone = anchor;
+        do
+        {
+            if (! m_mark.get(stone))
+            {
+                m_mark.set(stone);
+                m_updateStones.add(stone);
+            }
+            stone = m_nextStone[stone.getIndex()];
+        }
+        while (stone != anchor);
+        if (! m_mark.get(p))
+        {
+            m_mark.set(p);
+            m_updateStones.add(p);
         }
-        m_mark.clear(m_checkKillStack);
-        m_mark.clear(m_checkKillStones);
-        //assert m_mark.isCleared();
     }
 
     private void findStones(GoPoint p, GoColor color, PointList stones)
@@ -578,6 +1446,23 @@ public final class Board
     private void setColor(GoPoint p, GoColor c)
     {
         assert p != null;
-        m_color[p.getIndex()] = c;
+        int index = p.getIndex();
+        GoColor oldColor = m_color[index];
+        if (oldColor == null)
+            oldColor = EMPTY;
+        int offset = index * BoardUtil.NUMBER_ROTATIONS;
+        if (oldColor != c && oldColor != EMPTY)
+        {
+            long[] keys = m_constants.getRotatedKeys(oldColor);
+            for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+                m_hashCodes[i] ^= keys[offset + i];
+        }
+        if (oldColor != c && c != EMPTY)
+        {
+            long[] keys = m_constants.getRotatedKeys(c);
+            for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+                m_hashCodes[i] ^= keys[offset + i];
+        }
+        m_color[index] = c;
     }
 }
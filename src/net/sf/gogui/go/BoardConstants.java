@@ -80,6 +80,21 @@ public final class BoardConstants
         return m_allPoints;
     }
 
+    /** Get the Zobrist keys of the rotated points.
+        The key for a point with index i and rotation mode j is stored at
+        index i * BoardUtil.NUMBER_ROTATIONS + j. Used by Board for
+        updating the hash codes of all rotations without looking up each
+        rotated point.
+        @param c The color of the stone (BLACK or WHITE).
+        @return The keys; must not be modified. */
+    long[] getRotatedKeys(GoColor c)
+    {
+        assert c.isBlackWhite();
+        if (c == GoColor.BLACK)
+            return m_rotatedKeysBlack;
+        return m_rotatedKeysWhite;
+    }
+
     /** Get board size. */
     public int getSize()
     {
@@ -134,6 +149,10 @@ public final class BoardConstants
 
     private final ConstPointList[] m_adjacent;
 
+    private final long[] m_rotatedKeysBlack;
+
+    private final long[] m_rotatedKeysWhite;
+
     private BoardConstants(int size)
     {
         m_size = size;
@@ -174,5 +193,18 @@ public final class BoardConstants
                     adjacent.add(GoPoint.get(x, y + 1));
                 m_adjacent[p.getIndex()] = adjacent;
             }
+        int n = GoPoint.NUMBER_INDEXES * BoardUtil.NUMBER_ROTATIONS;
+        m_rotatedKeysBlack = new long[n];
+        m_rotatedKeysWhite = new long[n];
+        for (GoPoint p : m_allPoints)
+            for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+            {
+                int index = p.getIndex() * BoardUtil.NUMBER_ROTATIONS + i;
+                GoPoint rotated = BoardUtil.rotate(i, p, size);
+                m_rotatedKeysBlack[index] =
+                    Zobrist.getKey(GoColor.BLACK, rotated);
+                m_rotatedKeysWhite[index] =
+                    Zobrist.getKey(GoColor.WHITE, rotated);
+            }
     }
 }
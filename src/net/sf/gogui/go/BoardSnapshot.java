@@ -0,0 +1,196 @@
+// BoardSnapshot.java
+
+package net.sf.gogui.go;
+
+import java.util.Iterator;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+/** Immutable copy of the state of a board.
+    Created with Board.snapshot() and used for restoring the state of a
+    board with Board.restore(). Creating and restoring a snapshot copies
+    the arrays of the board and does not replay any moves.
+    Since the state cannot be modified, a snapshot can be shared between
+    threads.
+    @see Board#snapshot
+    @see Board#restore */
+public final class BoardSnapshot
+    implements ConstBoard
+{
+    /** Constructor.
+        @param board A private copy of the board, which is never modified
+        after the construction of the snapshot. */
+    BoardSnapshot(Board board)
+    {
+        m_board = board;
+    }
+
+    public boolean bothPassed()
+    {
+        return m_board.bothPassed();
+    }
+
+    public boolean contains(GoPoint point)
+    {
+        return m_board.contains(point);
+    }
+
+    public ConstPointList getAdjacent(GoPoint point)
+    {
+        return m_board.getAdjacent(point);
+    }
+
+    public GoPoint getAnchor(GoPoint p)
+    {
+        return m_board.getAnchor(p);
+    }
+
+    public long getCanonicalHashCode()
+    {
+        return m_board.getCanonicalHashCode();
+    }
+
+    public int getCaptured(GoColor c)
+    {
+        return m_board.getCaptured(c);
+    }
+
+    public GoColor getColor(GoPoint p)
+    {
+        return m_board.getColor(p);
+    }
+
+    public long getHashCode()
+    {
+        return m_board.getHashCode();
+    }
+
+    public ConstPointList getKilled()
+    {
+        return m_board.getKilled();
+    }
+
+    public Move getLastMove()
+    {
+        return m_board.getLastMove();
+    }
+
+    public int getLiberties(GoPoint p)
+    {
+        return m_board.getLiberties(p);
+    }
+
+    public Move getMove(int i)
+    {
+        return m_board.getMove(i);
+    }
+
+    public long getMoveHashCode(int n)
+    {
+        return m_board.getMoveHashCode(n);
+    }
+
+    public int getNumberMoves()
+    {
+        return m_board.getNumberMoves();
+    }
+
+    public ConstPointList getSetup(GoColor c)
+    {
+        return m_board.getSetup(c);
+    }
+
+    public GoColor getSetupPlayer()
+    {
+        return m_board.getSetupPlayer();
+    }
+
+    public int getSize()
+    {
+        return m_board.getSize();
+    }
+
+    /** Get stones of a block.
+        Empty regions are searched for with a local marker, because the
+        marker of the board cannot be shared between threads. */
+    public void getStones(GoPoint p, GoColor color, PointList stones)
+    {
+        if (color != EMPTY)
+        {
+            m_board.getStones(p, color, stones);
+            return;
+        }
+        if (getColor(p) != EMPTY)
+            return;
+        Marker marker = new Marker(getSize());
+        PointList stack = new PointList(p);
+        marker.set(p);
+        while (! stack.isEmpty())
+        {
+            GoPoint point = stack.pop();
+            stones.add(point);
+            for (GoPoint adj : getAdjacent(point))
+                if (getColor(adj) == EMPTY && ! marker.get(adj))
+                {
+                    marker.set(adj);
+                    stack.add(adj);
+                }
+        }
+    }
+
+    public ConstPointList getSuicide()
+    {
+        return m_board.getSuicide();
+    }
+
+    public GoColor getToMove()
+    {
+        return m_board.getToMove();
+    }
+
+    public boolean isCaptureOrSuicide(GoColor c, GoPoint p)
+    {
+        return m_board.isCaptureOrSuicide(c, p);
+    }
+
+    public boolean isHandicap(GoPoint point)
+    {
+        return m_board.isHandicap(point);
+    }
+
+    public boolean isKo(GoPoint point)
+    {
+        return m_board.isKo(point);
+    }
+
+    public boolean isModified()
+    {
+        return m_board.isModified();
+    }
+
+    public boolean isSetupHandicap()
+    {
+        return m_board.isSetupHandicap();
+    }
+
+    public boolean isSuicide(GoColor c, GoPoint p)
+    {
+        return m_board.isSuicide(c, p);
+    }
+
+    public Iterator<GoPoint> iterator()
+    {
+        return m_board.iterator();
+    }
+
+    /** Get the private copy of the board.
+        Only for use by Board.restore(); the board must not be modified. */
+    Board getBoard()
+    {
+        return m_board;
+    }
+
+    /** Private copy of the board.
+        Only functions of the board that do not modify temporary variables
+        are called, so that snapshots can be used by multiple threads. */
+    private final Board m_board;
+}
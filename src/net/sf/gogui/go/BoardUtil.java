@@ -13,11 +13,22 @@ public final class BoardUtil
     public static final int NUMBER_ROTATIONS = 8;
 
     /** Copy the state of one board to another.
-        Initializes the target board with the size and the setup stones of the
-        source board and executes all moves of the source board on the target
-        board. */
+        If the source is a Board or a BoardSnapshot, the state is copied
+        directly without replaying moves. Otherwise, initializes the target
+        board with the size and the setup stones of the source board and
+        executes all moves of the source board on the target board. */
     public static void copy(Board target, ConstBoard source)
     {
+        if (source instanceof Board)
+        {
+            target.copyFrom((Board)source);
+            return;
+        }
+        if (source instanceof BoardSnapshot)
+        {
+            target.restore((BoardSnapshot)source);
+            return;
+        }
         target.init(source.getSize());
         ConstPointList setupBlack = source.getSetup(BLACK);
         ConstPointList setupWhite = source.getSetup(WHITE);
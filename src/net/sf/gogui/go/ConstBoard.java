@@ -15,16 +15,26 @@ public interface ConstBoard
 
     ConstPointList getAdjacent(GoPoint point);
 
+    GoPoint getAnchor(GoPoint p);
+
+    long getCanonicalHashCode();
+
     int getCaptured(GoColor c);
 
     GoColor getColor(GoPoint p);
 
+    long getHashCode();
+
     ConstPointList getKilled();
 
     Move getLastMove();
 
+    int getLiberties(GoPoint p);
+
     Move getMove(int i);
 
+    long getMoveHashCode(int n);
+
     int getNumberMoves();
 
     ConstPointList getSetup(GoColor c);
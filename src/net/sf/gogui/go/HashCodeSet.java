@@ -0,0 +1,126 @@
+// HashCodeSet.java
+
+package net.sf.gogui.go;
+
+/** Multiset of 64-bit hash codes.
+    Uses open addressing with primitive arrays to avoid the allocation of
+    boxed values when adding and removing elements. */
+final class HashCodeSet
+{
+    public HashCodeSet()
+    {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /** Add an element.
+        Elements can be added multiple times. */
+    public void add(long hashCode)
+    {
+        int i = find(hashCode);
+        if (m_used[i])
+        {
+            ++m_count[i];
+            return;
+        }
+        m_used[i] = true;
+        m_keys[i] = hashCode;
+        m_count[i] = 1;
+        if (++m_nuUsed * 2 > m_keys.length)
+            rehash();
+    }
+
+    public void clear()
+    {
+        if (m_nuUsed == 0)
+            return;
+        for (int i = 0; i < m_keys.length; ++i)
+        {
+            m_used[i] = false;
+            m_count[i] = 0;
+            m_keys[i] = 0L;
+        }
+        m_nuUsed = 0;
+    }
+
+    /** Copy the elements of another set. */
+    public void copyFrom(HashCodeSet set)
+    {
+        int capacity = set.m_keys.length;
+        if (m_keys.length != capacity)
+            allocate(capacity);
+        System.arraycopy(set.m_keys, 0, m_keys, 0, capacity);
+        System.arraycopy(set.m_count, 0, m_count, 0, capacity);
+        System.arraycopy(set.m_used, 0, m_used, 0, capacity);
+        m_nuUsed = set.m_nuUsed;
+    }
+
+    /** Check if an element is contained at least once. */
+    public boolean contains(long hashCode)
+    {
+        int i = find(hashCode);
+        return (m_count[i] > 0 && m_keys[i] == hashCode);
+    }
+
+    /** Remove one occurrence of an element.
+        Requires that the element is contained. */
+    public void remove(long hashCode)
+    {
+        int i = find(hashCode);
+        assert m_count[i] > 0 && m_keys[i] == hashCode;
+        --m_count[i];
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int m_nuUsed;
+
+    private long[] m_keys;
+
+    private int[] m_count;
+
+    /** Slot was used, also if the count is zero again. */
+    private boolean[] m_used;
+
+    private void allocate(int capacity)
+    {
+        m_keys = new long[capacity];
+        m_count = new int[capacity];
+        m_used = new boolean[capacity];
+        m_nuUsed = 0;
+    }
+
+    /** Find the slot of an element.
+        Returns the slot containing the element (also if its count is zero)
+        or the first unused slot. */
+    private int find(long hashCode)
+    {
+        int mask = m_keys.length - 1;
+        int i = (int)(hashCode ^ (hashCode >>> 32)) & mask;
+        while (m_used[i] && m_keys[i] != hashCode)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void rehash()
+    {
+        long[] keys = m_keys;
+        int[] count = m_count;
+        int nuElements = 0;
+        for (int i = 0; i < keys.length; ++i)
+            if (count[i] > 0)
+                ++nuElements;
+        int capacity = keys.length;
+        while (nuElements * 4 > capacity)
+            capacity *= 2;
+        allocate(capacity);
+        for (int i = 0; i < keys.length; ++i)
+            if (count[i] > 0)
+            {
+                int j = find(keys[i]);
+                m_keys[j] = keys[i];
+                m_used[j] = true;
+                m_count[j] = count[i];
+                ++m_nuUsed;
+            }
+    }
+}
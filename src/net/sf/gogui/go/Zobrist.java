@@ -0,0 +1,82 @@
+// Zobrist.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+
+/** Random keys for Zobrist hashing of positions.
+    The keys are generated with a fixed seed, so hash codes are
+    reproducible between runs and can be stored persistently. */
+public final class Zobrist
+{
+    /** Get the key for a stone.
+        @param c The color of the stone (BLACK or WHITE).
+        @param p The location of the stone.
+        @return The key. */
+    public static long getKey(GoColor c, GoPoint p)
+    {
+        assert c.isBlackWhite();
+        if (c == BLACK)
+            return KEYS_BLACK[p.getIndex()];
+        return KEYS_WHITE[p.getIndex()];
+    }
+
+    /** Get the key for a pass move.
+        Used for hash codes of move sequences.
+        @param c The color of the move (BLACK or WHITE).
+        @return The key. */
+    public static long getPassKey(GoColor c)
+    {
+        assert c.isBlackWhite();
+        if (c == BLACK)
+            return KEY_BLACK_PASS;
+        return KEY_WHITE_PASS;
+    }
+
+    /** Get the key for the color to move.
+        Combined with the hash code of a position to get a hash code for a
+        situation (position plus color to move).
+        @param c The color to move.
+        @return The key for WHITE, zero otherwise. */
+    public static long getToMoveKey(GoColor c)
+    {
+        if (c == WHITE)
+            return KEY_WHITE_TO_MOVE;
+        return 0L;
+    }
+
+    private static final long SEED = 0x676f677569L;
+
+    private static final long[] KEYS_BLACK
+        = new long[GoPoint.NUMBER_INDEXES];
+
+    private static final long[] KEYS_WHITE
+        = new long[GoPoint.NUMBER_INDEXES];
+
+    private static final long KEY_WHITE_TO_MOVE;
+
+    private static final long KEY_BLACK_PASS;
+
+    private static final long KEY_WHITE_PASS;
+
+    static
+    {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GoPoint.NUMBER_INDEXES; ++i)
+        {
+            KEYS_BLACK[i] = random.nextLong();
+            KEYS_WHITE[i] = random.nextLong();
+        }
+        KEY_WHITE_TO_MOVE = random.nextLong();
+        // Generated after the other keys, so that they keep their values
+        KEY_BLACK_PASS = random.nextLong();
+        KEY_WHITE_PASS = random.nextLong();
+    }
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Zobrist()
+    {
+    }
+}
@@ -203,6 +203,8 @@ public class GoGui
 
         m_infoPanel = new JPanel(new BorderLayout());
         m_game = new Game(boardSize);
+        // Fast jumps to arbitrary nodes of large game trees
+        m_game.setPositionCache(50, 32000000L);
         m_gameInfoPanel = new GameInfoPanel(m_game);
         m_gameInfoPanel.setBorder(GuiUtil.createSmallEmptyBorder());
         m_infoPanel.add(m_gameInfoPanel, BorderLayout.NORTH);
@@ -727,7 +729,7 @@ public class GoGui
                         ConstNode root = getTree().getRootConst();
                         ConstNode currentNode = getCurrentNode();
                         ConstNode node =
-                            NodeUtil.findInComments(currentNode, m_pattern);
+                            m_game.findInComments(currentNode, m_pattern);
                         boolean cancel = false;
                         if (node == null && getCurrentNode() != root)
                         {
@@ -740,9 +742,8 @@ public class GoGui
                                 node = root;
                                 if (! NodeUtil.commentContains(node,
                                                                m_pattern))
-                                    node =
-                                        NodeUtil.findInComments(node,
-                                                                m_pattern);
+                                    node = m_game.findInComments(node,
+                                                                 m_pattern);
                             }
                             else
                                 cancel = true;
@@ -2240,7 +2241,7 @@ public class GoGui
 
         public void run(ProgressShow progressShow) throws Throwable
         {
-            m_reader = new GameReader(m_file, progressShow);
+            m_reader = new GameReader(m_file, progressShow, true);
         }
 
         private final File m_file;
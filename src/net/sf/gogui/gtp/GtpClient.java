@@ -10,8 +10,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import net.sf.gogui.go.Move;
 import net.sf.gogui.util.StringUtil;
@@ -26,6 +29,18 @@ import net.sf.gogui.util.ProcessUtil;
     <p>
     Callbacks can be registered to monitor the input, output and error stream
     and to handle timeout and invalid responses.
+    </p>
+    <p>
+    Commands can be pipelined with sendAsync() and sendBatch(), which send
+    numbered commands without waiting for the responses. The responses are
+    read when they are requested and matched to the commands by their ID.
+    </p>
+    <p>
+    By default, the responses are read by a separate thread and handed over
+    to the thread that sends the commands. If the client is created with
+    directRead, the responses are parsed directly from the output stream of
+    the program on the thread that sends the commands, which avoids the
+    thread handoff and makes sending commands to fast programs faster.
     </p> */
 public final class GtpClient
     extends GtpClientBase
@@ -48,6 +63,83 @@ public final class GtpClient
         }
     }
 
+    /** Response to a command sent with sendAsync() or sendBatch().
+        The methods must be called from the thread that sends the
+        commands. */
+    public final class AsyncResponse
+    {
+        /** Wait for the response.
+            @return The response text of the successful response not
+            including the status character.
+            @throws GtpError containing the response if the command
+            fails. */
+        public String get() throws GtpError
+        {
+            return get(-1, null);
+        }
+
+        /** Wait for the response with timeout.
+            Reads the responses to commands sent before this command, if
+            they were not read yet.
+            @param timeout Timeout in milliseconds or -1, if no timeout
+            @param timeoutCallback Timeout callback or null if no timeout.
+            @return The response text of the successful response not
+            including the status character.
+            @throws GtpError containing the response if the command
+            fails. */
+        public String get(long timeout, TimeoutCallback timeoutCallback)
+            throws GtpError
+        {
+            while (! m_isDone)
+                readResponse(timeout, timeoutCallback);
+            if (m_error != null)
+                throw m_error;
+            return m_response;
+        }
+
+        /** Get the command including the ID. */
+        public String getCommand()
+        {
+            return m_command;
+        }
+
+        /** Check if the response was already read. */
+        public boolean isDone()
+        {
+            return m_isDone;
+        }
+
+        private boolean m_isDone;
+
+        /** ID of the command or -1, if the command has no ID. */
+        private final int m_id;
+
+        private final String m_command;
+
+        private String m_response;
+
+        private GtpError m_error;
+
+        private AsyncResponse(int id, String command)
+        {
+            m_id = id;
+            m_command = command;
+        }
+
+        private void setError(GtpError error)
+        {
+            error.setCommand(m_command);
+            m_error = error;
+            m_isDone = true;
+        }
+
+        private void setResponse(String response)
+        {
+            m_response = response;
+            m_isDone = true;
+        }
+    }
+
     /** Callback if a timeout occured. */
     public interface TimeoutCallback
     {
@@ -97,6 +189,24 @@ public final class GtpClient
     public GtpClient(String program, File workingDirectory, boolean log,
                      IOCallback callback)
         throws GtpClient.ExecFailed
+    {
+        this(program, workingDirectory, log, callback, false);
+    }
+
+    /** Constructor.
+        @param program Command line for program (see above)
+        @param workingDirectory The working directory to run the program in or
+        null for the current directory
+        @param log Log input, output and error stream to standard error.
+        @param callback Callback for external display of the streams.
+        @param directRead Read the responses on the thread that sends the
+        commands instead of a separate thread (see class comment). The
+        responses to commands sent with sendBatch() are not read before
+        all commands are written, so they must fit into the buffer of the
+        operating system for the output stream of the program. */
+    public GtpClient(String program, File workingDirectory, boolean log,
+                     IOCallback callback, boolean directRead)
+        throws GtpClient.ExecFailed
     {
         if (workingDirectory != null && ! workingDirectory.isDirectory())
             throw new ExecFailed(program,
@@ -146,19 +256,29 @@ public final class GtpClient
             throw new ExecFailed(program, e);
         }
         init(m_process.getInputStream(), m_process.getOutputStream(),
-             m_process.getErrorStream());
+             m_process.getErrorStream(), directRead);
     }
 
     /** Constructor for given input and output streams. */
     public GtpClient(InputStream in, OutputStream out, boolean log,
                      IOCallback callback)
         throws GtpError
+    {
+        this(in, out, log, callback, false);
+    }
+
+    /** Constructor for given input and output streams.
+        @param directRead Read the responses on the thread that sends the
+        commands (see class comment). */
+    public GtpClient(InputStream in, OutputStream out, boolean log,
+                     IOCallback callback, boolean directRead)
+        throws GtpError
     {
         m_log = log;
         m_callback = callback;
         m_program = "-";
         m_process = null;
-        init(in, out, null);
+        init(in, out, null, directRead);
     }
 
     /** Close the output stream to the program.
@@ -239,34 +359,46 @@ public final class GtpClient
     public String send(String command, long timeout,
                        TimeoutCallback timeoutCallback) throws GtpError
     {
-        assert ! command.trim().equals("");
-        assert ! command.trim().startsWith("#");
-        m_timeoutCallback = timeoutCallback;
         m_fullResponse = "";
         m_response = "";
-        ++m_commandNumber;
-        if (m_autoNumber)
-            command = Integer.toString(m_commandNumber) + " " + command;
-        if (m_log)
-            logOut(command);
-        m_out.println(command);
-        m_out.flush();
-        try
-        {
-            if (m_out.checkError())
-            {
-                throwProgramDied();
-            }
-            if (m_callback != null)
-                m_callback.sentCommand(command);
-            readResponse(timeout);
-            return m_response;
-        }
-        catch (GtpError e)
-        {
-            e.setCommand(command);
-            throw e;
-        }
+        AsyncResponse response = writeCommand(command, m_autoNumber);
+        flushCommands();
+        return response.get(timeout, timeoutCallback);
+    }
+
+    /** Send a command without waiting for the response.
+        The command is numbered with an ID, even if auto-numbering is not
+        enabled. Use AsyncResponse.get() to wait for the response. Responses
+        that were not requested are read at the next request of a response
+        to a later command.
+        @param command The command to send
+        @return The response, which can be requested later.
+        @throws GtpError if the program died. */
+    public AsyncResponse sendAsync(String command) throws GtpError
+    {
+        AsyncResponse response = writeCommand(command, true);
+        flushCommands();
+        return response;
+    }
+
+    /** Send a list of commands without waiting for the responses.
+        The commands are written with a single flush of the output stream,
+        such that the program can respond to all of them without waiting
+        for the next command.
+        @param commands The commands to send
+        @return The responses in the order of the commands.
+        @throws GtpError if the program died.
+        @see #sendAsync */
+    public ArrayList<AsyncResponse> sendBatch(List<String> commands)
+        throws GtpError
+    {
+        ArrayList<AsyncResponse> result =
+            new ArrayList<AsyncResponse>(commands.size());
+        for (String command : commands)
+            result.add(writeCommand(command, true));
+        if (! result.isEmpty())
+            flushCommands();
+        return result;
     }
 
     public void sendPlay(Move move, long timeout,
@@ -327,7 +459,8 @@ public final class GtpClient
         {
             m_process.waitFor();
             m_errorThread.join();
-            m_inputThread.join();
+            if (m_inputThread != null)
+                m_inputThread.join();
         }
         catch (InterruptedException e)
         {
@@ -353,7 +486,8 @@ public final class GtpClient
         try
         {
             m_errorThread.join(timeout);
-            m_inputThread.join(timeout);
+            if (m_inputThread != null)
+                m_inputThread.join(timeout);
         }
         catch (InterruptedException e)
         {
@@ -367,6 +501,196 @@ public final class GtpClient
         return m_wasKilled;
     }
 
+    /** Maximum time in milliseconds to wait for the error thread in
+        waitForErrorStream(). */
+    private static final int MAX_ERROR_STREAM_WAIT = 10;
+
+    /** Reads the responses from the output stream of the program on the
+        thread that sends the commands.
+        Uses a reusable byte buffer and parses the lines without a
+        BufferedReader. The responses are the same as the messages of
+        InputThread. */
+    private final class DirectReader
+    {
+        DirectReader(InputStream in)
+        {
+            m_in = in;
+        }
+
+        /** Read the next response.
+            Skips invalid response lines like InputThread.
+            @param timeout Timeout in milliseconds or -1, if no timeout
+            @return The response including the empty line at the end or null,
+            if the end of the stream was reached. */
+        public String readResponse(long timeout) throws GtpError
+        {
+            while (true)
+            {
+                String line = readLine(timeout);
+                if (line == null)
+                    return null;
+                if (line.length() == 0
+                    || (line.charAt(0) != '=' && line.charAt(0) != '?'))
+                {
+                    if (! line.trim().equals(""))
+                    {
+                        if (m_callback != null)
+                            m_callback.receivedInvalidResponse(line);
+                        if (m_invalidResponseCallback != null)
+                            m_invalidResponseCallback.show(line);
+                    }
+                    continue;
+                }
+                m_response.setLength(0);
+                while (true)
+                {
+                    m_response.append(line);
+                    m_response.append('\n');
+                    if (line.equals(""))
+                        return m_response.toString();
+                    line = readLine(timeout);
+                    if (line == null)
+                        return null;
+                }
+            }
+        }
+
+        /** Start of the unread data in m_buffer. */
+        private int m_pos;
+
+        /** End of the data in m_buffer. */
+        private int m_limit;
+
+        /** Position in m_buffer, up to which no newline was found. */
+        private int m_scan;
+
+        private byte[] m_buffer = new byte[8192];
+
+        private final InputStream m_in;
+
+        private final StringBuilder m_response = new StringBuilder(1024);
+
+        /** Read more data into the buffer.
+            @return false, if the end of the stream was reached. */
+        private boolean fill(long timeout) throws GtpError
+        {
+            if (m_pos > 0)
+            {
+                System.arraycopy(m_buffer, m_pos, m_buffer, 0,
+                                 m_limit - m_pos);
+                m_limit -= m_pos;
+                m_scan -= m_pos;
+                m_pos = 0;
+            }
+            if (m_limit == m_buffer.length)
+            {
+                byte[] buffer = new byte[2 * m_buffer.length];
+                System.arraycopy(m_buffer, 0, buffer, 0, m_limit);
+                m_buffer = buffer;
+            }
+            if (timeout >= 0)
+                waitForInput(timeout);
+            int n;
+            try
+            {
+                n = m_in.read(m_buffer, m_limit, m_buffer.length - m_limit);
+            }
+            catch (IOException e)
+            {
+                return false;
+            }
+            if (n <= 0)
+                return false;
+            m_limit += n;
+            return true;
+        }
+
+        /** Check if the process of the program has exited. */
+        private boolean hasExited()
+        {
+            if (m_process == null)
+                return false;
+            try
+            {
+                m_process.exitValue();
+                return true;
+            }
+            catch (IllegalThreadStateException e)
+            {
+                return false;
+            }
+        }
+
+        /** Read a line without the line terminator.
+            @return The line or null, if the end of the stream was
+            reached. */
+        private String readLine(long timeout) throws GtpError
+        {
+            while (true)
+            {
+                for (int i = m_scan; i < m_limit; ++i)
+                    if (m_buffer[i] == '\n')
+                    {
+                        int end = i;
+                        if (end > m_pos && m_buffer[end - 1] == '\r')
+                            --end;
+                        String line = new String(m_buffer, m_pos, end - m_pos);
+                        m_pos = i + 1;
+                        m_scan = m_pos;
+                        if (m_log)
+                            logIn(line);
+                        return line;
+                    }
+                m_scan = m_limit;
+                if (! fill(timeout))
+                {
+                    if (m_pos == m_limit)
+                        return null;
+                    // Last line without line terminator
+                    String line =
+                        new String(m_buffer, m_pos, m_limit - m_pos);
+                    m_pos = m_limit;
+                    m_scan = m_limit;
+                    if (m_log)
+                        logIn(line);
+                    return line;
+                }
+            }
+        }
+
+        /** Wait until input is available or the timeout is reached.
+            Polls the input stream, because the streams of a process do not
+            support reading with timeout. */
+        private void waitForInput(long timeout) throws GtpError
+        {
+            try
+            {
+                long startTime = System.currentTimeMillis();
+                while (m_in.available() == 0 && ! hasExited())
+                {
+                    if (System.currentTimeMillis() - startTime >= timeout)
+                    {
+                        assert m_timeoutCallback != null;
+                        if (! m_timeoutCallback.askContinue())
+                        {
+                            destroyProcess();
+                            throwProgramDied();
+                        }
+                        startTime = System.currentTimeMillis();
+                    }
+                    Thread.sleep(1);
+                }
+            }
+            catch (IOException e)
+            {
+            }
+            catch (InterruptedException e)
+            {
+                printInterrupted();
+            }
+        }
+    }
+
     private static final class Message
     {
         public Message(String text)
@@ -529,10 +853,13 @@ public final class GtpClient
                     if (n <= 0)
                         return;
                     String text = new String(buffer, 0, n);
-                    if (m_callback != null)
-                        m_callback.receivedStdErr(text);
-                    if (m_log)
-                        logError(text);
+                    synchronized (m_errorLock)
+                    {
+                        if (m_callback != null)
+                            m_callback.receivedStdErr(text);
+                        if (m_log)
+                            logError(text);
+                    }
                 }
             }
             catch (Throwable t)
@@ -574,17 +901,52 @@ public final class GtpClient
 
     private BlockingQueue<Message> m_queue;
 
+    /** Commands sent, for which the response was not read yet. */
+    private final LinkedList<AsyncResponse> m_pending =
+        new LinkedList<AsyncResponse>();
+
+    /** Commands written since the last flush of the output stream. */
+    private final ArrayList<AsyncResponse> m_written =
+        new ArrayList<AsyncResponse>();
+
     private TimeoutCallback m_timeoutCallback;
 
+    /** Thread reading the responses, null if m_directReader is used. */
     private InputThread m_inputThread;
 
+    /** Reader for the responses, if the responses are read directly on the
+        thread that sends the commands. */
+    private DirectReader m_directReader;
+
+    /** Error stream of the program or null. */
+    private InputStream m_err;
+
+    /** Lock held while the callbacks for the error stream or a response
+        are called. */
+    private final Object m_errorLock = new Object();
+
     private ErrorThread m_errorThread;
 
-    private void init(InputStream in, OutputStream out, InputStream err)
+    private void init(InputStream in, OutputStream out, InputStream err,
+                      boolean directRead)
     {
         m_out = new PrintWriter(out);
+        m_err = err;
         m_isProgramDead = false;
-        m_queue = new ArrayBlockingQueue<Message>(10);
+        if (directRead)
+        {
+            m_directReader = new DirectReader(in);
+            if (err != null)
+            {
+                m_errorThread = new ErrorThread(err, null);
+                m_errorThread.start();
+            }
+            return;
+        }
+        // Unbounded, such that the input thread never stops reading the
+        // responses to pipelined commands. Otherwise the program could block
+        // on writing a response while this class blocks on writing commands
+        m_queue = new LinkedBlockingQueue<Message>();
         m_inputThread = new InputThread(in, m_queue);
         if (err != null)
         {
@@ -624,33 +986,111 @@ public final class GtpClient
         Thread.dumpStack();
     }
 
-    private String readResponse(long timeout) throws GtpError
+    /** Flush the output stream after writing commands. */
+    private void flushCommands() throws GtpError
     {
-        while (true)
+        m_out.flush();
+        AsyncResponse first = m_written.get(0);
+        if (m_out.checkError())
         {
-            Message message = waitForMessage(timeout);
-            String response = message.m_text;
-            if (response == null)
+            m_written.clear();
+            try
             {
-                m_isProgramDead = true;
                 throwProgramDied();
             }
-            m_anyCommandsResponded = true;
-            boolean error = (response.charAt(0) != '=');
-            m_fullResponse = response;
-            if (m_callback != null)
-                m_callback.receivedResponse(error, m_fullResponse);
-            assert response.length() >= 3;
-            int index = response.indexOf(' ');
-            int length = response.length();
-            if (index < 0)
-                m_response = response.substring(1, length - 2);
+            catch (GtpError e)
+            {
+                setPendingError(e);
+                throw first.m_error;
+            }
+        }
+        if (m_callback != null)
+            for (AsyncResponse response : m_written)
+                m_callback.sentCommand(response.m_command);
+        m_written.clear();
+    }
+
+    /** Get the ID of a response.
+        @return The ID or -1, if the response has no ID. */
+    private static int getId(String response)
+    {
+        int id = -1;
+        for (int i = 1; i < response.length(); ++i)
+        {
+            char c = response.charAt(i);
+            if (c < '0' || c > '9')
+                break;
+            if (id < 0)
+                id = 0;
+            id = 10 * id + (c - '0');
+        }
+        return id;
+    }
+
+    /** Read the next response and assign it to its pending command.
+        The response is assigned to the pending command with the ID of the
+        response or to the first pending command, if there is no such
+        command. */
+    private void readResponse(long timeout, TimeoutCallback timeoutCallback)
+    {
+        assert ! m_pending.isEmpty();
+        m_timeoutCallback = timeoutCallback;
+        String response;
+        try
+        {
+            if (m_directReader != null)
+                response = m_directReader.readResponse(timeout);
             else
-                m_response = response.substring(index + 1, length - 2);
-            if (error)
-                throw new GtpError(m_response);
-            return m_response;
+                response = waitForMessage(timeout).m_text;
+            if (response == null)
+                throwProgramDied();
+        }
+        catch (GtpError e)
+        {
+            setPendingError(e);
+            return;
         }
+        m_anyCommandsResponded = true;
+        boolean error = (response.charAt(0) != '=');
+        m_fullResponse = response;
+        if (m_callback != null)
+        {
+            if (m_directReader != null)
+                waitForErrorStream();
+            synchronized (m_errorLock)
+            {
+                m_callback.receivedResponse(error, m_fullResponse);
+            }
+        }
+        assert response.length() >= 3;
+        int index = response.indexOf(' ');
+        int length = response.length();
+        if (index < 0)
+            m_response = response.substring(1, length - 2);
+        else
+            m_response = response.substring(index + 1, length - 2);
+        AsyncResponse pending = m_pending.getFirst();
+        int id = getId(response);
+        if (id >= 0)
+            for (AsyncResponse p : m_pending)
+                if (p.m_id == id)
+                {
+                    pending = p;
+                    break;
+                }
+        m_pending.remove(pending);
+        if (error)
+            pending.setError(new GtpError(m_response));
+        else
+            pending.setResponse(m_response);
+    }
+
+    /** Set the error for all pending commands after the program died. */
+    private void setPendingError(GtpError e)
+    {
+        for (AsyncResponse pending : m_pending)
+            pending.setError(new GtpError(e.getMessage()));
+        m_pending.clear();
     }
 
     private void throwProgramDied() throws GtpError
@@ -665,6 +1105,30 @@ public final class GtpClient
             throw new GtpError(name + " terminated unexpectedly.");
     }
 
+    /** Give the error thread a chance to handle text written to the error
+        stream before the response.
+        Needed for calling the callbacks in the right order for the typical
+        use case of a program writing to stderr before writing the
+        response. Waits only if the error stream has unread bytes. */
+    private void waitForErrorStream()
+    {
+        if (m_err == null)
+            return;
+        try
+        {
+            for (int i = 0; i < MAX_ERROR_STREAM_WAIT
+                     && m_err.available() > 0; ++i)
+                Thread.sleep(1);
+        }
+        catch (IOException e)
+        {
+        }
+        catch (InterruptedException e)
+        {
+            printInterrupted();
+        }
+    }
+
     private Message waitForMessage(long timeout) throws GtpError
     {
         Message message = null;
@@ -707,4 +1171,28 @@ public final class GtpClient
         }
         return message;
     }
+
+    /** Write a command without flushing the output stream.
+        @param command The command.
+        @param number Prepend the command number as ID.
+        @return The pending response. */
+    private AsyncResponse writeCommand(String command, boolean number)
+    {
+        assert ! command.trim().equals("");
+        assert ! command.trim().startsWith("#");
+        ++m_commandNumber;
+        int id = -1;
+        if (number)
+        {
+            id = m_commandNumber;
+            command = Integer.toString(id) + " " + command;
+        }
+        if (m_log)
+            logOut(command);
+        m_out.println(command);
+        AsyncResponse response = new AsyncResponse(id, command);
+        m_pending.add(response);
+        m_written.add(response);
+        return response;
+    }
 }
@@ -2,6 +2,7 @@
 
 package net.sf.gogui.gtp;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -11,6 +12,7 @@ import java.io.PrintStream;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.LinkedBlockingQueue;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.InvalidPointException;
 import net.sf.gogui.go.PointList;
@@ -92,7 +94,11 @@ public class GtpEngine
     /** Callback for interrupting commands.
         This callback will be invoked if the special comment line
         "# interrupt" is received. It will be invoked from a different
-        thread. */
+        thread. The commands are read ahead, so if commands are waiting in
+        the queue when the interrupt is received, the callback will be
+        invoked while an earlier command is executed. In this case,
+        isInterrupted() will also return true during the execution of the
+        last command received before the interrupt. */
     public void interruptCommand()
     {
         m_interrupted = true;
@@ -103,7 +109,7 @@ public class GtpEngine
         commands and calls the registered callback. */
     public void handleCommand(GtpCommand cmd) throws GtpError
     {
-        m_interrupted = false;
+        m_interrupted = (cmd == m_interruptedCommand);
         String name = cmd.getCommand();
         GtpCallback callback = (GtpCallback)m_commands.get(name);
         if (callback == null)
@@ -125,36 +131,47 @@ public class GtpEngine
 
     /** Main command loop.
         Reads commands and calls GtpEngine.handleCommand until the end of
-        the input stream or the quit command is reached. */
+        the input stream or the quit command is reached.
+        The output stream is buffered and flushed only if no more commands
+        were received, such that the responses to a sequence of commands
+        sent at once are written at once. */
     public void mainLoop(InputStream in, OutputStream out) throws IOException
     {
-        m_out = new PrintStream(out);
+        m_out = new PrintStream(new BufferedOutputStream(out));
         m_in = in;
         ReadThread readThread = new ReadThread(this, m_in, m_log != null);
         readThread.start();
-        while (true)
+        try
         {
-            GtpCommand cmd = readThread.getCommand();
-            if (cmd == null)
-                return;
-            boolean status = true;
-            String response;
-            try
-            {
-                handleCommand(cmd);
-                response = cmd.getResponse().toString();
-            }
-            catch (GtpError e)
+            while (true)
             {
-                response = e.getMessage();
-                status = false;
+                GtpCommand cmd = readThread.getCommand();
+                if (cmd == null)
+                    return;
+                boolean status = true;
+                CharSequence response;
+                try
+                {
+                    handleCommand(cmd);
+                    response = cmd.getResponse();
+                }
+                catch (GtpError e)
+                {
+                    response = e.getMessage();
+                    status = false;
+                }
+                printResponse(status, cmd.hasId(), cmd.getId(), response);
+                // TODO: Use only quit flag not GtpCommand.isQuit once all
+                // subclasses use the new registered quit command
+                if (m_quit || cmd.isQuit())
+                    return;
+                if (! readThread.isCommandPending())
+                    m_out.flush();
             }
-            String sanitizedResponse = response.replaceAll("\\n\\n", "\n \n");
-            respond(status, cmd.hasId(), cmd.getId(), sanitizedResponse);
-            // TODO: Use only quit flag not GtpCommand.isQuit once all
-            // subclasses use the new registered quit command
-            if (m_quit || cmd.isQuit())
-                return;
+        }
+        finally
+        {
+            m_out.flush();
         }
     }
 
@@ -222,24 +239,14 @@ public class GtpEngine
         m_commands.put(command, callback);
     }
 
+    /** Write a response.
+        Consecutive new lines in the response are replaced by lines
+        containing a single space. The output is not flushed, this is done
+        by mainLoop(). */
     public void respond(boolean status, boolean hasId, int id,
                         String response)
     {
-        StringBuilder fullResponse = new StringBuilder(256);
-        if (status)
-            fullResponse.append('=');
-        else
-            fullResponse.append('?');
-        if (hasId)
-            fullResponse.append(id);
-        fullResponse.append(' ');
-        fullResponse.append(response);
-        if (response.length() == 0
-            || response.charAt(response.length() - 1) != '\n')
-            fullResponse.append('\n');
-        m_out.println(fullResponse);
-        if (m_log != null)
-            m_log.println(fullResponse);
+        printResponse(status, hasId, id, response);
     }
 
     /** Set quit flag for terminating command loop. */
@@ -273,6 +280,9 @@ public class GtpEngine
 
     private volatile boolean m_interrupted;
 
+    /** Last command received before the last interrupt. */
+    private volatile GtpCommand m_interruptedCommand;
+
     private boolean m_quit;
 
     private String m_name = "Unknown";
@@ -291,12 +301,56 @@ public class GtpEngine
     private final PrintStream m_log;
 
     private PrintStream m_out;
+
+    /** Reused buffer for formatting responses. */
+    private final StringBuilder m_response = new StringBuilder(256);
+
+    /** Invoke interruptCommand() from ReadThread.
+        @param lastCommand The last command received before the interrupt,
+        which is interrupted too, if it is still waiting in the queue. */
+    void interruptCommand(GtpCommand lastCommand)
+    {
+        m_interruptedCommand = lastCommand;
+        interruptCommand();
+    }
+
+    private void printResponse(boolean status, boolean hasId, int id,
+                               CharSequence response)
+    {
+        StringBuilder fullResponse = m_response;
+        fullResponse.setLength(0);
+        if (status)
+            fullResponse.append('=');
+        else
+            fullResponse.append('?');
+        if (hasId)
+            fullResponse.append(id);
+        fullResponse.append(' ');
+        char last = ' ';
+        int length = response.length();
+        for (int i = 0; i < length; ++i)
+        {
+            char c = response.charAt(i);
+            if (c == '\n' && last == '\n')
+                fullResponse.append(' ');
+            fullResponse.append(c);
+            last = c;
+        }
+        if (last != '\n')
+            fullResponse.append('\n');
+        fullResponse.append('\n');
+        m_out.print(fullResponse);
+        if (m_log != null)
+            m_log.print(fullResponse);
+    }
 }
 
 /** Thread reading the command stream.
     Reading is done in a seperate thread to allow the notification
     of Server about an asynchronous interrupt received using
-    the special comment line '# interrupt'. */
+    the special comment line '# interrupt'.
+    The thread reads ahead and parses the commands into a queue until the
+    end of the stream or the quit command is reached. */
 class ReadThread
     extends Thread
 {
@@ -307,31 +361,34 @@ class ReadThread
         m_log = log;
     }
 
-    public synchronized boolean endOfFile()
+    public boolean endOfFile()
     {
         return m_endOfFile;
     }
 
+    /** Wait for the next command.
+        @return The command or null at the end of the stream. */
     public GtpCommand getCommand()
     {
-        synchronized (this)
+        GtpCommand command;
+        try
         {
-            assert ! m_waitCommand;
-            m_waitCommand = true;
-            notifyAll();
-            try
-            {
-                wait();
-            }
-            catch (InterruptedException e)
-            {
-                System.err.println("Interrupted");
-            }
-            assert m_endOfFile || ! m_waitCommand;
-            GtpCommand result = m_command;
-            m_command = null;
-            return result;
+            command = m_queue.take();
+        }
+        catch (InterruptedException e)
+        {
+            System.err.println("Interrupted");
+            return null;
         }
+        if (command == END_OF_FILE)
+            return null;
+        return command;
+    }
+
+    /** Check if more commands were received. */
+    public boolean isCommandPending()
+    {
+        return ! m_queue.isEmpty();
     }
 
     public void run()
@@ -343,55 +400,44 @@ class ReadThread
                 String line = m_in.readLine();
                 if (line == null)
                 {
-                    synchronized (this)
-                    {
-                        m_endOfFile = true;
-                    }
-                }
-                else
-                {
-                    if (m_log)
-                        m_server.log(line);
-                    line = line.trim();
-                    if (line.equals("# interrupt"))
-                    {
-                        m_server.interruptCommand();
-                    }
-                    if (line.equals("") || line.charAt(0) == '#')
-                        continue;
-                }
-                synchronized (this)
-                {
-                    while (! m_waitCommand)
-                    {
-                        wait();
-                    }
-                    if (line == null)
-                        m_command = null;
-                    else
-                        m_command = new GtpCommand(line);
-                    notifyAll();
-                    m_waitCommand = false;
-                    if (m_command == null || m_command.isQuit())
-                        return;
+                    m_endOfFile = true;
+                    m_queue.put(END_OF_FILE);
+                    return;
                 }
+                if (m_log)
+                    m_server.log(line);
+                line = line.trim();
+                if (line.equals("# interrupt"))
+                    m_server.interruptCommand(m_lastCommand);
+                if (line.equals("") || line.charAt(0) == '#')
+                    continue;
+                GtpCommand command = new GtpCommand(line);
+                m_lastCommand = command;
+                m_queue.put(command);
+                if (command.isQuit())
+                    return;
             }
         }
         catch (Throwable e)
         {
             StringUtil.printException(e);
+            m_queue.offer(END_OF_FILE);
         }
     }
 
-    private boolean m_endOfFile;
+    /** Marks the end of the stream in the queue (compared by identity). */
+    private static final GtpCommand END_OF_FILE = new GtpCommand("eof");
 
-    private final boolean m_log;
+    private volatile boolean m_endOfFile;
 
-    private boolean m_waitCommand;
+    private final boolean m_log;
 
     private final BufferedReader m_in;
 
-    private GtpCommand m_command;
+    private GtpCommand m_lastCommand;
+
+    private final LinkedBlockingQueue<GtpCommand> m_queue =
+        new LinkedBlockingQueue<GtpCommand>();
 
     private final GtpEngine m_server;
 }
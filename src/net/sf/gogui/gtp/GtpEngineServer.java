@@ -0,0 +1,191 @@
+// GtpEngineServer.java
+
+package net.sf.gogui.gtp;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import net.sf.gogui.util.StringUtil;
+
+/** Serves GTP sessions with in-process engines over TCP.
+    Each incoming connection gets a new engine created by a factory, such
+    that the state of different sessions is isolated, and the engine runs
+    GtpEngine.mainLoop() on the socket streams until the connection is
+    closed or the quit command is received.
+    The sessions run on a shared pool of threads. If all threads are busy,
+    new connections are accepted but wait until a session ends. */
+public final class GtpEngineServer
+{
+    /** Creates an engine for a new session. */
+    public interface EngineFactory
+    {
+        /** Create an engine.
+            Called from the threads of the server.
+            @throws Exception If the engine cannot be created, the
+            connection is closed. */
+        GtpEngine create() throws Exception;
+    }
+
+    /** Constructor.
+        Binds the server socket. Connections are accepted by run().
+        @param factory The factory for the engines.
+        @param port The port, zero for an automatically allocated port.
+        @param maxSessions Maximum number of concurrently served sessions.
+        @param verbose Print connections to stderr. */
+    public GtpEngineServer(EngineFactory factory, int port, int maxSessions,
+                           boolean verbose)
+        throws IOException
+    {
+        assert maxSessions > 0;
+        m_factory = factory;
+        m_verbose = verbose;
+        m_serverSocket = new ServerSocket(port);
+        m_executor = Executors.newFixedThreadPool(maxSessions);
+    }
+
+    /** Stop accepting connections and close all sessions. */
+    public void close()
+    {
+        synchronized (m_sockets)
+        {
+            // Sockets accepted after this are closed in run()
+            m_isClosed = true;
+        }
+        try
+        {
+            m_serverSocket.close();
+        }
+        catch (IOException e)
+        {
+        }
+        m_executor.shutdownNow();
+        ArrayList<Socket> sockets;
+        synchronized (m_sockets)
+        {
+            sockets = new ArrayList<Socket>(m_sockets);
+        }
+        for (Socket socket : sockets)
+            closeSocket(socket);
+    }
+
+    /** Get the number of connections that are open. */
+    public int getNumberSessions()
+    {
+        synchronized (m_sockets)
+        {
+            return m_sockets.size();
+        }
+    }
+
+    /** Get the local port of the server socket. */
+    public int getPort()
+    {
+        return m_serverSocket.getLocalPort();
+    }
+
+    /** Accept connections until close() is called.
+        @throws IOException If accepting a connection fails. */
+    public void run() throws IOException
+    {
+        while (true)
+        {
+            final Socket socket;
+            try
+            {
+                socket = m_serverSocket.accept();
+            }
+            catch (SocketException e)
+            {
+                if (m_isClosed)
+                    return;
+                throw e;
+            }
+            if (m_verbose)
+                System.err.println("Connected with "
+                                   + socket.getInetAddress());
+            synchronized (m_sockets)
+            {
+                if (m_isClosed)
+                {
+                    closeSocket(socket);
+                    return;
+                }
+                m_sockets.add(socket);
+            }
+            try
+            {
+                m_executor.execute(new Runnable() {
+                        public void run()
+                        {
+                            runSession(socket);
+                        }
+                    });
+            }
+            catch (RejectedExecutionException e)
+            {
+                // The executor was shut down by close()
+                synchronized (m_sockets)
+                {
+                    m_sockets.remove(socket);
+                }
+                closeSocket(socket);
+                return;
+            }
+        }
+    }
+
+    private volatile boolean m_isClosed;
+
+    private final boolean m_verbose;
+
+    private final EngineFactory m_factory;
+
+    private final ExecutorService m_executor;
+
+    private final HashSet<Socket> m_sockets = new HashSet<Socket>();
+
+    private final ServerSocket m_serverSocket;
+
+    private void closeSocket(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    private void runSession(Socket socket)
+    {
+        try
+        {
+            GtpEngine engine = m_factory.create();
+            engine.mainLoop(socket.getInputStream(),
+                            socket.getOutputStream());
+        }
+        catch (Throwable t)
+        {
+            if (! m_isClosed)
+                StringUtil.printException(t);
+        }
+        finally
+        {
+            closeSocket(socket);
+            synchronized (m_sockets)
+            {
+                m_sockets.remove(socket);
+            }
+            if (m_verbose)
+                System.err.println("Closed connection with "
+                                   + socket.getInetAddress());
+        }
+    }
+}
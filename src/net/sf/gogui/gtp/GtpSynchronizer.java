@@ -16,6 +16,7 @@ import static net.sf.gogui.go.GoColor.WHITE_BLACK;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.go.Move;
+import net.sf.gogui.go.PointList;
 import net.sf.gogui.util.ObjectUtil;
 
 /** Synchronizes a GTP engine with a Go board.
@@ -60,6 +61,8 @@ public class GtpSynchronizer
         throws GtpError
     {
         initSupportedCommands();
+        // The supported commands determine how setup stones are transmitted
+        m_targetState = null;
         m_isOutOfSync = true;
         int size = board.getSize();
         m_engineState = null;
@@ -156,6 +159,14 @@ public class GtpSynchronizer
         }
     }
 
+    /** Maximum number of play commands sent without reading the
+        responses.
+        Clients created with direct reading do not read the responses
+        while sending a batch, so the responses of a batch must fit into
+        the buffer of the operating system for the output stream of the
+        program (see GtpClient). */
+    private static final int MAX_BATCH_SIZE = 64;
+
     private boolean m_fillPasses;
 
     private boolean m_isOutOfSync;
@@ -182,20 +193,94 @@ public class GtpSynchronizer
 
     private Board m_engineState;
 
+    /** State that the engine should have for the last board passed to
+        computeTargetState().
+        Updated incrementally, null if it needs to be computed again. */
+    private Board m_targetState;
+
+    /** Number of moves of the last board passed to computeTargetState(). */
+    private int m_numberBoardMoves;
+
+    /** Number of moves in m_targetState after a number of moves of the
+        board.
+        Differs from the number of moves of the board by the setup stones
+        transmitted as moves and by filled in passes. */
+    private int[] m_numberTargetMoves = new int[256];
+
+    /** Move hash codes of the board for a number of moves.
+        Used for finding the moves of the board that are already included
+        in m_targetState.
+        @see ConstBoard#getMoveHashCode */
+    private long[] m_boardMoveHashCodes = new long[256];
+
+    /** Setup of the last board passed to computeTargetState(). */
+    private ConstPointList m_setupBlack;
+
+    private ConstPointList m_setupWhite;
+
+    private GoColor m_setupPlayer;
+
+    private boolean m_isSetupHandicap;
+
     /** Computes all actions to execute.
         Replaces setup stones by moves, if setup is not supported.
-        Fills in passes between moves of same color if m_fillPasses. */
+        Fills in passes between moves of same color if m_fillPasses.
+        The target state is updated incrementally from the state computed
+        at the last call; only the moves of the board that differ from the
+        last board are undone and played. The returned board is reused at
+        the next call. */
     private Board computeTargetState(ConstBoard board) throws GtpError
     {
+        if (m_targetState == null
+            || board.getSize() != m_targetState.getSize()
+            || isBoardSetupDifferent(board))
+            initTargetState(board);
+        int numberMoves = board.getNumberMoves();
+        int numberCommonMoves =
+            findNumberCommonMoves(board, m_boardMoveHashCodes,
+                                  m_numberBoardMoves);
+        m_targetState.undo(m_targetState.getNumberMoves()
+                           - m_numberTargetMoves[numberCommonMoves]);
+        if (numberMoves >= m_numberTargetMoves.length)
+        {
+            int length = Math.max(numberMoves + 1,
+                                  2 * m_numberTargetMoves.length);
+            int[] numberTargetMoves = new int[length];
+            System.arraycopy(m_numberTargetMoves, 0, numberTargetMoves, 0,
+                             numberCommonMoves + 1);
+            m_numberTargetMoves = numberTargetMoves;
+            long[] boardMoveHashCodes = new long[length];
+            System.arraycopy(m_boardMoveHashCodes, 0, boardMoveHashCodes, 0,
+                             numberCommonMoves + 1);
+            m_boardMoveHashCodes = boardMoveHashCodes;
+        }
+        for (int i = numberCommonMoves; i < numberMoves; ++i)
+        {
+            Move move = board.getMove(i);
+            GoColor toMove = m_targetState.getToMove();
+            if (m_fillPasses && move.getColor() != toMove)
+                m_targetState.play(Move.getPass(toMove));
+            m_targetState.play(move);
+            m_numberTargetMoves[i + 1] = m_targetState.getNumberMoves();
+            m_boardMoveHashCodes[i + 1] = board.getMoveHashCode(i + 1);
+        }
+        m_numberBoardMoves = numberMoves;
+        return m_targetState;
+    }
+
+    /** Initialize the target state with the setup of the board. */
+    private void initTargetState(ConstBoard board) throws GtpError
+    {
+        m_targetState = null;
         int size = board.getSize();
         Board targetState = new Board(size);
         ConstPointList setupBlack = board.getSetup(BLACK);
         ConstPointList setupWhite = board.getSetup(WHITE);
         GoColor setupPlayer = board.getSetupPlayer();
+        boolean isHandicap = board.isSetupHandicap();
         if (setupBlack.size() > 0 || setupWhite.size() > 0)
         {
             targetState.clear();
-            boolean isHandicap = board.isSetupHandicap();
             if (isHandicap && m_isSupportedHandicap)
                 targetState.setupHandicap(setupBlack);
             else if (m_isSupportedSetup)
@@ -227,15 +312,14 @@ public class GtpSynchronizer
                 }
             }
         }
-        for (int i = 0; i < board.getNumberMoves(); ++i)
-        {
-            Move move = board.getMove(i);
-            GoColor toMove = targetState.getToMove();
-            if (m_fillPasses && move.getColor() != toMove)
-                targetState.play(Move.getPass(toMove));
-            targetState.play(move);
-        }
-        return targetState;
+        m_setupBlack = new PointList(setupBlack);
+        m_setupWhite = new PointList(setupWhite);
+        m_setupPlayer = setupPlayer;
+        m_isSetupHandicap = isHandicap;
+        m_numberTargetMoves[0] = targetState.getNumberMoves();
+        m_boardMoveHashCodes[0] = 0L;
+        m_numberBoardMoves = 0;
+        m_targetState = targetState;
     }
 
     /** Compute number of moves to undo and moves to execute.
@@ -251,18 +335,68 @@ public class GtpSynchronizer
         return numberUndo;
     }
 
+    /** Find the number of common moves of the target state and the
+        engine state.
+        Compares the move hash codes with a binary search, which works,
+        because the sequences have equal hash codes for all numbers of moves
+        up to the number of common moves and (up to hash collisions)
+        different ones after it. */
     private int findNumberCommonMoves(ConstBoard targetState)
     {
-        int i;
-        for (i = 0; i < targetState.getNumberMoves(); ++i)
+        int max = Math.min(targetState.getNumberMoves(),
+                           m_engineState.getNumberMoves());
+        if (targetState.getMoveHashCode(max)
+            == m_engineState.getMoveHashCode(max))
+            return max;
+        // Invariant: hash codes are equal for min and different for max
+        int min = 0;
+        while (max - min > 1)
+        {
+            int middle = (min + max) / 2;
+            if (targetState.getMoveHashCode(middle)
+                == m_engineState.getMoveHashCode(middle))
+                min = middle;
+            else
+                max = middle;
+        }
+        return min;
+    }
+
+    /** Find the number of common moves of a board and the last board
+        passed to computeTargetState().
+        Uses a binary search on the move hash codes like
+        findNumberCommonMoves(ConstBoard).
+        @param board The board.
+        @param moveHashCodes The move hash codes of the last board for
+        numbers of moves from 0 to numberMoves.
+        @param numberMoves The number of moves of the last board.
+        @return The number of common moves. */
+    private static int findNumberCommonMoves(ConstBoard board,
+                                             long[] moveHashCodes,
+                                             int numberMoves)
+    {
+        int max = Math.min(board.getNumberMoves(), numberMoves);
+        if (board.getMoveHashCode(max) == moveHashCodes[max])
+            return max;
+        // Invariant: hash codes are equal for min and different for max
+        int min = 0;
+        while (max - min > 1)
         {
-            if (i >= m_engineState.getNumberMoves())
-                break;
-            Move move = (Move)targetState.getMove(i);
-            if (! move.equals(m_engineState.getMove(i)))
-                break;
+            int middle = (min + max) / 2;
+            if (board.getMoveHashCode(middle) == moveHashCodes[middle])
+                min = middle;
+            else
+                max = middle;
         }
-        return i;
+        return min;
+    }
+
+    private boolean isBoardSetupDifferent(ConstBoard board)
+    {
+        return (board.isSetupHandicap() != m_isSetupHandicap
+                || ! ObjectUtil.equals(board.getSetupPlayer(), m_setupPlayer)
+                || ! board.getSetup(BLACK).equals(m_setupBlack)
+                || ! board.getSetup(WHITE).equals(m_setupWhite));
     }
 
     private boolean isSetupDifferent(ConstBoard targetState)
@@ -311,6 +445,8 @@ public class GtpSynchronizer
             for (int i = 0; i < moves.size(); ++i)
                 m_engineState.play(moves.get(i));
         }
+        else if (moves.size() > 1 && m_gtp instanceof GtpClient)
+            playPipelined((GtpClient)m_gtp, moves);
         else
         {
             for (int i = 0; i < moves.size(); ++i)
@@ -321,6 +457,47 @@ public class GtpSynchronizer
         }
     }
 
+    /** Send play commands without waiting for each response.
+        The commands are sent in batches of at most MAX_BATCH_SIZE commands
+        and the responses of a batch are read before the next batch is
+        sent.
+        If a command fails, the engine has still executed the later
+        commands, so the moves of the successful commands are played in the
+        engine state and the first error is thrown after all responses were
+        read. */
+    private void playPipelined(GtpClient gtp, ArrayList<Move> moves)
+        throws GtpError
+    {
+        GtpError error = null;
+        ArrayList<String> commands = new ArrayList<String>(MAX_BATCH_SIZE);
+        for (int start = 0; start < moves.size(); start += MAX_BATCH_SIZE)
+        {
+            int end = Math.min(start + MAX_BATCH_SIZE, moves.size());
+            commands.clear();
+            for (int i = start; i < end; ++i)
+                commands.add(gtp.getCommandPlay(moves.get(i)));
+            ArrayList<GtpClient.AsyncResponse> responses =
+                gtp.sendBatch(commands);
+            for (int i = start; i < end; ++i)
+            {
+                try
+                {
+                    responses.get(i - start).get();
+                }
+                catch (GtpError e)
+                {
+                    if (error == null)
+                        error = e;
+                    continue;
+                }
+                m_engineState.play(moves.get(i));
+                updateListener();
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
     private void sendGameInfo(Komi komi, TimeSettings timeSettings)
     {
         if (! ObjectUtil.equals(komi, m_komi))
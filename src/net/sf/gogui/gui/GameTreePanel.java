@@ -31,6 +31,7 @@ import javax.swing.SwingConstants;
 import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.game.SubtreeIterator;
 import static net.sf.gogui.gui.I18n.i18n;
 
 /** Panel displaying a game tree. */
@@ -681,10 +682,10 @@ public class GameTreePanel
     {
         boolean changed = false;
         boolean currentChanged = false;
-        int depth = NodeUtil.getDepth(root);
-        ConstNode node = root;
-        while (node != null)
+        SubtreeIterator i = new SubtreeIterator(root);
+        while (i.hasNext())
         {
+            ConstNode node = i.next();
             if (node == m_currentNode)
             {
                 m_currentNode = root;
@@ -693,7 +694,6 @@ public class GameTreePanel
             }
             if (m_isExpanded.remove(node))
                 changed = true;
-            node = NodeUtil.nextNode(node, depth);
         }
         if (currentChanged)
         {
@@ -770,14 +770,10 @@ public class GameTreePanel
                 return;
         }
         boolean changed = false;
-        ConstNode node = root;
-        int depth = NodeUtil.getDepth(node);
-        while (node != null)
-        {
-            if (m_isExpanded.add(node))
+        SubtreeIterator i = new SubtreeIterator(root);
+        while (i.hasNext())
+            if (m_isExpanded.add(i.next()))
                 changed = true;
-            node = NodeUtil.nextNode(node, depth);
-        }
         if (changed)
         {
             update(m_tree, m_currentNode, m_minWidth, m_minHeight);
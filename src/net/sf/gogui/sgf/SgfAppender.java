@@ -0,0 +1,281 @@
+// SgfAppender.java
+
+package net.sf.gogui.sgf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.ConstNode;
+
+/** Write a game tree to a file incrementally while the game is played.
+    Keeps the file open and appends the nodes that were added to the main
+    variation since the last call of write(), such that recording a game
+    costs I/O proportional to the new nodes and not to the size of the
+    game. The last node written before is rewritten if its properties
+    changed, for example if a comment was added after the move.
+    The file is rewritten completely with SgfWriter if the game tree has
+    variations, if a node of the main variation was removed or replaced,
+    or if the root node changed. Changes to the properties of other nodes
+    are not detected; call invalidate() after such changes.
+    The file content is the same as written by SgfWriter. */
+public class SgfAppender
+{
+    /** Constructor.
+        Opens the file and truncates it. The file is written at the first
+        call of write().
+        @param file The file.
+        @param application Application name for AP property.
+        @param version If not null, version appended to application name in
+        AP property.
+        @throws IOException If opening the file fails. */
+    public SgfAppender(File file, String application, String version)
+        throws IOException
+    {
+        m_application = application;
+        m_version = version;
+        m_file = new RandomAccessFile(file, "rw");
+        m_file.setLength(0);
+    }
+
+    /** Close the file. */
+    public void close() throws IOException
+    {
+        m_file.close();
+    }
+
+    /** Force a complete rewrite of the file at the next call of write(). */
+    public void invalidate()
+    {
+        m_nodes.clear();
+    }
+
+    /** Update the file after changes of the game tree.
+        Checks the main variation for changes, which needs time proportional
+        to the number of nodes, but does not write the nodes that did not
+        change.
+        @param tree The game tree.
+        @throws IOException If writing the file fails. */
+    public void write(ConstGameTree tree) throws IOException
+    {
+        ConstNode root = tree.getRootConst();
+        int numberNodes = m_nodes.size();
+        if (numberNodes == 0 || root != m_nodes.get(0)
+            || tree.getBoardSize() != m_size)
+        {
+            rewrite(tree);
+            return;
+        }
+        for (int i = 1; i < numberNodes; ++i)
+            if (m_nodes.get(i - 1).getNumberChildren() != 1
+                || m_nodes.get(i - 1).getChildConst() != m_nodes.get(i))
+            {
+                rewrite(tree);
+                return;
+            }
+        ConstNode last = m_nodes.get(numberNodes - 1);
+        if (! isMainVariation(last))
+        {
+            rewrite(tree);
+            return;
+        }
+        if (numberNodes > 1)
+        {
+            m_writer.setLine("");
+            m_writer.printRoot(root, m_application, m_version);
+            if (! Arrays.equals(getBytes(), m_rootBytes)
+                || ! m_writer.getLine().equals(m_rootLine))
+            {
+                rewrite(tree);
+                return;
+            }
+        }
+        // Rewrite the last node, if it changed
+        m_writer.setLine(m_lastLine);
+        printNode(last, numberNodes == 1);
+        byte[] lastBytes = getBytes();
+        long offset;
+        if (Arrays.equals(lastBytes, m_lastBytes)
+            && m_writer.getLine().equals(m_line))
+        {
+            if (last.getChildConst() == null)
+                return;
+            offset = m_offset;
+        }
+        else
+        {
+            offset = m_lastOffset;
+            m_buffer.write(lastBytes, 0, lastBytes.length);
+            m_lastBytes = lastBytes;
+            m_offset = m_lastOffset + lastBytes.length;
+            m_line = m_writer.getLine();
+            if (numberNodes == 1)
+            {
+                m_rootBytes = m_lastBytes;
+                m_rootLine = m_line;
+            }
+        }
+        m_writer.setLine(m_line);
+        ConstNode node = last.getChildConst();
+        while (node != null)
+        {
+            appendNode(node);
+            node = node.getChildConst();
+        }
+        writeEnd(offset);
+    }
+
+    private int m_size;
+
+    /** Start of the current line before the last node. */
+    private long m_lastOffset;
+
+    /** Start of the current line after the last node. */
+    private long m_offset;
+
+    private final String m_application;
+
+    private final String m_version;
+
+    /** Current line before the last node. */
+    private String m_lastLine;
+
+    /** Current line after the last node. */
+    private String m_line;
+
+    /** Current line after the root node. */
+    private String m_rootLine;
+
+    /** Completed lines written by the last node. */
+    private byte[] m_lastBytes;
+
+    /** Completed lines written by the root node. */
+    private byte[] m_rootBytes;
+
+    /** Nodes of the main variation in the file.
+        Empty if the file needs to be rewritten completely. */
+    private final ArrayList<ConstNode> m_nodes = new ArrayList<ConstNode>();
+
+    /** Bytes to write at the next call of writeEnd(). */
+    private final ByteArrayOutputStream m_buffer =
+        new ByteArrayOutputStream();
+
+    /** Receives the output of m_writer. */
+    private final ByteArrayOutputStream m_output =
+        new ByteArrayOutputStream();
+
+    private PrintStream m_out;
+
+    private final RandomAccessFile m_file;
+
+    private SgfWriter m_writer;
+
+    /** Print a node to m_writer and add it to m_buffer.
+        The current line of m_writer must be the current line after the
+        previous node. */
+    private void appendNode(ConstNode node)
+    {
+        m_lastOffset = m_offset;
+        m_lastLine = m_writer.getLine();
+        printNode(node, false);
+        m_lastBytes = getBytes();
+        m_buffer.write(m_lastBytes, 0, m_lastBytes.length);
+        m_offset += m_lastBytes.length;
+        m_line = m_writer.getLine();
+        m_nodes.add(node);
+    }
+
+    /** Get the completed lines written by m_writer and reset its
+        output. */
+    private byte[] getBytes()
+    {
+        m_out.flush();
+        byte[] result = m_output.toByteArray();
+        m_output.reset();
+        return result;
+    }
+
+    private static boolean isMainVariation(ConstNode node)
+    {
+        while (node != null)
+        {
+            if (node.getNumberChildren() > 1)
+                return false;
+            node = node.getChildConst();
+        }
+        return true;
+    }
+
+    private void printNode(ConstNode node, boolean isRoot)
+    {
+        if (isRoot)
+            m_writer.printRoot(node, m_application, m_version);
+        else
+            m_writer.printMainVariationNode(node);
+    }
+
+    private void rewrite(ConstGameTree tree) throws IOException
+    {
+        m_nodes.clear();
+        m_buffer.reset();
+        ConstNode root = tree.getRootConst();
+        if (! isMainVariation(root))
+        {
+            // Cannot append to a tree with variations
+            new SgfWriter(m_buffer, tree, m_application, m_version);
+            m_file.seek(0);
+            m_file.write(m_buffer.toByteArray());
+            m_file.setLength(m_buffer.size());
+            m_buffer.reset();
+            return;
+        }
+        m_size = tree.getBoardSize();
+        m_output.reset();
+        try
+        {
+            m_out = new PrintStream(m_output, false, SgfWriter.ENCODING);
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // UTF-8 should be supported by every Java implementation
+            assert false;
+        }
+        m_writer = new SgfWriter(m_out, m_size);
+        m_lastOffset = 0;
+        m_lastLine = "";
+        printNode(root, true);
+        m_lastBytes = getBytes();
+        m_rootBytes = m_lastBytes;
+        m_buffer.write(m_lastBytes, 0, m_lastBytes.length);
+        m_offset = m_lastBytes.length;
+        m_line = m_writer.getLine();
+        m_rootLine = m_line;
+        m_nodes.add(root);
+        ConstNode node = root.getChildConst();
+        while (node != null)
+        {
+            appendNode(node);
+            node = node.getChildConst();
+        }
+        writeEnd(0);
+    }
+
+    /** Write m_buffer and the end of the game tree.
+        @param offset The file position for the start of m_buffer. */
+    private void writeEnd(long offset) throws IOException
+    {
+        m_writer.setLine(m_line);
+        m_writer.printEnd();
+        byte[] end = getBytes();
+        m_buffer.write(end, 0, end.length);
+        m_file.seek(offset);
+        m_file.write(m_buffer.toByteArray());
+        m_file.setLength(offset + m_buffer.size());
+        m_buffer.reset();
+    }
+}
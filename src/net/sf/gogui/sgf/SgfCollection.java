@@ -0,0 +1,256 @@
+// SgfCollection.java
+
+package net.sf.gogui.sgf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import net.sf.gogui.game.GameTree;
+
+/** SGF file with multiple game trees.
+    The file is memory-mapped and scanned once with SgfParser to find the
+    location of the game trees. A game is only parsed, when it is requested
+    with read() or getParser(), so iterating over the games by index does
+    not keep more than one game tree in memory.
+    The index of the game locations can be stored in an index file next to
+    the SGF file (see getIndexFile()), which avoids the scan when the
+    collection is opened again. The index file is ignored, if the size or
+    modification time of the SGF file changed. */
+public final class SgfCollection
+{
+    /** Open a collection without using an index file.
+        @param file The SGF file.
+        @throws IOException If reading the file fails.
+        @throws SgfError If the file has a syntax error. */
+    public SgfCollection(File file) throws IOException, SgfError
+    {
+        this(file, false);
+    }
+
+    /** Open a collection.
+        @param file The SGF file.
+        @param useIndexFile Read the index from the index file, if it is up
+        to date. Otherwise, the file is scanned and the index file is
+        written. Failures to write the index file are ignored.
+        @throws IOException If reading the file fails.
+        @throws SgfError If the file has a syntax error. */
+    public SgfCollection(File file, boolean useIndexFile)
+        throws IOException, SgfError
+    {
+        m_file = file;
+        FileInputStream in = new FileInputStream(file);
+        ByteBuffer buffer;
+        try
+        {
+            FileChannel channel = in.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                 channel.size());
+        }
+        finally
+        {
+            in.close();
+        }
+        m_length = file.length();
+        m_lastModified = file.lastModified();
+        SgfParser parser = new SgfParser(buffer, null);
+        m_buffer = parser.getBuffer();
+        // Games in converted content are always UTF-8, otherwise each game
+        // can have its own charset
+        m_charset = (m_buffer != buffer ? "UTF-8" : null);
+        if (useIndexFile && readIndex())
+            return;
+        scan(parser);
+        if (useIndexFile)
+        {
+            try
+            {
+                writeIndex();
+            }
+            catch (IOException e)
+            {
+            }
+        }
+    }
+
+    /** Get the name of the index file for a SGF file.
+        @return The file with the extension .index appended to the name of
+        the SGF file. */
+    public static File getIndexFile(File file)
+    {
+        return new File(file.getPath() + ".index");
+    }
+
+    /** Get the number of games in the collection. */
+    public int getNumberGames()
+    {
+        return m_numberGames;
+    }
+
+    /** Get a parser for a game.
+        @param index The index of the game.
+        @return A parser that returns the events of the game tree. */
+    public SgfParser getParser(int index)
+    {
+        return new SgfParser(getData(index), m_charset);
+    }
+
+    /** Read a game.
+        @param index The index of the game.
+        @param isLazy Decode properties lazily (see SgfReader).
+        @return The reader with the game tree and the warnings.
+        @throws SgfError If the game cannot be read. */
+    public SgfReader read(int index, boolean isLazy) throws SgfError
+    {
+        return new SgfReader(getData(index), m_charset, m_file, isLazy);
+    }
+
+    /** Read the game tree of a game.
+        @param index The index of the game.
+        @throws SgfError If the game cannot be read. */
+    public GameTree readTree(int index) throws SgfError
+    {
+        return read(index, false).getTree();
+    }
+
+    /** Identifier at the start of an index file. */
+    private static final int INDEX_MAGIC = 0x53474649;
+
+    private static final int INDEX_VERSION = 1;
+
+    private int m_numberGames;
+
+    private final long m_lastModified;
+
+    private final long m_length;
+
+    /** Start (position of the '(') and end (position after the ')') of
+        each game in m_buffer.
+        Game i is at index 2 * i and 2 * i + 1. */
+    private int[] m_locations = new int[256];
+
+    /** Character set for the games or null for automatic detection. */
+    private final String m_charset;
+
+    private final ByteBuffer m_buffer;
+
+    private final File m_file;
+
+    private void addGame(int start, int end)
+    {
+        if (2 * m_numberGames == m_locations.length)
+        {
+            int[] locations = new int[2 * m_locations.length];
+            System.arraycopy(m_locations, 0, locations, 0,
+                             m_locations.length);
+            m_locations = locations;
+        }
+        m_locations[2 * m_numberGames] = start;
+        m_locations[2 * m_numberGames + 1] = end;
+        ++m_numberGames;
+    }
+
+    private ByteBuffer getData(int index)
+    {
+        if (index < 0 || index >= m_numberGames)
+            throw new IndexOutOfBoundsException("Invalid game index "
+                                                + index);
+        ByteBuffer data = m_buffer.duplicate();
+        data.limit(m_locations[2 * index + 1]);
+        data.position(m_locations[2 * index]);
+        return data;
+    }
+
+    /** Read the index file.
+        @return false, if the index file does not exist, is invalid or not
+        up to date. */
+    private boolean readIndex()
+    {
+        File indexFile = getIndexFile(m_file);
+        if (! indexFile.exists())
+            return false;
+        try
+        {
+            DataInputStream in =
+                new DataInputStream(new BufferedInputStream(
+                                        new FileInputStream(indexFile)));
+            try
+            {
+                if (in.readInt() != INDEX_MAGIC
+                    || in.readInt() != INDEX_VERSION
+                    || in.readLong() != m_length
+                    || in.readLong() != m_lastModified
+                    || in.readInt() != m_buffer.limit())
+                    return false;
+                int numberGames = in.readInt();
+                m_numberGames = 0;
+                for (int i = 0; i < numberGames; ++i)
+                {
+                    int start = in.readInt();
+                    int end = in.readInt();
+                    if (start < 0 || end < start || end > m_buffer.limit())
+                        return false;
+                    addGame(start, end);
+                }
+                return true;
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /** Find the locations of the games.
+        Syntax errors are reported only for the structure of the game
+        trees; the values of the properties are not decoded. */
+    private void scan(SgfParser parser) throws IOException, SgfError
+    {
+        m_numberGames = 0;
+        int start = 0;
+        while (true)
+        {
+            SgfParser.Event event = parser.next();
+            if (event == SgfParser.Event.END)
+                break;
+            if (event == SgfParser.Event.START_GAME_TREE
+                && parser.getDepth() == 1)
+                start = parser.getTreeStart();
+            else if (event == SgfParser.Event.END_GAME_TREE
+                     && parser.getDepth() == 0)
+                addGame(start, parser.getPosition());
+        }
+    }
+
+    private void writeIndex() throws IOException
+    {
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(
+                               new FileOutputStream(getIndexFile(m_file))));
+        try
+        {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(m_length);
+            out.writeLong(m_lastModified);
+            out.writeInt(m_buffer.limit());
+            out.writeInt(m_numberGames);
+            for (int i = 0; i < 2 * m_numberGames; ++i)
+                out.writeInt(m_locations[i]);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+// SgfHandler.java
+
+package net.sf.gogui.sgf;
+
+import java.util.ArrayList;
+
+/** Callback for the events of SgfParser.parse().
+    The events for a file with one game tree are:
+    startGameTree, then for each node startNode, property for each
+    property, endNode, then startGameTree and endGameTree for each
+    variation with the events of its nodes in between, and endGameTree
+    at the end. */
+public interface SgfHandler
+{
+    /** Start of a game tree or variation ("("). */
+    void startGameTree() throws SgfError;
+
+    /** End of a game tree or variation (")"). */
+    void endGameTree() throws SgfError;
+
+    /** Start of a node (";"). */
+    void startNode() throws SgfError;
+
+    /** Property of the current node.
+        @param name The property name in upper case, with obsolete long
+        names of standard properties replaced by their short name.
+        The string is interned.
+        @param values The values with escape characters removed and
+        linebreaks converted to '\n'. At least one value. */
+    void property(String name, ArrayList<String> values) throws SgfError;
+
+    /** End of a node. */
+    void endNode() throws SgfError;
+}
@@ -0,0 +1,878 @@
+// SgfParser.java
+
+package net.sf.gogui.sgf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import org.mozilla.intl.chardet.nsDetector;
+import org.mozilla.intl.chardet.nsICharsetDetectionObserver;
+import org.mozilla.intl.chardet.nsPSMDetector;
+
+/** Streaming SGF parser.
+    Reports the structure of SGF files as a sequence of events without
+    building a game tree. The events can be pulled with next() or pushed to
+    a SgfHandler with parse().
+    The parser works on the bytes of the input. Property names with one or
+    two letters are recognized without creating objects. Property values
+    are only decoded, if they are requested with getValues(), and values
+    with only ASCII characters are decoded without the character set
+    decoder. Files are memory-mapped and streams are read in blocks, so the
+    memory used does not depend on the size of the input. An exception are
+    character sets, in which the bytes of the SGF syntax characters can be
+    part of multi-byte characters (e.g. Shift_JIS); the input is converted
+    to UTF-8 before parsing in this case.
+    The parser accepts files with multiple game trees (collections). It
+    does not interpret property values; see SgfReader for reading a
+    game tree. */
+public final class SgfParser
+{
+    /** Parser events. */
+    public enum Event
+    {
+        /** Start of a game tree or variation. */
+        START_GAME_TREE,
+
+        /** End of a game tree or variation. */
+        END_GAME_TREE,
+
+        /** Start of a node. */
+        START_NODE,
+
+        /** Property of the current node.
+            See getName() and getValues(). */
+        PROPERTY,
+
+        /** End of a node. */
+        END_NODE,
+
+        /** End of the input. */
+        END
+    }
+
+    /** Construct parser for a buffer.
+        Parses the bytes from the position to the limit of the buffer.
+        The buffer must not be modified while the parser is used.
+        @param buffer The buffer.
+        @param charset The character set of the buffer content or null
+        for automatic detection (see getCharset()). Unsupported character
+        sets are replaced by ISO-8859-1 (the default character set of the
+        SGF standard). */
+    public SgfParser(ByteBuffer buffer, String charset)
+    {
+        m_buffer = buffer;
+        m_pos = buffer.position();
+        m_limit = buffer.limit();
+        if (charset == null)
+            charset = getCharset(buffer);
+        m_charset = getSupportedCharset(charset);
+        if (! isAsciiCompatible(m_charset))
+            convertToUtf8();
+    }
+
+    /** Construct parser for a file with automatic charset detection.
+        The file is memory-mapped.
+        @param file The file. */
+    public SgfParser(File file) throws IOException
+    {
+        this(map(file), null);
+    }
+
+    /** Construct parser for a stream with automatic charset detection.
+        Detects the charset from the start of the stream (see
+        getCharset()). The stream is read in blocks.
+        @param in The stream. */
+    public SgfParser(InputStream in) throws IOException
+    {
+        m_in = in;
+        m_array = new byte[MAX_DETECT];
+        m_buffer = ByteBuffer.wrap(m_array);
+        while (m_limit < MAX_DETECT && fill());
+        m_charset = getCharset(ByteBuffer.wrap(m_array, 0, m_limit));
+        if (! isAsciiCompatible(m_charset))
+        {
+            m_mark = 0;
+            while (fill());
+            m_mark = -1;
+            m_in = null;
+            m_buffer = ByteBuffer.wrap(m_array, 0, m_limit);
+            convertToUtf8();
+        }
+    }
+
+    /** Get the nesting depth of game trees.
+        @return The number of game trees or variations that were started
+        and not ended, including the one of the current event. */
+    public int getDepth()
+    {
+        return m_depth;
+    }
+
+    /** Get the name of the property of the last PROPERTY event.
+        @see SgfHandler#property */
+    public String getName()
+    {
+        return m_name;
+    }
+
+    /** Get the number of values of the property of the last PROPERTY
+        event. */
+    public int getNumberValues()
+    {
+        return m_numberValues;
+    }
+
+    /** Get the values of the property of the last PROPERTY event.
+        The values are decoded on the first call for the event, so callers
+        that only need some properties should call this function only for
+        those.
+        @see SgfHandler#property */
+    public ArrayList<String> getValues()
+    {
+        if (m_values == null && m_name != null)
+        {
+            m_values = new ArrayList<String>(m_numberValues);
+            int pos = m_valuesStart;
+            while (m_values.size() < m_numberValues)
+            {
+                while (m_buffer.get(pos) != '[')
+                    ++pos;
+                pos = decodeValue(pos, m_values);
+            }
+        }
+        return m_values;
+    }
+
+    /** Get warnings that occurred during parsing.
+        @return String with warning messages or null if no warnings. */
+    public String getWarnings()
+    {
+        if (m_warnings.isEmpty())
+            return null;
+        StringBuilder result = new StringBuilder(m_warnings.size() * 80);
+        for (String s : m_warnings)
+        {
+            result.append(s);
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Get the next event.
+        @return The next event; END, if there are no more game trees in the
+        input. END is also returned on further calls after the end.
+        @throws SgfError If the input has a syntax error.
+        @throws IOException If reading the input fails. */
+    public Event next() throws SgfError, IOException
+    {
+        m_name = null;
+        m_values = null;
+        m_mark = -1;
+        if (m_numberUnclosed > 0)
+        {
+            --m_numberUnclosed;
+            --m_depth;
+            return Event.END_GAME_TREE;
+        }
+        if (m_isInNode)
+        {
+            if (readProp())
+                return Event.PROPERTY;
+            m_isInNode = false;
+            return Event.END_NODE;
+        }
+        if (m_depth == 0)
+        {
+            if (! findGameTree())
+                return Event.END;
+            ++m_depth;
+            return Event.START_GAME_TREE;
+        }
+        int c = nextToken();
+        if (c == '(')
+        {
+            ++m_depth;
+            return Event.START_GAME_TREE;
+        }
+        if (c == ')')
+        {
+            --m_depth;
+            return Event.END_GAME_TREE;
+        }
+        if (c < 0)
+        {
+            setWarning("Game tree not closed");
+            m_numberUnclosed = m_depth - 1;
+            --m_depth;
+            return Event.END_GAME_TREE;
+        }
+        if (c != ';')
+            throw new SgfError("Next node expected");
+        m_isInNode = true;
+        return Event.START_NODE;
+    }
+
+    /** Parse the complete input and report the events to a handler. */
+    public void parse(SgfHandler handler) throws SgfError, IOException
+    {
+        while (true)
+        {
+            switch (next())
+            {
+            case START_GAME_TREE:
+                handler.startGameTree();
+                break;
+            case END_GAME_TREE:
+                handler.endGameTree();
+                break;
+            case START_NODE:
+                handler.startNode();
+                break;
+            case PROPERTY:
+                handler.property(m_name, getValues());
+                break;
+            case END_NODE:
+                handler.endNode();
+                break;
+            case END:
+                return;
+            default:
+                assert false;
+            }
+        }
+    }
+
+    /** Maximum number of bytes used for charset detection.
+        Also the initial size of the buffer for streams. */
+    private static final int MAX_DETECT = 65536;
+
+    /** Interned upper-case property names with one or two letters.
+        Index is 27 times the letter index of the first letter (1 to 26)
+        plus the letter index of the second letter (0 for a single letter
+        name). Avoids creating strings for standard property names. */
+    private static final String[] SHORT_NAMES = new String[27 * 27];
+
+    static
+    {
+        for (int i = 1; i <= 26; ++i)
+        {
+            String name = String.valueOf((char)('A' + i - 1));
+            SHORT_NAMES[i * 27] = name.intern();
+            for (int j = 1; j <= 26; ++j)
+                SHORT_NAMES[i * 27 + j] =
+                    (name + (char)('A' + j - 1)).intern();
+        }
+    }
+
+    private boolean m_isInNode;
+
+    /** Has a game tree been found. */
+    private boolean m_isStarted;
+
+    private int m_depth;
+
+    /** Number of END_GAME_TREE events to report after an unexpected end of
+        the input. */
+    private int m_numberUnclosed;
+
+    /** Current position in m_buffer. */
+    private int m_pos;
+
+    /** End of the valid data in m_buffer. */
+    private int m_limit;
+
+    /** Start of the data in m_buffer that must be kept when reading more
+        data from the stream or -1. */
+    private int m_mark = -1;
+
+    /** Position of the opening bracket of the first value of the current
+        property in m_buffer. */
+    private int m_valuesStart;
+
+    /** Position after the closing bracket of the last value of the current
+        property in m_buffer. */
+    private int m_valuesEnd;
+
+    private int m_numberValues;
+
+    /** Position of the '(' of the last game tree found at the top level.
+        Only valid for parsers on a buffer. */
+    private int m_treeStart;
+
+    private String m_name;
+
+    private String m_charset;
+
+    private ArrayList<String> m_values;
+
+    /** Stream to read more data from or null, if m_buffer contains the
+        complete input. */
+    private InputStream m_in;
+
+    private ByteBuffer m_buffer;
+
+    /** Array of m_buffer if the input is a stream. */
+    private byte[] m_array;
+
+    /** Buffer for an unescaped property value. */
+    private byte[] m_value = new byte[512];
+
+    /** Contains strings with warnings. */
+    private final Set<String> m_warnings = new TreeSet<String>();
+
+    /** Construct parser for the properties of a node in the buffer of
+        another parser.
+        @see #getNodeParser */
+    private SgfParser(SgfParser parser, int position)
+    {
+        assert parser.m_in == null;
+        m_buffer = parser.m_buffer;
+        m_limit = parser.m_limit;
+        m_charset = parser.m_charset;
+        m_pos = position;
+        m_depth = 1;
+        m_isInNode = true;
+        m_isStarted = true;
+    }
+
+    /** Check for obsolete long names for standard properties.
+        These are still used in some old SGF files.
+        @param property Property name
+        @return Short standard version of the property or original property */
+    static String checkForObsoleteLongProps(String property)
+    {
+        if (property.length() <= 2)
+            return property;
+        property = property.intern();
+        String shortName = null;
+        if (property == "ADDBLACK")
+            shortName = "AB";
+        else if (property == "ADDEMPTY")
+            shortName = "AE";
+        else if (property == "ADDWHITE")
+            shortName = "AW";
+        else if (property == "BLACK")
+            shortName = "B";
+        else if (property == "BLACKRANK")
+            shortName = "BR";
+        else if (property == "COMMENT")
+            shortName = "C";
+        else if (property == "COPYRIGHT")
+            shortName = "CP";
+        else if (property == "DATE")
+            shortName = "DT";
+        else if (property == "EVENT")
+            shortName = "EV";
+        else if (property == "GAME")
+            shortName = "GM";
+        else if (property == "HANDICAP")
+            shortName = "HA";
+        else if (property == "KOMI")
+            shortName = "KM";
+        else if (property == "PLACE")
+            shortName = "PC";
+        else if (property == "PLAYERBLACK")
+            shortName = "PB";
+        else if (property == "PLAYERWHITE")
+            shortName = "PW";
+        else if (property == "PLAYER")
+            shortName = "PL";
+        else if (property == "RESULT")
+            shortName = "RE";
+        else if (property == "ROUND")
+            shortName = "RO";
+        else if (property == "RULES")
+            shortName = "RU";
+        else if (property == "SIZE")
+            shortName = "SZ";
+        else if (property == "WHITE")
+            shortName = "W";
+        else if (property == "WHITERANK")
+            shortName = "WR";
+        if (shortName != null)
+            return shortName;
+        return property;
+    }
+
+    /** Convert the remaining content of m_buffer to UTF-8.
+        Used for character sets, in which the bytes of the SGF syntax
+        characters can be part of multi-byte characters. */
+    private void convertToUtf8()
+    {
+        ByteBuffer buffer = m_buffer.duplicate();
+        buffer.position(m_pos);
+        buffer.limit(m_limit);
+        CharBuffer chars = Charset.forName(m_charset).decode(buffer);
+        m_buffer = Charset.forName("UTF-8").encode(chars);
+        m_pos = m_buffer.position();
+        m_limit = m_buffer.limit();
+        m_charset = "UTF-8";
+    }
+
+    /** Unescape a property value and add it to a list.
+        Removes escape characters and soft linebreaks and transforms all
+        linebreaks allowed in SGF (LF, CR, LFCR, CRLF) to a single '\n'.
+        Values with only ASCII characters do not need the character set for
+        decoding.
+        @param pos The position of the opening bracket of the value.
+        @param values The list to add the value to.
+        @return The position after the closing bracket. */
+    private int decodeValue(int pos, ArrayList<String> values)
+    {
+        int length = 0;
+        boolean quoted = false;
+        boolean isAscii = true;
+        int last = -1;
+        ++pos;
+        while (true)
+        {
+            int c = m_buffer.get(pos++) & 0xff;
+            if (length == m_value.length)
+            {
+                byte[] value = new byte[2 * length];
+                System.arraycopy(m_value, 0, value, 0, length);
+                m_value = value;
+            }
+            if (c >= 0x80)
+                isAscii = false;
+            if (quoted)
+            {
+                if (c != '\n' && c != '\r')
+                    m_value[length++] = (byte)c;
+                last = c;
+                quoted = false;
+            }
+            else
+            {
+                if (c == ']')
+                    break;
+                quoted = (c == '\\');
+                if (! quoted)
+                {
+                    boolean isLinebreak = (c == '\n' || c == '\r');
+                    boolean lastLinebreak = (last == '\n' || last == '\r');
+                    if (isLinebreak && lastLinebreak && c != last)
+                        last = -1;
+                    else
+                    {
+                        m_value[length++] = (byte)(isLinebreak ? '\n' : c);
+                        last = c;
+                    }
+                }
+            }
+        }
+        try
+        {
+            values.add(new String(m_value, 0, length,
+                                  isAscii ? "US-ASCII" : m_charset));
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            // Only supported character sets are used
+            assert false;
+            values.add(new String(m_value, 0, length));
+        }
+        return pos;
+    }
+
+    /** Get the character set of SGF data.
+        Uses the value of the CA property of the root node, if it is a
+        supported character set. Otherwise, the character set is detected
+        from at most the first MAX_DETECT bytes (see detectCharset()).
+        @param buffer The data from the position to the limit of the
+        buffer. The position of the buffer is not changed.
+        @return The character set. */
+    static String getCharset(ByteBuffer buffer)
+    {
+        String charset = findCharsetProperty(buffer);
+        if (charset != null && isSupported(charset))
+            return charset;
+        byte[] start =
+            new byte[Math.min(buffer.remaining(), MAX_DETECT)];
+        for (int i = 0; i < start.length; ++i)
+            start[i] = buffer.get(buffer.position() + i);
+        return detectCharset(start, start.length);
+    }
+
+    /** Detect the character set of SGF data.
+        @param buffer The data.
+        @param length The length of the data.
+        @return The detected character set or ISO-8859-1 (the default
+        character set of the SGF standard), if the data contains only ASCII
+        characters or the character set could not be detected. */
+    private static String detectCharset(byte[] buffer, int length)
+    {
+        final String[] result = { "ISO-8859-1" };
+        nsDetector detector = new nsDetector(nsPSMDetector.ALL);
+        detector.Init(new nsICharsetDetectionObserver() {
+                public void Notify(String charset) {
+                    result[0] = charset;
+                }
+            });
+        if (! detector.isAscii(buffer, length))
+            detector.DoIt(buffer, length, false);
+        detector.Done();
+        return result[0];
+    }
+
+    /** Read more data from the stream.
+        Moves the data that needs to be kept to the start of the buffer and
+        enlarges the buffer, if it is full.
+        @return false, if the input is not a stream or the end of the stream
+        was reached. */
+    private boolean fill() throws IOException
+    {
+        if (m_in == null)
+            return false;
+        int keep = (m_mark >= 0 ? m_mark : m_pos);
+        if (keep > 0)
+        {
+            System.arraycopy(m_array, keep, m_array, 0, m_limit - keep);
+            m_limit -= keep;
+            m_pos -= keep;
+            if (m_mark >= 0)
+                m_mark -= keep;
+            m_valuesStart -= keep;
+            m_valuesEnd -= keep;
+        }
+        if (m_limit == m_array.length)
+        {
+            byte[] array = new byte[2 * m_array.length];
+            System.arraycopy(m_array, 0, array, 0, m_limit);
+            m_array = array;
+            m_buffer = ByteBuffer.wrap(m_array);
+        }
+        int n = m_in.read(m_array, m_limit, m_array.length - m_limit);
+        if (n <= 0)
+            return false;
+        m_limit += n;
+        return true;
+    }
+
+    /** Find the value of the CA property in the root node.
+        @param buffer The data.
+        @return The value or null, if the root node has no CA property or
+        its value cannot be found in the first MAX_DETECT bytes. */
+    private static String findCharsetProperty(ByteBuffer buffer)
+    {
+        ByteBuffer start = buffer.duplicate();
+        start.limit(Math.min(buffer.limit(),
+                             buffer.position() + MAX_DETECT));
+        // Parse as bytes; CA values contain only ASCII characters
+        SgfParser parser = new SgfParser(start, "ISO-8859-1");
+        try
+        {
+            if (parser.next() != Event.START_GAME_TREE
+                || parser.next() != Event.START_NODE)
+                return null;
+            while (parser.next() == Event.PROPERTY)
+                if (parser.getName() == "CA")
+                    return parser.getValues().get(0).trim();
+        }
+        catch (IOException e)
+        {
+            assert false;
+        }
+        catch (SgfError e)
+        {
+            // Incomplete root node within the first MAX_DETECT bytes
+        }
+        return null;
+    }
+
+    /** Find the start of the next game tree at the top level.
+        A game tree starts with '(' followed by ';'. Other text is skipped.
+        @return false, if the end of the input was reached. */
+    private boolean findGameTree() throws IOException
+    {
+        while (true)
+        {
+            int c = nextToken();
+            if (c < 0)
+                return false;
+            m_treeStart = m_pos - 1;
+            // Better make sure that ( is followed by a node
+            if (c == '(' && skipWhitespace() == ';')
+            {
+                m_isStarted = true;
+                return true;
+            }
+            if (m_isStarted)
+                setWarning("Extra text after SGF tree");
+            else
+                setWarning("Extra text before SGF tree");
+        }
+    }
+
+    /** Get the upper-case name of a property.
+        Does not create a new string for names with one or two letters.
+        @return The interned name. */
+    private String getPropName(int start, int end)
+    {
+        int length = end - start;
+        if (length == 1)
+            return SHORT_NAMES[(m_buffer.get(start) & 0x1f) * 27];
+        if (length == 2 && isLetter(m_buffer.get(start + 1)))
+            return SHORT_NAMES[(m_buffer.get(start) & 0x1f) * 27
+                               + (m_buffer.get(start + 1) & 0x1f)];
+        StringBuilder buffer = new StringBuilder(length);
+        for (int i = start; i < end; ++i)
+            buffer.append(Character.toUpperCase((char)m_buffer.get(i)));
+        return buffer.toString().intern();
+    }
+
+    private static String getSupportedCharset(String charset)
+    {
+        if (isSupported(charset))
+            return charset;
+        return "ISO-8859-1";
+    }
+
+    private static boolean isLetter(int c)
+    {
+        return ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'));
+    }
+
+    private static boolean isLetterOrDigit(int c)
+    {
+        return (isLetter(c) || (c >= '0' && c <= '9'));
+    }
+
+    private static ByteBuffer map(File file) throws IOException
+    {
+        FileInputStream in = new FileInputStream(file);
+        try
+        {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /** Skip whitespace and get the next byte.
+        @return The byte or -1 at the end of the input. */
+    private int nextToken() throws IOException
+    {
+        int c = skipWhitespace();
+        if (c >= 0)
+            ++m_pos;
+        return c;
+    }
+
+    /** Get the byte at the current position.
+        @return The byte (0 to 255) or -1 at the end of the input. */
+    private int peek() throws IOException
+    {
+        if (m_pos == m_limit && ! fill())
+            return -1;
+        return m_buffer.get(m_pos) & 0xff;
+    }
+
+    /** Read the next property with at least one value.
+        Only finds the values; they are decoded in getValues().
+        @return false, if the next token is not a property. */
+    private boolean readProp() throws IOException, SgfError
+    {
+        while (true)
+        {
+            if (! isLetter(skipWhitespace()))
+                return false;
+            m_mark = m_pos;
+            ++m_pos;
+            while (isLetterOrDigit(peek()))
+                ++m_pos;
+            String p = getPropName(m_mark, m_pos);
+            m_numberValues = 0;
+            while (skipWhitespace() == '[')
+            {
+                if (m_numberValues == 0)
+                    m_valuesStart = m_pos;
+                skipValue();
+                ++m_numberValues;
+                m_valuesEnd = m_pos;
+            }
+            if (m_numberValues == 0)
+            {
+                setWarning("Property \"" + p + "\" has no value");
+                m_mark = -1;
+                continue;
+            }
+            m_name = checkForObsoleteLongProps(p);
+            return true;
+        }
+    }
+
+    /** Skip a property value.
+        The current position is the opening bracket. */
+    private void skipValue() throws IOException, SgfError
+    {
+        ++m_pos;
+        while (true)
+        {
+            int c = peek();
+            if (c < 0)
+                break;
+            ++m_pos;
+            if (c == ']')
+                return;
+            if (c == '\\')
+            {
+                if (peek() < 0)
+                    break;
+                ++m_pos;
+            }
+        }
+        throw new SgfError("Property value incomplete");
+    }
+
+    /** Skip whitespace.
+        @return The next byte or -1 at the end of the input. */
+    private int skipWhitespace() throws IOException
+    {
+        int c;
+        while ((c = peek()) >= 0 && c <= ' ')
+            ++m_pos;
+        return c;
+    }
+
+    private void setWarning(String message)
+    {
+        m_warnings.add(message);
+    }
+
+    /** Add the warnings of the parser to a set. */
+    void addWarnings(Set<String> warnings)
+    {
+        warnings.addAll(m_warnings);
+    }
+
+    /** Get the buffer.
+        Only for parsers on a buffer. Differs from the buffer given to the
+        constructor, if the content was converted to UTF-8. */
+    ByteBuffer getBuffer()
+    {
+        assert m_in == null;
+        return m_buffer;
+    }
+
+    /** Get the length of the buffer.
+        Only for parsers on a buffer. */
+    int getLength()
+    {
+        assert m_in == null;
+        return m_limit;
+    }
+
+    /** Create a parser that reads the properties of a node again.
+        Only for parsers on a buffer. Used for decoding properties on
+        demand. The new parser starts with the first property of the node
+        and returns END_NODE after the last one.
+        @param position The position after the START_NODE event of the
+        node (see getPosition()). */
+    SgfParser getNodeParser(int position)
+    {
+        return new SgfParser(this, position);
+    }
+
+    /** Get the current position in the buffer.
+        Only for parsers on a buffer. */
+    int getPosition()
+    {
+        assert m_in == null;
+        return m_pos;
+    }
+
+    /** Get the position of the '(' of the current top-level game tree.
+        Only for parsers on a buffer. */
+    int getTreeStart()
+    {
+        assert m_in == null;
+        return m_treeStart;
+    }
+
+    /** Decode a single property value in the buffer.
+        @param position The position of the opening bracket of the value
+        (see getValuesStart()).
+        @return The decoded value. */
+    String getValue(int position)
+    {
+        ArrayList<String> values = new ArrayList<String>(1);
+        decodeValue(position, values);
+        return values.get(0);
+    }
+
+    /** Get the position after the last value of the current property. */
+    int getValuesEnd()
+    {
+        return m_valuesEnd;
+    }
+
+    /** Get the position of the first value of the current property. */
+    int getValuesStart()
+    {
+        return m_valuesStart;
+    }
+
+    /** Check if a character set can be parsed as bytes.
+        True, if the bytes of the SGF syntax characters cannot be part of
+        multi-byte characters. Single-byte character sets and UTF-8 are
+        compatible, but, for example, Shift_JIS or GBK are not. */
+    static boolean isAsciiCompatible(String charset)
+    {
+        String name;
+        try
+        {
+            if (! Charset.isSupported(charset))
+                return false;
+            name = Charset.forName(charset).name().toUpperCase(Locale.ENGLISH);
+        }
+        catch (IllegalCharsetNameException e)
+        {
+            return false;
+        }
+        return (name.equals("UTF-8") || name.equals("US-ASCII")
+                || name.startsWith("ISO-8859-")
+                || name.startsWith("WINDOWS-125") || name.startsWith("EUC-")
+                || name.startsWith("KOI8-"));
+    }
+
+    /** Check if a character set is supported.
+        Unlike Charset.isSupported(), returns false for illegal names. */
+    static boolean isSupported(String charset)
+    {
+        try
+        {
+            return Charset.isSupported(charset);
+        }
+        catch (IllegalCharsetNameException e)
+        {
+            return false;
+        }
+    }
+
+    /** Compare two byte ranges in the buffer. */
+    boolean isEqual(int start1, int end1, int start2, int end2)
+    {
+        if (end1 - start1 != end2 - start2)
+            return false;
+        for (int i = start1, j = start2; i < end1; ++i, ++j)
+            if (m_buffer.get(i) != m_buffer.get(j))
+                return false;
+        return true;
+    }
+}
@@ -2,26 +2,24 @@
 
 package net.sf.gogui.sgf;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.StreamTokenizer;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.ArrayList;
 import java.util.Locale;
 import java.util.Set;
+import net.sf.gogui.game.CompactGameTree;
 import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.LazyProperties;
 import net.sf.gogui.game.MarkType;
 import net.sf.gogui.game.Node;
 import net.sf.gogui.game.StringInfo;
@@ -37,13 +35,8 @@ import net.sf.gogui.go.InvalidPointException;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.go.Move;
 import net.sf.gogui.go.PointList;
-import net.sf.gogui.util.ByteCountInputStream;
 import net.sf.gogui.util.ProgressShow;
 
-import org.mozilla.intl.chardet.nsDetector;
-import org.mozilla.intl.chardet.nsICharsetDetectionObserver;
-import org.mozilla.intl.chardet.nsPSMDetector;
-
 /** SGF reader.
     @bug The error messages currently don't contain line numbers, see
     implementation of getError(). */
@@ -51,101 +44,94 @@ public final class SgfReader
 {
     /** Read SGF file from stream.
         Default charset is ISO-8859-1 according to the SGF version 4 standard.
-        The charset property is only respected if the stream is a
-        FileInputStream, because it has to be reopened with a different
-        encoding.
+        The charset is taken from the CA property of the root node or
+        detected from the start of the stream (see SgfParser). The complete
+        stream is read into a single buffer before parsing; if the charset
+        has to be changed after the CA property was found while parsing,
+        the parsing restarts from this buffer.
         The stream is closed after reading.
         @param in Stream to read from.
-        @param file File name if input stream is a FileInputStream to allow
-        reopening the stream after a charset change
+        @param file File name used in error messages, can be null
         @param progressShow Callback to show progress, can be null
-        @param size Size of stream if progressShow != null
+        @param size Size of stream if known or 0. Used as initial size of
+        the buffer; the size of FileInputStream streams is determined
+        automatically.
         @throws SgfError If reading fails. */
     public SgfReader(InputStream in, File file, ProgressShow progressShow,
                      long size)
         throws SgfError
+    {
+        this(in, file, progressShow, size, false);
+    }
+
+    /** Read SGF file from stream with optional lazy decoding of properties.
+        In lazy mode, only the tree structure, the moves, the setup stones
+        and the game information are decoded while reading. The nodes keep
+        the location of their other properties (comments, markup, labels,
+        values, time left and unknown properties) in the file content and
+        decode them on first access (see Node.setLazyProperties()).
+        This makes reading large files faster and avoids creating objects
+        for properties that are never used, but the file content is kept in
+        memory as long as there are nodes with undecoded properties.
+        Invalid values of lazily decoded properties are ignored instead of
+        causing an error or warning.
+        Lazily decoded properties modify the node on first access, even
+        through the ConstNode interface, so the tree must not be accessed
+        from multiple threads without synchronization.
+        @param in Stream to read from.
+        @param file File name used in error messages, can be null
+        @param progressShow Callback to show progress, can be null
+        @param size Size of stream if known or 0
+        @param isLazy Decode properties lazily.
+        @throws SgfError If reading fails.
+        @see #SgfReader(InputStream,File,ProgressShow,long) */
+    public SgfReader(InputStream in, File file, ProgressShow progressShow,
+                     long size, boolean isLazy)
+        throws SgfError
+    {
+        this(in, file, progressShow, size, isLazy, false);
+    }
+
+    /** Read SGF data from a buffer.
+        Used by SgfCollection for reading single games.
+        @param data The data from the position to the limit of the buffer.
+        The buffer must not be modified, if the tree is read lazily.
+        @param charset The character set or null for automatic detection.
+        @param file File name used in error messages, can be null
+        @param isLazy Decode properties lazily.
+        @throws SgfError If reading fails. */
+    SgfReader(ByteBuffer data, String charset, File file, boolean isLazy)
+        throws SgfError
+    {
+        m_file = file;
+        m_progressShow = null;
+        m_isCompact = false;
+        if (charset == null)
+            charset = SgfParser.getCharset(data);
+        read(data, charset, isLazy);
+    }
+
+    private SgfReader(InputStream in, File file, ProgressShow progressShow,
+                      long size, boolean isLazy, boolean isCompact)
+        throws SgfError
     {
         m_file = file;
+        m_isCompact = isCompact;
         m_progressShow = progressShow;
-        m_size = size;
-        m_isFile = (in instanceof FileInputStream && file != null);
-        String charset = "ISO-8859-1";
-        
         if (progressShow != null)
             progressShow.showProgress(0);
-
+        ByteBuffer data;
         try
         {
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = in.read(buffer)) > -1) {
-                buf.write(buffer, 0, len);
-            }
-            buf.flush();
-            in.close();
-            in = new ByteArrayInputStream(buf.toByteArray());
-
-            final InputStream imp = new ByteArrayInputStream(buf.toByteArray());
-            
-            //detect charset 
-            class CodeNmeHolder {
-                public String code_name="ISO-8859-1";
-            }
-
-            final CodeNmeHolder holder = new CodeNmeHolder();
-            nsDetector det = new nsDetector(nsPSMDetector.ALL);
-
-            det.Init(new nsICharsetDetectionObserver() {
-                         public void Notify(String charset) {
-                             holder.code_name = charset;
-                         }
-                     }
-            );
-            
-            boolean done = false;
-            boolean isAscii = true;
-            while (!done && (len = imp.read(buffer, 0, buffer.length)) != -1) {
-            	if (isAscii) {
-            		isAscii = det.isAscii(buffer, len);
-            	}
-            	if (!isAscii) {
-            		done = det.DoIt(buffer, len, false);
-            	}  
-            }
-            det.Done();
-            charset = holder.code_name;
+            data = readStream(in, size);
         }
-        catch (Exception e)
-        {
-        	assert false;
-        }
-        
-        try
+        catch (IOException e)
         {
-            // SGF FF 4 standard defines ISO-8859-1 as default
-            readSgf(in, charset);
+            throw getError("IO error");
         }
-        catch (SgfCharsetChanged e1)
+        catch (OutOfMemoryError e)
         {
-            try
-            {
-                in.close();
-                in = new FileInputStream(file);
-            }
-            catch (IOException e2)
-            {
-                throw new SgfError("Could not reset SGF stream after"
-                                   + " charset change.");
-            }
-            try
-            {
-                readSgf(in, m_newCharset);
-            }
-            catch (SgfCharsetChanged e3)
-            {
-                assert false;
-            }
+            throw new SgfError("Out of memory");
         }
         finally
         {
@@ -158,10 +144,39 @@ public final class SgfReader
                 System.err.println("Could not close SGF stream");
             }
         }
+        read(data, SgfParser.getCharset(data), isLazy);
+    }
+
+    /** Read SGF file from stream into a compact game tree.
+        The nodes are added to a CompactGameTree.Builder while parsing,
+        without creating a GameTree first. Only nodes with information
+        other than a move, comment and value are created as Node objects
+        (see CompactGameTree). Use getCompactTree() to get the tree.
+        @param in Stream to read from.
+        @param file File name used in error messages, can be null
+        @param progressShow Callback to show progress, can be null
+        @param size Size of stream if known or 0
+        @return The reader.
+        @throws SgfError If reading fails.
+        @see #SgfReader(InputStream,File,ProgressShow,long) */
+    public static SgfReader readCompact(InputStream in, File file,
+                                        ProgressShow progressShow, long size)
+        throws SgfError
+    {
+        return new SgfReader(in, file, progressShow, size, false, true);
+    }
+
+    /** Get compact game tree of loaded SGF file.
+        @return The game tree or null, if the reader was not created with
+        readCompact(). */
+    public CompactGameTree getCompactTree()
+    {
+        return m_compactTree;
     }
 
     /** Get game tree of loaded SGF file.
-        @return The game tree. */
+        @return The game tree or null, if the reader was created with
+        readCompact(). */
     public GameTree getTree()
     {
         return m_tree;
@@ -187,7 +202,31 @@ public final class SgfReader
     {
     }
 
-    private final boolean m_isFile;
+    /** Location of the lazily decoded properties of a node.
+        Keeps a reference to the reader, which holds the file content. */
+    private final class LazyNode
+        implements LazyProperties
+    {
+        public LazyNode(int start)
+        {
+            m_start = start;
+        }
+
+        public void decode(Node node)
+        {
+            decodeLazyProps(node, m_start);
+        }
+
+        /** Start of the properties of the node in the buffer of
+            m_parser. */
+        private final int m_start;
+    }
+
+    /** Decode properties lazily. */
+    private boolean m_isLazy;
+
+    /** Read the tree into m_builder instead of creating Node objects. */
+    private final boolean m_isCompact;
 
     /** Has current node inconsistent FF3 overtime settings properties. */
     private boolean m_ignoreOvertime;
@@ -198,43 +237,53 @@ public final class SgfReader
 
     private int m_byoyomiMoves;
 
-    private final long m_size;
-
     private long m_byoyomi;
 
     private long m_preByoyomi;
 
-    private ByteCountInputStream m_byteCountInputStream;
+    private GameTree m_tree;
 
-    private java.io.Reader m_reader;
+    private CompactGameTree m_compactTree;
 
-    private GameTree m_tree;
+    /** Builder for the compact tree while reading in compact mode. */
+    private CompactGameTree.Builder m_builder;
+
+    /** Node reused for decoding nodes in compact mode, which contain only
+        a move, comment and value. */
+    private final Node m_compactNode = new Node();
 
     private final ProgressShow m_progressShow;
 
     /** Contains strings with warnings. */
     private final Set<String> m_warnings = new TreeSet<String>();
 
-    private StreamTokenizer m_tokenizer;
+    private SgfParser m_parser;
 
     private final File m_file;
 
-    private String m_newCharset;
+    /** Charset used for the current attempt of reading the tree. */
+    private String m_charset;
 
-    /** Pre-allocated temporary buffer for use within functions. */
-    private final StringBuilder m_buffer = new StringBuilder(512);
+    private String m_newCharset;
 
     private final PointList m_pointList = new PointList();
 
+    /** Properties of the current node that are decoded lazily.
+        Maps the property name to the start position, end position and
+        number of its values in the buffer of m_parser. Only used to check
+        for duplicate properties and if the node has lazy properties. */
+    private final Map<String,int[]> m_lazyProps = new HashMap<String,int[]>();
+
     /** Map containing the properties of the current node. */
     private final Map<String,ArrayList<String>> m_props =
         new TreeMap<String,ArrayList<String>>();
 
-    /** Apply some fixes for broken SGF files. */
-    private void applyFixes()
+    /** Apply some fixes for broken SGF files.
+        @param root The root node with game information.
+        @param childMoves The moves of the children of the root node. */
+    private void applyFixes(Node root, ArrayList<Move> childMoves)
     {
-        Node root = m_tree.getRoot();
-        GameInfo info = m_tree.getGameInfo(root);
+        GameInfo info = root.getGameInfo();
         if (root.hasSetup() && root.getPlayer() == null)
         {
             if (info.getHandicap() > 0)
@@ -245,9 +294,8 @@ public final class SgfReader
             {
                 boolean hasBlackChildMoves = false;
                 boolean hasWhiteChildMoves = false;
-                for (int i = 0; i < root.getNumberChildren(); ++i)
+                for (Move move : childMoves)
                 {
-                    Move move = root.getChild(i).getMove();
                     if (move == null)
                         continue;
                     if (move.getColor() == BLACK)
@@ -263,111 +311,51 @@ public final class SgfReader
         }
     }
 
-    private void checkEndOfFile() throws SgfError, IOException
-    {
-        while (true)
-        {
-            m_tokenizer.nextToken();
-            int t = m_tokenizer.ttype;
-            if (t == '(')
-                throw getError("Multiple SGF trees not supported");
-            else if (t == StreamTokenizer.TT_EOF)
-                return;
-            else if (t != ' ' && t != '\t' && t != '\n' && t != '\r')
-            {
-                setWarning("Extra text after SGF tree");
-                return;
-            }
-        }
-    }
-
-    /** Check for obsolete long names for standard properties.
-        These are still used in some old SGF files.
-        @param property Property name
-        @return Short standard version of the property or original property */
-    private String checkForObsoleteLongProps(String property)
-    {
-        if (property.length() <= 2)
-            return property;
-        property = property.intern();
-        String shortName = null;
-        if (property == "ADDBLACK")
-            shortName = "AB";
-        else if (property == "ADDEMPTY")
-            shortName = "AE";
-        else if (property == "ADDWHITE")
-            shortName = "AW";
-        else if (property == "BLACK")
-            shortName = "B";
-        else if (property == "BLACKRANK")
-            shortName = "BR";
-        else if (property == "COMMENT")
-            shortName = "C";
-        else if (property == "COPYRIGHT")
-            shortName = "CP";
-        else if (property == "DATE")
-            shortName = "DT";
-        else if (property == "EVENT")
-            shortName = "EV";
-        else if (property == "GAME")
-            shortName = "GM";
-        else if (property == "HANDICAP")
-            shortName = "HA";
-        else if (property == "KOMI")
-            shortName = "KM";
-        else if (property == "PLACE")
-            shortName = "PC";
-        else if (property == "PLAYERBLACK")
-            shortName = "PB";
-        else if (property == "PLAYERWHITE")
-            shortName = "PW";
-        else if (property == "PLAYER")
-            shortName = "PL";
-        else if (property == "RESULT")
-            shortName = "RE";
-        else if (property == "ROUND")
-            shortName = "RO";
-        else if (property == "RULES")
-            shortName = "RU";
-        else if (property == "SIZE")
-            shortName = "SZ";
-        else if (property == "WHITE")
-            shortName = "W";
-        else if (property == "WHITERANK")
-            shortName = "WR";
-        if (shortName != null)
-            return shortName;
-        return property;
-    }
-
     private GameInfo createGameInfo(Node node)
     {
         return node.createGameInfo();
     }
 
-    private void findRoot() throws SgfError, IOException
+    /** Decode the lazily decoded properties of a node.
+        Invalid values are ignored, because errors cannot be reported
+        anymore. */
+    private void decodeLazyProps(Node node, int start)
     {
-        while (true)
+        Map<String,ArrayList<String>> props =
+            new TreeMap<String,ArrayList<String>>();
+        SgfParser parser = m_parser.getNodeParser(start);
+        try
         {
-            m_tokenizer.nextToken();
-            int t = m_tokenizer.ttype;
-            if (t == '(')
+            while (parser.next() == SgfParser.Event.PROPERTY)
             {
-                // Better make sure that ( is followed by a node
-                m_tokenizer.nextToken();
-                t = m_tokenizer.ttype;
-                if (t == ';')
-                {
-                    m_tokenizer.pushBack();
-                    return;
-                }
-                else
-                    setWarning("Extra text before SGF tree");
+                String p = parser.getName();
+                if (isLazyProp(p))
+                    props.put(p, parser.getValues());
+            }
+        }
+        catch (IOException e)
+        {
+            // Cannot happen, the parser reads from a buffer
+            assert false;
+        }
+        catch (SgfError e)
+        {
+            // Cannot happen, the syntax was checked while reading
+            assert false;
+        }
+        for (Map.Entry<String,ArrayList<String>> entry : props.entrySet())
+        {
+            try
+            {
+                handleProp(node, entry.getKey(), entry.getValue(), false);
+            }
+            catch (SgfError e)
+            {
+            }
+            catch (SgfCharsetChanged e)
+            {
+                assert false;
             }
-            else if (t == StreamTokenizer.TT_EOF)
-                throw getError("No root tree found");
-            else
-                setWarning("Extra text before SGF tree");
         }
     }
 
@@ -427,206 +415,263 @@ public final class SgfReader
             }
         }
         for (Map.Entry<String,ArrayList<String>> entry : m_props.entrySet())
+            handleProp(node, entry.getKey(), entry.getValue(), isRoot);
+    }
+
+    private void handleProp(Node node, String p, ArrayList<String> values,
+                            boolean isRoot)
+        throws SgfError, SgfCharsetChanged
+    {
+        String v = values.get(0);
+        if (p == "AB")
+        {
+            parsePointList(values);
+            node.addStones(BLACK, m_pointList);
+        }
+        else if (p == "AE")
+        {
+            parsePointList(values);
+            node.addStones(EMPTY, m_pointList);
+        }
+        else if (p == "AN")
+            set(node, StringInfo.ANNOTATION, v);
+        else if (p == "AW")
+        {
+            parsePointList(values);
+            node.addStones(WHITE, m_pointList);
+        }
+        else if (p == "B")
+        {
+            node.setMove(Move.get(BLACK, parsePoint(v)));
+        }
+        else if (p == "BL")
         {
-            String p = entry.getKey();
-            ArrayList<String> values = entry.getValue();
-            String v = values.get(0);
-            if (p == "AB")
+            try
+            {
+                node.setTimeLeft(BLACK, Double.parseDouble(v));
+            }
+            catch (NumberFormatException e)
             {
-                parsePointList(values);
-                node.addStones(BLACK, m_pointList);
             }
-            else if (p == "AE")
+        }
+        else if (p == "BR")
+            set(node, StringInfoColor.RANK, BLACK, v);
+        else if (p == "BT")
+            set(node, StringInfoColor.TEAM, BLACK, v);
+        else if (p == "C")
+            node.setComment(v);
+        else if (p == "CA")
+        {
+            if (isRoot && m_newCharset == null)
             {
-                parsePointList(values);
-                node.addStones(EMPTY, m_pointList);
+                m_newCharset = v.trim();
+                if (! SgfParser.isSupported(m_newCharset))
+                    setWarning("Unknown character set \"" + m_newCharset
+                               + "\"");
+                else if (! Charset.forName(m_newCharset).equals(
+                                                 Charset.forName(m_charset)))
+                    throw new SgfCharsetChanged();
             }
-            else if (p == "AN")
-                set(node, StringInfo.ANNOTATION, v);
-            else if (p == "AW")
+        }
+        else if (p == "CP")
+            set(node, StringInfo.COPYRIGHT, v);
+        else if (p == "CR")
+            parseMarked(node, MarkType.CIRCLE, values);
+        else if (p == "DT")
+            set(node, StringInfo.DATE, v);
+        else if (p == "FF")
+        {
+            int format = -1;
+            try
             {
-                parsePointList(values);
-                node.addStones(WHITE, m_pointList);
+                format = Integer.parseInt(v);
             }
-            else if (p == "B")
+            catch (NumberFormatException e)
             {
-                node.setMove(Move.get(BLACK, parsePoint(v)));
             }
-            else if (p == "BL")
+            if (format < 1 || format > 4)
+                setWarning("Unknown SGF file format version");
+        }
+        else if (p == "GM")
+        {
+            // Some SGF files contain GM[], interpret as GM[1]
+            v = v.trim();
+            if (! v.equals("") && ! v.equals("1"))
+                throw getError("Not a Go game");
+        }
+        else if (p == "HA")
+        {
+            // Some SGF files contain HA[], interpret as unknown handicap
+            v = v.trim();
+            if (! v.equals(""))
             {
                 try
                 {
-                    node.setTimeLeft(BLACK, Double.parseDouble(v));
+                    int handicap = Integer.parseInt(v);
+                    if (handicap == 1 || handicap < 0)
+                        setWarning("Invalid handicap value");
+                    else
+                        createGameInfo(node).setHandicap(handicap);
                 }
                 catch (NumberFormatException e)
                 {
+                    setWarning("Invalid handicap value");
                 }
             }
-            else if (p == "BR")
-                set(node, StringInfoColor.RANK, BLACK, v);
-            else if (p == "BT")
-                set(node, StringInfoColor.TEAM, BLACK, v);
-            else if (p == "C")
-                node.setComment(v);
-            else if (p == "CA")
+        }
+        else if (p == "KM")
+            parseKomi(node, v);
+        else if (p == "LB")
+        {
+            for (int i = 0; i < values.size(); ++i)
             {
-                if (isRoot && m_isFile && m_newCharset == null)
+                String value = values.get(i);
+                int pos = value.indexOf(':');
+                if (pos > 0)
                 {
-                    m_newCharset = v.trim();
-                    if (Charset.isSupported(m_newCharset))
-                        throw new SgfCharsetChanged();
-                    else
-                        setWarning("Unknown character set \"" + m_newCharset
-                                   + "\"");
+                    GoPoint point = parsePoint(value.substring(0, pos));
+                    String text = value.substring(pos + 1);
+                    node.setLabel(point, text);
                 }
             }
-            else if (p == "CP")
-                set(node, StringInfo.COPYRIGHT, v);
-            else if (p == "CR")
-                parseMarked(node, MarkType.CIRCLE, values);
-            else if (p == "DT")
-                set(node, StringInfo.DATE, v);
-            else if (p == "FF")
+        }
+        else if (p == "MA" || p == "M")
+            parseMarked(node, MarkType.MARK, values);
+        else if (p == "OB")
+        {
+            try
             {
-                int format = -1;
-                try
-                {
-                    format = Integer.parseInt(v);
-                }
-                catch (NumberFormatException e)
-                {
-                }
-                if (format < 1 || format > 4)
-                    setWarning("Unknown SGF file format version");
+                node.setMovesLeft(BLACK, Integer.parseInt(v));
             }
-            else if (p == "GM")
+            catch (NumberFormatException e)
             {
-                // Some SGF files contain GM[], interpret as GM[1]
-                v = v.trim();
-                if (! v.equals("") && ! v.equals("1"))
-                    throw getError("Not a Go game");
             }
-            else if (p == "HA")
+        }
+        else if (p == "OM")
+            parseOvertimeMoves(v);
+        else if (p == "OP")
+            parseOvertimePeriod(v);
+        else if (p == "OT")
+            parseOvertime(node, v);
+        else if (p == "OW")
+        {
+            try
             {
-                // Some SGF files contain HA[], interpret as unknown handicap
-                v = v.trim();
-                if (! v.equals(""))
-                {
-                    try
-                    {
-                        int handicap = Integer.parseInt(v);
-                        if (handicap == 1 || handicap < 0)
-                            setWarning("Invalid handicap value");
-                        else
-                            createGameInfo(node).setHandicap(handicap);
-                    }
-                    catch (NumberFormatException e)
-                    {
-                        setWarning("Invalid handicap value");
-                    }
-                }
+                node.setMovesLeft(WHITE, Integer.parseInt(v));
             }
-            else if (p == "KM")
-                parseKomi(node, v);
-            else if (p == "LB")
+            catch (NumberFormatException e)
             {
-                for (int i = 0; i < values.size(); ++i)
-                {
-                    String value = values.get(i);
-                    int pos = value.indexOf(':');
-                    if (pos > 0)
-                    {
-                        GoPoint point = parsePoint(value.substring(0, pos));
-                        String text = value.substring(pos + 1);
-                        node.setLabel(point, text);
-                    }
-                }
             }
-            else if (p == "MA" || p == "M")
-                parseMarked(node, MarkType.MARK, values);
-            else if (p == "OB")
+        }
+        else if (p == "PB")
+            set(node, StringInfoColor.NAME, BLACK, v);
+        else if (p == "PW")
+            set(node, StringInfoColor.NAME, WHITE, v);
+        else if (p == "PL")
+            node.setPlayer(parseColor(v));
+        else if (p == "RE")
+            set(node, StringInfo.RESULT, v);
+        else if (p == "RO")
+            set(node, StringInfo.ROUND, v);
+        else if (p == "RU")
+            set(node, StringInfo.RULES, v);
+        else if (p == "SO")
+            set(node, StringInfo.SOURCE, v);
+        else if (p == "SQ")
+            parseMarked(node, MarkType.SQUARE, values);
+        else if (p == "SL")
+            parseMarked(node, MarkType.SELECT, values);
+        else if (p == "TB")
+            parseMarked(node, MarkType.TERRITORY_BLACK, values);
+        else if (p == "TM")
+            parseTime(node, v);
+        else if (p == "TR")
+            parseMarked(node, MarkType.TRIANGLE, values);
+        else if (p == "US")
+            set(node, StringInfo.USER, v);
+        else if (p == "W")
+            node.setMove(Move.get(WHITE, parsePoint(v)));
+        else if (p == "TW")
+            parseMarked(node, MarkType.TERRITORY_WHITE, values);
+        else if (p == "V")
+        {
+            try
             {
-                try
-                {
-                    node.setMovesLeft(BLACK, Integer.parseInt(v));
-                }
-                catch (NumberFormatException e)
-                {
-                }
+                node.setValue(Float.parseFloat(v));
             }
-            else if (p == "OM")
-                parseOvertimeMoves(v);
-            else if (p == "OP")
-                parseOvertimePeriod(v);
-            else if (p == "OT")
-                parseOvertime(node, v);
-            else if (p == "OW")
+            catch (NumberFormatException e)
             {
-                try
-                {
-                    node.setMovesLeft(WHITE, Integer.parseInt(v));
-                }
-                catch (NumberFormatException e)
-                {
-                }
             }
-            else if (p == "PB")
-                set(node, StringInfoColor.NAME, BLACK, v);
-            else if (p == "PW")
-                set(node, StringInfoColor.NAME, WHITE, v);
-            else if (p == "PL")
-                node.setPlayer(parseColor(v));
-            else if (p == "RE")
-                set(node, StringInfo.RESULT, v);
-            else if (p == "RO")
-                set(node, StringInfo.ROUND, v);
-            else if (p == "RU")
-                set(node, StringInfo.RULES, v);
-            else if (p == "SO")
-                set(node, StringInfo.SOURCE, v);
-            else if (p == "SQ")
-                parseMarked(node, MarkType.SQUARE, values);
-            else if (p == "SL")
-                parseMarked(node, MarkType.SELECT, values);
-            else if (p == "TB")
-                parseMarked(node, MarkType.TERRITORY_BLACK, values);
-            else if (p == "TM")
-                parseTime(node, v);
-            else if (p == "TR")
-                parseMarked(node, MarkType.TRIANGLE, values);
-            else if (p == "US")
-                set(node, StringInfo.USER, v);
-            else if (p == "W")
-                node.setMove(Move.get(WHITE, parsePoint(v)));
-            else if (p == "TW")
-                parseMarked(node, MarkType.TERRITORY_WHITE, values);
-            else if (p == "V")
+        }
+        else if (p == "WL")
+        {
+            try
             {
-                try
-                {
-                    node.setValue(Float.parseFloat(v));
-                }
-                catch (NumberFormatException e)
-                {
-                }
+                node.setTimeLeft(WHITE, Double.parseDouble(v));
             }
-            else if (p == "WL")
+            catch (NumberFormatException e)
             {
-                try
-                {
-                    node.setTimeLeft(WHITE, Double.parseDouble(v));
-                }
-                catch (NumberFormatException e)
-                {
-                }
             }
-            else if (p == "WR")
-                set(node, StringInfoColor.RANK, WHITE, v);
-            else if (p == "WT")
-                set(node, StringInfoColor.TEAM, WHITE, v);
-            else if (p != "FF" && p != "GN" && p != "AP")
-                node.addSgfProperty(p, values);
         }
+        else if (p == "WR")
+            set(node, StringInfoColor.RANK, WHITE, v);
+        else if (p == "WT")
+            set(node, StringInfoColor.TEAM, WHITE, v);
+        else if (p != "FF" && p != "GN" && p != "AP")
+            node.addSgfProperty(p, values);
+    }
+
+    /** Check if the current node contains only properties that are
+        stored in the arrays of a compact tree.
+        @see #readCompactTree(ArrayList) */
+    private boolean hasOnlyCompactProps()
+    {
+        for (String p : m_props.keySet())
+            if (p != "B" && p != "W" && p != "C" && p != "V")
+                return false;
+        return true;
+    }
+
+    private static boolean isKnownProp(String p)
+    {
+        return (p == "AB" || p == "AE" || p == "AN" || p == "AP"
+                || p == "AW" || p == "B" || p == "BR" || p == "BT"
+                || p == "CA" || p == "CP" || p == "DT" || p == "FF"
+                || p == "GM" || p == "GN" || p == "HA" || p == "KM"
+                || p == "OM" || p == "OP" || p == "OT" || p == "PB"
+                || p == "PL" || p == "PW" || p == "RE" || p == "RO"
+                || p == "RU" || p == "SO" || p == "SZ" || p == "TM"
+                || p == "US" || p == "W" || p == "WR" || p == "WT");
+    }
+
+    /** Check if a property is decoded lazily in lazy mode.
+        Properties that determine the tree structure, the board position or
+        the game information are decoded while reading. */
+    private static boolean isLazyProp(String p)
+    {
+        return (p == "C" || p == "LB" || p == "CR" || p == "MA" || p == "M"
+                || p == "SQ" || p == "SL" || p == "TB" || p == "TR"
+                || p == "TW" || p == "V" || p == "BL" || p == "WL"
+                || p == "OB" || p == "OW" || ! isKnownProp(p));
+    }
+
+    /** Get the next event of m_parser.
+        Adds the file name to error messages and the warnings of the parser
+        to the warnings of the reader at the end. */
+    private SgfParser.Event nextEvent() throws IOException, SgfError
+    {
+        SgfParser.Event event;
+        try
+        {
+            event = m_parser.next();
+        }
+        catch (SgfError e)
+        {
+            throw getError(e.getMessage());
+        }
+        if (event == SgfParser.Event.END)
+            m_parser.addWarnings(m_warnings);
+        return event;
     }
 
     private GoColor parseColor(String s) throws SgfError
@@ -817,129 +862,223 @@ public final class SgfReader
             m_preByoyomi = preByoyomi;
     }
 
-    private Node readNext(Node father, boolean isRoot)
+    /** Store the location of a lazily decoded property of the current
+        node. */
+    private void readLazyProp(String p)
+    {
+        int start = m_parser.getValuesStart();
+        int end = m_parser.getValuesEnd();
+        int numberValues = m_parser.getNumberValues();
+        int[] old = m_lazyProps.get(p);
+        // Compare the decoded values like readProp(), if the values differ
+        // in the file content (e.g. by escape characters)
+        if (old != null
+            && (old[2] > 1 || numberValues > 1
+                || (! m_parser.isEqual(old[0], old[1], start, end)
+                    && ! m_parser.getValue(old[0]).equals(
+                                              m_parser.getValues().get(0)))))
+            setWarning("Duplicate property " + p + " in node");
+        int[] range = { start, end, numberValues };
+        m_lazyProps.put(p, range);
+    }
+
+    /** Read the first game tree from the events of m_parser. */
+    private Node readTree()
         throws IOException, SgfError, SgfCharsetChanged
     {
-        if (m_progressShow != null)
+        if (nextEvent() != SgfParser.Event.START_GAME_TREE)
+            throw getError("No root tree found");
+        Node root = null;
+        Node node = null;
+        int start = 0;
+        ArrayList<Node> variationStart = new ArrayList<Node>();
+        while (true)
         {
-            int percent;
-            if (m_size > 0)
+            switch (nextEvent())
             {
-                long count = m_byteCountInputStream.getCount();
-                percent = (int)(count * 100 / m_size);
+            case START_GAME_TREE:
+                variationStart.add(node);
+                break;
+            case END_GAME_TREE:
+                if (variationStart.isEmpty())
+                {
+                    if (nextEvent() == SgfParser.Event.START_GAME_TREE)
+                        throw getError("Multiple SGF trees not supported");
+                    return root;
+                }
+                node = variationStart.remove(variationStart.size() - 1);
+                break;
+            case START_NODE:
+                Node son = new Node();
+                if (node == null)
+                    root = son;
+                else
+                    node.append(son);
+                node = son;
+                startNode();
+                start = m_parser.getPosition();
+                break;
+            case PROPERTY:
+                readProp();
+                break;
+            case END_NODE:
+                handleProps(node, node == root);
+                setTimeSettings(node);
+                if (! m_lazyProps.isEmpty())
+                    node.setLazyProperties(new LazyNode(start));
+                break;
+            default:
+                assert false;
+                return root;
             }
-            else
-                percent = 100;
-            if (percent != m_lastPercent)
-                m_progressShow.showProgress(percent);
-            m_lastPercent = percent;
         }
-        m_tokenizer.nextToken();
-        int ttype = m_tokenizer.ttype;
-        if (ttype == '(')
+    }
+
+    /** Read the first game tree from the events of m_parser into
+        m_builder.
+        Nodes that contain only a move, comment and value are decoded with
+        m_compactNode, all other nodes are created as Node objects and
+        stored as extra information in the builder.
+        @param rootChildMoves List to store the moves of the children of
+        the root node.
+        @return The node with the information of the root node. */
+    private Node readCompactTree(ArrayList<Move> rootChildMoves)
+        throws IOException, SgfError, SgfCharsetChanged
+    {
+        if (nextEvent() != SgfParser.Event.START_GAME_TREE)
+            throw getError("No root tree found");
+        Node root = null;
+        int node = -1;
+        int father = -1;
+        ArrayList<Integer> variationStart = new ArrayList<Integer>();
+        while (true)
         {
-            Node node = father;
-            while (node != null)
-                node = readNext(node, false);
-            return father;
+            switch (nextEvent())
+            {
+            case START_GAME_TREE:
+                variationStart.add(node);
+                break;
+            case END_GAME_TREE:
+                if (variationStart.isEmpty())
+                {
+                    if (nextEvent() == SgfParser.Event.START_GAME_TREE)
+                        throw getError("Multiple SGF trees not supported");
+                    return root;
+                }
+                node = variationStart.remove(variationStart.size() - 1);
+                break;
+            case START_NODE:
+                father = node;
+                startNode();
+                break;
+            case PROPERTY:
+                readProp();
+                break;
+            case END_NODE:
+                Move move;
+                if (father >= 0 && hasOnlyCompactProps())
+                {
+                    handleProps(m_compactNode, false);
+                    move = m_compactNode.getMove();
+                    float value = m_compactNode.getValue();
+                    node = m_builder.addNode(father, move,
+                                             m_compactNode.getComment(),
+                                             value, null);
+                    m_compactNode.setMove(null);
+                    m_compactNode.setComment(null);
+                    if (! Float.isNaN(value))
+                        m_compactNode.setValue(Float.NaN);
+                }
+                else
+                {
+                    Node extra = new Node();
+                    handleProps(extra, father < 0);
+                    setTimeSettings(extra);
+                    if (father < 0)
+                    {
+                        extra.createGameInfo();
+                        root = extra;
+                    }
+                    move = extra.getMove();
+                    node = m_builder.addNode(father, extra);
+                }
+                if (father == 0)
+                    rootChildMoves.add(move);
+                break;
+            default:
+                assert false;
+                return root;
+            }
         }
-        if (ttype == ')')
-            return null;
-        if (ttype == StreamTokenizer.TT_EOF)
+    }
+
+    /** Store a property of the current node in m_props or m_lazyProps. */
+    private void readProp()
+    {
+        String p = m_parser.getName();
+        if (m_isLazy && isLazyProp(p))
         {
-            setWarning("Game tree not closed");
-            return null;
+            readLazyProp(p);
+            return;
         }
-        if (ttype != ';')
-            throw getError("Next node expected");
-        Node son = new Node();
-        if (father != null)
-            father.append(son);
-        m_ignoreOvertime = false;
-        m_byoyomiMoves = -1;
-        m_byoyomi = -1;
-        m_preByoyomi = -1;
-        m_props.clear();
-        while (readProp());
-        handleProps(son, isRoot);
-        setTimeSettings(son);
-        return son;
+        ArrayList<String> values = m_parser.getValues();
+        if (m_props.containsKey(p))
+            // Silently accept duplicate properties, as long as they
+            // have the same value (only check for single value
+            // properties)
+            if (m_props.get(p).size() > 1 || values.size() > 1
+                || ! values.get(0).equals(m_props.get(p).get(0)))
+                setWarning("Duplicate property " + p + " in node");
+        m_props.put(p, values);
     }
 
-    private boolean readProp() throws IOException, SgfError
+    private void read(ByteBuffer data, String charset, boolean isLazy)
+        throws SgfError
     {
-        m_tokenizer.nextToken();
-        int ttype = m_tokenizer.ttype;
-        if (ttype == StreamTokenizer.TT_WORD)
+        try
+        {
+            readSgf(data, charset, isLazy);
+        }
+        catch (SgfCharsetChanged e1)
         {
-            // Use intern() to allow fast comparsion with ==
-            String p = m_tokenizer.sval.toUpperCase(Locale.ENGLISH).intern();
-            ArrayList<String> values = new ArrayList<String>();
-            String s;
-            while ((s = readValue()) != null)
-                values.add(s);
-            if (values.isEmpty())
+            try
             {
-                setWarning("Property \"" + p + "\" has no value");
-                return true;
+                readSgf(data, m_newCharset, isLazy);
+            }
+            catch (SgfCharsetChanged e2)
+            {
+                assert false;
             }
-            p = checkForObsoleteLongProps(p);
-            if (m_props.containsKey(p))
-                // Silently accept duplicate properties, as long as they have
-                // the same value (only check for single value properties)
-                if (m_props.get(p).size() > 1 || values.size() > 1
-                    || ! values.get(0).equals(m_props.get(p).get(0)))
-                    setWarning("Duplicate property " + p + " in node");
-            m_props.put(p, values);
-            return true;
         }
-        if (ttype != '\n')
-            // Don't pushBack newline, will confuse lineno() (Bug 4942853)
-            m_tokenizer.pushBack();
-        return false;
     }
 
-    private void readSgf(InputStream in, String charset)
+    private void readSgf(ByteBuffer data, String charset, boolean isLazy)
         throws SgfError, SgfCharsetChanged
     {
         try
         {
             m_boardSize = -1;
-            if (m_progressShow != null)
-            {
-                m_byteCountInputStream = new ByteCountInputStream(in);
-                in = m_byteCountInputStream;
-            }
-            InputStreamReader reader;
-            try
-            {
-                reader = new InputStreamReader(in, charset);
-            }
-            catch (UnsupportedEncodingException e)
+            m_isLazy = isLazy;
+            m_charset = charset;
+            m_parser = new SgfParser(data, charset);
+            if (m_isCompact)
             {
-                // Should actually not happen, because this function is only
-                // called with charset ISO-8859-1 (should be supported on every
-                // Java platform according to Charset documentation) or with a
-                // CA property value, which was already checked with
-                // Charset.isSupported()
-                setWarning("Character set \"" + charset + "\" not supported");
-                reader = new InputStreamReader(in);
+                m_builder = new CompactGameTree.Builder();
+                ArrayList<Move> rootChildMoves = new ArrayList<Move>();
+                Node root = readCompactTree(rootChildMoves);
+                applyFixes(root, rootChildMoves);
+                getBoardSize(); // Set to default value if still unknown
+                m_compactTree = m_builder.build(m_boardSize);
+                m_builder = null;
+                return;
             }
-            m_reader = new BufferedReader(reader);
-            m_tokenizer = new StreamTokenizer(m_reader);
-            findRoot();
-            Node root = readNext(null, true);
-            Node node = root;
-            while (node != null)
-                node = readNext(node, false);
-            checkEndOfFile();
+            Node root = readTree();
             getBoardSize(); // Set to default value if still unknown
             m_tree = new GameTree(m_boardSize, root);
-            applyFixes();
-        }
-        catch (FileNotFoundException e)
-        {
-            throw new SgfError("File not found.");
+            ArrayList<Move> rootChildMoves = new ArrayList<Move>();
+            for (int i = 0; i < root.getNumberChildren(); ++i)
+                rootChildMoves.add(root.getChild(i).getMove());
+            applyFixes(root, rootChildMoves);
         }
         catch (IOException e)
         {
@@ -951,61 +1090,68 @@ public final class SgfReader
         }
     }
 
-    private String readValue() throws IOException, SgfError
+    /** Read the complete stream into a buffer.
+        Reads directly into an array of the size of the stream, if the size
+        is known, to avoid copying the data.
+        @param in The stream.
+        @param size The size of the stream if known or 0.
+        @return The buffer with the data from position 0 to the limit. */
+    private static ByteBuffer readStream(InputStream in, long size)
+        throws IOException
     {
-        m_tokenizer.nextToken();
-        int ttype = m_tokenizer.ttype;
-        if (ttype != '[')
+        if (in instanceof FileInputStream)
         {
-            if (ttype != '\n')
-                // Don't pushBack newline, will confuse lineno() (Bug 4942853)
-                m_tokenizer.pushBack();
-            return null;
+            FileChannel channel = ((FileInputStream)in).getChannel();
+            size = channel.size() - channel.position();
         }
-        m_buffer.setLength(0);
-        boolean quoted = false;
-        Character last = null;
+        int capacity = 65536;
+        // Add one byte, such that the end of the stream can be detected
+        // without enlarging the array
+        if (size > 0 && size < Integer.MAX_VALUE)
+            capacity = (int)size + 1;
+        byte[] data = new byte[capacity];
+        int length = 0;
         while (true)
         {
-            int c = m_reader.read();
-            if (c < 0)
-                throw getError("Property value incomplete");
-            if (quoted)
+            if (length == data.length)
             {
-                if (c != '\n' && c != '\r')
-                    m_buffer.append((char)c);
-                last = Character.valueOf((char)c);
-                quoted = false;
-            }
-            else
-            {
-                if (c == ']')
-                    break;
-                quoted = (c == '\\');
-                if (! quoted)
-                {
-                    // Transform all linebreaks allowed in SGF (LF, CR, LFCR,
-                    // CRLF) to a single '\n'
-                    boolean isLinebreak = (c == '\n' || c == '\r');
-                    boolean lastLinebreak =
-                        (last != null && (last.charValue() == '\n'
-                                          || last.charValue() == '\r'));
-                    boolean filterSecondLinebreak =
-                        (isLinebreak && lastLinebreak && c != last.charValue());
-                    if (filterSecondLinebreak)
-                        last = null;
-                    else
-                    {
-                        if (isLinebreak)
-                            m_buffer.append('\n');
-                        else
-                            m_buffer.append((char)c);
-                        last = Character.valueOf((char)c);
-                    }
-                }
+                byte[] newData = new byte[2 * length];
+                System.arraycopy(data, 0, newData, 0, length);
+                data = newData;
             }
+            int n = in.read(data, length, data.length - length);
+            if (n < 0)
+                break;
+            length += n;
         }
-        return m_buffer.toString();
+        return ByteBuffer.wrap(data, 0, length);
+    }
+
+    /** Reset the state for reading the properties of a new node. */
+    private void startNode()
+    {
+        showProgress();
+        m_ignoreOvertime = false;
+        m_byoyomiMoves = -1;
+        m_byoyomi = -1;
+        m_preByoyomi = -1;
+        m_props.clear();
+        m_lazyProps.clear();
+    }
+
+    private void showProgress()
+    {
+        if (m_progressShow == null)
+            return;
+        int percent;
+        int length = m_parser.getLength();
+        if (length > 0)
+            percent = (int)((long)m_parser.getPosition() * 100 / length);
+        else
+            percent = 100;
+        if (percent != m_lastPercent)
+            m_progressShow.showProgress(percent);
+        m_lastPercent = percent;
     }
 
     private void set(Node node, StringInfo type, String value)
@@ -2,9 +2,14 @@
 
 package net.sf.gogui.sgf;
 
+import java.util.ArrayList;
+import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.gogui.game.TimeSettings;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.InvalidPointException;
+import net.sf.gogui.go.PointList;
 
 public final class SgfUtil
 {
@@ -70,6 +75,73 @@ public final class SgfUtil
         return result;
     }
 
+    /** Parse a point value.
+        For use with the property values of SgfParser. Accepts the same
+        encodings as SgfReader, but without warnings.
+        @param value The value.
+        @param boardSize The board size.
+        @return The point or null for a pass move.
+        @throws InvalidPointException If the value is not a valid point or
+        outside the board. */
+    public static GoPoint parsePoint(String value, int boardSize)
+        throws InvalidPointException
+    {
+        String s = value.trim().toLowerCase(Locale.ENGLISH);
+        if (s.equals(""))
+            return null;
+        if (s.length() > 2
+            || (s.length() == 2 && (s.charAt(1) < 'a' || s.charAt(1) > 'z')))
+            // Human-readable encoding as used by SmartGo
+            return GoPoint.parsePoint(s, GoPoint.MAX_SIZE);
+        if (s.length() != 2)
+            throw new InvalidPointException(value);
+        if (s.equals("tt") && boardSize <= 19)
+            return null;
+        int x = s.charAt(0) - 'a';
+        int y = boardSize - (s.charAt(1) - 'a') - 1;
+        if (x == boardSize && y == -1)
+            // Non-standard pass move encoding, e.g. jj for board size 9
+            return null;
+        if (x < 0 || x >= boardSize || y < 0 || y >= boardSize)
+            throw new InvalidPointException(value);
+        return GoPoint.get(x, y);
+    }
+
+    /** Parse the values of a point list property.
+        Expands compressed point lists (e.g. "aa:cc"). Passes are ignored.
+        @param values The values.
+        @param boardSize The board size.
+        @param list The list to add the points to.
+        @throws InvalidPointException If a value contains an invalid
+        point. */
+    public static void parsePointList(ArrayList<String> values,
+                                      int boardSize, PointList list)
+        throws InvalidPointException
+    {
+        for (String value : values)
+        {
+            int pos = value.indexOf(':');
+            if (pos < 0)
+            {
+                GoPoint point = parsePoint(value, boardSize);
+                if (point != null)
+                    list.add(point);
+                continue;
+            }
+            GoPoint point1 = parsePoint(value.substring(0, pos), boardSize);
+            GoPoint point2 = parsePoint(value.substring(pos + 1), boardSize);
+            if (point1 == null || point2 == null)
+                continue;
+            int xMin = Math.min(point1.getX(), point2.getX());
+            int xMax = Math.max(point1.getX(), point2.getX());
+            int yMin = Math.min(point1.getY(), point2.getY());
+            int yMax = Math.max(point1.getY(), point2.getY());
+            for (int x = xMin; x <= xMax; ++x)
+                for (int y = yMin; y <= yMax; ++y)
+                    list.add(GoPoint.get(x, y));
+        }
+    }
+
     /** Parse value of TM property.
         According to FF4, TM needs to be a real value, but older SGF versions
         allow a string with unspecified content. We try to parse a few known
@@ -80,6 +80,53 @@ public class SgfWriter
         m_out.close();
     }
 
+    /** Constructor for writing nodes one at a time.
+        Used by SgfAppender. The stream is not closed.
+        @param out Output stream, must use the encoding ENCODING.
+        @param size Board size. */
+    SgfWriter(PrintStream out, int size)
+    {
+        m_out = out;
+        m_size = size;
+    }
+
+    /** Get the current line that was not yet written to the stream. */
+    String getLine()
+    {
+        return m_buffer.toString();
+    }
+
+    /** Write the end of the game tree and the current line. */
+    void printEnd()
+    {
+        print(")");
+        m_out.println(m_buffer.toString());
+        m_buffer.setLength(0);
+    }
+
+    /** Write the start of the game tree and the properties of the root
+        node without its children. */
+    void printRoot(ConstNode root, String application, String version)
+    {
+        print("(");
+        printHeader(application, version);
+        printNewLine();
+        printNodeProperties(root, true);
+    }
+
+    /** Write a node of the main variation without its children. */
+    void printMainVariationNode(ConstNode node)
+    {
+        printNodeProperties(node, false);
+    }
+
+    /** Set the current line that was not yet written to the stream. */
+    void setLine(String line)
+    {
+        m_buffer.setLength(0);
+        m_buffer.append(line);
+    }
+
     private static final int STRINGBUF_CAPACITY = 128;
 
     private static final int MAX_CHARS_PER_LINE = 78;
@@ -280,6 +327,26 @@ public class SgfWriter
     }
 
     private void printNode(ConstNode node, boolean isRoot)
+    {
+        printNodeProperties(node, isRoot);
+        int numberChildren = node.getNumberChildren();
+        if (numberChildren == 0)
+            return;
+        if (numberChildren == 1)
+        {
+            printNode(node.getChildConst(), false);
+            return;
+        }
+        for (int i = 0; i < numberChildren; ++i)
+        {
+            printNewLine();
+            print("(");
+            printNode(node.getChildConst(i), false);
+            print(")");
+        }
+    }
+
+    private void printNodeProperties(ConstNode node, boolean isRoot)
     {
         Move move = node.getMove();
         if (! isRoot)
@@ -352,21 +419,6 @@ public class SgfWriter
                 for (int i = 0; i < sgfProps.getNumberValues(key); ++i)
                     print("[" + sgfProps.getValue(key, i) + "]");
             }
-        int numberChildren = node.getNumberChildren();
-        if (numberChildren == 0)
-            return;
-        if (numberChildren == 1)
-        {
-            printNode(node.getChildConst(), false);
-            return;
-        }
-        for (int i = 0; i < numberChildren; ++i)
-        {
-            printNewLine();
-            print("(");
-            printNode(node.getChildConst(i), false);
-            print(")");
-        }
     }
 
     private void printPosition(ConstBoard board)
@@ -6,6 +6,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.Random;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
 import net.sf.gogui.go.GoPoint;
 import net.sf.gogui.go.PointList;
 import net.sf.gogui.gtp.GtpCallback;
@@ -20,8 +22,15 @@ import net.sf.gogui.version.Version;
 public class Dummy
     extends GtpEngine
 {
+    /** Constructor.
+        @param log Stream to log the GTP stream to (may be null).
+        @param useRandomSeed Use the given random seed.
+        @param randomSeed The random seed.
+        @param resign Resign at the n'th genmove (-1 for never).
+        @param playouts Number of random playouts per genmove; 0 for
+        playing random moves without playouts. */
     public Dummy(PrintStream log, boolean useRandomSeed, long randomSeed,
-                 int resign)
+                 int resign, int playouts)
         throws Exception
     {
         super(log);
@@ -30,8 +39,10 @@ public class Dummy
         setVersion(Version.get());
         m_random = new Random();
         m_resign = resign;
+        m_playouts = playouts;
         if (useRandomSeed)
             m_random.setSeed(randomSeed);
+        m_player = new RandomPlayer(m_random);
         initSize(GoPoint.DEFAULT_SIZE);
     }
 
@@ -57,8 +68,14 @@ public class Dummy
         initSize(size);
     }
 
-    public void cmdCrash(GtpCommand cmd)
+    public void cmdCrash(GtpCommand cmd) throws GtpError
     {
+        if (m_isServerSession)
+        {
+            // Other sessions run in the same process
+            setQuit();
+            throw new GtpError("aborting session");
+        }
         System.err.println("Aborting gogui-dummy");
         System.exit(1);
     }
@@ -159,13 +176,15 @@ public class Dummy
             "string/Long Response/gogui-dummy-long_response %s\n" +
             "none/Next Failure/gogui-dummy-next_failure %s\n" +
             "none/Next Success/gogui-dummy-next_success %s\n" +
+            "none/Playouts/gogui-dummy-playouts %s\n" +
+            "string/Playout Statistics/gogui-dummy-playout_stats\n" +
             "sboard/SBoard/gogui-dummy-sboard\n" +
             "none/Sleep/gogui-dummy-sleep %s\n" +
             "none/Sleep 20s/gogui-dummy-sleep\n";
         cmd.setResponse(response);
     }
 
-    public void cmdGenmove(GtpCommand cmd)
+    public void cmdGenmove(GtpCommand cmd) throws GtpError
     {
         ++m_numberGenmove;
         if (m_numberGenmove == m_resign)
@@ -173,6 +192,26 @@ public class Dummy
             cmd.setResponse("resign");
             return;
         }
+        GoColor c = m_board.getToMove();
+        if (cmd.getNuArg() > 0)
+            c = cmd.getColorArg(0);
+        if (m_playouts > 0)
+        {
+            RandomPlayer.InterruptCheck interruptCheck =
+                new RandomPlayer.InterruptCheck() {
+                    public boolean isInterrupted()
+                    {
+                        return Dummy.this.isInterrupted();
+                    }
+                };
+            GoPoint point = m_player.genmove(m_board, c, m_komi, m_playouts,
+                                             interruptCheck);
+            cmd.setResponse(GoPoint.toString(point));
+            m_board.play(c, point);
+            if (point != null)
+                m_alreadyPlayed[point.getX()][point.getY()] = true;
+            return;
+        }
         int numberPossibleMoves = 0;
         for (int x = 0; x < m_size; ++x)
             for (int y = 0; y < m_size; ++y)
@@ -193,6 +232,7 @@ public class Dummy
                     }
         }
         cmd.setResponse(GoPoint.toString(point));
+        m_board.play(c, point);
         if (point != null)
             m_alreadyPlayed[point.getX()][point.getY()] = true;
     }
@@ -240,6 +280,12 @@ public class Dummy
         System.err.println("gogui-gfx: CLEAR");
     }
 
+    public void cmdKomi(GtpCommand cmd) throws GtpError
+    {
+        cmd.checkNuArg(1);
+        m_komi = cmd.getDoubleArg(0);
+    }
+
     public void cmdLongResponse(GtpCommand cmd) throws GtpError
     {
         cmd.checkNuArg(1);
@@ -264,12 +310,28 @@ public class Dummy
     public void cmdPlay(GtpCommand cmd) throws GtpError
     {
         cmd.checkNuArg(2);
-        cmd.getColorArg(0);
+        GoColor c = cmd.getColorArg(0);
         GoPoint point = cmd.getPointArg(1, m_size);
+        m_board.play(c, point);
         if (point != null)
             m_alreadyPlayed[point.getX()][point.getY()] = true;
     }
 
+    public void cmdPlayouts(GtpCommand cmd) throws GtpError
+    {
+        cmd.checkNuArgLessEqual(1);
+        if (cmd.getNuArg() == 1)
+            m_playouts = cmd.getIntArg(0, 0, Integer.MAX_VALUE);
+        else
+            cmd.getResponse().append(m_playouts);
+    }
+
+    public void cmdPlayoutStats(GtpCommand cmd) throws GtpError
+    {
+        cmd.checkArgNone();
+        cmd.setResponse(m_player.getStatistics());
+    }
+
     public void cmdSBoard(GtpCommand cmd)
     {
         cmd.getResponse().append('\n');
@@ -334,6 +396,16 @@ public class Dummy
         }
     }
 
+    /** Run as one of the sessions of a GtpEngineServer.
+        The command gogui-dummy-crash ends only the session instead of
+        exiting the process. */
+    public void setServerSession(boolean isServerSession)
+    {
+        m_isServerSession = isServerSession;
+    }
+
+    private boolean m_isServerSession;
+
     private boolean m_nextResponseFixed;
 
     private boolean m_nextStatus;
@@ -343,6 +415,11 @@ public class Dummy
 
     private int m_numberGenmove;
 
+    /** Number of playouts per genmove (0 for no playouts). */
+    private int m_playouts;
+
+    private double m_komi;
+
     private final int m_resign;
 
     private int m_size;
@@ -351,6 +428,12 @@ public class Dummy
 
     private final Random m_random;
 
+    private final RandomPlayer m_player;
+
+    /** Board for the random playouts.
+        Illegal moves are not checked, but also played on the board. */
+    private Board m_board;
+
     private String m_nextResponse;
 
     /** Editable point list for gogui-dummy-eplist command. */
@@ -359,6 +442,7 @@ public class Dummy
     private void initSize(int size)
     {
         m_alreadyPlayed = new boolean[size][size];
+        m_board = new Board(size);
         m_size = size;
         m_numberGenmove = 0;
     }
@@ -414,6 +498,12 @@ public class Dummy
         register("gogui-dummy-next_success", new GtpCallback() {
                 public void run(GtpCommand cmd) throws GtpError {
                     cmdNextSuccess(cmd); } });
+        register("gogui-dummy-playouts", new GtpCallback() {
+                public void run(GtpCommand cmd) throws GtpError {
+                    cmdPlayouts(cmd); } });
+        register("gogui-dummy-playout_stats", new GtpCallback() {
+                public void run(GtpCommand cmd) throws GtpError {
+                    cmdPlayoutStats(cmd); } });
         register("gogui-dummy-sboard", new GtpCallback() {
                 public void run(GtpCommand cmd) throws GtpError {
                     cmdSBoard(cmd); } });
@@ -435,6 +525,9 @@ public class Dummy
         register("gogui-interrupt", new GtpCallback() {
                 public void run(GtpCommand cmd) throws GtpError {
                     cmdInterrupt(cmd); } });
+        register("komi", new GtpCallback() {
+                public void run(GtpCommand cmd) throws GtpError {
+                    cmdKomi(cmd); } });
         register("play", new GtpCallback() {
                 public void run(GtpCommand cmd) throws GtpError {
                     cmdPlay(cmd); } });
@@ -4,6 +4,9 @@ package net.sf.gogui.tools.dummy;
 
 import java.io.File;
 import java.io.PrintStream;
+import net.sf.gogui.gtp.GtpEngine;
+import net.sf.gogui.gtp.GtpEngineServer;
+import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.Options;
 import net.sf.gogui.util.StringUtil;
 import net.sf.gogui.version.Version;
@@ -20,6 +23,9 @@ public final class Main
                 "config:",
                 "help",
                 "log:",
+                "maxsessions:",
+                "playouts:",
+                "port:",
                 "resign:",
                 "srand:",
                 "version"
@@ -32,7 +38,10 @@ public final class Main
                     "\n" +
                     "-config    config file\n" +
                     "-help      display this help and exit\n" +
-                    "-log file  log GTP stream to file\n" +
+                    "-log file  log GTP stream to file (not with -port)\n" +
+                    "-maxsessions n  maximum concurrent sessions\n" +
+                    "-playouts n  random playouts per genmove\n" +
+                    "-port n    serve GTP sessions on network port\n" +
                     "-resign n  resign at n'th genmove\n" +
                     "-srand n   random seed\n" +
                     "-version   print version and exit\n";
@@ -44,21 +53,40 @@ public final class Main
                 System.out.println("gogui-dummy " + Version.get());
                 return;
             }
+            if (opt.contains("log") && opt.contains("port"))
+                throw new ErrorMessage("Option -log cannot be used with"
+                                       + " -port");
             PrintStream log = null;
             if (opt.contains("log"))
             {
                 File file = new File(opt.get("log"));
                 log = new PrintStream(file);
             }
-            long randomSeed = 0;
-            boolean useRandomSeed = false;
-            if (opt.contains("srand"))
+            final boolean useRandomSeed = opt.contains("srand");
+            final long randomSeed =
+                (useRandomSeed ? opt.getLong("srand") : 0);
+            final int resign = opt.getInteger("resign", -1);
+            final int playouts = opt.getInteger("playouts", 0, 0);
+            if (opt.contains("port"))
             {
-                randomSeed = opt.getLong("srand");
-                useRandomSeed = true;
+                int port = opt.getInteger("port", 0, 0);
+                int maxSessions = opt.getInteger("maxsessions", 64, 1);
+                GtpEngineServer.EngineFactory factory =
+                    new GtpEngineServer.EngineFactory() {
+                        public GtpEngine create() throws Exception
+                        {
+                            Dummy dummy = new Dummy(null, useRandomSeed,
+                                                    randomSeed, resign,
+                                                    playouts);
+                            dummy.setServerSession(true);
+                            return dummy;
+                        }
+                    };
+                new GtpEngineServer(factory, port, maxSessions, false).run();
+                return;
             }
-            int resign = opt.getInteger("resign", -1);
-            Dummy dummy = new Dummy(log, useRandomSeed, randomSeed, resign);
+            Dummy dummy = new Dummy(log, useRandomSeed, randomSeed, resign,
+                                    playouts);
             dummy.mainLoop(System.in, System.out);
             if (log != null)
                 log.close();
@@ -0,0 +1,228 @@
+// RandomPlayer.java
+
+package net.sf.gogui.tools.dummy;
+
+import java.util.Random;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.BoardConstants;
+import net.sf.gogui.go.ConstPointList;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+
+/** Move generator using uniform random playouts.
+    Each playout starts with a random move and continues with random moves
+    of both players, which do not fill single point eyes, until both
+    players pass. The playout is scored with area scoring and the move with
+    the highest ratio of won playouts is selected.
+    The moves of the playouts are played and undone on the board of the
+    caller, so most of the time is spent in Board.play() and Board.undo(). */
+final class RandomPlayer
+{
+    /** Callback for checking if the move generation was interrupted. */
+    public interface InterruptCheck
+    {
+        /** Check if the move generation was interrupted.
+            Called between the playouts. */
+        boolean isInterrupted();
+    }
+
+    public RandomPlayer(Random random)
+    {
+        m_random = random;
+    }
+
+    /** Generate a move.
+        @param board The board with the current position. The position is
+        unchanged after the call.
+        @param c The color to move.
+        @param komi The komi used for scoring the playouts.
+        @param numberPlayouts The number of playouts.
+        @param interruptCheck Callback for checking if the move generation
+        was interrupted. An interrupted move generation returns the best
+        move found so far.
+        @return The move or null for pass, if there is no legal move that
+        does not fill an own eye. */
+    public GoPoint genmove(Board board, GoColor c, double komi,
+                           int numberPlayouts, InterruptCheck interruptCheck)
+    {
+        long startTime = System.currentTimeMillis();
+        int[] numberWins = new int[GoPoint.NUMBER_INDEXES];
+        int[] numberGames = new int[GoPoint.NUMBER_INDEXES];
+        int numberMoves = board.getNumberMoves();
+        int n = 0;
+        for ( ; n < numberPlayouts && ! interruptCheck.isInterrupted(); ++n)
+        {
+            GoPoint p = getRandomMove(board, c);
+            if (p == null)
+                break;
+            board.play(c, p);
+            double score = playout(board, c.otherColor(), komi);
+            board.undo(board.getNumberMoves() - numberMoves);
+            ++numberGames[p.getIndex()];
+            if ((c == BLACK && score > 0) || (c == WHITE && score < 0))
+                ++numberWins[p.getIndex()];
+        }
+        m_lastPlayouts = n;
+        m_lastTime = System.currentTimeMillis() - startTime;
+        m_totalPlayouts += m_lastPlayouts;
+        m_totalTime += m_lastTime;
+        GoPoint bestMove = null;
+        double bestValue = -1;
+        for (GoPoint p : board)
+        {
+            int index = p.getIndex();
+            if (numberGames[index] == 0)
+                continue;
+            double value =
+                (numberWins[index] + 1.0) / (numberGames[index] + 2.0);
+            if (value > bestValue)
+            {
+                bestMove = p;
+                bestValue = value;
+            }
+        }
+        if (bestMove == null)
+            // No legal move or interrupted before the first playout
+            return getRandomMove(board, c);
+        return bestMove;
+    }
+
+    /** Get statistics about the playouts.
+        @return A text with the number of playouts, the time and the
+        number of playouts per second of the last move generation and of
+        all move generations since the creation of the generator. */
+    public String getStatistics()
+    {
+        StringBuilder result = new StringBuilder(128);
+        appendStatistics(result, "Last", m_lastPlayouts, m_lastTime);
+        result.append('\n');
+        appendStatistics(result, "Total", m_totalPlayouts, m_totalTime);
+        return result.toString();
+    }
+
+    private int m_lastPlayouts;
+
+    private long m_lastTime;
+
+    private long m_totalPlayouts;
+
+    private long m_totalTime;
+
+    private final Random m_random;
+
+    /** Temporary variable reused for efficiency. */
+    private final GoPoint[] m_candidates =
+        new GoPoint[GoPoint.NUMBER_INDEXES];
+
+    private static void appendStatistics(StringBuilder result, String label,
+                                         long playouts, long time)
+    {
+        result.append(label);
+        result.append(": ");
+        result.append(playouts);
+        result.append(" playouts, ");
+        result.append(time);
+        result.append(" ms, ");
+        if (time > 0)
+            result.append(Math.round(playouts * 1000.0 / time));
+        else
+            result.append('-');
+        result.append(" playouts/s");
+    }
+
+    /** Get a random legal move that does not fill an own eye.
+        @return The move or null, if no such move exists. */
+    private GoPoint getRandomMove(Board board, GoColor c)
+    {
+        ConstPointList points =
+            BoardConstants.get(board.getSize()).getPoints();
+        int n = 0;
+        int nuPoints = points.size();
+        for (int i = 0; i < nuPoints; ++i)
+        {
+            GoPoint p = points.get(i);
+            if (board.getColor(p) == EMPTY)
+                m_candidates[n++] = p;
+        }
+        while (n > 0)
+        {
+            int i = m_random.nextInt(n);
+            GoPoint p = m_candidates[i];
+            if (! isEye(board, p, c) && ! board.isKo(p)
+                && ! board.isSuicide(c, p))
+                return p;
+            m_candidates[i] = m_candidates[--n];
+        }
+        return null;
+    }
+
+    /** Get the area score of the final position of a playout.
+        Empty points count for a color, if all adjacent points have this
+        color.
+        @return The score from the view of Black minus the komi. */
+    private static double getScore(Board board, double komi)
+    {
+        int score = 0;
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            ConstPointList adjacent = board.getAdjacent(p);
+            if (c == EMPTY && adjacent.size() > 0)
+            {
+                c = board.getColor(adjacent.get(0));
+                for (int i = 1; i < adjacent.size(); ++i)
+                    if (board.getColor(adjacent.get(i)) != c)
+                    {
+                        c = EMPTY;
+                        break;
+                    }
+            }
+            if (c == BLACK)
+                ++score;
+            else if (c == WHITE)
+                --score;
+        }
+        return score - komi;
+    }
+
+    /** Check if a point is a single point eye.
+        A point is an eye if all adjacent points are stones of the color
+        and none of the adjacent blocks is in atari. */
+    private static boolean isEye(Board board, GoPoint p, GoColor c)
+    {
+        ConstPointList adjacent = board.getAdjacent(p);
+        int nuAdjacent = adjacent.size();
+        for (int i = 0; i < nuAdjacent; ++i)
+        {
+            GoPoint adj = adjacent.get(i);
+            if (board.getColor(adj) != c || board.getLiberties(adj) == 1)
+                return false;
+        }
+        return true;
+    }
+
+    /** Play random moves until both players pass.
+        The number of moves is limited to avoid infinite games with
+        repetitions.
+        @return The score as returned by getScore(). */
+    private double playout(Board board, GoColor toMove, double komi)
+    {
+        int size = board.getSize();
+        int maxMoves = 3 * size * size;
+        int numberPasses = 0;
+        for (int i = 0; i < maxMoves && numberPasses < 2; ++i)
+        {
+            GoPoint p = getRandomMove(board, toMove);
+            board.play(toMove, p);
+            if (p == null)
+                ++numberPasses;
+            else
+                numberPasses = 0;
+            toMove = toMove.otherColor();
+        }
+        return getScore(board, komi);
+    }
+}
@@ -2,18 +2,20 @@
 
 package net.sf.gogui.tools.statistics;
 
-import java.io.InputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
-import net.sf.gogui.game.ConstNode;
-import net.sf.gogui.game.GameTree;
 import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.EMPTY;
-import net.sf.gogui.go.Move;
-import net.sf.gogui.sgf.SgfReader;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.InvalidPointException;
+import net.sf.gogui.go.PointList;
+import net.sf.gogui.sgf.SgfError;
+import net.sf.gogui.sgf.SgfParser;
+import net.sf.gogui.sgf.SgfUtil;
 import net.sf.gogui.util.ErrorMessage;
 
 /** Check that SGF files meet the requirements for a Statistics run. */
@@ -37,47 +39,168 @@ public class FileCheck
 
     private File m_file;
 
+    private final PointList m_pointList = new PointList();
+
     private void checkFile() throws ErrorMessage
     {
-        InputStream in = null;
         try
         {
-            in = new FileInputStream(m_file);
+            checkTree(new SgfParser(m_file));
         }
         catch (FileNotFoundException e)
         {
             throwError("file not found");
         }
-        SgfReader reader = new SgfReader(in, m_file, null, 0);
-        GameTree tree = reader.getTree();
-        if (tree.getBoardSize() != m_size)
-            throwError("size is not " + m_size);
-        ConstNode root = tree.getRoot();
+        catch (SgfError e)
+        {
+            throwError(e.getMessage());
+        }
+        catch (IOException e)
+        {
+            throwError(e.getMessage());
+        }
+    }
+
+    /** Check the game tree using the events of the parser.
+        Does not build a game tree. Parses the complete tree and checks the
+        points in all nodes, such that files that pass the check can be
+        read with SgfReader. The requirements for the positions are only
+        checked in the main variation, which consists of the nodes before
+        the first end of a game tree. */
+    private void checkTree(SgfParser parser)
+        throws ErrorMessage, IOException, SgfError
+    {
+        if (parser.next() != SgfParser.Event.START_GAME_TREE)
+            throwError("no root tree found");
+        int size = GoPoint.DEFAULT_SIZE;
+        int depth = 1;
+        boolean isRoot = true;
+        boolean isMainVariation = true;
+        boolean hasSetup = false;
+        GoColor move = null;
         GoColor toMove = BLACK;
-        for (ConstNode node = root; node != null; node = node.getChildConst())
+        // Values of the properties of the current node containing points,
+        // checked at the end of the node when the board size is known
+        ArrayList<String> points = new ArrayList<String>();
+        ArrayList<ArrayList<String>> pointLists =
+            new ArrayList<ArrayList<String>>();
+        while (true)
         {
-            if (node.hasSetup())
+            SgfParser.Event event = parser.next();
+            if (event == SgfParser.Event.START_GAME_TREE)
+                ++depth;
+            else if (event == SgfParser.Event.END_GAME_TREE)
             {
-                if (m_allowSetup)
+                isMainVariation = false;
+                if (--depth == 0)
                 {
-                    if (node == root)
-                        toMove = EMPTY;
-                    else
-                        throw new ErrorMessage("setup stones"
-                                               + " in non-root position");
+                    if (parser.next() == SgfParser.Event.START_GAME_TREE)
+                        throwError("multiple SGF trees not supported");
+                    return;
                 }
-                else
-                    throw new ErrorMessage("contains setup stones");
             }
-            Move move = node.getMove();
-            if (move != null)
+            else if (event == SgfParser.Event.END)
+                throwError("unexpected end of file");
+            else if (event == SgfParser.Event.START_NODE)
             {
-                if (toMove == EMPTY)
-                    toMove = move.getColor();
-                if (move.getColor() != toMove)
-                    throwError("non-alternating moves");
-                toMove = toMove.otherColor();
+                hasSetup = false;
+                move = null;
+                points.clear();
+                pointLists.clear();
             }
+            else if (event == SgfParser.Event.PROPERTY)
+            {
+                String p = parser.getName();
+                ArrayList<String> values = parser.getValues();
+                if (p == "AB" || p == "AW" || p == "AE")
+                {
+                    hasSetup = true;
+                    pointLists.add(values);
+                }
+                else if (p == "B" || p == "W")
+                {
+                    if (p == "W" || move == null)
+                        move = (p == "B" ? BLACK : WHITE);
+                    points.add(values.get(0));
+                }
+                else if (p == "CR" || p == "MA" || p == "M" || p == "SQ"
+                         || p == "SL" || p == "TB" || p == "TR"
+                         || p == "TW")
+                    pointLists.add(values);
+                else if (p == "LB")
+                {
+                    for (String value : values)
+                    {
+                        int pos = value.indexOf(':');
+                        if (pos > 0)
+                            points.add(value.substring(0, pos));
+                    }
+                }
+                else if (p == "SZ" && isRoot)
+                    size = parseSize(values.get(0));
+            }
+            else if (event == SgfParser.Event.END_NODE)
+            {
+                checkPoints(points, pointLists, size);
+                if (! isMainVariation)
+                    continue;
+                if (isRoot && size != m_size)
+                    throwError("size is not " + m_size);
+                if (hasSetup)
+                {
+                    if (m_allowSetup)
+                    {
+                        if (isRoot)
+                            toMove = EMPTY;
+                        else
+                            throw new ErrorMessage("setup stones"
+                                                   + " in non-root position");
+                    }
+                    else
+                        throw new ErrorMessage("contains setup stones");
+                }
+                if (move != null)
+                {
+                    if (toMove == EMPTY)
+                        toMove = move;
+                    if (move != toMove)
+                        throwError("non-alternating moves");
+                    toMove = toMove.otherColor();
+                }
+                isRoot = false;
+            }
+        }
+    }
+
+    private void checkPoints(ArrayList<String> points,
+                             ArrayList<ArrayList<String>> pointLists,
+                             int size)
+        throws ErrorMessage
+    {
+        try
+        {
+            for (String value : points)
+                SgfUtil.parsePoint(value, size);
+            for (ArrayList<String> values : pointLists)
+                SgfUtil.parsePointList(values, size, m_pointList);
+        }
+        catch (InvalidPointException e)
+        {
+            throwError(e.getMessage());
+        }
+        m_pointList.clear();
+    }
+
+    private int parseSize(String value) throws ErrorMessage
+    {
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throwError("invalid board size value");
+            return -1;
         }
     }
 
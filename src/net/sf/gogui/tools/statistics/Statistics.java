@@ -383,33 +383,26 @@ public class Statistics
         {
             m_table.set("File", name);
             m_table.set("Move", number);
+            ArrayList<Command> commands = new ArrayList<Command>();
             for (int i = 0; i < m_commands.size(); ++i)
             {
                 Command command = getCommand(i);
                 if (command.m_begin && beginCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
+                    commands.add(command);
             }
             for (int i = 0; i < m_commands.size(); ++i)
             {
                 Command command = getCommand(i);
                 if (! command.m_begin && ! command.m_final && regularCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
+                    commands.add(command);
             }
             for (int i = 0; i < m_commands.size(); ++i)
             {
                 Command command = getCommand(i);
                 if (command.m_final && finalCommands)
-                {
-                    String response = send(command.m_command, toMove, move);
-                    m_table.set(command.m_columnTitle, response);
-                }
+                    commands.add(command);
             }
+            send(commands, toMove, move);
         }
         catch (Table.InvalidLocation e)
         {
@@ -495,14 +488,36 @@ public class Statistics
                            beginCommands, regularCommands, finalCommands);
     }
 
-    private String send(String command, GoColor toMove, Move move)
-        throws GtpError
+    /** Send the commands for a position and store the responses in the
+        table.
+        If the engine is a GtpClient, the commands are pipelined. */
+    private void send(ArrayList<Command> commands, GoColor toMove,
+                      Move move) throws GtpError, Table.InvalidLocation
     {
-        String cmd = convertCommand(command, toMove);
-        String response = m_gtp.send(cmd).trim();
-        response = response.replaceAll("\t", " ");
-        response = response.replaceAll("\n", " ");
-        return convertResponse(command, response, toMove, move);
+        ArrayList<GtpClient.AsyncResponse> responses = null;
+        if (m_gtp instanceof GtpClient && commands.size() > 1)
+        {
+            ArrayList<String> lines = new ArrayList<String>(commands.size());
+            for (Command command : commands)
+                lines.add(convertCommand(command.m_command, toMove));
+            responses = ((GtpClient)m_gtp).sendBatch(lines);
+        }
+        for (int i = 0; i < commands.size(); ++i)
+        {
+            Command command = commands.get(i);
+            String response;
+            if (responses != null)
+                response = responses.get(i).get();
+            else
+                response =
+                    m_gtp.send(convertCommand(command.m_command, toMove));
+            response = response.trim();
+            response = response.replaceAll("\t", " ");
+            response = response.replaceAll("\n", " ");
+            response = convertResponse(command.m_command, response, toMove,
+                                       move);
+            m_table.set(command.m_columnTitle, response);
+        }
     }
 
     private void synchronize(ConstGame game) throws GtpError
@@ -3,22 +3,27 @@
 package net.sf.gogui.tools.twogtp;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import net.sf.gogui.game.ConstNode;
-import net.sf.gogui.game.GameTree;
+import net.sf.gogui.gamefile.BatchLoader;
 import net.sf.gogui.go.Board;
 import net.sf.gogui.go.BoardUtil;
 import net.sf.gogui.go.ConstBoard;
 import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.BLACK_WHITE_EMPTY;
+import static net.sf.gogui.go.GoColor.WHITE;
 import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.InvalidPointException;
 import net.sf.gogui.go.Move;
 import net.sf.gogui.go.PointList;
-import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.SgfError;
+import net.sf.gogui.sgf.SgfParser;
+import net.sf.gogui.sgf.SgfUtil;
 
 /** Find duplicates in games. */
 public final class Compare
@@ -44,6 +49,14 @@ public final class Compare
         }
     }
 
+    /** Main variation of a game read with readMainVariation(). */
+    public static final class MainVariation
+    {
+        public int m_boardSize;
+
+        public ArrayList<Placement> m_placements;
+    }
+
     /** Check if game already exists in game collection.
         All games must have the same board size.
         Also finds rotated duplicates.
@@ -105,10 +118,21 @@ public final class Compare
         return result;
     }
 
+    /** Loader for BatchLoader that reads the main variation with
+        readMainVariation(). */
+    public static final BatchLoader.Loader<MainVariation>
+        MAIN_VARIATION_LOADER = new BatchLoader.Loader<MainVariation>() {
+            public MainVariation load(File file) throws Exception
+            {
+                return readMainVariation(file);
+            }
+        };
+
     /** Compare a set of SGF files.
         Prints the results to standard output, one line per game
         with the filename and the duplicate information as returned by
-        Compare.checkDuplicate.
+        Compare.checkDuplicate. The files are read concurrently with
+        BatchLoader.
         @param filenames List of filenames
         @throws Exception If reading one of the files fails. */
     public static void compare(ArrayList<String> filenames) throws Exception
@@ -116,25 +140,37 @@ public final class Compare
         Board board = null;
         Map<Integer, ArrayList<Placement>> games =
             new TreeMap<Integer, ArrayList<Placement>>();
-        for (int gameNumber = 0; gameNumber < filenames.size(); ++gameNumber)
+        ArrayList<File> files = new ArrayList<File>(filenames.size());
+        for (String filename : filenames)
+            files.add(new File(filename));
+        BatchLoader<MainVariation> loader =
+            new BatchLoader<MainVariation>(files, MAIN_VARIATION_LOADER);
+        try
+        {
+            for (int gameNumber = 0; loader.hasNext(); ++gameNumber)
+            {
+                BatchLoader.Result<MainVariation> result = loader.next();
+                if (result.getError() != null)
+                    throw result.getError();
+                String filename = filenames.get(gameNumber);
+                MainVariation game = result.getValue();
+                int size = game.m_boardSize;
+                if (board == null)
+                    board = new Board(size);
+                else if (size != board.getSize())
+                    throw new Exception("Board size in " + filename +
+                                        " does not match other games");
+                ArrayList<Placement> moves = game.m_placements;
+                String duplicate =
+                    checkDuplicate(board, moves, games, false, false);
+                System.out.println(Integer.toString(gameNumber) + " " +
+                                   filename + " " + duplicate);
+                games.put(gameNumber, moves);
+            }
+        }
+        finally
         {
-            String filename = filenames.get(gameNumber);
-            File file = new File(filename);
-            FileInputStream fileStream = new FileInputStream(file);
-            SgfReader reader = new SgfReader(fileStream, file, null, 0);
-            GameTree tree = reader.getTree();
-            int size = tree.getBoardSize();
-            if (board == null)
-                board = new Board(size);
-            else if (size != board.getSize())
-                throw new Exception("Board size in " + filename +
-                                    " does not match other games");
-            ArrayList<Placement> moves = getPlacements(tree.getRoot());
-            String duplicate =
-                checkDuplicate(board, moves, games, false, false);
-            System.out.println(Integer.toString(gameNumber) + " " +
-                               filename + " " + duplicate);
-            games.put(gameNumber, moves);
+            loader.close();
         }
     }
 
@@ -158,8 +194,119 @@ public final class Compare
         return result;
     }
 
+    /** Read the main variation of a SGF file.
+        Uses SgfParser on the memory-mapped file and does not build a game
+        tree.
+        @param file The file.
+        @return The board size and the placements in the same order as
+        getPlacements(). */
+    public static MainVariation readMainVariation(File file)
+        throws IOException, SgfError
+    {
+        return readMainVariation(new SgfParser(file));
+    }
+
+    /** Read the main variation of the next game tree.
+        The main variation ends with the first end of a game tree.
+        @param parser The parser positioned before the start of the game
+        tree.
+        @return The board size and the placements in the same order as
+        getPlacements(). */
+    public static MainVariation readMainVariation(SgfParser parser)
+        throws IOException, SgfError
+    {
+        if (parser.next() != SgfParser.Event.START_GAME_TREE)
+            throw new SgfError("No root tree found");
+        MainVariation result = new MainVariation();
+        result.m_boardSize = GoPoint.DEFAULT_SIZE;
+        result.m_placements = new ArrayList<Placement>(512);
+        boolean isRoot = true;
+        Map<String,ArrayList<String>> props =
+            new TreeMap<String,ArrayList<String>>();
+        PointList list = new PointList();
+        while (true)
+        {
+            SgfParser.Event event = parser.next();
+            if (event == SgfParser.Event.END_GAME_TREE
+                || event == SgfParser.Event.END)
+                break;
+            if (event == SgfParser.Event.START_NODE)
+                props.clear();
+            else if (event == SgfParser.Event.PROPERTY)
+                props.put(parser.getName(), parser.getValues());
+            else if (event == SgfParser.Event.END_NODE)
+            {
+                if (isRoot && props.containsKey("SZ"))
+                    result.m_boardSize = parseSize(props.get("SZ"));
+                isRoot = false;
+                addPlacements(props, result.m_boardSize, list,
+                              result.m_placements);
+            }
+        }
+        return result;
+    }
+
     /** Make constructor unavailable; class is for namespace only. */
     private Compare()
     {
     }
+
+    /** Setup properties in the order of BLACK_WHITE_EMPTY. */
+    private static final String[] SETUP_PROPS = { "AB", "AW", "AE" };
+
+    /** Add the placements of a node.
+        If a node contains both moves, the white move is used like in
+        SgfReader. */
+    private static void addPlacements(Map<String,ArrayList<String>> props,
+                                      int size, PointList list,
+                                      ArrayList<Placement> placements)
+        throws SgfError
+    {
+        try
+        {
+            for (int i = 0; i < SETUP_PROPS.length; ++i)
+            {
+                ArrayList<String> values = props.get(SETUP_PROPS[i]);
+                if (values == null)
+                    continue;
+                list.clear();
+                SgfUtil.parsePointList(values, size, list);
+                Collections.sort(list);
+                for (GoPoint p : list)
+                    placements.add(new Placement(true,
+                                                 BLACK_WHITE_EMPTY.get(i),
+                                                 p));
+            }
+            ArrayList<String> values = props.get("W");
+            GoColor c = WHITE;
+            if (values == null)
+            {
+                values = props.get("B");
+                c = BLACK;
+            }
+            if (values != null)
+            {
+                GoPoint p = SgfUtil.parsePoint(values.get(0), size);
+                placements.add(new Placement(false, c, p));
+            }
+        }
+        catch (InvalidPointException e)
+        {
+            throw new SgfError(e.getMessage());
+        }
+    }
+
+    private static int parseSize(ArrayList<String> values) throws SgfError
+    {
+        try
+        {
+            int size = Integer.parseInt(values.get(0).trim());
+            if (size > 0 && size <= GoPoint.MAX_SIZE)
+                return size;
+        }
+        catch (NumberFormatException e)
+        {
+        }
+        throw new SgfError("Invalid board size value");
+    }
 }
@@ -66,7 +66,8 @@ public final class Main
                    "-komi           komi\n" +
                    "-maxmoves       move limit\n" +
                    "-observer       command for observer program\n" +
-                   "-openings       directory with opening sgf files\n" +
+                   "-openings       directory with opening sgf files or sgf\n" +
+                   "                file with multiple games\n" +
                    "-referee        command for referee program\n" +
                    "-sgffile        filename prefix\n" +
                    "-size           board size for autoplay (default 19)\n" +
@@ -8,6 +8,7 @@ import java.io.FileFilter;
 import java.io.IOException;
 import net.sf.gogui.game.GameInfo;
 import net.sf.gogui.game.GameTree;
+import net.sf.gogui.sgf.SgfCollection;
 import net.sf.gogui.sgf.SgfError;
 import net.sf.gogui.sgf.SgfReader;
 import net.sf.gogui.util.ErrorMessage;
@@ -22,14 +23,36 @@ class Filter
     }
 }
 
-/** Access opening SGF files from directory. */
+/** Access opening SGF files from directory.
+    The openings can also be the games of a single SGF file with multiple
+    game trees. The file is indexed with SgfCollection and an index file
+    is written next to it. */
 public class Openings
 {
     public Openings(File directory) throws ErrorMessage
     {
+        m_directory = directory;
+        if (directory.isFile())
+        {
+            try
+            {
+                m_collection = new SgfCollection(directory, true);
+            }
+            catch (IOException e)
+            {
+                throw new ErrorMessage(e.getMessage());
+            }
+            catch (SgfError e)
+            {
+                throw new ErrorMessage(directory + ": " + e.getMessage());
+            }
+            if (m_collection.getNumberGames() == 0)
+                throw new ErrorMessage("No games found in " + directory);
+            m_currentFile = -1;
+            return;
+        }
         if (! directory.isDirectory())
             throw new ErrorMessage(directory + " is not a directory");
-        m_directory = directory;
         m_files = directory.listFiles(new Filter());
         if (m_files.length == 0)
             throw new ErrorMessage("No SGF files found in " + directory);
@@ -42,7 +65,7 @@ public class Openings
         return getTree().getBoardSize();
     }
 
-    /** Get name of directory. */
+    /** Get name of directory or collection file. */
     public String getDirectory()
     {
         return m_directory.toString();
@@ -51,6 +74,8 @@ public class Openings
     /** Get name of currently loaded file. */
     public String getFilename()
     {
+        if (m_collection != null)
+            return m_directory + ":" + (m_currentFile + 1);
         return m_files[m_currentFile].toString();
     }
 
@@ -69,12 +94,20 @@ public class Openings
     /** Get number of opening files in directory. */
     public int getNumber()
     {
+        if (m_collection != null)
+            return m_collection.getNumberGames();
         return m_files.length;
     }
 
     /** Load opening file number i. */
     public void loadFile(int i) throws IOException, SgfError
     {
+        if (m_collection != null)
+        {
+            m_tree = m_collection.readTree(i);
+            m_currentFile = i;
+            return;
+        }
         File file = m_files[i];
         FileInputStream fileStream = new FileInputStream(file);
         SgfReader reader = new SgfReader(fileStream, file, null, 0);
@@ -86,6 +119,9 @@ public class Openings
 
     private final File m_directory;
 
+    /** Games of a collection file or null, if m_directory is a directory. */
+    private SgfCollection m_collection;
+
     private File[] m_files;
 
     private GameTree m_tree;
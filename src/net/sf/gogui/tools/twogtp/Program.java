@@ -19,7 +19,9 @@ public class Program
                    boolean verbose) throws GtpError
     {
         m_defaultName = defaultName;
-        m_gtp = new GtpClient(command, null, verbose, null);
+        // Read the responses without a separate thread, which is faster
+        // for programs that respond quickly
+        m_gtp = new GtpClient(command, null, verbose, null, true);
         m_gtp.setLogPrefix(logPrefix);
         m_synchronizer = new GtpSynchronizer(m_gtp);
         m_gtp.queryProtocolVersion();
@@ -3,7 +3,6 @@
 package net.sf.gogui.tools.twogtp;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -15,11 +14,9 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import net.sf.gogui.game.ConstNode;
 import net.sf.gogui.game.ConstGame;
+import net.sf.gogui.gamefile.BatchLoader;
 import net.sf.gogui.go.Komi;
-import net.sf.gogui.sgf.SgfError;
-import net.sf.gogui.sgf.SgfReader;
 import net.sf.gogui.sgf.SgfWriter;
 import net.sf.gogui.util.ErrorMessage;
 import net.sf.gogui.util.Platform;
@@ -267,8 +264,12 @@ public class ResultFile
             return new File(m_filePrefix + "-" + gameIndex + ".sgf");
     }
 
+    /** Read the main variations of the existing games.
+        The files are read concurrently with BatchLoader. */
     private void readGames()
     {
+        ArrayList<File> files = new ArrayList<File>();
+        ArrayList<Integer> gameIndex = new ArrayList<Integer>();
         for (int n = 0; n < m_numberGames; ++n)
         {
             if (! m_gameExists.contains(n))
@@ -279,26 +280,35 @@ public class ResultFile
                 System.err.println("Game " + file + " not found");
                 continue;
             }
-            if (! file.exists())
-                return;
-            try
-            {
-                FileInputStream fileStream = new FileInputStream(file);
-                SgfReader reader = new SgfReader(fileStream, file, null, 0);
-                ConstNode root = reader.getTree().getRoot();
-                m_games.put(n, Compare.getPlacements(root));
-            }
-            catch (SgfError e)
-            {
-                System.err.println("Error reading " + file + ": " +
-                                   e.getMessage());
-            }
-            catch (Exception e)
+            files.add(file);
+            gameIndex.add(n);
+        }
+        BatchLoader<Compare.MainVariation> loader =
+            new BatchLoader<Compare.MainVariation>(files,
+                                               Compare.MAIN_VARIATION_LOADER);
+        try
+        {
+            for (int i = 0; loader.hasNext(); ++i)
             {
-                System.err.println("Error reading " + file + ": " +
-                                   e.getMessage());
+                BatchLoader.Result<Compare.MainVariation> result =
+                    loader.next();
+                if (result.getError() != null)
+                    System.err.println("Error reading " + result.getFile()
+                                       + ": "
+                                       + result.getError().getMessage());
+                else
+                    m_games.put(gameIndex.get(i),
+                                result.getValue().m_placements);
             }
         }
+        catch (InterruptedException e)
+        {
+            System.err.println("Interrupted");
+        }
+        finally
+        {
+            loader.close();
+        }
     }
 
     private static Table readTable(File file, int numberGames,
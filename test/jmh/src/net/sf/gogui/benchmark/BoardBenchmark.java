@@ -0,0 +1,79 @@
+// BoardBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks for Board.play, Board.undo and Board.isSuicide. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark
+{
+    @Param({"9", "19"})
+    public int m_size;
+
+    @Setup
+    public void setup()
+    {
+        GameTree tree = Fixtures.createLongGame(m_size, 3 * m_size * m_size,
+                                                42);
+        int numberMoves = 0;
+        ConstNode node = tree.getRootConst().getChildConst();
+        for ( ; node != null; node = node.getChildConst())
+            ++numberMoves;
+        m_moves = new Move[numberMoves];
+        node = tree.getRootConst().getChildConst();
+        for (int i = 0; node != null; node = node.getChildConst(), ++i)
+            m_moves[i] = node.getMove();
+        m_board = new Board(m_size);
+        m_position = new Board(m_size);
+        for (int i = 0; i < m_moves.length / 2; ++i)
+            m_position.play(m_moves[i]);
+    }
+
+    /** Play all moves of a long game and undo them. */
+    @Benchmark
+    public void playUndo()
+    {
+        for (int i = 0; i < m_moves.length; ++i)
+            m_board.play(m_moves[i]);
+        m_board.undo(m_moves.length);
+    }
+
+    /** Check all points of a middle game position for suicide. */
+    @Benchmark
+    public void isSuicide(Blackhole blackhole)
+    {
+        for (GoPoint p : m_position)
+            for (GoColor c : GoColor.BLACK_WHITE)
+                blackhole.consume(m_position.isSuicide(c, p));
+    }
+
+    private Move[] m_moves;
+
+    private Board m_board;
+
+    private Board m_position;
+}
@@ -0,0 +1,119 @@
+// BoardUpdaterBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import net.sf.gogui.game.BoardUpdater;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.go.Board;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for BoardUpdater.update on a deep tree with variations. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardUpdaterBenchmark
+{
+    /** Interval of the position cache of the updater, 0 disables it. */
+    @Param({"0", "20"})
+    public int m_cacheInterval;
+
+    @Setup
+    public void setup()
+    {
+        m_tree = Fixtures.createVariationTree(19, 300, 3, 10, 42);
+        m_last = NodeUtil.getLast(m_tree.getRootConst());
+        m_board = new Board(19);
+        m_updater = new BoardUpdater();
+        m_updater.setCache(m_cacheInterval, 64000000L);
+        m_nodes = new ArrayList<ConstNode>();
+        ConstNode node = m_tree.getRootConst();
+        for ( ; node != null; node = NodeUtil.nextNode(node))
+            m_nodes.add(node);
+        m_random = new Random(42);
+        m_longTree = Fixtures.createLongGame(19, 2000, 42);
+        m_longLast = NodeUtil.getLast(m_longTree.getRootConst());
+        m_longMiddle = NodeUtil.findByMoveNumber(m_longLast, 1000);
+        m_longBoard = new Board(19);
+        m_longUpdater = new BoardUpdater();
+        m_longUpdater.setCache(m_cacheInterval, 64000000L);
+    }
+
+    /** Alternate between the middle and the end of a long game, like
+        when jumping to a move number and back. */
+    @Benchmark
+    public Board updateAlternate()
+    {
+        m_longUpdater.update(m_longTree, m_longMiddle, m_longBoard);
+        m_longUpdater.update(m_longTree, m_longLast, m_longBoard);
+        return m_longBoard;
+    }
+
+    /** Jump to a random node of the tree, like when selecting nodes in the
+        game tree window. */
+    @Benchmark
+    public Board updateRandomJump()
+    {
+        ConstNode node = m_nodes.get(m_random.nextInt(m_nodes.size()));
+        m_updater.update(m_tree, node, m_board);
+        return m_board;
+    }
+
+    /** Update to the last node of the main variation. */
+    @Benchmark
+    public Board updateLast()
+    {
+        m_updater.update(m_tree, m_last, m_board);
+        return m_board;
+    }
+
+    /** Step through the main variation one node at a time, like when
+        navigating in the GUI or computing statistics for each position. */
+    @Benchmark
+    public Board updateStepForward()
+    {
+        ConstNode node = m_tree.getRootConst();
+        for ( ; node != null; node = node.getChildConst())
+            m_updater.update(m_tree, node, m_board);
+        return m_board;
+    }
+
+    private GameTree m_tree;
+
+    private ConstNode m_last;
+
+    private Board m_board;
+
+    private BoardUpdater m_updater;
+
+    private ArrayList<ConstNode> m_nodes;
+
+    private Random m_random;
+
+    private GameTree m_longTree;
+
+    private ConstNode m_longLast;
+
+    private ConstNode m_longMiddle;
+
+    private Board m_longBoard;
+
+    private BoardUpdater m_longUpdater;
+}
@@ -0,0 +1,74 @@
+// CommentIndexBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import net.sf.gogui.game.CommentIndex;
+import net.sf.gogui.game.ConstNode;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.NodeUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for searching all matches of a pattern in the comments of
+    a large trace, like repeated "find next" in GoGui. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentIndexBenchmark
+{
+    /** The search pattern.
+        A rare number, which occurs in a few nodes only, or a frequent
+        word, which occurs in almost every node. */
+    @Param({"\\b12345\\b", "winrate"})
+    public String m_pattern;
+
+    @Setup
+    public void setup()
+    {
+        m_tree = Fixtures.createCommentTrace(19, 20000, 500, 42);
+        m_compiled = Pattern.compile(m_pattern, Pattern.CASE_INSENSITIVE);
+        m_index = new CommentIndex(m_tree.getRoot());
+        m_index.find(m_tree.getRoot(), m_compiled);
+    }
+
+    @Benchmark
+    public int findLinear()
+    {
+        int n = 0;
+        ConstNode node = m_tree.getRoot();
+        while ((node = NodeUtil.findInComments(node, m_compiled)) != null
+               && n < 100)
+            ++n;
+        return n;
+    }
+
+    @Benchmark
+    public int findIndex()
+    {
+        int n = 0;
+        ConstNode node = m_tree.getRoot();
+        while ((node = m_index.find(node, m_compiled)) != null && n < 100)
+            ++n;
+        return n;
+    }
+
+    private Pattern m_compiled;
+
+    private CommentIndex m_index;
+
+    private GameTree m_tree;
+}
@@ -0,0 +1,65 @@
+// CompareBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.tools.twogtp.Compare;
+import net.sf.gogui.tools.twogtp.Compare.Placement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark for Compare.checkDuplicate on a collection of games. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompareBenchmark
+{
+    @Param({"100", "1000"})
+    public int m_numberGames;
+
+    @Setup
+    public void setup()
+    {
+        m_board = new Board(19);
+        m_games = new TreeMap<Integer, ArrayList<Placement>>();
+        for (int i = 0; i < m_numberGames; ++i)
+            m_games.put(i, getPlacements(i));
+        // Game that is not a duplicate, so all games are compared
+        m_moves = getPlacements(m_numberGames);
+    }
+
+    @Benchmark
+    public String checkDuplicate()
+    {
+        return Compare.checkDuplicate(m_board, m_moves, m_games, false,
+                                      false);
+    }
+
+    private Board m_board;
+
+    private ArrayList<Placement> m_moves;
+
+    private Map<Integer, ArrayList<Placement>> m_games;
+
+    private static ArrayList<Placement> getPlacements(long seed)
+    {
+        return Compare.getPlacements(Fixtures.createLongGame(19, 200, seed)
+                                     .getRootConst());
+    }
+}
@@ -0,0 +1,51 @@
+// CountScoreBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.sf.gogui.game.BoardUpdater;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.NodeUtil;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.CountScore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark for CountScore.begin and CountScore.compute. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CountScoreBenchmark
+{
+    @Setup
+    public void setup()
+    {
+        GameTree tree = Fixtures.createLongGame(19, 250, 42);
+        m_board = new Board(19);
+        new BoardUpdater().update(tree, NodeUtil.getLast(tree.getRootConst()),
+                                  m_board);
+        m_countScore = new CountScore();
+    }
+
+    @Benchmark
+    public CountScore compute()
+    {
+        m_countScore.begin(m_board, null);
+        return m_countScore;
+    }
+
+    private Board m_board;
+
+    private CountScore m_countScore;
+}
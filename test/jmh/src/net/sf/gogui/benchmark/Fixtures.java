@@ -0,0 +1,206 @@
+// Fixtures.java
+
+package net.sf.gogui.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import net.sf.gogui.game.ConstGameTree;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
+import net.sf.gogui.sgf.SgfError;
+import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.sgf.SgfWriter;
+
+/** Generated games used as fixtures by the benchmarks.
+    All games are generated from fixed seeds, so that the fixtures and
+    therefore the benchmark results are reproducible. */
+public final class Fixtures
+{
+    /** Create a game without variations.
+        The moves are random legal moves (no suicide, no simple ko). If
+        no legal move is found, the player passes.
+        @param size The board size.
+        @param numberMoves The number of moves.
+        @param seed The seed for the random generator.
+        @return The game tree. */
+    public static GameTree createLongGame(int size, int numberMoves,
+                                          long seed)
+    {
+        GameTree tree = createTree(size);
+        Board board = new Board(size);
+        Random random = new Random(seed);
+        Node node = tree.getRoot();
+        for (int i = 0; i < numberMoves; ++i)
+        {
+            Move move = getRandomMove(board, random);
+            board.play(move);
+            Node child = new Node(move);
+            node.append(child);
+            node = child;
+        }
+        return tree;
+    }
+
+    /** Create a deep game tree with many variations.
+        Each move of the main variation has a number of alternative side
+        variations of a given length, like in a game record of a reviewed
+        game or an engine search.
+        @param size The board size.
+        @param depth The number of moves in the main variation.
+        @param numberVariations The number of side variations per node.
+        @param variationLength The number of moves in each side variation.
+        @param seed The seed for the random generator.
+        @return The game tree. */
+    public static GameTree createVariationTree(int size, int depth,
+                                               int numberVariations,
+                                               int variationLength,
+                                               long seed)
+    {
+        GameTree tree = createTree(size);
+        Board board = new Board(size);
+        Random random = new Random(seed);
+        Node node = tree.getRoot();
+        for (int i = 0; i < depth; ++i)
+        {
+            Move move = getRandomMove(board, random);
+            Node child = new Node(move);
+            node.append(child);
+            for (int j = 0; j < numberVariations; ++j)
+            {
+                Node variationNode = node;
+                for (int k = 0; k < variationLength; ++k)
+                {
+                    Move variationMove = getRandomMove(board, random);
+                    board.play(variationMove);
+                    Node variationChild = new Node(variationMove);
+                    variationNode.append(variationChild);
+                    variationNode = variationChild;
+                }
+                board.undo(variationLength);
+            }
+            board.play(move);
+            node = child;
+        }
+        return tree;
+    }
+
+    /** Create a large game tree with long comments.
+        Resembles the traces written by engines or the Explorer tool, which
+        store a tree of searched moves and the engine output as comments.
+        @param size The board size.
+        @param numberNodes The approximate number of nodes.
+        @param commentLength The approximate length of the comment of each
+        node.
+        @param seed The seed for the random generator.
+        @return The game tree. */
+    public static GameTree createCommentTrace(int size, int numberNodes,
+                                              int commentLength, long seed)
+    {
+        GameTree tree = createTree(size);
+        Board board = new Board(size);
+        Random random = new Random(seed);
+        Node node = tree.getRoot();
+        int depth = 0;
+        int n = 0;
+        while (n < numberNodes)
+        {
+            // Walk down a random line, then back up to a random depth
+            int lineLength = 1 + random.nextInt(20);
+            for (int i = 0; i < lineLength && n < numberNodes; ++i, ++n)
+            {
+                Move move = getRandomMove(board, random);
+                board.play(move);
+                Node child = new Node(move);
+                child.setComment(createComment(random, commentLength));
+                node.append(child);
+                node = child;
+                ++depth;
+            }
+            int back = depth - random.nextInt(depth + 1);
+            for (int i = 0; i < back; ++i)
+            {
+                node = node.getFather();
+                board.undo();
+                --depth;
+            }
+        }
+        return tree;
+    }
+
+    /** Read a game tree from SGF data. */
+    public static GameTree fromSgf(byte[] sgf) throws SgfError
+    {
+        return fromSgf(sgf, false);
+    }
+
+    /** Read a game tree from SGF data.
+        @param sgf The SGF data.
+        @param isLazy Decode properties lazily (see SgfReader). */
+    public static GameTree fromSgf(byte[] sgf, boolean isLazy)
+        throws SgfError
+    {
+        ByteArrayInputStream in = new ByteArrayInputStream(sgf);
+        return new SgfReader(in, null, null, 0, isLazy).getTree();
+    }
+
+    /** Write a game tree in SGF format. */
+    public static byte[] toSgf(ConstGameTree tree)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SgfWriter(out, tree, "Benchmark", null);
+        return out.toByteArray();
+    }
+
+    private static final String[] WORDS = {
+        "visits", "winrate", "prior", "lcb", "pv", "nodes", "playouts",
+        "score", "policy", "value", "depth", "time", "Black", "White"
+    };
+
+    /** Make constructor unavailable; class is for namespace only. */
+    private Fixtures()
+    {
+    }
+
+    private static String createComment(Random random, int length)
+    {
+        StringBuilder buffer = new StringBuilder(length + 20);
+        while (buffer.length() < length)
+        {
+            buffer.append(WORDS[random.nextInt(WORDS.length)]);
+            buffer.append(' ');
+            buffer.append(random.nextInt(100000));
+            if (random.nextInt(8) == 0)
+                buffer.append('\n');
+            else
+                buffer.append(' ');
+        }
+        return buffer.toString();
+    }
+
+    private static GameTree createTree(int size)
+    {
+        return new GameTree(size, new Komi(6.5), null, null, null);
+    }
+
+    private static Move getRandomMove(Board board, Random random)
+    {
+        GoColor c = board.getToMove();
+        int size = board.getSize();
+        for (int i = 0; i < 4 * size * size; ++i)
+        {
+            GoPoint p = GoPoint.get(random.nextInt(size),
+                                    random.nextInt(size));
+            if (board.getColor(p) == EMPTY && ! board.isKo(p)
+                && ! board.isSuicide(c, p))
+                return Move.get(c, p);
+        }
+        return Move.getPass(c);
+    }
+}
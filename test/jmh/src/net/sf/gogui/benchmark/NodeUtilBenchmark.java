@@ -0,0 +1,68 @@
+// NodeUtilBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import net.sf.gogui.game.NodeUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for subtree functions of NodeUtil on a tree with about
+    90000 nodes and depth 2000. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeUtilBenchmark
+{
+    @Setup
+    public void setup()
+    {
+        m_tree = Fixtures.createVariationTree(19, 2000, 3, 15, 42);
+        m_last = m_tree.getRoot();
+        while (m_last.hasChildren())
+            m_last = m_last.getChild();
+    }
+
+    /** Subtree size of the root after a modification of the tree at the
+        end of the main variation, like the subtree sizes shown by the
+        game tree window while an engine adds moves. */
+    @Benchmark
+    public int subtreeSizeAfterAppend()
+    {
+        Node node = new Node();
+        m_last.append(node);
+        int result = NodeUtil.subtreeSize(m_tree.getRoot());
+        m_last.removeChild(node);
+        return result;
+    }
+
+    @Benchmark
+    public boolean subtreeGreaterThan()
+    {
+        return NodeUtil.subtreeGreaterThan(m_tree.getRoot().getChild(),
+                                           1000000);
+    }
+
+    @Benchmark
+    public String treeInfo()
+    {
+        return NodeUtil.treeInfo(m_tree.getRoot());
+    }
+
+    private GameTree m_tree;
+
+    private Node m_last;
+}
@@ -0,0 +1,119 @@
+// SgfBenchmark.java
+
+package net.sf.gogui.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.SubtreeIterator;
+import net.sf.gogui.sgf.SgfError;
+import net.sf.gogui.sgf.SgfParser;
+import net.sf.gogui.sgf.SgfWriter;
+import net.sf.gogui.tools.twogtp.Compare;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for SgfReader and SgfWriter on large traces. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SgfBenchmark
+{
+    /** Type of the fixture.
+        "long" is a long game without variations, "variations" a deep tree
+        with many variations, "comments" a large trace with long comments
+        in every node. */
+    @Param({"long", "variations", "comments"})
+    public String m_fixture;
+
+    @Setup
+    public void setup()
+    {
+        if (m_fixture.equals("long"))
+            m_tree = Fixtures.createLongGame(19, 1000, 42);
+        else if (m_fixture.equals("variations"))
+            m_tree = Fixtures.createVariationTree(19, 300, 5, 20, 42);
+        else
+            m_tree = Fixtures.createCommentTrace(19, 20000, 500, 42);
+        m_sgf = Fixtures.toSgf(m_tree);
+    }
+
+    /** Parse with the streaming parser without building a tree. */
+    @Benchmark
+    public int parse() throws IOException, SgfError
+    {
+        SgfParser parser = new SgfParser(ByteBuffer.wrap(m_sgf), null);
+        int numberNodes = 0;
+        SgfParser.Event event;
+        while ((event = parser.next()) != SgfParser.Event.END)
+            if (event == SgfParser.Event.START_NODE)
+                ++numberNodes;
+        return numberNodes;
+    }
+
+    @Benchmark
+    public GameTree read() throws SgfError
+    {
+        return Fixtures.fromSgf(m_sgf);
+    }
+
+    /** Read with lazy decoding of properties.
+        Only the tree structure and the moves are decoded. */
+    @Benchmark
+    public GameTree readLazy() throws SgfError
+    {
+        return Fixtures.fromSgf(m_sgf, true);
+    }
+
+    /** Read with lazy decoding of properties and access the comments of
+        all nodes. */
+    @Benchmark
+    public int readLazyComments() throws SgfError
+    {
+        GameTree tree = Fixtures.fromSgf(m_sgf, true);
+        int length = 0;
+        for (SubtreeIterator i = new SubtreeIterator(tree.getRoot());
+             i.hasNext(); )
+        {
+            String comment = i.next().getComment();
+            if (comment != null)
+                length += comment.length();
+        }
+        return length;
+    }
+
+    /** Read the moves of the main variation as done by the twogtp
+        compare tool. */
+    @Benchmark
+    public int readMainVariation() throws IOException, SgfError
+    {
+        SgfParser parser = new SgfParser(ByteBuffer.wrap(m_sgf), null);
+        return Compare.readMainVariation(parser).m_placements.size();
+    }
+
+    @Benchmark
+    public int write()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(m_sgf.length);
+        new SgfWriter(out, m_tree, "Benchmark", null);
+        return out.size();
+    }
+
+    private byte[] m_sgf;
+
+    private GameTree m_tree;
+}
@@ -2,10 +2,15 @@
 
 package net.sf.gogui.game;
 
+import java.util.ArrayList;
+import java.util.Random;
 import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
 import static net.sf.gogui.go.GoColor.BLACK;
 import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
 import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.PointList;
 import net.sf.gogui.go.Komi;
 import net.sf.gogui.go.Move;
 
@@ -27,6 +32,77 @@ public final class BoardUpdaterTest
         m_updater = new BoardUpdater();
     }
 
+    /** Test incremental updates with the position cache enabled. */
+    public void testCache()
+    {
+        m_updater.setCache(7, 100000000L);
+        checkIncremental();
+        assertTrue(m_updater.getNumberCached() > 0);
+    }
+
+    /** Test the position cache with memory for only a few positions. */
+    public void testCacheEviction()
+    {
+        m_updater.setCache(3, 100000L);
+        checkIncremental();
+        assertTrue(m_updater.getNumberCached() > 0);
+        assertTrue(m_updater.getNumberCached() < 10);
+    }
+
+    /** Test that positions of modified nodes are not restored from the
+        cache. */
+    public void testCacheRemoveCached()
+    {
+        m_updater.setCache(2, 100000000L);
+        GameTree tree = new GameTree(9, null, null, null, null);
+        Node node = tree.getRoot();
+        for (int i = 0; i < 10; ++i)
+            node = appendMove(node, Move.get(i % 2 == 0 ? BLACK : WHITE,
+                                             GoPoint.get(i % 9, 0)));
+        Board board = new Board(9);
+        m_updater.update(tree, node, board);
+        Node modified = node.getFather().getFather().getFather();
+        modified.setMove(Move.get(modified.getMove().getColor(),
+                                  GoPoint.get(4, 4)));
+        m_updater.removeCached(modified);
+        m_updater.update(tree, tree.getRoot(), board);
+        m_updater.update(tree, node, board);
+        Board expected = new Board(9);
+        new BoardUpdater().update(tree, node, expected);
+        assertEquals(expected.getHashCode(), board.getHashCode());
+        assertEquals(expected.getNumberMoves(), board.getNumberMoves());
+        for (int i = 0; i < expected.getNumberMoves(); ++i)
+            assertEquals(expected.getMove(i), board.getMove(i));
+    }
+
+    /** Test that incremental updates give the same position as updates
+        from the root. */
+    public void testIncremental()
+    {
+        checkIncremental();
+    }
+
+    /** Test that a modification of the current node is used in the next
+        update. */
+    public void testModifiedCurrentNode()
+    {
+        GameTree tree = new GameTree();
+        Node father = appendMove(tree.getRoot(),
+                                 Move.get(BLACK, GoPoint.get(3, 3)));
+        Node node = new Node();
+        father.append(node);
+        Board board = new Board(19);
+        m_updater.update(tree, node, board);
+        assertEquals(WHITE, board.getToMove());
+        node.setPlayer(BLACK);
+        m_updater.update(tree, node, board);
+        assertEquals(BLACK, board.getToMove());
+        node.addStone(WHITE, GoPoint.get(4, 4));
+        m_updater.update(tree, node, board);
+        assertEquals(WHITE, board.getColor(GoPoint.get(4, 4)));
+        assertEquals(BLACK, board.getColor(GoPoint.get(3, 3)));
+    }
+
     public void testSetup()
     {
         GameTree tree = new GameTree();
@@ -82,4 +158,85 @@ public final class BoardUpdaterTest
     }
 
     private BoardUpdater m_updater;
+
+    /** Update to random nodes and check the position against an update
+        with a new updater.
+        Uses a tree with variations, setup stones, a node that changes the
+        color to move and handicap stones stored as moves. */
+    private void checkIncremental()
+    {
+        Random random = new Random(1);
+        GameTree tree = new GameTree(9, null, null, null, null);
+        tree.getGameInfo(tree.getRoot()).setHandicap(2);
+        Node node = tree.getRoot();
+        node = appendMove(node, Move.get(BLACK, GoPoint.get(2, 2)));
+        node = appendMove(node, Move.get(BLACK, GoPoint.get(6, 6)));
+        ArrayList<Node> nodes = new ArrayList<Node>();
+        Board board = new Board(9);
+        for (int i = 0; i < 100; ++i)
+        {
+            m_updater.update(tree, node, board);
+            if (i == 40)
+            {
+                Node child = new Node();
+                child.addStone(WHITE, getRandomEmpty(board, random));
+                node.append(child);
+                node = child;
+            }
+            else if (i == 60)
+            {
+                Node child = new Node();
+                child.setPlayer(board.getToMove().otherColor());
+                node.append(child);
+                node = child;
+            }
+            else
+            {
+                GoColor c = board.getToMove();
+                Node father = node;
+                node = appendMove(father, Move.get(c, getRandomEmpty(board,
+                                                                    random)));
+                if (i % 10 == 0)
+                    nodes.add(appendMove(father,
+                                         Move.get(c, getRandomEmpty(board,
+                                                                    random))));
+            }
+            nodes.add(node);
+        }
+        nodes.add(tree.getRoot());
+        for (int i = 0; i < 500; ++i)
+        {
+            ConstNode target = nodes.get(random.nextInt(nodes.size()));
+            m_updater.update(tree, target, board);
+            Board expected = new Board(9);
+            new BoardUpdater().update(tree, target, expected);
+            assertEquals(expected.getHashCode(), board.getHashCode());
+            assertEquals(expected.getToMove(), board.getToMove());
+            assertEquals(expected.getNumberMoves(), board.getNumberMoves());
+            for (int j = 0; j < expected.getNumberMoves(); ++j)
+                assertEquals(expected.getMove(j), board.getMove(j));
+            for (GoColor c : GoColor.BLACK_WHITE)
+            {
+                assertEquals(expected.getCaptured(c), board.getCaptured(c));
+                assertEquals(expected.getSetup(c), board.getSetup(c));
+            }
+            assertEquals(expected.isSetupHandicap(), board.isSetupHandicap());
+        }
+    }
+
+    private static Node appendMove(Node father, Move move)
+    {
+        Node node = new Node(move);
+        father.append(node);
+        return node;
+    }
+
+    private static GoPoint getRandomEmpty(Board board, Random random)
+    {
+        PointList empty = new PointList();
+        for (GoPoint p : board)
+            if (board.getColor(p) == EMPTY)
+                empty.add(p);
+        return empty.get(random.nextInt(empty.size()));
+    }
 }
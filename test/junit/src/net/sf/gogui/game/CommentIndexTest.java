@@ -0,0 +1,180 @@
+// CommentIndexTest.java
+
+package net.sf.gogui.game;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.regex.Pattern;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.Move;
+
+public final class CommentIndexTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CommentIndexTest.class);
+    }
+
+    /** Test that find() returns the same nodes as
+        NodeUtil.findInComments(). */
+    public void testFind()
+    {
+        String[] patterns = {
+            "winrate", "WinRate", "rate", "win", "\\bwin", "rate\\b",
+            "\\bwinrate\\b", "\\bwin\\b", "pv:", "pv: d4", "visits 1",
+            "0.5", "[a-z]+rate", "\u00c4rger", "\u00e4rger", "nomatch",
+            "d4 q16", ":", "  ", "\\\\b"
+        };
+        GameTree tree = createTree(200, 42);
+        for (String regex : patterns)
+        {
+            for (int flags : new int[] { 0, Pattern.CASE_INSENSITIVE,
+                                         Pattern.LITERAL })
+            {
+                Pattern pattern = Pattern.compile(regex, flags);
+                checkFind(tree, pattern);
+            }
+        }
+    }
+
+    /** Test find() with more candidates than are compared by position. */
+    public void testFindManyCandidates()
+    {
+        GameTree tree = createTree(10000, 1);
+        checkFind(tree, Pattern.compile("\\bwin"));
+        checkFind(tree, Pattern.compile("\\bpv\\b.*"));
+    }
+
+    public void testFindPrefix()
+    {
+        GameTree tree = new GameTree();
+        Node root = tree.getRoot();
+        Node node1 = new Node(Move.get(BLACK, 1, 1));
+        node1.setComment("Winrate 0.53");
+        root.append(node1);
+        Node node2 = new Node(Move.get(WHITE, 2, 2));
+        node2.setComment("Wins by 3.5");
+        node1.append(node2);
+        CommentIndex index = new CommentIndex(root);
+        ArrayList<ConstNode> nodes = index.findPrefix("win");
+        assertEquals(2, nodes.size());
+        assertTrue(nodes.contains(node1));
+        assertTrue(nodes.contains(node2));
+        nodes = index.findPrefix("WINR");
+        assertEquals(1, nodes.size());
+        assertSame(node1, nodes.get(0));
+        assertTrue(index.findPrefix("rate").isEmpty());
+    }
+
+    public void testFindTerm()
+    {
+        GameTree tree = new GameTree();
+        Node root = tree.getRoot();
+        root.setComment("Game record");
+        Node node = new Node(Move.get(BLACK, 1, 1));
+        node.setComment("Good move, game over");
+        root.append(node);
+        CommentIndex index = new CommentIndex(root);
+        assertEquals(2, index.findTerm("GAME").size());
+        ArrayList<ConstNode> nodes = index.findTerm("move");
+        assertEquals(1, nodes.size());
+        assertSame(node, nodes.get(0));
+        assertTrue(index.findTerm("mov").isEmpty());
+    }
+
+    /** Test that nodes removed from the tree are not found. */
+    public void testRemovedNode()
+    {
+        GameTree tree = new GameTree();
+        Node root = tree.getRoot();
+        Node node = new Node(Move.get(BLACK, 1, 1));
+        node.setComment("foo");
+        root.append(node);
+        CommentIndex index = new CommentIndex(root);
+        Pattern pattern = Pattern.compile("foo");
+        assertSame(node, index.find(root, pattern));
+        root.removeChild(node);
+        assertNull(index.find(root, pattern));
+    }
+
+    /** Test that changed comments are found after update(). */
+    public void testUpdate()
+    {
+        GameTree tree = createTree(100, 2);
+        CommentIndex index = new CommentIndex(tree.getRoot());
+        Pattern pattern = Pattern.compile("\\bbrandnew\\b");
+        assertNull(index.find(tree.getRoot(), pattern));
+        Node node = tree.getRoot().getChild().getChild();
+        node.setComment("A brandnew comment");
+        index.update(node);
+        assertSame(node, index.find(tree.getRoot(), pattern));
+        node.setComment("Changed again");
+        index.update(node);
+        assertNull(index.find(tree.getRoot(), pattern));
+        node.setComment("brandnew");
+        index.update(node);
+        assertSame(node, index.find(tree.getRoot(), pattern));
+        assertEquals(1, index.findTerm("brandnew").size());
+    }
+
+    private static void checkFind(GameTree tree, Pattern pattern)
+    {
+        CommentIndex index = new CommentIndex(tree.getRoot());
+        ConstNode node = tree.getRoot();
+        while (true)
+        {
+            ConstNode expected = NodeUtil.findInComments(node, pattern);
+            assertSame(pattern.toString(), expected,
+                       index.find(node, pattern));
+            if (expected == null)
+                break;
+            node = expected;
+        }
+    }
+
+    private static GameTree createTree(int numberNodes, long seed)
+    {
+        String[] words = {
+            "winrate", "visits", "pv:", "d4", "q16", "0.5", "0.53",
+            "Winrate", "\u00c4rger", "rate", "win", "wins", "1", "10"
+        };
+        Random random = new Random(seed);
+        GameTree tree = new GameTree();
+        Node node = tree.getRoot();
+        Node variationStart = node;
+        for (int i = 0; i < numberNodes; ++i)
+        {
+            Node child = new Node(Move.get(i % 2 == 0 ? BLACK : WHITE,
+                                           random.nextInt(19),
+                                           random.nextInt(19)));
+            if (random.nextInt(3) > 0)
+            {
+                StringBuilder comment = new StringBuilder();
+                int n = random.nextInt(6);
+                for (int j = 0; j < n; ++j)
+                {
+                    if (j > 0)
+                        comment.append(random.nextBoolean() ? " " : "\n");
+                    comment.append(words[random.nextInt(words.length)]);
+                }
+                child.setComment(comment.toString());
+            }
+            if (random.nextInt(10) == 0)
+            {
+                variationStart.append(child);
+                variationStart = node;
+            }
+            else
+                node.append(child);
+            node = child;
+        }
+        return tree;
+    }
+}
@@ -0,0 +1,206 @@
+// CompactGameTreeTest.java
+
+package net.sf.gogui.game;
+
+import java.util.Random;
+import net.sf.gogui.go.Board;
+import net.sf.gogui.go.GoColor;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class CompactGameTreeTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(CompactGameTreeTest.class);
+    }
+
+    public void testCopy()
+    {
+        GameTree tree = createTree();
+        CompactGameTree compact = new CompactGameTree(tree);
+        assertEquals(9, compact.getBoardSize());
+        assertEquals(NodeUtil.subtreeSize(tree.getRoot()),
+                     compact.getNumberNodes());
+        assertEquals(NodeUtil.subtreeSize(tree.getRoot()),
+                     NodeUtil.subtreeSize(compact.getRootConst()));
+        assertTrue(compact.hasVariations());
+        checkEqual(tree, tree.getRoot(), compact, compact.getRootConst());
+    }
+
+    /** Test that the views can be compared by identity and are accepted by
+        BoardUpdater. */
+    public void testViews()
+    {
+        GameTree tree = createTree();
+        CompactGameTree compact = new CompactGameTree(tree);
+        ConstNode root = compact.getRootConst();
+        assertSame(root, compact.getRootConst());
+        ConstNode child = root.getChildConst();
+        assertSame(root, child.getFatherConst());
+        assertSame(child, root.getChildConst(0));
+        assertNull(root.getFatherConst());
+        assertFalse(root.hasFather());
+        assertEquals(-1, root.getChildIndex(root));
+        assertEquals(-1, root.getChildIndex(tree.getRoot().getChild()));
+        ConstNode last = NodeUtil.getLast(root);
+        Board board = new Board(9);
+        Board expected = new Board(9);
+        BoardUpdater updater = new BoardUpdater();
+        updater.update(compact, last, board);
+        new BoardUpdater().update(tree, NodeUtil.getLast(tree.getRoot()),
+                                  expected);
+        assertEquals(expected.getHashCode(), board.getHashCode());
+        assertEquals(expected.getNumberMoves(), board.getNumberMoves());
+        updater.update(compact, last.getFatherConst(), board);
+        assertEquals(expected.getNumberMoves() - 1, board.getNumberMoves());
+    }
+
+    /** Test a tree with only a root node without game information. */
+    public void testRootOnly()
+    {
+        Node root = new Node();
+        root.setComment("Comment");
+        GameTree tree = new GameTree(19, root);
+        root.getGameInfo().setHandicap(0);
+        CompactGameTree compact = new CompactGameTree(tree);
+        assertEquals(1, compact.getNumberNodes());
+        assertFalse(compact.hasVariations());
+        assertNotNull(compact.getGameInfoConst(compact.getRootConst()));
+        assertEquals("Comment", compact.getRootConst().getComment());
+        assertNull(compact.getRootConst().getChildConst());
+    }
+
+    private static void checkEqual(ConstGameTree tree, ConstNode node,
+                                   CompactGameTree compact, ConstNode view)
+    {
+        assertEquals(node.getMove(), view.getMove());
+        assertEquals(node.getComment(), view.getComment());
+        assertEquals(node.hasComment(), view.hasComment());
+        assertEquals(node.getNumberChildren(), view.getNumberChildren());
+        assertEquals(node.getPlayer(), view.getPlayer());
+        assertEquals(node.getToMove(), view.getToMove());
+        assertEquals(node.hasSetup(), view.hasSetup());
+        assertEquals(node.isEmpty(), view.isEmpty());
+        assertEquals(node.hasFather(), view.hasFather());
+        assertEquals(Float.floatToIntBits(node.getValue()),
+                     Float.floatToIntBits(view.getValue()));
+        assertEquals(node.getLabelsUnmodifiable(),
+                     view.getLabelsUnmodifiable());
+        assertEquals(node.getGameInfoConst(), view.getGameInfoConst());
+        assertEquals(tree.getGameInfoConst(node),
+                     compact.getGameInfoConst(view));
+        for (GoColor c : GoColor.BLACK_WHITE_EMPTY)
+            assertEquals(node.getSetup(c), view.getSetup(c));
+        for (GoColor c : GoColor.BLACK_WHITE)
+        {
+            assertEquals(node.getMovesLeft(c), view.getMovesLeft(c));
+            assertEquals(Double.doubleToLongBits(node.getTimeLeft(c)),
+                         Double.doubleToLongBits(view.getTimeLeft(c)));
+        }
+        for (MarkType type : MarkType.values())
+        {
+            if (node.getMarkedConst(type) == null
+                || node.getMarkedConst(type).size() == 0)
+                assertTrue(view.getMarkedConst(type) == null
+                           || view.getMarkedConst(type).size() == 0);
+            else
+                assertEquals(node.getMarkedConst(type),
+                             view.getMarkedConst(type));
+        }
+        ConstSgfProperties props = node.getSgfPropertiesConst();
+        if (props != null && ! props.isEmpty())
+        {
+            ConstSgfProperties viewProps = view.getSgfPropertiesConst();
+            assertEquals(props.getKeys(), viewProps.getKeys());
+            for (String key : props.getKeys())
+                for (int i = 0; i < props.getNumberValues(key); ++i)
+                    assertEquals(props.getValue(key, i),
+                                 viewProps.getValue(key, i));
+        }
+        for (int i = 0; i < node.getNumberChildren(); ++i)
+        {
+            ConstNode child = view.getChildConst(i);
+            assertSame(view, child.getFatherConst());
+            assertEquals(i, view.getChildIndex(child));
+            if (i > 0)
+                assertSame(view.getChildConst(i - 1),
+                           view.variationBefore(child));
+            else
+                assertNull(view.variationBefore(child));
+            if (i < node.getNumberChildren() - 1)
+                assertSame(view.getChildConst(i + 1),
+                           view.variationAfter(child));
+            else
+                assertNull(view.variationAfter(child));
+            checkEqual(tree, node.getChildConst(i), compact, child);
+        }
+    }
+
+    /** Create a tree with variations and all kinds of node properties. */
+    private static GameTree createTree()
+    {
+        Random random = new Random(1);
+        GameTree tree = new GameTree(9, null, null, null, null);
+        tree.getRoot().getGameInfo().set(StringInfo.RULES, "Japanese");
+        Node node = tree.getRoot();
+        Node variationStart = null;
+        for (int i = 0; i < 200; ++i)
+        {
+            GoColor c = (i % 2 == 0 ? BLACK : WHITE);
+            Move move;
+            if (i % 37 == 36)
+                move = Move.getPass(c);
+            else
+                move = Move.get(c, random.nextInt(9), random.nextInt(9));
+            Node child = new Node(move);
+            if (i % 3 == 0)
+                child.setComment("Comment " + i + " \u00e4\u00f6\u00fc");
+            if (i % 11 == 0)
+                child.setValue(random.nextFloat());
+            if (i % 13 == 0)
+                child.addMarked(GoPoint.get(1, 2), MarkType.TRIANGLE);
+            if (i % 17 == 0)
+                child.setLabel(GoPoint.get(3, 3), "A");
+            if (i % 19 == 0)
+                child.setTimeLeft(c, 10.5);
+            if (i % 23 == 0)
+                child.addSgfProperty("XX", "value " + i);
+            if (i == 50)
+            {
+                Node setup = new Node();
+                setup.addStone(BLACK, GoPoint.get(0, 0));
+                setup.addStone(EMPTY, GoPoint.get(8, 8));
+                setup.setPlayer(WHITE);
+                node.append(setup);
+                setup.createGameInfo().setHandicap(0);
+                setup.getGameInfo().set(StringInfo.RULES, "Chinese");
+                node = setup;
+            }
+            if (i % 10 == 5 || i == 50)
+                variationStart = node;
+            if (i % 10 == 9)
+            {
+                for (int j = 0; j < 3; ++j)
+                {
+                    Node variation = new Node(Move.get(c, j, 8));
+                    variationStart.append(variation);
+                    variation.append(new Node(Move.getPass(
+                                                   c.otherColor())));
+                }
+            }
+            node.append(child);
+            node = child;
+        }
+        return tree;
+    }
+}
@@ -129,9 +129,74 @@ public final class NodeUtilTest
         assertEquals(NodeUtil.getMovesLeft(m_node7), 1);
     }
 
+    public void testSubtreeGreaterThan()
+    {
+        assertTrue(NodeUtil.subtreeGreaterThan(m_node7, 4));
+        assertFalse(NodeUtil.subtreeGreaterThan(m_node7, 5));
+        NodeUtil.subtreeSize(m_node0);
+        assertTrue(NodeUtil.subtreeGreaterThan(m_node7, 4));
+        assertFalse(NodeUtil.subtreeGreaterThan(m_node7, 5));
+    }
+
     public void testSubtreeSize()
     {
         assertEquals(12, NodeUtil.subtreeSize(m_node0));
+        assertEquals(5, NodeUtil.subtreeSize(m_node7));
+        assertEquals(1, NodeUtil.subtreeSize(m_node11));
+    }
+
+    /** Test that cached subtree sizes are updated after modifications of
+        the tree. */
+    public void testSubtreeSizeModified()
+    {
+        assertEquals(5, NodeUtil.subtreeSize(m_node7));
+        m_node8.append(new Node());
+        assertEquals(13, NodeUtil.subtreeSize(m_node0));
+        assertEquals(6, NodeUtil.subtreeSize(m_node7));
+        m_node7.removeChild(m_node9);
+        assertEquals(12, NodeUtil.subtreeSize(m_node0));
+        assertEquals(5, NodeUtil.subtreeSize(m_node7));
+        NodeUtil.truncateChildren(m_node7);
+        assertEquals(8, NodeUtil.subtreeSize(m_node0));
+        assertEquals(5, NodeUtil.subtreeSize(m_node2));
+        m_node1.removeVariations();
+        assertEquals(7, NodeUtil.subtreeSize(m_node0));
+        m_node6.append(new Node());
+        assertEquals(8, NodeUtil.subtreeSize(m_node0));
+        assertEquals(6, NodeUtil.subtreeSize(m_node2));
+    }
+
+    public void testSubtreeIterator()
+    {
+        SubtreeIterator i = new SubtreeIterator(m_node1);
+        ConstNode node = m_node1;
+        int depth = NodeUtil.getDepth(m_node1);
+        while (node != null)
+        {
+            assertTrue(i.hasNext());
+            assertSame(node, i.next());
+            assertEquals(NodeUtil.getDepth(node) - depth, i.getDepth());
+            node = NodeUtil.nextNode(node, depth);
+        }
+        assertFalse(i.hasNext());
+    }
+
+    public void testSubtreeIteratorSkipChildren()
+    {
+        SubtreeIterator i = new SubtreeIterator(m_node0);
+        assertSame(m_node0, i.next());
+        assertSame(m_node1, i.next());
+        assertSame(m_node2, i.next());
+        i.skipChildren();
+        assertSame(m_node7, i.next());
+        assertEquals(2, i.getDepth());
+        assertSame(m_node8, i.next());
+        i.skipChildren();
+        assertSame(m_node9, i.next());
+        assertEquals(3, i.getDepth());
+        assertSame(m_node10, i.next());
+        assertSame(m_node11, i.next());
+        assertFalse(i.hasNext());
     }
 
     public void testTruncateChildren()
@@ -0,0 +1,95 @@
+// BatchLoaderTest.java
+
+package net.sf.gogui.gamefile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.gogui.util.ErrorMessage;
+
+public final class BatchLoaderTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(BatchLoaderTest.class);
+    }
+
+    /** Test that an error does not stop loading the other files. */
+    public void testError() throws Exception
+    {
+        BatchLoader.Loader<String> loader = new BatchLoader.Loader<String>() {
+                public String load(File file) throws Exception
+                {
+                    if (file.getName().equals("2"))
+                        throw new ErrorMessage("error");
+                    return file.getName();
+                }
+            };
+        BatchLoader<String> batchLoader =
+            new BatchLoader<String>(getFiles(4), loader, 2, 2);
+        assertEquals("0", batchLoader.next().getValue());
+        assertEquals("1", batchLoader.next().getValue());
+        BatchLoader.Result<String> result = batchLoader.next();
+        assertNull(result.getValue());
+        assertEquals("2", result.getFile().getName());
+        assertEquals("error", result.getError().getMessage());
+        result = batchLoader.next();
+        assertNull(result.getError());
+        assertEquals("3", result.getValue());
+        assertFalse(batchLoader.hasNext());
+    }
+
+    /** Test that the results are returned in the order of the files and
+        that not more than maxPending files are loaded ahead. */
+    public void testOrder() throws Exception
+    {
+        final int maxPending = 3;
+        final AtomicInteger numberLoaded = new AtomicInteger();
+        final AtomicInteger numberConsumed = new AtomicInteger();
+        final AtomicInteger maxAhead = new AtomicInteger();
+        BatchLoader.Loader<String> loader = new BatchLoader.Loader<String>() {
+                public String load(File file) throws Exception
+                {
+                    int i = Integer.parseInt(file.getName());
+                    Thread.sleep((7 * i) % 5);
+                    int ahead =
+                        numberLoaded.incrementAndGet() - numberConsumed.get();
+                    synchronized (maxAhead)
+                    {
+                        if (ahead > maxAhead.get())
+                            maxAhead.set(ahead);
+                    }
+                    return file.getName();
+                }
+            };
+        int numberFiles = 50;
+        BatchLoader<String> batchLoader =
+            new BatchLoader<String>(getFiles(numberFiles), loader, 4,
+                                    maxPending);
+        for (int i = 0; i < numberFiles; ++i)
+        {
+            assertTrue(batchLoader.hasNext());
+            BatchLoader.Result<String> result = batchLoader.next();
+            assertEquals(Integer.toString(i), result.getValue());
+            numberConsumed.incrementAndGet();
+        }
+        assertFalse(batchLoader.hasNext());
+        // The result returned by next() is counted as consumed only after
+        // next() has already submitted the next file
+        assertTrue(maxAhead.get() <= maxPending + 1);
+    }
+
+    private static ArrayList<File> getFiles(int n)
+    {
+        ArrayList<File> files = new ArrayList<File>();
+        for (int i = 0; i < n; ++i)
+            files.add(new File(Integer.toString(i)));
+        return files;
+    }
+}
@@ -0,0 +1,118 @@
+// BitBoardTest.java
+
+package net.sf.gogui.go;
+
+import java.util.Random;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+
+public final class BitBoardTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(BitBoardTest.class);
+    }
+
+    public void testCopy()
+    {
+        Board board = new Board(9);
+        board.setupHandicap(new PointList(GoPoint.get(2, 2)));
+        board.play(WHITE, GoPoint.get(6, 6));
+        BitBoard bitBoard = new BitBoard(board);
+        assertEquals(9, bitBoard.getSize());
+        assertEquals(BLACK, bitBoard.getColor(GoPoint.get(2, 2)));
+        assertEquals(WHITE, bitBoard.getColor(GoPoint.get(6, 6)));
+        assertEquals(EMPTY, bitBoard.getColor(GoPoint.get(0, 0)));
+        assertEquals(1, bitBoard.getNumberPoints(BLACK));
+        assertEquals(1, bitBoard.getNumberPoints(WHITE));
+        assertEquals(79, bitBoard.getNumberPoints(EMPTY));
+        assertEquals(BLACK, bitBoard.getToMove());
+        assertEquals(Move.get(WHITE, 6, 6), bitBoard.getLastMove());
+        assertTrue(bitBoard.isSetupHandicap());
+        assertEquals(board.getHashCode(), bitBoard.getHashCode());
+        assertEquals(board.getCanonicalHashCode(),
+                     bitBoard.getCanonicalHashCode());
+        // Modifying the board does not change the copy
+        board.play(BLACK, GoPoint.get(0, 0));
+        assertEquals(EMPTY, bitBoard.getColor(GoPoint.get(0, 0)));
+    }
+
+    public void testGetPoints()
+    {
+        Board board = new Board(25);
+        board.play(BLACK, GoPoint.get(24, 0));
+        board.play(BLACK, GoPoint.get(0, 1));
+        board.play(BLACK, GoPoint.get(24, 24));
+        BitBoard bitBoard = new BitBoard(board);
+        PointList points = bitBoard.getPoints(BLACK);
+        assertEquals(3, points.size());
+        assertEquals(GoPoint.get(24, 0), points.get(0));
+        assertEquals(GoPoint.get(0, 1), points.get(1));
+        assertEquals(GoPoint.get(24, 24), points.get(2));
+        // Stones at the end and start of adjacent rows are not connected
+        assertEquals(2, bitBoard.getLiberties(GoPoint.get(24, 0)));
+        assertEquals(3, bitBoard.getLiberties(GoPoint.get(0, 1)));
+    }
+
+    /** Compare blocks, liberties and legal moves with Board in random
+        positions. */
+    public void testRandom()
+    {
+        Random random = new Random(1);
+        for (int size = 1; size <= GoPoint.MAX_SIZE; size += 6)
+        {
+            Board board = new Board(size);
+            for (int i = 0; i < 3 * size * size; ++i)
+            {
+                GoPoint p = GoPoint.get(random.nextInt(size),
+                                        random.nextInt(size));
+                GoColor c = board.getToMove();
+                if (board.getColor(p) == EMPTY && ! board.isKo(p)
+                    && ! board.isSuicide(c, p))
+                    board.play(c, p);
+                else
+                    board.play(c, null);
+                if (i % 7 == 0)
+                    compare(board, new BitBoard(board));
+            }
+        }
+    }
+
+    private static void compare(Board board, BitBoard bitBoard)
+    {
+        long[] legalBlack = bitBoard.getLegalMoves(BLACK);
+        long[] legalWhite = bitBoard.getLegalMoves(WHITE);
+        GoColor toMove = board.getToMove();
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            assertEquals(c, bitBoard.getColor(p));
+            assertEquals(board.getLiberties(p), bitBoard.getLiberties(p));
+            if (c != EMPTY)
+            {
+                PointList stones = new PointList();
+                board.getStones(p, c, stones);
+                long[] block = bitBoard.getBlock(p);
+                assertEquals(stones.size(), BitBoard.getNumberPoints(block));
+                for (GoPoint stone : stones)
+                    assertTrue(BitBoard.contains(block, stone));
+            }
+            for (GoColor color : GoColor.BLACK_WHITE)
+            {
+                boolean isLegal = (c == EMPTY && ! board.isSuicide(color, p)
+                                   && ! (color == toMove && board.isKo(p)));
+                long[] legal = (color == BLACK ? legalBlack : legalWhite);
+                assertEquals(isLegal, BitBoard.contains(legal, p));
+                assertEquals(board.isCaptureOrSuicide(color, p),
+                             bitBoard.isCaptureOrSuicide(color, p));
+            }
+        }
+    }
+}
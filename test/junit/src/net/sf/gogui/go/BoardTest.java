@@ -118,6 +118,108 @@ public final class BoardTest
         assertTrue(suicide.contains(GoPoint.get(1, 0)));
     }
 
+    public void testGetHashCode()
+    {
+        Board board1 = new Board(19);
+        Board board2 = new Board(19);
+        assertEquals(0L, board1.getHashCode());
+        board1.play(BLACK, GoPoint.get(3, 3));
+        board1.play(WHITE, GoPoint.get(15, 15));
+        board2.play(WHITE, GoPoint.get(15, 15));
+        board2.play(BLACK, GoPoint.get(3, 3));
+        assertEquals(board1.getHashCode(), board2.getHashCode());
+        long hashCode = board1.getHashCode();
+        board1.play(BLACK, GoPoint.get(4, 4));
+        assertTrue(hashCode != board1.getHashCode());
+        board1.undo();
+        assertEquals(hashCode, board1.getHashCode());
+        board1.clear();
+        assertEquals(0L, board1.getHashCode());
+    }
+
+    public void testGetMoveHashCode()
+    {
+        Board board1 = new Board(19);
+        Board board2 = new Board(19);
+        assertEquals(0L, board1.getMoveHashCode(0));
+        board1.play(BLACK, GoPoint.get(3, 3));
+        board1.play(WHITE, GoPoint.get(15, 15));
+        board1.play(BLACK, null);
+        board2.play(BLACK, GoPoint.get(3, 3));
+        board2.play(WHITE, GoPoint.get(15, 15));
+        board2.play(WHITE, null);
+        assertEquals(board1.getMoveHashCode(2), board2.getMoveHashCode(2));
+        assertTrue(board1.getMoveHashCode(3) != board2.getMoveHashCode(3));
+        // Same position, different move order
+        board2.undo(3);
+        board2.play(WHITE, GoPoint.get(15, 15));
+        board2.play(BLACK, GoPoint.get(3, 3));
+        assertEquals(board1.getHashCode(), board2.getHashCode());
+        assertTrue(board1.getMoveHashCode(2) != board2.getMoveHashCode(2));
+        board2.undo(2);
+        board2.play(BLACK, GoPoint.get(3, 3));
+        board2.play(WHITE, GoPoint.get(15, 15));
+        board2.play(BLACK, null);
+        assertEquals(board1.getMoveHashCode(3), board2.getMoveHashCode(3));
+    }
+
+    public void testGetCanonicalHashCode()
+    {
+        Board board = new Board(9);
+        Board rotatedBoard = new Board(9);
+        board.play(BLACK, GoPoint.get(2, 2));
+        board.play(WHITE, GoPoint.get(6, 3));
+        board.play(BLACK, GoPoint.get(4, 7));
+        long canonicalHashCode = board.getCanonicalHashCode();
+        for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+        {
+            rotatedBoard.clear();
+            for (int j = 0; j < board.getNumberMoves(); ++j)
+            {
+                Move move = board.getMove(j);
+                rotatedBoard.play(move.getColor(),
+                                  BoardUtil.rotate(i, move.getPoint(), 9));
+            }
+            assertEquals(board.getRotatedHashCode(i),
+                         rotatedBoard.getHashCode());
+            assertEquals(canonicalHashCode,
+                         rotatedBoard.getCanonicalHashCode());
+        }
+        board.play(WHITE, GoPoint.get(5, 5));
+        assertTrue(canonicalHashCode != board.getCanonicalHashCode());
+        board.undo();
+        assertEquals(canonicalHashCode, board.getCanonicalHashCode());
+        board.clear();
+        assertEquals(0L, board.getCanonicalHashCode());
+    }
+
+    /** Test Board.isPositionalSuperko() and Board.isSituationalSuperko().
+        Uses a simple ko, which is also a superko violation. */
+    public void testSuperko()
+    {
+        Board board = new Board(19);
+        // 3 . . . .
+        // 2 @ O . .
+        // 1 . @ O .
+        //   A B C D
+        PointList black = new PointList();
+        PointList white = new PointList();
+        black.add(GoPoint.get(0, 1));
+        black.add(GoPoint.get(1, 0));
+        white.add(GoPoint.get(1, 1));
+        white.add(GoPoint.get(2, 0));
+        board.setup(black, white, WHITE);
+        assertFalse(board.isPositionalSuperko(WHITE, GoPoint.get(0, 0)));
+        assertFalse(board.isSituationalSuperko(WHITE, GoPoint.get(0, 0)));
+        board.play(WHITE, GoPoint.get(0, 0));
+        assertTrue(board.isPositionalSuperko(BLACK, GoPoint.get(1, 0)));
+        assertTrue(board.isSituationalSuperko(BLACK, GoPoint.get(1, 0)));
+        assertFalse(board.isPositionalSuperko(BLACK, GoPoint.get(5, 5)));
+        assertFalse(board.isPositionalSuperko(BLACK, null));
+        board.undo();
+        assertFalse(board.isPositionalSuperko(WHITE, GoPoint.get(0, 0)));
+    }
+
     /** Test Board.isKo(). */
     public void testIsKo()
     {
@@ -158,6 +260,76 @@ public final class BoardTest
         assertTrue(board.isSuicide(WHITE, GoPoint.get(1, 0)));
     }
 
+    public void testGetLiberties()
+    {
+        Board board = new Board(19);
+        board.play(BLACK, GoPoint.get(0, 0));
+        assertEquals(2, board.getLiberties(GoPoint.get(0, 0)));
+        board.play(BLACK, GoPoint.get(1, 0));
+        assertEquals(3, board.getLiberties(GoPoint.get(0, 0)));
+        assertEquals(board.getAnchor(GoPoint.get(0, 0)),
+                     board.getAnchor(GoPoint.get(1, 0)));
+        board.play(WHITE, GoPoint.get(0, 1));
+        assertEquals(2, board.getLiberties(GoPoint.get(1, 0)));
+        assertEquals(2, board.getLiberties(GoPoint.get(0, 1)));
+        board.undo();
+        assertEquals(3, board.getLiberties(GoPoint.get(1, 0)));
+        board.undo();
+        assertEquals(2, board.getLiberties(GoPoint.get(0, 0)));
+        assertNull(board.getAnchor(GoPoint.get(1, 0)));
+        assertEquals(0, board.getLiberties(GoPoint.get(1, 0)));
+    }
+
+    /** Test that the incrementally updated blocks match the blocks found
+        by a flood fill after a random sequence of moves and undos. */
+    public void testBlocksRandom()
+    {
+        java.util.Random random = new java.util.Random(1);
+        Board board = new Board(5);
+        for (int i = 0; i < 5000; ++i)
+        {
+            if (board.getNumberMoves() > 0 && random.nextInt(4) == 0)
+                board.undo();
+            else
+            {
+                // Includes moves on occupied points and suicides
+                GoPoint p = GoPoint.get(random.nextInt(5), random.nextInt(5));
+                board.play(random.nextBoolean() ? BLACK : WHITE, p);
+            }
+            checkBlocks(board);
+            checkSuicide(board);
+            checkHashCode(board);
+        }
+    }
+
+    /** Test that undoing long sequences of moves restores the blocks.
+        Plays random games on empty points, so that large blocks are merged
+        and captured, and undoes the moves in random chunks. */
+    public void testBlocksRandomUndo()
+    {
+        java.util.Random random = new java.util.Random(2);
+        Board board = new Board(9);
+        for (int i = 0; i < 20; ++i)
+        {
+            while (board.getNumberMoves() < 300)
+            {
+                GoPoint p = GoPoint.get(random.nextInt(9), random.nextInt(9));
+                GoColor c = board.getToMove();
+                if (board.getColor(p) != EMPTY || board.isSuicide(c, p)
+                    || board.isKo(p))
+                    p = null;
+                board.play(c, p);
+            }
+            while (board.getNumberMoves() > 0)
+            {
+                board.undo(Math.min(board.getNumberMoves(),
+                                    1 + random.nextInt(50)));
+                checkBlocks(board);
+                checkHashCode(board);
+            }
+        }
+    }
+
     public void testGetLastMove()
     {
         Board board = new Board(19);
@@ -216,6 +388,64 @@ public final class BoardTest
         assertEquals(stones, board.getSetup(BLACK));
     }
 
+    /** Test that a snapshot keeps its state after the board changes and
+        that restoring it copies the position, history and blocks. */
+    public void testSnapshot()
+    {
+        Board board = new Board(19);
+        board.setupHandicap(new PointList(GoPoint.get(3, 3)));
+        board.play(WHITE, GoPoint.get(1, 0));
+        board.play(BLACK, GoPoint.get(0, 0));
+        board.play(WHITE, GoPoint.get(0, 1));
+        BoardSnapshot snapshot = board.snapshot();
+        long hashCode = board.getHashCode();
+        board.undo(3);
+        board.play(BLACK, GoPoint.get(10, 10));
+        assertEquals(EMPTY, snapshot.getColor(GoPoint.get(10, 10)));
+        assertEquals(WHITE, snapshot.getColor(GoPoint.get(0, 1)));
+        assertEquals(3, snapshot.getNumberMoves());
+        assertEquals(1, snapshot.getKilled().size());
+        assertEquals(hashCode, snapshot.getHashCode());
+        Board other = new Board(9);
+        other.restore(snapshot);
+        assertEquals(19, other.getSize());
+        assertEquals(hashCode, other.getHashCode());
+        assertEquals(BLACK, other.getColor(GoPoint.get(3, 3)));
+        assertEquals(EMPTY, other.getColor(GoPoint.get(0, 0)));
+        assertEquals(1, other.getCaptured(BLACK));
+        assertTrue(other.isSetupHandicap());
+        // Suicide would repeat the current position
+        assertTrue(other.isPositionalSuperko(BLACK, GoPoint.get(0, 0)));
+        assertFalse(other.isPositionalSuperko(BLACK, GoPoint.get(5, 5)));
+        other.undo();
+        assertEquals(BLACK, other.getColor(GoPoint.get(0, 0)));
+        assertEquals(0, other.getCaptured(BLACK));
+        checkBlocks(other);
+        // The snapshot is not affected by changes of the restored board
+        assertEquals(WHITE, snapshot.getColor(GoPoint.get(0, 1)));
+    }
+
+    /** Test that reused stack entries are correctly reinitialized.
+        Plays more moves than the initial stack capacity. */
+    public void testStackReuse()
+    {
+        Board board = new Board(19);
+        board.play(WHITE, GoPoint.get(1, 0));
+        board.play(BLACK, GoPoint.get(0, 0));
+        board.play(WHITE, GoPoint.get(0, 1));
+        assertEquals(1, board.getKilled().size());
+        board.undo();
+        board.play(WHITE, GoPoint.get(5, 5));
+        assertTrue(board.getKilled().isEmpty());
+        for (int i = 0; i < 1000; ++i)
+            board.play(i % 2 == 0 ? BLACK : WHITE, null);
+        assertEquals(1003, board.getNumberMoves());
+        assertEquals(Move.get(WHITE, 5, 5), board.getMove(2));
+        board.undo(1001);
+        assertEquals(Move.get(BLACK, 0, 0), board.getLastMove());
+        assertEquals(0, board.getCaptured(BLACK));
+    }
+
     public void testToMove()
     {
         Board board = new Board(19);
@@ -234,4 +464,85 @@ public final class BoardTest
         assertEquals(EMPTY, board.getColor(GoPoint.get(0, 0)));
         assertEquals(BLACK, board.getToMove());
     }
+
+    private static void checkBlocks(Board board)
+    {
+        for (GoPoint p : board)
+        {
+            GoColor c = board.getColor(p);
+            if (c == EMPTY)
+            {
+                assertNull(board.getAnchor(p));
+                continue;
+            }
+            PointList stones = new PointList();
+            Marker marker = new Marker(board.getSize());
+            findStones(board, p, c, marker, stones);
+            PointList liberties = new PointList();
+            for (GoPoint stone : stones)
+            {
+                assertEquals(board.getAnchor(p), board.getAnchor(stone));
+                for (GoPoint adj : board.getAdjacent(stone))
+                    if (board.getColor(adj) == EMPTY
+                        && ! liberties.contains(adj))
+                        liberties.add(adj);
+            }
+            assertEquals(liberties.size(), board.getLiberties(p));
+            PointList blockStones = new PointList();
+            board.getStones(p, c, blockStones);
+            assertEquals(stones.size(), blockStones.size());
+        }
+    }
+
+    private static void checkHashCode(Board board)
+    {
+        long hashCode = 0L;
+        for (GoPoint p : board)
+            if (board.getColor(p) != EMPTY)
+                hashCode ^= Zobrist.getKey(board.getColor(p), p);
+        assertEquals(hashCode, board.getHashCode());
+        int size = board.getSize();
+        for (int i = 0; i < BoardUtil.NUMBER_ROTATIONS; ++i)
+        {
+            hashCode = 0L;
+            for (GoPoint p : board)
+                if (board.getColor(p) != EMPTY)
+                    hashCode ^= Zobrist.getKey(board.getColor(p),
+                                               BoardUtil.rotate(i, p, size));
+            assertEquals(hashCode, board.getRotatedHashCode(i));
+        }
+    }
+
+    /** Compare isSuicide and isCaptureOrSuicide with the result of
+        actually playing the move. */
+    private static void checkSuicide(Board board)
+    {
+        for (GoPoint p : board)
+        {
+            if (board.getColor(p) != EMPTY)
+                continue;
+            for (GoColor c : GoColor.BLACK_WHITE)
+            {
+                boolean isSuicide = board.isSuicide(c, p);
+                boolean isCaptureOrSuicide = board.isCaptureOrSuicide(c, p);
+                board.play(c, p);
+                assertEquals(! board.getSuicide().isEmpty(), isSuicide);
+                assertEquals(! board.getSuicide().isEmpty()
+                             || ! board.getKilled().isEmpty(),
+                             isCaptureOrSuicide);
+                board.undo();
+            }
+        }
+    }
+
+    private static void findStones(Board board, GoPoint p, GoColor c,
+                                   Marker marker, PointList stones)
+    {
+        if (board.getColor(p) != c || marker.get(p))
+            return;
+        marker.set(p);
+        stones.add(p);
+        for (GoPoint adj : board.getAdjacent(p))
+            findStones(board, adj, c, marker, stones);
+    }
 }
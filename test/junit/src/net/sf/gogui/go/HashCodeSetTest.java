@@ -0,0 +1,46 @@
+// HashCodeSetTest.java
+
+package net.sf.gogui.go;
+
+public final class HashCodeSetTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(HashCodeSetTest.class);
+    }
+
+    public void testBasics()
+    {
+        HashCodeSet set = new HashCodeSet();
+        assertFalse(set.contains(0L));
+        set.add(0L);
+        set.add(42L);
+        set.add(42L);
+        assertTrue(set.contains(0L));
+        assertTrue(set.contains(42L));
+        set.remove(42L);
+        assertTrue(set.contains(42L));
+        set.remove(42L);
+        assertFalse(set.contains(42L));
+        set.clear();
+        assertFalse(set.contains(0L));
+    }
+
+    /** Test that elements survive growing the hash table. */
+    public void testRehash()
+    {
+        HashCodeSet set = new HashCodeSet();
+        for (long i = 0; i < 10000; ++i)
+            set.add(i * 1024);
+        for (long i = 0; i < 10000; i += 2)
+            set.remove(i * 1024);
+        for (long i = 0; i < 10000; ++i)
+            assertEquals(i % 2 != 0, set.contains(i * 1024));
+    }
+}
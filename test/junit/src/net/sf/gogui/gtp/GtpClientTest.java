@@ -0,0 +1,199 @@
+// GtpClientTest.java
+
+package net.sf.gogui.gtp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import net.sf.gogui.go.Board;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.Move;
+
+public final class GtpClientTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GtpClientTest.class);
+    }
+
+    public void setUp() throws IOException, GtpError
+    {
+        m_expect = new GtpExpectEngine(null);
+        GtpEngineConnection connection = new GtpEngineConnection(m_expect);
+        m_gtp = (GtpClient)connection.getGtpClient();
+    }
+
+    /** Test reading responses with directRead.
+        Uses the other tests with a client created with directRead. */
+    public void testDirectRead() throws Exception
+    {
+        m_expect = new GtpExpectEngine(null);
+        GtpEngineConnection connection =
+            new GtpEngineConnection(m_expect, true);
+        m_gtp = (GtpClient)connection.getGtpClient();
+        testSendAsync();
+        testSendBatch();
+        testSynchronizer();
+        testSynchronizerLongSequence();
+    }
+
+    /** Test parsing of responses with directRead. */
+    public void testDirectReadParse() throws Exception
+    {
+        PipedInputStream in = new PipedInputStream();
+        PipedOutputStream out = new PipedOutputStream(in);
+        final ArrayList<String> invalid = new ArrayList<String>();
+        GtpClient gtp =
+            new GtpClient(in, new ByteArrayOutputStream(), false, null,
+                          true);
+        gtp.setInvalidResponseCallback(
+                                 new GtpClient.InvalidResponseCallback() {
+                public void show(String line)
+                {
+                    invalid.add(line);
+                }
+            });
+        out.write(("debug output\n=1 foo\r\nbar\r\n\r\n"
+                   + "?2 error\n\n=3\n").getBytes("US-ASCII"));
+        out.close();
+        assertEquals("foo\nbar", gtp.send("a"));
+        assertEquals(1, invalid.size());
+        assertEquals("debug output", invalid.get(0));
+        try
+        {
+            gtp.send("b");
+            fail();
+        }
+        catch (GtpError e)
+        {
+            assertEquals("error", e.getMessage());
+        }
+        try
+        {
+            gtp.send("c");
+            fail();
+        }
+        catch (GtpError e)
+        {
+            // Response not terminated by empty line
+            assertTrue(gtp.isProgramDead());
+        }
+    }
+
+    public void testSendAsync() throws GtpError
+    {
+        m_expect.expect("name", "Expect");
+        m_expect.expect("version", "1.0");
+        m_expect.expect("protocol_version", "2");
+        GtpClient.AsyncResponse name = m_gtp.sendAsync("name");
+        GtpClient.AsyncResponse version = m_gtp.sendAsync("version");
+        // Reads the responses to the commands sent before
+        assertEquals("2", m_gtp.send("protocol_version"));
+        assertTrue(name.isDone());
+        assertTrue(version.isDone());
+        assertEquals("1.0", version.get());
+        assertEquals("Expect", name.get());
+        assertTrue(m_expect.isExpectQueueEmpty());
+    }
+
+    public void testSendBatch() throws GtpError
+    {
+        ArrayList<String> commands = new ArrayList<String>();
+        for (int i = 0; i < 100; ++i)
+        {
+            String command = "play B A" + (i + 1);
+            commands.add(command);
+            m_expect.expect(command, Integer.toString(i));
+        }
+        commands.add("invalid");
+        ArrayList<GtpClient.AsyncResponse> responses =
+            m_gtp.sendBatch(commands);
+        assertEquals(101, responses.size());
+        for (int i = 0; i < 100; ++i)
+            assertEquals(Integer.toString(i), responses.get(i).get());
+        try
+        {
+            responses.get(100).get();
+            fail();
+        }
+        catch (GtpError e)
+        {
+            assertTrue(e.getCommand().endsWith(" invalid"));
+        }
+        assertTrue(m_expect.isExpectQueueEmpty());
+    }
+
+    /** Test that GtpSynchronizer pipelines play commands and keeps the
+        moves of successful commands after a failed command. */
+    public void testSynchronizer() throws GtpError
+    {
+        m_expect.expect("list_commands", "undo");
+        m_gtp.querySupportedCommands();
+        GtpSynchronizer synchronizer = new GtpSynchronizer(m_gtp);
+        Board board = new Board(9);
+        board.play(Move.get(BLACK, GoPoint.get(0, 0)));
+        board.play(Move.get(WHITE, GoPoint.get(1, 1)));
+        board.play(Move.get(BLACK, GoPoint.get(2, 2)));
+        m_expect.expect("boardsize 9");
+        m_expect.expect("clear_board");
+        m_expect.expect("play B A1");
+        m_expect.expect("play W B2");
+        m_expect.expect("play B C3");
+        synchronizer.synchronize(board, null, null);
+        assertTrue(m_expect.isExpectQueueEmpty());
+        board.play(Move.get(WHITE, GoPoint.get(3, 3)));
+        board.play(Move.get(BLACK, GoPoint.get(4, 4)));
+        // Let play W D4 fail
+        m_expect.expect("play B E5");
+        try
+        {
+            synchronizer.synchronize(board, null, null);
+            fail();
+        }
+        catch (GtpError e)
+        {
+        }
+        assertTrue(synchronizer.isOutOfSync());
+        m_expect.expect("undo");
+        m_expect.expect("play W D4");
+        m_expect.expect("play B E5");
+        synchronizer.synchronize(board, null, null);
+        assertTrue(m_expect.isExpectQueueEmpty());
+        assertFalse(synchronizer.isOutOfSync());
+    }
+
+    /** Test that GtpSynchronizer plays more moves than fit into a single
+        batch of pipelined commands. */
+    public void testSynchronizerLongSequence() throws GtpError
+    {
+        m_expect.expect("list_commands", "undo");
+        m_gtp.querySupportedCommands();
+        GtpSynchronizer synchronizer = new GtpSynchronizer(m_gtp);
+        Board board = new Board(9);
+        m_expect.expect("boardsize 9");
+        m_expect.expect("clear_board");
+        for (int i = 0; i < 150; ++i)
+        {
+            Move move = Move.getPass(i % 2 == 0 ? BLACK : WHITE);
+            board.play(move);
+            m_expect.expect(m_gtp.getCommandPlay(move));
+        }
+        synchronizer.synchronize(board, null, null);
+        assertTrue(m_expect.isExpectQueueEmpty());
+        assertFalse(synchronizer.isOutOfSync());
+    }
+
+    private GtpClient m_gtp;
+
+    private GtpExpectEngine m_expect;
+}
@@ -16,6 +16,14 @@ import java.io.PipedOutputStream;
 public final class GtpEngineConnection
 {
     public GtpEngineConnection(GtpEngine engine) throws IOException, GtpError
+    {
+        this(engine, false);
+    }
+
+    /** Constructor.
+        @param directRead Create the GtpClient with directRead. */
+    public GtpEngineConnection(GtpEngine engine, boolean directRead)
+        throws IOException, GtpError
     {
         PipedInputStream gtpInput = new PipedInputStream();
         final OutputStream out = new PipedOutputStream(gtpInput);
@@ -36,7 +44,7 @@ public final class GtpEngineConnection
                 }
             };
         thread.start();
-        m_gtp = new GtpClient(gtpInput, gtpOutput, false, null);
+        m_gtp = new GtpClient(gtpInput, gtpOutput, false, null, directRead);
     }
 
     public GtpClientBase getGtpClient()
@@ -0,0 +1,150 @@
+// GtpEngineServerTest.java
+
+package net.sf.gogui.gtp;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+
+public final class GtpEngineServerTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(GtpEngineServerTest.class);
+    }
+
+    public void setUp() throws IOException
+    {
+        m_server = new GtpEngineServer(createFactory(), 0, 2, false);
+        Thread thread = new Thread() {
+                public void run()
+                {
+                    try
+                    {
+                        m_server.run();
+                    }
+                    catch (IOException e)
+                    {
+                    }
+                }
+            };
+        thread.start();
+    }
+
+    public void tearDown()
+    {
+        m_server.close();
+    }
+
+    /** Test that close() ends run() and closes all connections while
+        clients are connecting. */
+    public void testCloseWhileConnecting() throws Exception
+    {
+        for (int i = 0; i < 20; ++i)
+        {
+            final GtpEngineServer server =
+                new GtpEngineServer(createFactory(), 0, 1, false);
+            final Throwable[] error = new Throwable[1];
+            Thread thread = new Thread() {
+                    public void run()
+                    {
+                        try
+                        {
+                            server.run();
+                        }
+                        catch (Throwable t)
+                        {
+                            error[0] = t;
+                        }
+                    }
+                };
+            thread.start();
+            ArrayList<Socket> sockets = new ArrayList<Socket>();
+            for (int j = 0; j < 5; ++j)
+                sockets.add(new Socket("localhost", server.getPort()));
+            server.close();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+            assertNull(error[0]);
+            for (Socket socket : sockets)
+            {
+                socket.setSoTimeout(5000);
+                try
+                {
+                    assertEquals(-1, socket.getInputStream().read());
+                }
+                catch (SocketException e)
+                {
+                    // Connection reset
+                }
+                socket.close();
+            }
+        }
+    }
+
+    /** Test that sessions have their own engine state. */
+    public void testSessions() throws Exception
+    {
+        GtpClient gtp1 = connect();
+        GtpClient gtp2 = connect();
+        gtp1.send("set_name First");
+        gtp2.send("set_name Second");
+        assertEquals("First", gtp1.send("name"));
+        assertEquals("Second", gtp2.send("name"));
+        gtp1.send("quit");
+        for (int i = 0; i < 500 && m_server.getNumberSessions() > 1; ++i)
+            Thread.sleep(10);
+        assertEquals(1, m_server.getNumberSessions());
+        // The session of the first connection ended, so a third one can be
+        // served with the maximum of two sessions
+        GtpClient gtp3 = connect();
+        assertEquals("Unknown", gtp3.send("name"));
+        assertEquals("Second", gtp2.send("name"));
+        gtp2.close();
+        gtp3.close();
+    }
+
+    private GtpEngineServer m_server;
+
+    private static GtpEngineServer.EngineFactory createFactory()
+    {
+        GtpEngineServer.EngineFactory factory =
+            new GtpEngineServer.EngineFactory() {
+                public GtpEngine create()
+                {
+                    return new GtpEngine(null) {
+                        {
+                            register("name", new GtpCallback() {
+                                    public void run(GtpCommand cmd)
+                                    {
+                                        cmd.setResponse(m_name);
+                                    } });
+                            register("set_name", new GtpCallback() {
+                                    public void run(GtpCommand cmd)
+                                        throws GtpError
+                                    {
+                                        m_name = cmd.getArg();
+                                    } });
+                        }
+
+                        private String m_name = "Unknown";
+                    };
+                }
+            };
+        return factory;
+    }
+
+    private GtpClient connect() throws Exception
+    {
+        Socket socket = new Socket("localhost", m_server.getPort());
+        return new GtpClient(socket.getInputStream(),
+                             socket.getOutputStream(), false, null);
+    }
+}
@@ -2,6 +2,10 @@
 
 package net.sf.gogui.gtp;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 public final class GtpEngineTest
     extends junit.framework.TestCase
 {
@@ -22,4 +26,59 @@ public final class GtpEngineTest
         assertEquals("true", gtp.send("known_command name"));
         assertEquals("false", gtp.send("known_command foobar"));
     }
+
+    /** Test that an interrupt received while the command is waiting in the
+        queue interrupts the command, but not the following command. */
+    public void testInterrupt() throws IOException
+    {
+        final GtpEngine engine = new GtpEngine(null);
+        engine.register("interrupted", new GtpCallback() {
+                public void run(GtpCommand cmd) throws GtpError
+                {
+                    if (cmd.getArg().equals("wait"))
+                        for (int i = 0; i < 500 && ! engine.isInterrupted();
+                             ++i)
+                            sleep(10);
+                    cmd.setResponse(Boolean.toString(engine.isInterrupted()));
+                } });
+        assertEquals("=1 true\n\n=2 false\n\n",
+                     mainLoop(engine, "1 interrupted wait\n# interrupt\n"
+                              + "2 interrupted now\n"));
+    }
+
+    /** Test that several commands are handled and consecutive new lines
+        in responses are replaced. */
+    public void testMainLoop() throws IOException
+    {
+        GtpEngine engine = new GtpEngine(null);
+        engine.register("lines", new GtpCallback() {
+                public void run(GtpCommand cmd) throws GtpError
+                {
+                    cmd.setResponse("a\n\n\nb\n");
+                } });
+        assertEquals("=1 Unknown\n\n= a\n \n \nb\n\n"
+                     + "?3 unknown command: foo\n\n= \n\n",
+                     mainLoop(engine, "1 name\n\n# comment\nlines\n"
+                              + "3 foo\nquit\nname\n"));
+    }
+
+    private static String mainLoop(GtpEngine engine, String input)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        engine.mainLoop(new ByteArrayInputStream(input.getBytes("US-ASCII")),
+                        out);
+        return out.toString("US-ASCII");
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+        }
+    }
 }
@@ -332,6 +332,45 @@ public final class GtpSynchronizerTest
         assertExpectQueueEmpty();
     }
 
+    /** Test synchronizing with a board that has a different move sequence
+        after a number of common moves. */
+    public void testVariation() throws GtpError
+    {
+        createSynchronizer();
+        expect("list_commands", "undo");
+        m_gtp.querySupportedCommands();
+        expect("boardsize 19", "");
+        expect("clear_board", "");
+        for (int i = 0; i < 30; ++i)
+        {
+            play(i % 2 == 0 ? BLACK : WHITE, i % 19, i / 19);
+            expect("play " + m_board.getLastMove(), "");
+        }
+        synchronize();
+        assertExpectQueueEmpty();
+        // Use a different board instance with the first 20 moves
+        Board board = m_board;
+        m_board = new Board(19);
+        for (int i = 0; i < 20; ++i)
+            m_board.play(board.getMove(i));
+        play(BLACK, 18, 18);
+        play(WHITE, 17, 18);
+        for (int i = 0; i < 10; ++i)
+            expect("undo", "");
+        expect("play B T19", "");
+        expect("play W S19", "");
+        synchronize();
+        assertExpectQueueEmpty();
+        undo();
+        undo();
+        play(BLACK, 17, 18);
+        expect("undo", "");
+        expect("undo", "");
+        expect("play B S19", "");
+        synchronize();
+        assertExpectQueueEmpty();
+    }
+
     private Board m_board;
 
     private GtpExpectEngine m_expect;
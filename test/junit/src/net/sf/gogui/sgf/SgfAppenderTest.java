@@ -0,0 +1,169 @@
+// SgfAppenderTest.java
+
+package net.sf.gogui.sgf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import net.sf.gogui.game.GameTree;
+import net.sf.gogui.game.Node;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import net.sf.gogui.go.Komi;
+import net.sf.gogui.go.Move;
+
+public final class SgfAppenderTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(SgfAppenderTest.class);
+    }
+
+    public void setUp() throws IOException
+    {
+        m_file = File.createTempFile("gogui", ".sgf");
+        m_appender = new SgfAppender(m_file, "test", "1.0");
+        m_tree = new GameTree(9, null, null, null, null);
+    }
+
+    public void tearDown() throws IOException
+    {
+        m_appender.close();
+        m_file.delete();
+    }
+
+    /** Test appending moves with comments of different length, such that
+        the lines of the file are wrapped at different positions. */
+    public void testAppend() throws IOException
+    {
+        Node node = m_tree.getRoot();
+        checkWrite();
+        for (int i = 0; i < 40; ++i)
+        {
+            node = appendMove(node, i);
+            if (i % 3 == 0)
+                node.setComment(getComment(i));
+            checkWrite();
+        }
+        checkWrite();
+    }
+
+    /** Test that changes of the last node are written. */
+    public void testChangeLastNode() throws IOException
+    {
+        Node node = m_tree.getRoot();
+        for (int i = 0; i < 15; ++i)
+        {
+            node = appendMove(node, i);
+            checkWrite();
+            node.setComment(getComment(i));
+            checkWrite();
+        }
+        node.setComment(null);
+        checkWrite();
+    }
+
+    /** Test changes to the root node. */
+    public void testChangeRoot() throws IOException
+    {
+        Node root = m_tree.getRoot();
+        checkWrite();
+        root.getGameInfo().setKomi(new Komi(6.5));
+        checkWrite();
+        Node node = appendMove(root, 0);
+        checkWrite();
+        root.getGameInfo().setKomi(new Komi(7.5));
+        checkWrite();
+        appendMove(node, 1);
+        checkWrite();
+    }
+
+    /** Test invalidate() after changing an earlier node. */
+    public void testInvalidate() throws IOException
+    {
+        Node node = m_tree.getRoot();
+        for (int i = 0; i < 5; ++i)
+            node = appendMove(node, i);
+        checkWrite();
+        m_tree.getRoot().getChild().setComment("Changed");
+        m_appender.invalidate();
+        checkWrite();
+    }
+
+    /** Test removing nodes and adding and removing variations. */
+    public void testVariations() throws IOException
+    {
+        Node root = m_tree.getRoot();
+        Node node = root;
+        for (int i = 0; i < 12; ++i)
+            node = appendMove(node, i);
+        checkWrite();
+        Node father = root.getChild().getChild();
+        Node variation = new Node(Move.get(WHITE, 5, 5));
+        father.append(variation);
+        checkWrite();
+        appendMove(node, 12);
+        checkWrite();
+        father.removeChild(variation);
+        checkWrite();
+        Node child = father.getChild();
+        father.removeChild(child);
+        checkWrite();
+        appendMove(father, 13);
+        checkWrite();
+    }
+
+    private File m_file;
+
+    private GameTree m_tree;
+
+    private SgfAppender m_appender;
+
+    private static Node appendMove(Node node, int i)
+    {
+        Node child = new Node(Move.get(i % 2 == 0 ? BLACK : WHITE, i % 9,
+                                       (i / 9) % 9));
+        node.append(child);
+        return child;
+    }
+
+    /** Write the tree with the appender and check that the file content is
+        the same as written by SgfWriter. */
+    private void checkWrite() throws IOException
+    {
+        m_appender.write(m_tree);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new SgfWriter(expected, m_tree, "test", "1.0");
+        byte[] content = new byte[(int)m_file.length()];
+        FileInputStream in = new FileInputStream(m_file);
+        try
+        {
+            int n = 0;
+            while (n < content.length)
+                n += in.read(content, n, content.length - n);
+        }
+        finally
+        {
+            in.close();
+        }
+        if (! Arrays.equals(expected.toByteArray(), content))
+            assertEquals(expected.toString("UTF-8"),
+                         new String(content, "UTF-8"));
+    }
+
+    private static String getComment(int i)
+    {
+        StringBuilder comment = new StringBuilder();
+        for (int j = 0; j < i; ++j)
+            comment.append("Comment ");
+        return comment.toString();
+    }
+}
@@ -0,0 +1,138 @@
+// SgfCollectionTest.java
+
+package net.sf.gogui.sgf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import net.sf.gogui.game.GameTree;
+
+public final class SgfCollectionTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(SgfCollectionTest.class);
+    }
+
+    /** Test that each game is decoded with its own CA property. */
+    public void testCharset() throws Exception
+    {
+        File file = File.createTempFile("gogui", ".sgf");
+        try
+        {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("(;CA[UTF-8]C[\u00c4])\n".getBytes("UTF-8"));
+            out.write("(;CA[ISO-8859-1]C[\u00c4])\n".getBytes("ISO-8859-1"));
+            out.close();
+            SgfCollection collection = new SgfCollection(file);
+            assertEquals(2, collection.getNumberGames());
+            assertEquals("\u00c4", getComment(collection, 0));
+            assertEquals("\u00c4", getComment(collection, 1));
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testGames() throws Exception
+    {
+        File file = createFile("Text before\n"
+                               + "(;SZ[9];B[aa](;W[bb])(;W[cc]))\n"
+                               + "(;SZ[13])\n"
+                               + "(;SZ[19];B[dd];W[ee]");
+        try
+        {
+            SgfCollection collection = new SgfCollection(file);
+            assertEquals(3, collection.getNumberGames());
+            GameTree tree = collection.readTree(0);
+            assertEquals(9, tree.getBoardSize());
+            assertEquals(2, tree.getRoot().getChild().getNumberChildren());
+            assertEquals(13, collection.readTree(1).getBoardSize());
+            SgfReader reader = collection.read(2, true);
+            assertEquals(19, reader.getTree().getBoardSize());
+            assertEquals("Game tree not closed\n", reader.getWarnings());
+            SgfParser parser = collection.getParser(1);
+            assertEquals(SgfParser.Event.START_GAME_TREE, parser.next());
+            assertEquals(SgfParser.Event.START_NODE, parser.next());
+            assertEquals(SgfParser.Event.PROPERTY, parser.next());
+            assertEquals("SZ", parser.getName());
+            assertEquals(SgfParser.Event.END_NODE, parser.next());
+            assertEquals(SgfParser.Event.END_GAME_TREE, parser.next());
+            assertEquals(SgfParser.Event.END, parser.next());
+            try
+            {
+                collection.getParser(3);
+                fail();
+            }
+            catch (IndexOutOfBoundsException e)
+            {
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testIndexFile() throws Exception
+    {
+        File file = createFile("(;SZ[9])(;SZ[13])");
+        File indexFile = SgfCollection.getIndexFile(file);
+        try
+        {
+            SgfCollection collection = new SgfCollection(file, true);
+            assertEquals(2, collection.getNumberGames());
+            assertTrue(indexFile.exists());
+            collection = new SgfCollection(file, true);
+            assertEquals(2, collection.getNumberGames());
+            assertEquals(13, collection.readTree(1).getBoardSize());
+            // Index file must not be used after the file was changed
+            writeFile(file, "(;SZ[9])(;SZ[13])(;SZ[19])");
+            file.setLastModified(indexFile.lastModified() + 2000);
+            collection = new SgfCollection(file, true);
+            assertEquals(3, collection.getNumberGames());
+            assertEquals(19, collection.readTree(2).getBoardSize());
+            collection = new SgfCollection(file, true);
+            assertEquals(3, collection.getNumberGames());
+        }
+        finally
+        {
+            file.delete();
+            indexFile.delete();
+        }
+    }
+
+    private static File createFile(String text) throws IOException
+    {
+        File file = File.createTempFile("gogui", ".sgf");
+        writeFile(file, text);
+        return file;
+    }
+
+    private static String getComment(SgfCollection collection, int index)
+        throws SgfError
+    {
+        return collection.readTree(index).getRoot().getComment();
+    }
+
+    private static void writeFile(File file, String text)
+        throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(text.getBytes("US-ASCII"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
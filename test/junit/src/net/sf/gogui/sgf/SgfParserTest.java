@@ -0,0 +1,301 @@
+// SgfParserTest.java
+
+package net.sf.gogui.sgf;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import static net.sf.gogui.sgf.SgfParser.Event.END;
+import static net.sf.gogui.sgf.SgfParser.Event.END_GAME_TREE;
+import static net.sf.gogui.sgf.SgfParser.Event.END_NODE;
+import static net.sf.gogui.sgf.SgfParser.Event.PROPERTY;
+import static net.sf.gogui.sgf.SgfParser.Event.START_GAME_TREE;
+import static net.sf.gogui.sgf.SgfParser.Event.START_NODE;
+
+public final class SgfParserTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(SgfParserTest.class);
+    }
+
+    /** Test that the default charset of the SGF standard is used, if the
+        charset is not detected. */
+    public void testCharset() throws Exception
+    {
+        String comment = "\u00e4\u00f6\u00fc";
+        byte[] data = ("(;C[" + comment + "])").getBytes("ISO-8859-1");
+        SgfParser parser = new SgfParser(new ByteArrayInputStream(data));
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "C", comment);
+    }
+
+    public void testCharsetProperty() throws Exception
+    {
+        String comment = "\u00e4\u00f6\u00fc";
+        byte[] data =
+            ("(;CA[UTF-8]C[" + comment + "])").getBytes("UTF-8");
+        SgfParser parser = new SgfParser(new ByteArrayInputStream(data));
+        parser.next();
+        parser.next();
+        checkProperty(parser, "CA", "UTF-8");
+        checkProperty(parser, "C", comment);
+    }
+
+    /** Test that values with bytes of SGF syntax characters within
+        multi-byte characters are parsed correctly.
+        The second byte of U+8868 in Shift_JIS is a backslash. */
+    public void testCharsetNotAsciiCompatible() throws Exception
+    {
+        byte[] data = "(;C[\u8868]B[aa])".getBytes("Shift_JIS");
+        SgfParser parser =
+            new SgfParser(ByteBuffer.wrap(data), "Shift_JIS");
+        parser.next();
+        parser.next();
+        checkProperty(parser, "C", "\u8868");
+        checkProperty(parser, "B", "aa");
+        assertEquals(END_NODE, parser.next());
+    }
+
+    public void testEvents() throws Exception
+    {
+        SgfParser parser =
+            getParser("(;SZ[9]AB[aa][bb];B[cc](;W[dd])(;W[ee]C[a\\]b]))");
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(1, parser.getDepth());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "SZ", "9");
+        checkProperty(parser, "AB", "aa", "bb");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "B", "cc");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(2, parser.getDepth());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "W", "dd");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(1, parser.getDepth());
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "W", "ee");
+        checkProperty(parser, "C", "a]b");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(0, parser.getDepth());
+        assertEquals(END, parser.next());
+        assertEquals(END, parser.next());
+        assertNull(parser.getWarnings());
+    }
+
+    /** Test that the values are only decoded if requested. */
+    public void testGetValuesLater() throws Exception
+    {
+        SgfParser parser = getParser("(;C[foo][bar]B[aa])");
+        parser.next();
+        parser.next();
+        assertEquals(PROPERTY, parser.next());
+        assertEquals("C", parser.getName());
+        assertEquals(2, parser.getNumberValues());
+        assertEquals(PROPERTY, parser.next());
+        assertEquals("B", parser.getName());
+        assertEquals("aa", parser.getValues().get(0));
+        assertSame(parser.getValues(), parser.getValues());
+    }
+
+    public void testExtraText() throws Exception
+    {
+        SgfParser parser = getParser("foo (;B[aa]) bar");
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "B", "aa");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(END, parser.next());
+        assertEquals("Extra text after SGF tree\n"
+                     + "Extra text before SGF tree\n",
+                     parser.getWarnings());
+    }
+
+    public void testFile() throws Exception
+    {
+        File file = File.createTempFile("gogui", ".sgf");
+        try
+        {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write("(;SZ[9];B[aa])".getBytes("US-ASCII"));
+            out.close();
+            SgfParser parser = new SgfParser(file);
+            parser.next();
+            parser.next();
+            checkProperty(parser, "SZ", "9");
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    public void testHandler() throws Exception
+    {
+        final StringBuilder events = new StringBuilder();
+        SgfHandler handler = new SgfHandler() {
+                public void startGameTree() {
+                    events.append('(');
+                }
+
+                public void endGameTree() {
+                    events.append(')');
+                }
+
+                public void startNode() {
+                    events.append(';');
+                }
+
+                public void property(String name, ArrayList<String> values)
+                {
+                    events.append(name);
+                    for (String value : values)
+                        events.append('[').append(value).append(']');
+                }
+
+                public void endNode() {
+                    events.append('.');
+                }
+            };
+        getParser("(;GM[1](;B[aa];W[bb])(;B[cc]))\n(;GM[1])")
+            .parse(handler);
+        assertEquals("(;GM[1].(;B[aa].;W[bb].)(;B[cc].))(;GM[1].)",
+                     events.toString());
+    }
+
+    public void testLinebreaks() throws Exception
+    {
+        SgfParser parser = getParser("(;C[a\r\nb\n\rc\rd\\\ne])");
+        parser.next();
+        parser.next();
+        checkProperty(parser, "C", "a\nb\nc\nde");
+    }
+
+    /** Test that obsolete long property names are replaced. */
+    public void testLongPropertyNames() throws Exception
+    {
+        SgfParser parser = getParser("(;size[9]PlayerBlack[foo])");
+        parser.next();
+        parser.next();
+        checkProperty(parser, "SZ", "9");
+        checkProperty(parser, "PB", "foo");
+    }
+
+    /** Test that lower-case letters in property names are converted to
+        upper case. */
+    public void testLowerCaseNames() throws Exception
+    {
+        SgfParser parser = getParser("(;b[aa]Xy[1]fooBar[2])");
+        parser.next();
+        parser.next();
+        checkProperty(parser, "B", "aa");
+        checkProperty(parser, "XY", "1");
+        checkProperty(parser, "FOOBAR", "2");
+        assertSame("FOOBAR", parser.getName());
+    }
+
+    public void testNoValue() throws Exception
+    {
+        SgfParser parser = getParser("(;FOO B[aa])");
+        parser.next();
+        parser.next();
+        checkProperty(parser, "B", "aa");
+        assertEquals(END_NODE, parser.next());
+        assertEquals("Property \"FOO\" has no value\n", parser.getWarnings());
+    }
+
+    public void testNotClosed() throws Exception
+    {
+        SgfParser parser = getParser("(;B[aa](;W[bb]");
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "B", "aa");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "W", "bb");
+        assertEquals(END_NODE, parser.next());
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(END, parser.next());
+        assertEquals("Game tree not closed\n", parser.getWarnings());
+    }
+
+    /** Test reading a stream that is larger than the buffer, such that
+        values span several blocks. */
+    public void testStream() throws Exception
+    {
+        StringBuilder sgf = new StringBuilder("(;SZ[19]");
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < 30000; ++i)
+            comment.append("x\\]");
+        for (int i = 0; i < 10; ++i)
+            sgf.append(";B[aa]C[").append(comment).append("]");
+        sgf.append(")");
+        byte[] data = sgf.toString().getBytes("US-ASCII");
+        SgfParser parser = new SgfParser(new ByteArrayInputStream(data));
+        assertEquals(START_GAME_TREE, parser.next());
+        assertEquals(START_NODE, parser.next());
+        checkProperty(parser, "SZ", "19");
+        assertEquals(END_NODE, parser.next());
+        String expected = comment.toString().replace("\\", "");
+        for (int i = 0; i < 10; ++i)
+        {
+            assertEquals(START_NODE, parser.next());
+            checkProperty(parser, "B", "aa");
+            checkProperty(parser, "C", expected);
+            assertEquals(END_NODE, parser.next());
+        }
+        assertEquals(END_GAME_TREE, parser.next());
+        assertEquals(END, parser.next());
+    }
+
+    public void testValueIncomplete() throws Exception
+    {
+        SgfParser parser = getParser("(;C[foo");
+        parser.next();
+        parser.next();
+        try
+        {
+            parser.next();
+            fail();
+        }
+        catch (SgfError e)
+        {
+            assertEquals("Property value incomplete", e.getMessage());
+        }
+    }
+
+    private static void checkProperty(SgfParser parser, String name,
+                                      String... values) throws Exception
+    {
+        assertEquals(PROPERTY, parser.next());
+        assertEquals(name, parser.getName());
+        assertEquals(values.length, parser.getValues().size());
+        for (int i = 0; i < values.length; ++i)
+            assertEquals(values[i], parser.getValues().get(i));
+    }
+
+    private static SgfParser getParser(String text) throws Exception
+    {
+        return new SgfParser(ByteBuffer.wrap(text.getBytes("ISO-8859-1")),
+                             "ISO-8859-1");
+    }
+}
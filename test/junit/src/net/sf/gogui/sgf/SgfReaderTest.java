@@ -3,11 +3,13 @@
 package net.sf.gogui.sgf;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import net.sf.gogui.game.CompactGameTree;
 import net.sf.gogui.game.ConstGameInfo;
 import net.sf.gogui.game.ConstGameTree;
 import net.sf.gogui.game.ConstNode;
@@ -39,6 +41,41 @@ public final class SgfReaderTest
         return new junit.framework.TestSuite(SgfReaderTest.class);
     }
 
+    /** Test that the CA property is used for streams that are not
+        files. */
+    public void testCharset() throws Exception
+    {
+        String comment = "\u00e4\u00f6\u00fc \u4e2d";
+        byte[] data =
+            ("(;CA[UTF-8]C[" + comment + "])").getBytes("UTF-8");
+        SgfReader reader =
+            new SgfReader(new ByteArrayInputStream(data), null, null, 0);
+        assertEquals(comment, reader.getTree().getRoot().getComment());
+        assertNull(reader.getWarnings());
+    }
+
+    /** Test restarting after a CA property that is not found by the
+        charset detection, because the root node starts after the bytes
+        used for detection. */
+    public void testCharsetChanged() throws Exception
+    {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 70000; ++i)
+            text.append(' ');
+        String comment = "\u00e4\u00f6\u00fc";
+        text.append("(;C[" + comment + "]CA[UTF-8])");
+        byte[] data = text.toString().getBytes("UTF-8");
+        SgfReader reader =
+            new SgfReader(new ByteArrayInputStream(data), null, null, 0);
+        assertEquals(comment, reader.getTree().getRoot().getComment());
+    }
+
+    public void testCharsetUnknown() throws Exception
+    {
+        readSgfFileString("(;CA[FOO-8]C[bar])", false, true);
+        readSgfFileString("(;CA[UTF 8]C[bar])", false, true);
+    }
+
     public void testDuplicateProperty() throws Exception
     {
         readSgfFileString("(;C[foo]C[bar])", false, true);
@@ -110,11 +147,136 @@ public final class SgfReaderTest
         assertEquals("foo", getSgfPropertyValue(tree.getRootConst(), "XY"));
     }
 
+    /** Test that lazy decoding of properties gives the same result as
+        reading all properties immediately. */
+    public void testLazy() throws Exception
+    {
+        String[] names = { "ff4_ex.1.sgf", "ff4_ex.2.sgf",
+                           "human-readable.sgf", "size-after-valid-points.sgf",
+                           "time-settings-unknown-ot.sgf",
+                           "verbose-property-names.sgf" };
+        for (String name : names)
+        {
+            m_isLazy = false;
+            String expected = writeSgf(getReader(name).getTree());
+            m_isLazy = true;
+            assertEquals(name, expected, writeSgf(getReader(name).getTree()));
+        }
+        readSgfFile("ff4_ex.sgf", true, false);
+        readSgfFile("invalidmove.sgf", true, false);
+        readSgfFile("size-after-invalid-points.sgf", true, false);
+        readSgfFileString("(;C[foo]C[bar])", false, true);
+        readSgfFileString("(;C[foo]C[foo])", false, false);
+        readSgfFileString("(;FF[4]C[foo]XY)", false, true);
+        readSgfFileString("(;FF[4]C[foo", true, false);
+    }
+
+    public void testLazyFF4Example() throws Exception
+    {
+        m_isLazy = true;
+        checkFF4Example(getReader("ff4_ex.1.sgf"));
+    }
+
+    /** Test that lazy and immediate decoding give the same warnings for
+        duplicate properties. */
+    public void testLazyDuplicateProperty() throws Exception
+    {
+        String[] texts = { "(;SZ[9];B[aa]C[x] C[x]\n)",
+                           "(;SZ[9];B[aa]C[x]\nC[x] )",
+                           "(;SZ[9];B[aa]C[x\\\n]C[x])",
+                           "(;SZ[9];B[aa]C[x]C[y])",
+                           "(;SZ[9];B[aa]LB[aa:A] LB[aa:A]\n)",
+                           "(;SZ[9];B[aa]TR[aa][bb] TR[aa][bb])" };
+        for (String text : texts)
+        {
+            m_isLazy = false;
+            String expected = getReaderString(text).getWarnings();
+            m_isLazy = true;
+            assertEquals(text, expected, getReaderString(text).getWarnings());
+        }
+        m_isLazy = true;
+        assertNull(getReaderString("(;SZ[9];B[aa]C[x] C[x]\n)")
+                   .getWarnings());
+    }
+
+    /** Test that invalid values of lazily decoded properties are ignored. */
+    public void testLazyInvalidValue() throws Exception
+    {
+        m_isLazy = true;
+        ConstGameTree tree =
+            readSgfFileString("(;SZ[9];B[aa]C[foo]LB[zz:A]TR[cc][zz])");
+        ConstNode node = tree.getRootConst().getChildConst();
+        assertEquals(Move.get(BLACK, 0, 8), node.getMove());
+        assertEquals("foo", node.getComment());
+        assertTrue(node.getLabelsUnmodifiable() == null
+                   || node.getLabelsUnmodifiable().isEmpty());
+    }
+
+    public void testLazyLinebreaks() throws Exception
+    {
+        m_isLazy = true;
+        testLinebreaks();
+    }
+
+    /** Test that a node with lazily decoded properties can be modified
+        before the properties were accessed. */
+    public void testLazyModify() throws Exception
+    {
+        m_isLazy = true;
+        GameTree tree = getReaderString("(;C[foo]XY[bar];B[aa]C[baz])")
+            .getTree();
+        Node root = tree.getRoot();
+        root.setComment("new");
+        assertEquals("new", root.getComment());
+        assertEquals("bar", getSgfPropertyValue(root, "XY"));
+        Node node = root.getChild();
+        assertFalse(node.isEmpty());
+        node.addSgfProperty("XY", "foo");
+        assertEquals("baz", node.getComment());
+        assertEquals("foo", getSgfPropertyValue(node, "XY"));
+    }
+
     public void testRead() throws Exception
     {
         readSgfFile("verbose-property-names.sgf", false, false);
     }
 
+    /** Test that reading into a compact tree gives the same result as
+        reading into a game tree. */
+    public void testReadCompact() throws Exception
+    {
+        String[] names = { "ff4_ex.1.sgf", "ff4_ex.2.sgf",
+                           "human-readable.sgf", "size-after-valid-points.sgf",
+                           "time-settings-unknown-ot.sgf",
+                           "verbose-property-names.sgf" };
+        for (String name : names)
+        {
+            String expected = writeSgf(getReader(name).getTree());
+            InputStream in = getClass().getResourceAsStream(name);
+            SgfReader reader = SgfReader.readCompact(in, null, null, 0);
+            assertNull(reader.getTree());
+            assertEquals(name, expected, writeSgf(reader.getCompactTree()));
+        }
+        // Charset restart and fix of missing player in root
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 70000; ++i)
+            text.append(' ');
+        String comment = "\u00e4\u00f6\u00fc";
+        text.append("(;AB[aa]CA[UTF-8];W[bb]C[" + comment + "]V[1.5])");
+        byte[] data = text.toString().getBytes("UTF-8");
+        SgfReader reader =
+            SgfReader.readCompact(new ByteArrayInputStream(data), null, null,
+                                  0);
+        CompactGameTree tree = reader.getCompactTree();
+        assertEquals(2, tree.getNumberNodes());
+        assertEquals(WHITE, tree.getRootConst().getPlayer());
+        ConstNode node = tree.getRootConst().getChildConst();
+        assertEquals(Move.get(WHITE, 1, 17), node.getMove());
+        assertEquals(comment, node.getComment());
+        assertEquals(1.5f, node.getValue());
+        assertNull(node.getSgfPropertiesConst());
+    }
+
     /** Test that spaces in size property value are ignored.
         I don't think they are allowed by the SGF standard, but there is
         no reason to create an error in this case. */
@@ -189,6 +351,9 @@ public final class SgfReaderTest
         file.delete();
     }
 
+    /** Use lazy mode in getReader() and getReaderString(). */
+    private boolean m_isLazy;
+
     public void checkFF4Example(SgfReader reader) throws Exception
     {
         GameTree tree = reader.getTree();
@@ -307,13 +472,13 @@ public final class SgfReaderTest
         InputStream in = getClass().getResourceAsStream(name);
         if (in == null)
             throw new Exception("Resource " + name + " not found");
-        return new SgfReader(in, null, null, 0);
+        return new SgfReader(in, null, null, 0, m_isLazy);
     }
 
     private SgfReader getReaderString(String text) throws SgfError, Exception
     {
         InputStream in = new ByteArrayInputStream(text.getBytes());
-        return new SgfReader(in, null, null, 0);
+        return new SgfReader(in, null, null, 0, m_isLazy);
     }
 
     private static String getSgfPropertyValue(ConstNode node, String key)
@@ -378,4 +543,11 @@ public final class SgfReaderTest
     {
         return readSgfFileString(name, false, false);
     }
+
+    private static String writeSgf(ConstGameTree tree)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SgfWriter(out, tree, "GoGui", "1.0");
+        return out.toString();
+    }
 }
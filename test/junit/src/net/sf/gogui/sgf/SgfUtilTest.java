@@ -2,6 +2,11 @@
 
 package net.sf.gogui.sgf;
 
+import java.util.ArrayList;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.InvalidPointException;
+import net.sf.gogui.go.PointList;
+
 public final class SgfUtilTest
     extends junit.framework.TestCase
 {
@@ -15,6 +20,38 @@ public final class SgfUtilTest
         return new junit.framework.TestSuite(SgfUtilTest.class);
     }
 
+    public void testParsePoint() throws Exception
+    {
+        assertSame(GoPoint.get(0, 18), SgfUtil.parsePoint("aa", 19));
+        assertSame(GoPoint.get(2, 6), SgfUtil.parsePoint("CC", 9));
+        assertSame(GoPoint.get(3, 3), SgfUtil.parsePoint("D4", 19));
+        assertNull(SgfUtil.parsePoint("", 19));
+        assertNull(SgfUtil.parsePoint("tt", 19));
+        assertNull(SgfUtil.parsePoint("jj", 9));
+        try
+        {
+            SgfUtil.parsePoint("ss", 9);
+            fail();
+        }
+        catch (InvalidPointException e)
+        {
+        }
+    }
+
+    public void testParsePointList() throws Exception
+    {
+        ArrayList<String> values = new ArrayList<String>();
+        values.add("aa");
+        values.add("bc:cb");
+        values.add("tt");
+        PointList list = new PointList();
+        SgfUtil.parsePointList(values, 19, list);
+        assertEquals(5, list.size());
+        assertSame(GoPoint.get(0, 18), list.get(0));
+        assertTrue(list.contains(GoPoint.get(1, 16)));
+        assertTrue(list.contains(GoPoint.get(2, 17)));
+    }
+
     public void testParseTime() throws Exception
     {
         assertEquals(13L * 3600L * 1000L, SgfUtil.parseTime("13h"));
@@ -0,0 +1,46 @@
+// DummyTest.java
+
+package net.sf.gogui.tools.dummy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+public final class DummyTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(DummyTest.class);
+    }
+
+    /** Test that gogui-dummy-crash ends only the session in server mode. */
+    public void testCrashServerSession() throws Exception
+    {
+        Dummy dummy = new Dummy(null, false, 0, -1, 0);
+        dummy.setServerSession(true);
+        String commands = "gogui-dummy-crash\nname\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        dummy.mainLoop(new ByteArrayInputStream(commands.getBytes()), out);
+        assertEquals("? aborting session\n\n", out.toString());
+    }
+
+    /** Test that an interrupt for a genmove command that is still queued
+        behind another command stops the playouts.
+        The interrupt is received while the sleep command is executed. */
+    public void testInterruptQueuedGenmove() throws Exception
+    {
+        Dummy dummy = new Dummy(null, false, 0, -1, 100000);
+        String commands =
+            "gogui-dummy-sleep 0.2\ngenmove b\n# interrupt\nquit\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long startTime = System.currentTimeMillis();
+        dummy.mainLoop(new ByteArrayInputStream(commands.getBytes()), out);
+        assertTrue(System.currentTimeMillis() - startTime < 5000);
+        assertTrue(out.toString().startsWith("= \n\n= "));
+    }
+}
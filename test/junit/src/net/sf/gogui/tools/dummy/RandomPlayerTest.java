@@ -0,0 +1,81 @@
+// RandomPlayerTest.java
+
+package net.sf.gogui.tools.dummy;
+
+import java.util.Random;
+import net.sf.gogui.go.Board;
+import static net.sf.gogui.go.GoColor.BLACK;
+import static net.sf.gogui.go.GoColor.WHITE;
+import static net.sf.gogui.go.GoColor.EMPTY;
+import net.sf.gogui.go.GoPoint;
+import net.sf.gogui.go.PointList;
+
+public final class RandomPlayerTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(RandomPlayerTest.class);
+    }
+
+    /** Test that the generated move is legal and the board is unchanged. */
+    public void testGenmove()
+    {
+        RandomPlayer player = new RandomPlayer(new Random(1));
+        Board board = new Board(5);
+        board.play(BLACK, GoPoint.get(2, 2));
+        long hashCode = board.getHashCode();
+        GoPoint p = player.genmove(board, WHITE, 0.5, 100,
+                                    NOT_INTERRUPTED);
+        assertNotNull(p);
+        assertEquals(EMPTY, board.getColor(p));
+        assertFalse(board.isSuicide(WHITE, p));
+        assertEquals(1, board.getNumberMoves());
+        assertEquals(hashCode, board.getHashCode());
+        assertTrue(player.getStatistics().startsWith("Last: 100 playouts"));
+    }
+
+    /** Test that an interrupted move generation returns a legal move
+        without playouts. */
+    public void testInterrupted()
+    {
+        RandomPlayer player = new RandomPlayer(new Random(1));
+        Board board = new Board(5);
+        RandomPlayer.InterruptCheck interrupted =
+            new RandomPlayer.InterruptCheck() {
+                public boolean isInterrupted()
+                {
+                    return true;
+                }
+            };
+        GoPoint p = player.genmove(board, BLACK, 0.5, 100, interrupted);
+        assertNotNull(p);
+        assertTrue(player.getStatistics().startsWith("Last: 0 playouts"));
+    }
+
+    /** Test that the player passes instead of filling its own eyes. */
+    public void testPassIfOnlyEyes()
+    {
+        RandomPlayer player = new RandomPlayer(new Random(1));
+        Board board = new Board(3);
+        PointList black = new PointList();
+        for (GoPoint p : board)
+            if (p != GoPoint.get(0, 0) && p != GoPoint.get(2, 2))
+                black.add(p);
+        board.setup(black, null, BLACK);
+        assertNull(player.genmove(board, BLACK, 0, 10, NOT_INTERRUPTED));
+    }
+
+    private static final RandomPlayer.InterruptCheck NOT_INTERRUPTED =
+        new RandomPlayer.InterruptCheck() {
+            public boolean isInterrupted()
+            {
+                return false;
+            }
+        };
+}
@@ -0,0 +1,98 @@
+// FileCheckTest.java
+
+package net.sf.gogui.tools.statistics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import net.sf.gogui.sgf.SgfError;
+import net.sf.gogui.sgf.SgfReader;
+import net.sf.gogui.util.ErrorMessage;
+
+public final class FileCheckTest
+    extends junit.framework.TestCase
+{
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    public static junit.framework.Test suite()
+    {
+        return new junit.framework.TestSuite(FileCheckTest.class);
+    }
+
+    public void testValid() throws Exception
+    {
+        assertTrue(check("(;SZ[9];B[cc](;W[gg];B[cg])(;W[tt]LB[aa:A]))"));
+        // Points before the size property
+        assertTrue(check("(;TR[ii]SZ[9];B[ii])"));
+    }
+
+    public void testInvalidPoint() throws Exception
+    {
+        assertFalse(check("(;SZ[9];B[cc](;W[gg])(;W[zz]))"));
+        assertFalse(check("(;SZ[9];B[cc](;W[gg])(;W[aa]TR[ak]))"));
+        assertFalse(check("(;SZ[9]AB[aa:ak];W[gg])"));
+    }
+
+    public void testMainVariation() throws Exception
+    {
+        assertFalse(check("(;SZ[19];B[cc])"));
+        assertFalse(check("(;SZ[9];B[cc];B[dd])"));
+        assertFalse(check("(;SZ[9];B[cc];AB[dd])"));
+        // Requirements are only checked in the main variation
+        assertTrue(check("(;SZ[9];B[cc](;W[gg])(;B[dd]))"));
+    }
+
+    public void testMultipleTrees() throws Exception
+    {
+        assertFalse(check("(;SZ[9];B[cc])(;SZ[9];B[dd])"));
+    }
+
+    /** Test a file with a truncated value after the first tree. */
+    public void testTruncated() throws Exception
+    {
+        assertFalse(check("(;SZ[9];B[cc])\n(;C[foo"));
+    }
+
+    /** Check a file and compare the result with reading it with
+        SgfReader.
+        @return true, if the check passed. */
+    private static boolean check(String text) throws Exception
+    {
+        File file = File.createTempFile("gogui", ".sgf");
+        try
+        {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(text.getBytes("US-ASCII"));
+            out.close();
+            boolean isReadable = true;
+            try
+            {
+                new SgfReader(new FileInputStream(file), file, null, 0);
+            }
+            catch (SgfError e)
+            {
+                isReadable = false;
+            }
+            ArrayList<String> files = new ArrayList<String>();
+            files.add(file.toString());
+            try
+            {
+                new FileCheck(files, 9, false);
+            }
+            catch (ErrorMessage e)
+            {
+                return false;
+            }
+            assertTrue(text, isReadable);
+            return true;
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+}